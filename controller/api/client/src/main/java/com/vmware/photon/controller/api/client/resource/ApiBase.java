@@ -218,6 +218,19 @@ public abstract class ApiBase {
     );
   }
 
+  /**
+   * Iterates lazily over the items of the resource list at the specified path, following its next page links.
+   *
+   * @param path
+   * @param itemType
+   * @return
+   * @throws IOException
+   */
+  public final <T> ResourceListIterator<T> iterateResourceList(final String path, final TypeReference<T> itemType)
+      throws IOException {
+    return new ResourceListIterator<>(this.restClient, path, itemType);
+  }
+
   /**
    * Generates query string from query params.
    *
@@ -40,6 +40,8 @@ public interface ProjectApi {
 
   ResourceList<Task> getTasksForProject(String projectId) throws IOException;
 
+  ResourceListIterator<Task> iterateTasksForProject(String projectId) throws IOException;
+
   void getTasksForProjectAsync(String projectId, FutureCallback<ResourceList<Task>>
       responseCallback)
       throws
@@ -71,6 +73,10 @@ public interface ProjectApi {
 
   ResourceList<Vm> getVmDetailsInProject(String projectId) throws IOException;
 
+  ResourceListIterator<FlavoredCompact> iterateVmsInProject(String projectId) throws IOException;
+
+  ResourceListIterator<Vm> iterateVmDetailsInProject(String projectId) throws IOException;
+
   void getVmsInProjectAsync(String projectId, FutureCallback<ResourceList<FlavoredCompact>>
       responseCallback)
       throws
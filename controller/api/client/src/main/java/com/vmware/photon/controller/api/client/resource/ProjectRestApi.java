@@ -93,34 +93,21 @@ public class ProjectRestApi extends ApiBase implements ProjectApi {
    */
   @Override
   public ResourceList<Task> getTasksForProject(String projectId) throws IOException {
-    String path = String.format("%s/%s/tasks", getBasePath(), projectId);
-
-    ResourceList<Task> taskResourceList = new ResourceList<>();
-    ResourceList<Task> resourceList = getTaskResourceList(path);
-    taskResourceList.setItems(resourceList.getItems());
-    while (resourceList.getNextPageLink() != null && !resourceList.getNextPageLink().isEmpty()) {
-      resourceList = getTaskResourceList(resourceList.getNextPageLink());
-      taskResourceList.getItems().addAll(resourceList.getItems());
-    }
-
-    return taskResourceList;
+    return iterateTasksForProject(projectId).toResourceList();
   }
 
   /**
-   * Get all Tasks at specified path.
+   * Iterate lazily over the tasks associated with the specified project, one page at a time.
    *
-   * @param path
-   * @return
+   * @param projectId
+   * @return {@link ResourceListIterator} of {@link Task}
    * @throws IOException
    */
-  private ResourceList<Task> getTaskResourceList(String path) throws IOException {
-    HttpResponse httpResponse = this.restClient.perform(RestClient.Method.GET, path, null);
-    this.restClient.checkResponse(httpResponse, HttpStatus.SC_OK);
-    return this.restClient.parseHttpResponse(
-        httpResponse,
-        new TypeReference<ResourceList<Task>>() {
-        }
-    );
+  @Override
+  public ResourceListIterator<Task> iterateTasksForProject(String projectId) throws IOException {
+    String path = String.format("%s/%s/tasks", getBasePath(), projectId);
+
+    return iterateResourceList(path, new TypeReference<Task>() {});
   }
 
   /**
@@ -244,32 +231,7 @@ public class ProjectRestApi extends ApiBase implements ProjectApi {
   public ResourceList<PersistentDisk> getDisksInProject(String projectId) throws IOException {
     String path = String.format("%s/%s/disks", getBasePath(), projectId);
 
-    ResourceList<PersistentDisk> persistentDiskResourceList = new ResourceList<>();
-    ResourceList<PersistentDisk> resourceList = getPersistentDiskResourceList(path);
-    persistentDiskResourceList.setItems(resourceList.getItems());
-    while (resourceList.getNextPageLink() != null && !resourceList.getNextPageLink().isEmpty()) {
-      resourceList = getPersistentDiskResourceList(resourceList.getNextPageLink());
-      persistentDiskResourceList.getItems().addAll(resourceList.getItems());
-    }
-
-    return persistentDiskResourceList;
-  }
-
-  /**
-   * Get all persistentDisks at specified path.
-   *
-   * @param path
-   * @return
-   * @throws IOException
-   */
-  private ResourceList<PersistentDisk> getPersistentDiskResourceList(String path) throws IOException {
-    HttpResponse httpResponse = this.restClient.perform(RestClient.Method.GET, path, null);
-    this.restClient.checkResponse(httpResponse, HttpStatus.SC_OK);
-    return this.restClient.parseHttpResponse(
-        httpResponse,
-        new TypeReference<ResourceList<PersistentDisk>>() {
-        }
-    );
+    return iterateResourceList(path, new TypeReference<PersistentDisk>() {}).toResourceList();
   }
 
   /**
@@ -361,34 +323,21 @@ public class ProjectRestApi extends ApiBase implements ProjectApi {
    */
   @Override
   public ResourceList<FlavoredCompact> getVmsInProject(String projectId) throws IOException {
-    String path = String.format("%s/%s/vms", getBasePath(), projectId);
-
-    ResourceList<FlavoredCompact> flavoredCompactResourceList = new ResourceList<>();
-    ResourceList<FlavoredCompact> resourceList = getFlavoredCompactResourceList(path);
-    flavoredCompactResourceList.setItems(resourceList.getItems());
-    while (resourceList.getNextPageLink() != null && !resourceList.getNextPageLink().isEmpty()) {
-      resourceList = getFlavoredCompactResourceList(resourceList.getNextPageLink());
-      flavoredCompactResourceList.getItems().addAll(resourceList.getItems());
-    }
-
-    return flavoredCompactResourceList;
+    return iterateVmsInProject(projectId).toResourceList();
   }
 
   /**
-   * Get all flavoredCompacts at specified path.
+   * Iterate lazily over the vms in the specified project, one page at a time.
    *
-   * @param path
-   * @return
+   * @param projectId - id of project
+   * @return {@link ResourceListIterator} of {@link FlavoredCompact}
    * @throws IOException
    */
-  private ResourceList<FlavoredCompact> getFlavoredCompactResourceList(String path) throws IOException {
-    HttpResponse httpResponse = this.restClient.perform(RestClient.Method.GET, path, null);
-    this.restClient.checkResponse(httpResponse, HttpStatus.SC_OK);
-    return this.restClient.parseHttpResponse(
-        httpResponse,
-        new TypeReference<ResourceList<FlavoredCompact>>() {
-        }
-    );
+  @Override
+  public ResourceListIterator<FlavoredCompact> iterateVmsInProject(String projectId) throws IOException {
+    String path = String.format("%s/%s/vms", getBasePath(), projectId);
+
+    return iterateResourceList(path, new TypeReference<FlavoredCompact>() {});
   }
 
   /**
@@ -400,35 +349,21 @@ public class ProjectRestApi extends ApiBase implements ProjectApi {
    */
   @Override
   public ResourceList<Vm> getVmDetailsInProject(String projectId) throws IOException {
-
-    String path = String.format("%s/%s/vms", getBasePath(), projectId);
-    ResourceList<Vm> vmResourceList = new ResourceList<>();
-    ResourceList<Vm> resourceList = getVmResourceList(path);
-    vmResourceList.setItems(resourceList.getItems());
-
-    while (resourceList.getNextPageLink() != null && !resourceList.getNextPageLink().isEmpty()) {
-      resourceList = getVmResourceList(resourceList.getNextPageLink());
-      vmResourceList.getItems().addAll(resourceList.getItems());
-    }
-
-    return vmResourceList;
+    return iterateVmDetailsInProject(projectId).toResourceList();
   }
 
   /**
-   * Get all Vms at specified path.
+   * Iterate lazily over the vm details in the specified project, one page at a time.
    *
-   * @param path
-   * @return
+   * @param projectId - id of project
+   * @return {@link ResourceListIterator} of {@link Vm}
    * @throws IOException
    */
-  private ResourceList<Vm> getVmResourceList(String path) throws IOException {
-    HttpResponse httpResponse = this.restClient.perform(RestClient.Method.GET, path, null);
-    this.restClient.checkResponse(httpResponse, HttpStatus.SC_OK);
-    return this.restClient.parseHttpResponse(
-            httpResponse,
-            new TypeReference<ResourceList<Vm>>() {
-            }
-    );
+  @Override
+  public ResourceListIterator<Vm> iterateVmDetailsInProject(String projectId) throws IOException {
+    String path = String.format("%s/%s/vms", getBasePath(), projectId);
+
+    return iterateResourceList(path, new TypeReference<Vm>() {});
   }
 
   /**
@@ -522,32 +457,7 @@ public class ProjectRestApi extends ApiBase implements ProjectApi {
   public ResourceList<Cluster> getClustersInProject(String projectId) throws IOException {
     String path = String.format("%s/%s/clusters", getBasePath(), projectId);
 
-    ResourceList<Cluster> clusterResourceList = new ResourceList<>();
-    ResourceList<Cluster> resourceList = getClusterResourceList(path);
-    clusterResourceList.setItems(resourceList.getItems());
-    while (resourceList.getNextPageLink() != null && !resourceList.getNextPageLink().isEmpty()) {
-      resourceList = getClusterResourceList(resourceList.getNextPageLink());
-      clusterResourceList.getItems().addAll(resourceList.getItems());
-    }
-
-    return clusterResourceList;
-  }
-
-  /**
-   * Get all flavors at specified path.
-   *
-   * @param path
-   * @return
-   * @throws IOException
-   */
-  private ResourceList<Cluster> getClusterResourceList(String path) throws IOException {
-    HttpResponse httpResponse = this.restClient.perform(RestClient.Method.GET, path, null);
-    this.restClient.checkResponse(httpResponse, HttpStatus.SC_OK);
-    return this.restClient.parseHttpResponse(
-        httpResponse,
-        new TypeReference<ResourceList<Cluster>>() {
-        }
-    );
+    return iterateResourceList(path, new TypeReference<Cluster>() {}).toResourceList();
   }
 
   /**
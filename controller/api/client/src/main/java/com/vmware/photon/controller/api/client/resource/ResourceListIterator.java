@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.client.resource;
+
+import com.vmware.photon.controller.api.client.RestClient;
+import com.vmware.photon.controller.api.model.ResourceList;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates lazily over the items of a paginated {@link ResourceList}.
+ * <p/>
+ * Only the page being consumed is kept in memory. The request for the next page is sent as soon as the current page
+ * has been read, so that it is in flight while the consumer works through the current page. Pages are read with the
+ * Jackson streaming parser instead of being bound to a {@link ResourceList} first.
+ *
+ * @param <T> resource type
+ */
+public class ResourceListIterator<T> implements Iterator<T> {
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static final String ITEMS_FIELD = "items";
+
+  private static final String NEXT_PAGE_LINK_FIELD = "nextPageLink";
+
+  private final RestClient restClient;
+  private final JavaType itemType;
+  private Iterator<T> page = Collections.emptyIterator();
+  private Future<HttpResponse> nextPage;
+
+  public ResourceListIterator(RestClient restClient, String path, TypeReference<T> itemType) throws IOException {
+    this.restClient = restClient;
+    this.itemType = objectMapper.getTypeFactory().constructType(itemType);
+    this.nextPage = restClient.performAsync(RestClient.Method.GET, path, null, null /* callback */);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!page.hasNext() && nextPage != null) {
+      try {
+        page = readNextPage();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    return page.hasNext();
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    return page.next();
+  }
+
+  /**
+   * Cancels the request for the next page, if any. Calling this is only needed when the iteration is abandoned
+   * before the last page.
+   */
+  public void close() {
+    if (nextPage != null) {
+      nextPage.cancel(true);
+      nextPage = null;
+    }
+    page = Collections.emptyIterator();
+  }
+
+  /**
+   * Returns a sequential stream over the remaining items. Closing the stream cancels the request for the next page.
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+        false).onClose(this::close);
+  }
+
+  /**
+   * Collects the remaining items into a single {@link ResourceList}.
+   */
+  public ResourceList<T> toResourceList() {
+    List<T> items = new ArrayList<>();
+    forEachRemaining(items::add);
+    return new ResourceList<>(items);
+  }
+
+  private Iterator<T> readNextPage() throws IOException {
+    HttpResponse httpResponse;
+    try {
+      httpResponse = nextPage.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      nextPage = null;
+    }
+
+    restClient.checkResponse(httpResponse, HttpStatus.SC_OK);
+
+    List<T> items = new ArrayList<>();
+    String nextPageLink = null;
+    try (InputStream content = httpResponse.getEntity().getContent();
+         JsonParser parser = objectMapper.getFactory().createParser(content)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a resource list but got " + parser.getCurrentToken());
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (ITEMS_FIELD.equals(field) && value == JsonToken.START_ARRAY) {
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            items.add(objectMapper.readValue(parser, itemType));
+          }
+        } else if (NEXT_PAGE_LINK_FIELD.equals(field)) {
+          nextPageLink = parser.getValueAsString();
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+
+    if (nextPageLink != null && !nextPageLink.isEmpty()) {
+      nextPage = restClient.performAsync(RestClient.Method.GET, nextPageLink, null, null /* callback */);
+    }
+
+    return items.iterator();
+  }
+}
@@ -36,6 +36,8 @@ public interface VmApi {
 
   ResourceList<Task> getTasksForVm(String vmId) throws IOException;
 
+  ResourceListIterator<Task> iterateTasksForVm(String vmId) throws IOException;
+
   void getTasksForVmAsync(String vmId,
                           FutureCallback<ResourceList<Task>> responseCallback)
       throws IOException;
@@ -89,34 +89,20 @@ public class VmRestApi extends ApiBase implements VmApi {
    */
   @Override
   public ResourceList<Task> getTasksForVm(String vmId) throws IOException {
-    String path = String.format("%s/%s/tasks", getBasePath(), vmId);
-
-    ResourceList<Task> taskResourceList = new ResourceList<>();
-    ResourceList<Task> resourceList = getTaskResourceList(path);
-    taskResourceList.setItems(resourceList.getItems());
-    while (resourceList.getNextPageLink() != null && !resourceList.getNextPageLink().isEmpty()) {
-      resourceList = getTaskResourceList(resourceList.getNextPageLink());
-      taskResourceList.getItems().addAll(resourceList.getItems());
-    }
-
-    return taskResourceList;
+    return iterateTasksForVm(vmId).toResourceList();
   }
 
   /**
-   * Get all tasks at specified path.
-   *
-   * @param path
-   * @return
+   * Iterate lazily over the tasks associated with the specified vm, one page at a time.
+   * @param vmId
+   * @return {@link ResourceListIterator} of {@link Task}
    * @throws IOException
    */
-  private ResourceList<Task> getTaskResourceList(String path) throws IOException {
-    HttpResponse httpResponse = this.restClient.perform(RestClient.Method.GET, path, null);
-    this.restClient.checkResponse(httpResponse, HttpStatus.SC_OK);
-    return this.restClient.parseHttpResponse(
-        httpResponse,
-        new TypeReference<ResourceList<Task>>() {
-        }
-    );
+  @Override
+  public ResourceListIterator<Task> iterateTasksForVm(String vmId) throws IOException {
+    String path = String.format("%s/%s/tasks", getBasePath(), vmId);
+
+    return iterateResourceList(path, new TypeReference<Task>() {});
   }
 
   /**
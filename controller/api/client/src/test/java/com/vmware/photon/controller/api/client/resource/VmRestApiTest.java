@@ -29,6 +29,7 @@ import org.testng.annotations.Test;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
@@ -39,9 +40,11 @@ import java.time.Instant;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Tests {@link VmRestApi}.
@@ -148,6 +151,68 @@ public class VmRestApiTest extends ApiTestBase {
     assertTrue(response.getItems().containsAll(taskResourceListNextPage.getItems()));
   }
 
+  @Test
+  public void testIterateVmTasksForPagination() throws IOException {
+    Task task1 = new Task();
+    task1.setId("task1");
+
+    Task task2 = new Task();
+    task2.setId("task2");
+
+    Task task3 = new Task();
+    task3.setId("task3");
+
+    String nextPageLink = "nextPageLink";
+
+    ResourceList<Task> taskResourceList = new ResourceList<>(Arrays.asList(task1, task2), nextPageLink, null);
+    ResourceList<Task> taskResourceListNextPage = new ResourceList<>(Arrays.asList(task3));
+
+    ObjectMapper mapper = new ObjectMapper();
+    String serialized = mapper.writeValueAsString(taskResourceList);
+    String serializedNextPage = mapper.writeValueAsString(taskResourceListNextPage);
+
+    setupMocksForPagination(serialized, serializedNextPage, nextPageLink, HttpStatus.SC_OK);
+
+    VmApi vmApi = new VmRestApi(restClient);
+
+    ResourceListIterator<Task> iterator = vmApi.iterateTasksForVm("foo");
+    assertTrue(iterator.hasNext());
+    assertEquals(iterator.next().getId(), task1.getId());
+    assertEquals(iterator.next().getId(), task2.getId());
+    assertEquals(iterator.next().getId(), task3.getId());
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  public void testIterateVmTasksAsStream() throws IOException {
+    Task task1 = new Task();
+    task1.setId("task1");
+
+    Task task2 = new Task();
+    task2.setId("task2");
+
+    ResourceList<Task> taskResourceList = new ResourceList<>(Arrays.asList(task1, task2));
+
+    ObjectMapper mapper = new ObjectMapper();
+    String serialized = mapper.writeValueAsString(taskResourceList);
+
+    setupMocks(serialized, HttpStatus.SC_OK);
+
+    VmApi vmApi = new VmRestApi(restClient);
+
+    List<String> taskIds = vmApi.iterateTasksForVm("foo").stream().map(Task::getId).collect(Collectors.toList());
+    assertEquals(taskIds, Arrays.asList(task1.getId(), task2.getId()));
+  }
+
+  @Test(expectedExceptions = RuntimeException.class)
+  public void testIterateVmTasksFailure() throws IOException {
+    setupMocks("{}", HttpStatus.SC_NOT_FOUND);
+
+    VmApi vmApi = new VmRestApi(restClient);
+
+    vmApi.iterateTasksForVm("foo").hasNext();
+  }
+
   @Test
   public void testGetVmTasksAsync() throws IOException, InterruptedException {
     Task task1 = new Task();
@@ -75,6 +75,7 @@ import com.vmware.photon.controller.api.frontend.config.ApiFeConfiguration;
 import com.vmware.photon.controller.api.frontend.config.AuthConfig;
 import com.vmware.photon.controller.api.frontend.config.ImageConfig;
 import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
+import com.vmware.photon.controller.api.frontend.config.QuotaConfig;
 import com.vmware.photon.controller.api.frontend.config.StatusConfig;
 import com.vmware.photon.controller.api.frontend.utils.NetworkHelper;
 import com.vmware.photon.controller.api.frontend.utils.PhysicalNetworkHelper;
@@ -192,7 +193,7 @@ public class ApiFeModule extends AbstractModule {
           (Gauge<Integer>) () -> workQueue.size());
     }
 
-    return new TaskCommandExecutorService(
+    final TaskCommandExecutorService executorService = new TaskCommandExecutorService(
         configuration.getBackgroundWorkers(),
         configuration.getBackgroundWorkers(),
         0L,
@@ -200,6 +201,13 @@ public class ApiFeModule extends AbstractModule {
         workQueue,
         threadFactory
     );
+    if (!DefaultMetricRegistry.REGISTRY.getGauges().containsKey(
+        MetricRegistry.name(ApiFeService.class, "overflow-queue"))) {
+      DefaultMetricRegistry.REGISTRY.register(MetricRegistry.name(ApiFeService.class, "overflow-queue"),
+          (Gauge<Integer>) () -> executorService.getOverflowQueueSize());
+    }
+
+    return executorService;
   }
 
   @Provides
@@ -215,6 +223,12 @@ public class ApiFeModule extends AbstractModule {
     return configuration.getPaginationConfig();
   }
 
+  @Provides
+  @Singleton
+  public QuotaConfig getQuotaConfig() {
+    return configuration.getQuotaConfig();
+  }
+
   @Provides
   @Singleton
   @ApiFeServerSet
@@ -23,19 +23,29 @@ import com.vmware.photon.controller.api.frontend.resources.routes.AvailableRoute
 import com.vmware.photon.controller.common.auth.AuthException;
 import com.vmware.photon.controller.common.auth.AuthOIDCClient;
 import com.vmware.photon.controller.common.auth.AuthTokenHandler;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.RatioGauge;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import com.google.inject.Inject;
 import org.glassfish.jersey.server.ContainerRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.core.HttpHeaders;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Custom RequestFilter used for Authentication and Authorization.
@@ -57,6 +67,35 @@ public class AuthFilter implements ContainerRequestFilter {
 
   private static final Logger logger = LoggerFactory.getLogger(AuthFilter.class);
 
+  // Validated tokens are re-used until they expire, but for no longer than this so that the cache stays small
+  private static final long TOKEN_CACHE_EXPIRATION_MINUTES = 5;
+
+  private static final long TOKEN_CACHE_MAXIMUM_SIZE = 10000;
+
+  private static final Counter tokenCacheHits =
+      DefaultMetricRegistry.REGISTRY.counter(name(AuthFilter.class, "token-cache-hits"));
+
+  private static final Counter tokenCacheMisses =
+      DefaultMetricRegistry.REGISTRY.counter(name(AuthFilter.class, "token-cache-misses"));
+
+  static {
+    String hitRate = name(AuthFilter.class, "token-cache-hit-rate");
+    if (!DefaultMetricRegistry.REGISTRY.getGauges().containsKey(hitRate)) {
+      DefaultMetricRegistry.REGISTRY.register(hitRate, new RatioGauge() {
+        @Override
+        protected Ratio getRatio() {
+          return Ratio.of(tokenCacheHits.getCount(), tokenCacheHits.getCount() + tokenCacheMisses.getCount());
+        }
+      });
+    }
+  }
+
+  // Validated access tokens keyed by the hash of the JWT they were parsed from
+  private final Cache<String, ResourceServerAccessToken> validatedTokens = CacheBuilder.newBuilder()
+      .maximumSize(TOKEN_CACHE_MAXIMUM_SIZE)
+      .expireAfterWrite(TOKEN_CACHE_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+      .build();
+
   private String authServerAddress;
   private int authServerPort;
   private String tenant;
@@ -174,15 +213,31 @@ public class AuthFilter implements ContainerRequestFilter {
   }
 
   /**
-   * Check resource access rights.
+   * Check resource access rights. The signature of a token is only verified the first time the token is seen.
    *
    * @param jwtAccessToken
    */
   private ResourceServerAccessToken parseAccessToken(String jwtAccessToken) throws ExternalException {
+    String tokenHash = Hashing.sha256().hashString(jwtAccessToken, StandardCharsets.UTF_8).toString();
+    ResourceServerAccessToken cachedToken = validatedTokens.getIfPresent(tokenHash);
+    if (cachedToken != null) {
+      if (cachedToken.getExpirationTime().after(new Date())) {
+        tokenCacheHits.inc();
+        return cachedToken;
+      }
+      // Parse the token again so that the caller gets the same error as for an expired token seen the first time.
+      validatedTokens.invalidate(tokenHash);
+    }
+
+    tokenCacheMisses.inc();
     this.initializeAuth();
 
     try {
-      return this.tokenHandler.parseAccessToken(jwtAccessToken);
+      ResourceServerAccessToken token = this.tokenHandler.parseAccessToken(jwtAccessToken);
+      if (token.getExpirationTime() != null) {
+        validatedTokens.put(tokenHash, token);
+      }
+      return token;
     } catch (TokenValidationException ex) {
       switch (ex.getTokenValidationError()) {
         case EXPIRED_TOKEN:
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.auth;
+
+import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.model.SecurityGroup;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the security groups of tenants and projects used to authorize API calls.
+ * <p>
+ * The backends invalidate an entry when they change the security groups of the tenant or project. Entries also expire
+ * after a short time, which bounds how long a change made through another API frontend goes unnoticed.
+ */
+@Singleton
+public class SecurityGroupCache {
+
+  /**
+   * Loads the security groups of a tenant or project on a cache miss.
+   */
+  public interface Loader {
+    List<SecurityGroup> load() throws ExternalException;
+  }
+
+  @VisibleForTesting
+  protected static final long DEFAULT_EXPIRATION_SECONDS = 30;
+
+  private static final long MAXIMUM_SIZE = 10000;
+
+  private static final Counter hits =
+      DefaultMetricRegistry.REGISTRY.counter(name(SecurityGroupCache.class, "hits"));
+  private static final Counter misses =
+      DefaultMetricRegistry.REGISTRY.counter(name(SecurityGroupCache.class, "misses"));
+
+  static {
+    String hitRate = name(SecurityGroupCache.class, "hit-rate");
+    if (!DefaultMetricRegistry.REGISTRY.getGauges().containsKey(hitRate)) {
+      DefaultMetricRegistry.REGISTRY.register(hitRate, new RatioGauge() {
+        @Override
+        protected Ratio getRatio() {
+          return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+        }
+      });
+    }
+  }
+
+  private final Cache<String, List<SecurityGroup>> tenantSecurityGroups;
+  private final Cache<String, List<SecurityGroup>> projectSecurityGroups;
+
+  @Inject
+  public SecurityGroupCache() {
+    this(DEFAULT_EXPIRATION_SECONDS, TimeUnit.SECONDS);
+  }
+
+  @VisibleForTesting
+  protected SecurityGroupCache(long expiration, TimeUnit unit) {
+    this.tenantSecurityGroups = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .expireAfterWrite(expiration, unit)
+        .build();
+    this.projectSecurityGroups = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .expireAfterWrite(expiration, unit)
+        .build();
+  }
+
+  public List<SecurityGroup> getTenantSecurityGroups(String tenantId, Loader loader) throws ExternalException {
+    return get(tenantSecurityGroups, tenantId, loader);
+  }
+
+  public List<SecurityGroup> getProjectSecurityGroups(String projectId, Loader loader) throws ExternalException {
+    return get(projectSecurityGroups, projectId, loader);
+  }
+
+  public void invalidateTenant(String tenantId) {
+    tenantSecurityGroups.invalidate(tenantId);
+  }
+
+  public void invalidateProject(String projectId) {
+    projectSecurityGroups.invalidate(projectId);
+  }
+
+  private static List<SecurityGroup> get(Cache<String, List<SecurityGroup>> cache, String id, Loader loader)
+      throws ExternalException {
+    List<SecurityGroup> securityGroups = cache.getIfPresent(id);
+    if (securityGroups != null) {
+      hits.inc();
+      return securityGroups;
+    }
+
+    misses.inc();
+    securityGroups = loader.load();
+    securityGroups = securityGroups == null ? ImmutableList.of() : ImmutableList.copyOf(securityGroups);
+    cache.put(id, securityGroups);
+    return securityGroups;
+  }
+}
@@ -13,10 +13,11 @@
 
 package com.vmware.photon.controller.api.frontend.auth.fetcher;
 
+import com.vmware.photon.controller.api.frontend.auth.SecurityGroupCache;
 import com.vmware.photon.controller.api.frontend.auth.TransactionAuthorizationObject;
 import com.vmware.photon.controller.api.frontend.clients.ProjectFeClient;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ProjectNotFoundException;
-import com.vmware.photon.controller.api.model.Project;
+import com.vmware.photon.controller.api.model.SecurityGroup;
 
 import com.google.inject.Inject;
 import org.slf4j.Logger;
@@ -24,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -42,9 +44,15 @@ public class ProjectSecurityGroupFetcher implements SecurityGroupFetcher {
    */
   ProjectFeClient projectFeClient;
 
+  /**
+   * Cache of the security groups of projects.
+   */
+  SecurityGroupCache securityGroupCache;
+
   @Inject
-  public ProjectSecurityGroupFetcher(ProjectFeClient projectFeClient) {
+  public ProjectSecurityGroupFetcher(ProjectFeClient projectFeClient, SecurityGroupCache securityGroupCache) {
     this.projectFeClient = projectFeClient;
+    this.securityGroupCache = securityGroupCache;
   }
 
   @Override
@@ -54,14 +62,16 @@ public class ProjectSecurityGroupFetcher implements SecurityGroupFetcher {
 
     Set<String> securityGroups = new HashSet<>();
     try {
-      Project project = projectFeClient.get(authorizationObject.getId());
+      String projectId = authorizationObject.getId();
+      List<SecurityGroup> projectSecurityGroups = securityGroupCache.getProjectSecurityGroups(projectId,
+          () -> projectFeClient.get(projectId).getSecurityGroups());
       switch (authorizationObject.getStrategy()) {
         case SELF:
-          securityGroups = getAllSecurityGroups(project);
+          securityGroups = getAllSecurityGroups(projectSecurityGroups);
           break;
 
         case PARENT:
-          securityGroups = getInheritedSecurityGroups(project);
+          securityGroups = getInheritedSecurityGroups(projectSecurityGroups);
           break;
 
         default:
@@ -76,14 +86,14 @@ public class ProjectSecurityGroupFetcher implements SecurityGroupFetcher {
     return securityGroups;
   }
 
-  private Set<String> getAllSecurityGroups(Project project) {
-    return project.getSecurityGroups().stream()
+  private Set<String> getAllSecurityGroups(List<SecurityGroup> projectSecurityGroups) {
+    return projectSecurityGroups.stream()
         .map(g -> g.getName())
         .collect(Collectors.toSet());
   }
 
-  private Set<String> getInheritedSecurityGroups(Project project) {
-    return project.getSecurityGroups().stream()
+  private Set<String> getInheritedSecurityGroups(List<SecurityGroup> projectSecurityGroups) {
+    return projectSecurityGroups.stream()
         .filter(g -> g.isInherited())
         .map(g -> g.getName())
         .collect(Collectors.toSet());
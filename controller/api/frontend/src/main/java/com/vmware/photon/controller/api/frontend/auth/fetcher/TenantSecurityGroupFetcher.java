@@ -13,10 +13,10 @@
 
 package com.vmware.photon.controller.api.frontend.auth.fetcher;
 
+import com.vmware.photon.controller.api.frontend.auth.SecurityGroupCache;
 import com.vmware.photon.controller.api.frontend.auth.TransactionAuthorizationObject;
 import com.vmware.photon.controller.api.frontend.clients.TenantFeClient;
 import com.vmware.photon.controller.api.frontend.exceptions.external.TenantNotFoundException;
-import com.vmware.photon.controller.api.model.Tenant;
 
 import com.google.inject.Inject;
 import org.slf4j.Logger;
@@ -42,9 +42,15 @@ public class TenantSecurityGroupFetcher implements SecurityGroupFetcher {
    */
   TenantFeClient tenantFeClient;
 
+  /**
+   * Cache of the security groups of tenants.
+   */
+  SecurityGroupCache securityGroupCache;
+
   @Inject
-  public TenantSecurityGroupFetcher(TenantFeClient tenantFeClient) {
+  public TenantSecurityGroupFetcher(TenantFeClient tenantFeClient, SecurityGroupCache securityGroupCache) {
     this.tenantFeClient = tenantFeClient;
+    this.securityGroupCache = securityGroupCache;
   }
 
   @Override
@@ -56,8 +62,10 @@ public class TenantSecurityGroupFetcher implements SecurityGroupFetcher {
 
     Set<String> securityGroups = new HashSet<>();
     try {
-      Tenant tenant = tenantFeClient.get(authorizationObject.getId());
-      securityGroups.addAll(tenant.getSecurityGroups().stream().map(g -> g.getName()).collect(Collectors.toList()));
+      String tenantId = authorizationObject.getId();
+      securityGroups.addAll(securityGroupCache.getTenantSecurityGroups(tenantId,
+          () -> tenantFeClient.get(tenantId).getSecurityGroups())
+          .stream().map(g -> g.getName()).collect(Collectors.toList()));
     } catch (TenantNotFoundException ex) {
       logger.warn("invalid tenant id {}", authorizationObject.getId());
     } catch (Exception ex) {
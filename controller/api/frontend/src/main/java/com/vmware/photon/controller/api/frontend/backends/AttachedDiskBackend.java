@@ -21,15 +21,24 @@ import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalExc
 import com.vmware.photon.controller.api.model.AttachedDiskCreateSpec;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * AttachedDiskBackend is interface for attached disk backend.
  */
 public interface AttachedDiskBackend {
 
-  void attachDisks(VmEntity vm, List<PersistentDiskEntity> disks);
+  /**
+   * Attaches the disks to the VM. The returned future completes once all attachments have been stored.
+   */
+  CompletableFuture<Void> attachDisks(VmEntity vm, List<PersistentDiskEntity> disks);
 
-  void deleteAttachedDisks(VmEntity vm, List<PersistentDiskEntity> disks) throws ExternalException;
+  /**
+   * Detaches the disks from the VM. Throws if one of the disks does not exist, otherwise the returned future
+   * completes once all attachments have been deleted.
+   */
+  CompletableFuture<Void> deleteAttachedDisks(VmEntity vm, List<PersistentDiskEntity> disks) throws ExternalException;
 
   List<AttachedDiskEntity> createAttachedDisks(VmEntity vm, List<AttachedDiskCreateSpec> specs) throws
       ExternalException;
@@ -40,5 +49,7 @@ public interface AttachedDiskBackend {
 
   List<AttachedDiskEntity> findByVmId(String vmId);
 
+  Map<String, List<AttachedDiskEntity>> findByVmIds(List<String> vmIds);
+
   void deleteAttachedDiskById(String attachedDiskId);
 }
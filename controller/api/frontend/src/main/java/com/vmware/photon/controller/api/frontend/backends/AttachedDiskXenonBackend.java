@@ -14,6 +14,7 @@
 package com.vmware.photon.controller.api.frontend.backends;
 
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
 import com.vmware.photon.controller.api.frontend.entities.AttachedDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.BaseDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.PersistentDiskEntity;
@@ -25,8 +26,12 @@ import com.vmware.photon.controller.api.model.PersistentDisk;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AttachedDiskService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AttachedDiskServiceFactory;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.common.Utils;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +39,10 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * AttachedDiskXenonBackend is performing attach disk and detach disk operations.
@@ -53,32 +61,52 @@ public class AttachedDiskXenonBackend implements AttachedDiskBackend {
   }
 
   @Override
-  public void attachDisks(VmEntity vm, List<PersistentDiskEntity> disks) {
+  public CompletableFuture<Void> attachDisks(VmEntity vm, List<PersistentDiskEntity> disks) {
     checkNotNull(vm);
     checkNotNull(vm.getId());
 
+    // The attachments do not depend on each other, so all of them are sent at once.
+    List<CompletableFuture<AttachedDiskEntity>> attachments = new ArrayList<>(disks.size());
     for (PersistentDiskEntity disk : disks) {
-      vm.getAttachedDisks().add(createAttachedDisk(vm, disk));
+      attachments.add(createAttachedDisk(vm, disk));
     }
+
+    return CompletableFuture.allOf(attachments.toArray(new CompletableFuture<?>[attachments.size()]))
+        .thenRun(() -> {
+          for (CompletableFuture<AttachedDiskEntity> attachment : attachments) {
+            vm.getAttachedDisks().add(attachment.join());
+          }
+        });
   }
 
   @Override
-  public void deleteAttachedDisks(VmEntity vm, List<PersistentDiskEntity> disks) throws ExternalException {
+  public CompletableFuture<Void> deleteAttachedDisks(VmEntity vm, List<PersistentDiskEntity> disks)
+      throws ExternalException {
     List<AttachedDiskEntity> attachedDiskEntities = new ArrayList<>();
     for (PersistentDiskEntity disk : disks) {
+      diskBackend.find(PersistentDisk.KIND, disk.getId());
+
       // Lookup attached disk entity
       AttachedDiskEntity attachedDiskEntity = toAttachedDiskEntity(findByDiskId(PersistentDisk.KIND, disk.getId()),
           disk);
-      if (attachedDiskEntity != null) {
+      if (attachedDiskEntity == null) {
+        logger.info("Disk {} not attached", disk.getId());
+      } else {
         attachedDiskEntities.add(attachedDiskEntity);
       }
     }
 
     vm.removeAttachedDisks(attachedDiskEntities);
 
+    // The attachments were looked up above, so they are deleted directly and all deletes are sent at once.
+    List<CompletableFuture<?>> deletes = new ArrayList<>(attachedDiskEntities.size());
     for (AttachedDiskEntity attachedDisk : attachedDiskEntities) {
-      deleteAttachedDisk(PersistentDisk.KIND, attachedDisk.getPersistentDiskId());
+      deletes.add(xenonClient.deleteAsync(AttachedDiskServiceFactory.SELF_LINK + "/" + attachedDisk.getId(),
+          new AttachedDiskService.State())
+          .thenRun(() -> logger.info("AttachedDisk with id {} has been cleared", attachedDisk.getId())));
     }
+
+    return CompletableFuture.allOf(deletes.toArray(new CompletableFuture<?>[deletes.size()]));
   }
 
   @Override
@@ -126,6 +154,35 @@ public class AttachedDiskXenonBackend implements AttachedDiskBackend {
     return attachedDiskEntities;
   }
 
+  /**
+   * Finds the attached disks of several VMs with one query per {@link PaginationConfig#DEFAULT_MAX_PAGE_SIZE} VMs.
+   * The result holds an entry for every requested VM, which is empty for the VMs without attached disks.
+   */
+  @Override
+  public Map<String, List<AttachedDiskEntity>> findByVmIds(List<String> vmIds) {
+    Map<String, List<AttachedDiskEntity>> attachedDiskEntities = new HashMap<>();
+    for (String vmId : vmIds) {
+      attachedDiskEntities.put(vmId, new ArrayList<>());
+    }
+    if (vmIds.isEmpty()) {
+      return attachedDiskEntities;
+    }
+
+    for (List<String> vmIdBatch : Lists.partition(vmIds, PaginationConfig.DEFAULT_MAX_PAGE_SIZE)) {
+      final ImmutableMap.Builder<String, List<String>> inClauseTermsBuilder = new ImmutableMap.Builder<>();
+      inClauseTermsBuilder.put("vmId", vmIdBatch);
+
+      ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(AttachedDiskService.State.class, null,
+          inClauseTermsBuilder.build(), Optional.<Integer>absent(), true, true);
+
+      for (Object document : queryResult.documents.values()) {
+        AttachedDiskService.State state = Utils.fromJson(document, AttachedDiskService.State.class);
+        attachedDiskEntities.get(state.vmId).add(toAttachedDiskEntity(state, null));
+      }
+    }
+    return attachedDiskEntities;
+  }
+
   @Override
   public void deleteAttachedDiskById(String attachedDiskId) {
     xenonClient.delete(AttachedDiskServiceFactory.SELF_LINK + "/" + attachedDiskId,
@@ -159,26 +216,28 @@ public class AttachedDiskXenonBackend implements AttachedDiskBackend {
     return attachedDiskEntity;
   }
 
-  private AttachedDiskEntity createAttachedDisk(VmEntity vm, PersistentDiskEntity persistentDiskEntity) {
+  private CompletableFuture<AttachedDiskEntity> createAttachedDisk(VmEntity vm,
+                                                                   PersistentDiskEntity persistentDiskEntity) {
     AttachedDiskService.State state = new AttachedDiskService.State();
     state.bootDisk = false;
     state.vmId = vm.getId();
     state.kind = persistentDiskEntity.getKind();
     state.persistentDiskId = persistentDiskEntity.getId();
 
-    com.vmware.xenon.common.Operation result = xenonClient.post(AttachedDiskServiceFactory.SELF_LINK, state);
-    AttachedDiskService.State createdState = result.getBody(AttachedDiskService.State.class);
+    return xenonClient.postAsync(AttachedDiskServiceFactory.SELF_LINK, state).thenApply(result -> {
+      AttachedDiskService.State createdState = result.getBody(AttachedDiskService.State.class);
 
-    String id = ServiceUtils.getIDFromDocumentSelfLink(createdState.documentSelfLink);
-    AttachedDiskEntity attachedDiskEntity = new AttachedDiskEntity();
-    attachedDiskEntity.setId(id);
-    attachedDiskEntity.setVmId(vm.getId());
-    attachedDiskEntity.setUnderlyingDiskIdAndKind(persistentDiskEntity);
-    attachedDiskEntity.setBootDisk(createdState.bootDisk);
+      String id = ServiceUtils.getIDFromDocumentSelfLink(createdState.documentSelfLink);
+      AttachedDiskEntity attachedDiskEntity = new AttachedDiskEntity();
+      attachedDiskEntity.setId(id);
+      attachedDiskEntity.setVmId(vm.getId());
+      attachedDiskEntity.setUnderlyingDiskIdAndKind(persistentDiskEntity);
+      attachedDiskEntity.setBootDisk(createdState.bootDisk);
 
-    logger.info("AttachedDisk {} has been created", persistentDiskEntity.getId());
+      logger.info("AttachedDisk {} has been created", persistentDiskEntity.getId());
 
-    return attachedDiskEntity;
+      return attachedDiskEntity;
+    });
   }
 
   private AttachedDiskService.State findByDiskId(String kind, String diskId) {
@@ -25,6 +25,8 @@ import com.vmware.photon.controller.api.model.ResourceList;
 
 import com.google.common.base.Optional;
 
+import java.util.Map;
+
 /**
  * The Disk Backend Interface.
  */
@@ -51,6 +53,8 @@ public interface DiskBackend {
 
   BaseDiskEntity find(String kind, String id) throws DiskNotFoundException;
 
+  Map<String, BaseDiskEntity> findByIds(Map<String, String> diskKinds) throws DiskNotFoundException;
+
   ResourceList<PersistentDisk> getDisksPage(String pageLink) throws ExternalException;
 
 }
@@ -14,6 +14,7 @@
 package com.vmware.photon.controller.api.frontend.backends;
 
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
 import com.vmware.photon.controller.api.frontend.entities.AttachedDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.BaseDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.DiskStateChecks;
@@ -51,10 +52,12 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.DiskServiceFactory;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.common.Utils;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -62,8 +65,10 @@ import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -201,6 +206,46 @@ public class DiskXenonBackend implements DiskBackend {
     return toDiskEntity(state, kind);
   }
 
+  /**
+   * Finds several disks with one query per {@link PaginationConfig#DEFAULT_MAX_PAGE_SIZE} disks.
+   *
+   * @param diskKinds Supplies the kind of each disk keyed by the disk id.
+   * @return The disk entities keyed by the disk id.
+   */
+  @Override
+  public Map<String, BaseDiskEntity> findByIds(Map<String, String> diskKinds) throws DiskNotFoundException {
+    Map<String, BaseDiskEntity> diskEntities = new HashMap<>();
+    if (diskKinds.isEmpty()) {
+      return diskEntities;
+    }
+
+    List<String> diskLinks = new ArrayList<>();
+    for (String id : diskKinds.keySet()) {
+      diskLinks.add(DiskServiceFactory.SELF_LINK + "/" + id);
+    }
+
+    for (List<String> diskLinkBatch : Lists.partition(diskLinks, PaginationConfig.DEFAULT_MAX_PAGE_SIZE)) {
+      final ImmutableMap.Builder<String, List<String>> inClauseTermsBuilder = new ImmutableMap.Builder<>();
+      inClauseTermsBuilder.put(DiskService.State.FIELD_NAME_SELF_LINK, diskLinkBatch);
+
+      ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(DiskService.State.class, null,
+          inClauseTermsBuilder.build(), Optional.<Integer>absent(), true, true);
+
+      for (Object document : queryResult.documents.values()) {
+        DiskService.State state = Utils.fromJson(document, DiskService.State.class);
+        String id = ServiceUtils.getIDFromDocumentSelfLink(state.documentSelfLink);
+        diskEntities.put(id, toDiskEntity(state, diskKinds.get(id)));
+      }
+    }
+
+    for (String id : diskKinds.keySet()) {
+      if (!diskEntities.containsKey(id)) {
+        throw new DiskNotFoundException(id);
+      }
+    }
+    return diskEntities;
+  }
+
   @Override
   public ResourceList<PersistentDisk> getDisksPage(String pageLink) throws ExternalException {
     ServiceDocumentQueryResult queryResult = null;
@@ -17,6 +17,8 @@ import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.entities.base.BaseEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ConcurrentTaskException;
 
+import java.util.List;
+
 /**
  * Entity Lock operation.
  */
@@ -24,7 +26,17 @@ public interface EntityLockBackend {
 
   void setTaskLock(BaseEntity entity, TaskEntity task) throws ConcurrentTaskException;
 
+  /**
+   * Locks all the entities for the task, or none of them when any of them is locked by another task.
+   */
+  void setTaskLocks(List<BaseEntity> entities, TaskEntity task) throws ConcurrentTaskException;
+
   void clearTaskLocks(TaskEntity task);
 
+  /**
+   * Fails when the task has lost the lock of one of its entities, so the entity may be locked by another task now.
+   */
+  void checkTaskLocks(TaskEntity task) throws ConcurrentTaskException;
+
   Boolean lockExistsForEntityId(String entityId);
 }
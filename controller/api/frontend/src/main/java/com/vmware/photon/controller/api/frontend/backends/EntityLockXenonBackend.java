@@ -17,104 +17,341 @@ import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRest
 import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.entities.base.BaseEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ConcurrentTaskException;
-import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLockService;
-import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLockServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLeaseService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLeaseServiceFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.photon.controller.common.xenon.exceptions.XenonException;
 import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceErrorResponse;
+import com.vmware.xenon.common.Utils;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Entity Lock operations using Xenon cloud store.
+ * Entity Lock operations using leases of the Xenon cloud store.
+ * <p>
+ * A lock is a lease of {@link EntityLeaseService}, which is kept in memory by the cloud store. The leases held by the
+ * tasks of this node are renewed in the background, so a lock is released by its lease timing out when this node is
+ * gone. The token of each lease is kept with it and sent with its renewals and its release, so a task whose lease
+ * has been lost cannot release the lease of another task. A task whose lease has been lost fails its
+ * {@link #checkTaskLocks(TaskEntity)}, which its command runs before each of its steps.
  */
 @Singleton
 public class EntityLockXenonBackend implements EntityLockBackend {
 
   private static final Logger logger = LoggerFactory.getLogger(EntityLockXenonBackend.class);
 
+  /**
+   * The duration of the leases taken by this node.
+   */
+  private static final long LEASE_DURATION_MILLIS = EntityLeaseService.DEFAULT_LEASE_DURATION_MILLIS;
+
+  /**
+   * The interval between two renewals of the leases held by this node, so that a lease survives a couple of failed
+   * renewals.
+   */
+  private static final long LEASE_RENEWAL_INTERVAL_MILLIS = LEASE_DURATION_MILLIS / 4;
+
+  private static final ScheduledExecutorService renewalExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("EntityLeaseRenewal-%d").setDaemon(true).build());
+
+  private static final Timer lockWaitTime =
+      DefaultMetricRegistry.REGISTRY.timer(name(EntityLockXenonBackend.class, "lock-wait"));
+
+  private static final Timer lockHoldTime =
+      DefaultMetricRegistry.REGISTRY.timer(name(EntityLockXenonBackend.class, "lock-hold"));
+
+  private static final Counter lockConflicts =
+      DefaultMetricRegistry.REGISTRY.counter(name(EntityLockXenonBackend.class, "lock-conflicts"));
+
+  private static final Counter lostLeases =
+      DefaultMetricRegistry.REGISTRY.counter(name(EntityLockXenonBackend.class, "lost-leases"));
+
   private final ApiFeXenonRestClient xenonClient;
 
+  /**
+   * The leases held by the tasks of this node, keyed by entity id.
+   */
+  private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
   @Inject
   public EntityLockXenonBackend(ApiFeXenonRestClient xenonClient) {
     this.xenonClient = xenonClient;
     this.xenonClient.start();
+
+    renewalExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        renewLeases();
+      } catch (Throwable t) {
+        logger.warn("Failed to renew entity leases", t);
+      }
+    }, LEASE_RENEWAL_INTERVAL_MILLIS, LEASE_RENEWAL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
   }
 
   @Override
   public void setTaskLock(BaseEntity entity, TaskEntity task) throws ConcurrentTaskException {
     checkNotNull(entity, "Entity cannot be null.");
-    checkNotNull(task, "TaskEntity cannot be null.");
+    setTaskLocks(ImmutableList.of(entity), task);
+  }
 
-    EntityLockService.State state = new EntityLockService.State();
-    state.ownerTaskId = task.getId();
-    state.entityId = entity.getId();
-    state.entityKind = entity.getKind();
-    state.documentSelfLink = entity.getId();
-    state.lockOperation = EntityLockService.State.LockOperation.ACQUIRE;
+  /**
+   * Locks all the entities for the task, or none of them. The leases are acquired concurrently and the ones which
+   * have been acquired are released again when any of the entities is locked by another task.
+   */
+  @Override
+  public void setTaskLocks(List<BaseEntity> entities, TaskEntity task) throws ConcurrentTaskException {
+    checkNotNull(entities, "Entities cannot be null.");
+    checkNotNull(task, "TaskEntity cannot be null.");
+    if (entities.isEmpty()) {
+      return;
+    }
 
-    try {
+    Timer.Context waitTimer = lockWaitTime.time();
+    List<CompletableFuture<Operation>> acquires = new ArrayList<>(entities.size());
+    for (BaseEntity entity : entities) {
+      checkNotNull(entity, "Entity cannot be null.");
       task.getLockedEntityIds().add(entity);
-      // POST to the entity lock service will be converted to a PUT if the lock already exists
-      xenonClient.post(EntityLockServiceFactory.SELF_LINK, state);
-      logger.info("Entity Lock with entityId : {} and taskId: {} has been set", state.entityId, state.ownerTaskId);
-    } catch (XenonRuntimeException e) {
-      if (e.getCompletedOperation().getStatusCode() == HttpURLConnection.HTTP_BAD_REQUEST) {
-        String errorMessage = e.getCompletedOperation().getBody(ServiceErrorResponse.class).message;
-        if (StringUtils.isNotBlank(errorMessage) && errorMessage.contains(EntityLockService.LOCK_TAKEN_MESSAGE)) {
-          task.getLockedEntityIds().remove(entity);
-          throw new ConcurrentTaskException();
+      acquires.add(xenonClient.postAsync(EntityLeaseServiceFactory.SELF_LINK,
+          buildRequest(entity, task.getId(), null, EntityLeaseService.State.LeaseOperation.ACQUIRE)));
+    }
+
+    List<BaseEntity> acquired = new ArrayList<>();
+    List<BaseEntity> taken = new ArrayList<>();
+    RuntimeException failure = null;
+    for (int i = 0; i < entities.size(); i++) {
+      BaseEntity entity = entities.get(i);
+      try {
+        EntityLeaseService.State lease = join(acquires.get(i)).getBody(EntityLeaseService.State.class);
+        Lease held = getLease(entity.getId());
+        if (held == null || held.lost || !held.token.equals(lease.leaseToken)) {
+          // a lease which the task already held is left in place when this call fails
+          leases.put(entity.getId(), new Lease(task.getId(), entity.getKind(), lease.leaseToken));
+          acquired.add(entity);
+        }
+        logger.info("Entity Lock with entityId : {} and taskId: {} has been set", entity.getId(), task.getId());
+      } catch (RuntimeException e) {
+        // timeouts and interrupts surface as plain runtime exceptions, which roll back the call like any other failure
+        if (e instanceof XenonRuntimeException && isLeaseTaken((XenonRuntimeException) e)) {
+          taken.add(entity);
+        } else if (failure == null) {
+          failure = e;
         }
       }
-      throw e;
     }
+    waitTimer.stop();
+
+    if (taken.isEmpty() && failure == null) {
+      return;
+    }
+
+    // give back the leases acquired by this call, so that the task holds none of the entities
+    for (BaseEntity entity : acquired) {
+      task.getLockedEntityIds().remove(entity);
+    }
+    releaseLeases(acquired, task.getId());
+
+    if (!taken.isEmpty()) {
+      lockConflicts.inc();
+      task.getLockedEntityIds().removeAll(taken);
+      throw new ConcurrentTaskException();
+    }
+    throw failure;
   }
 
   @Override
   public void clearTaskLocks(TaskEntity task) {
     checkNotNull(task, "TaskEntity cannot be null.");
-    List<BaseEntity> failedToDeleteLockedEntityIds = new ArrayList<>();
-    for (BaseEntity lockedEntity : task.getLockedEntityIds()) {
+    task.setLockedEntityIds(releaseLeases(task.getLockedEntityIds(), task.getId()));
+  }
+
+  @Override
+  public void checkTaskLocks(TaskEntity task) throws ConcurrentTaskException {
+    checkNotNull(task, "TaskEntity cannot be null.");
+    for (BaseEntity entity : task.getLockedEntityIds()) {
+      Lease lease = getLease(entity.getId());
+      if (lease != null && lease.lost && lease.ownerTaskId.equals(task.getId())) {
+        logger.error("Task {} has lost the lock of entity {}", task.getId(), entity.getId());
+        throw new ConcurrentTaskException();
+      }
+    }
+  }
+
+  @Override
+  public Boolean lockExistsForEntityId(String entityId) {
+    try {
+      Operation operation = xenonClient.get(EntityLeaseServiceFactory.SELF_LINK + "/" + entityId);
+      EntityLeaseService.State lease = operation.getBody(EntityLeaseService.State.class);
+      return StringUtils.isNotBlank(lease.ownerTaskId)
+          && lease.leaseExpirationTimeMicros != null
+          && lease.leaseExpirationTimeMicros > Utils.getNowMicrosUtc();
+    } catch (DocumentNotFoundException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Releases the leases of the entities concurrently. The leases are forgotten by this node even when their release
+   * fails, so that they are no longer renewed and time out instead.
+   *
+   * @return the entities whose lease could not be released
+   */
+  private List<BaseEntity> releaseLeases(List<BaseEntity> entities, String ownerTaskId) {
+    List<CompletableFuture<Operation>> releases = new ArrayList<>(entities.size());
+    for (BaseEntity entity : entities) {
+      Lease lease = getLease(entity.getId());
+      Long leaseToken = lease != null && lease.ownerTaskId.equals(ownerTaskId) ? lease.token : null;
+      releases.add(xenonClient.putAsync(EntityLeaseServiceFactory.SELF_LINK + "/" + entity.getId(),
+          buildRequest(entity, ownerTaskId, leaseToken, EntityLeaseService.State.LeaseOperation.RELEASE)));
+    }
+
+    List<BaseEntity> failedToReleaseEntities = new ArrayList<>();
+    for (int i = 0; i < entities.size(); i++) {
+      BaseEntity entity = entities.get(i);
       try {
-        String lockedEntityId = lockedEntity.getId();
-        EntityLockService.State state = new EntityLockService.State();
-        state.ownerTaskId = task.getId();
-        state.entityId = lockedEntityId;
-        state.entityKind = lockedEntity.getKind();
-        state.documentSelfLink = lockedEntityId;
-        state.lockOperation = EntityLockService.State.LockOperation.RELEASE;
-        xenonClient.put(EntityLockServiceFactory.SELF_LINK + "/" + lockedEntityId, state);
-        logger.info("Entity Lock with taskId : {} and entityId : {} has been cleared", task.getId(), lockedEntityId);
+        join(releases.get(i));
+        logger.info("Entity Lock with taskId : {} and entityId : {} has been cleared", ownerTaskId, entity.getId());
       } catch (Throwable swallowedException) {
-        failedToDeleteLockedEntityIds.add(lockedEntity);
-        logger.error("Failed to delete entity lock with entityId: " + lockedEntity.getId(), swallowedException);
+        failedToReleaseEntities.add(entity);
+        logger.error("Failed to delete entity lock with entityId: " + entity.getId(), swallowedException);
+      }
+
+      Lease lease = getLease(entity.getId());
+      if (lease != null && lease.ownerTaskId.equals(ownerTaskId) && leases.remove(entity.getId(), lease)) {
+        lockHoldTime.update(System.nanoTime() - lease.acquiredNanos, TimeUnit.NANOSECONDS);
       }
     }
-    task.setLockedEntityIds(failedToDeleteLockedEntityIds);
+
+    return failedToReleaseEntities;
   }
 
-  private EntityLockService.State getByEntityId(String entityId) throws DocumentNotFoundException {
-    Operation operation = xenonClient.get(EntityLockServiceFactory.SELF_LINK + "/" + entityId);
-    return operation.getBody(EntityLockService.State.class);
+  /**
+   * Renews the leases held by the tasks of this node. A lease which has been granted to another task in the meantime
+   * is marked as lost, and is no longer renewed. Its token is kept, so that its release has no effect on the new
+   * holder, and its task fails before its next step.
+   */
+  @VisibleForTesting
+  void renewLeases() {
+    for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+      Lease lease = entry.getValue();
+      if (lease.lost) {
+        continue;
+      }
+
+      EntityLeaseService.State request = new EntityLeaseService.State();
+      request.entityId = entry.getKey();
+      request.entityKind = lease.entityKind;
+      request.ownerTaskId = lease.ownerTaskId;
+      request.leaseToken = lease.token;
+      request.leaseDurationMillis = LEASE_DURATION_MILLIS;
+      request.leaseOperation = EntityLeaseService.State.LeaseOperation.RENEW;
+
+      xenonClient.putAsync(EntityLeaseServiceFactory.SELF_LINK + "/" + entry.getKey(), request)
+          .whenComplete((operation, throwable) -> {
+            if (throwable == null) {
+              return;
+            }
+
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof BadRequestException || cause instanceof DocumentNotFoundException) {
+              lostLeases.inc();
+              lease.lost = true;
+              logger.warn("Entity Lock with entityId : {} and taskId: {} has been lost",
+                  entry.getKey(), lease.ownerTaskId);
+            } else {
+              logger.warn("Failed to renew entity lock with entityId: {}", entry.getKey(), cause);
+            }
+          });
+    }
   }
 
-  @Override
-  public Boolean lockExistsForEntityId(String entityId) {
+  private Lease getLease(String entityId) {
+    return entityId != null ? leases.get(entityId) : null;
+  }
+
+  private static EntityLeaseService.State buildRequest(BaseEntity entity, String ownerTaskId, Long leaseToken,
+                                                       EntityLeaseService.State.LeaseOperation leaseOperation) {
+    EntityLeaseService.State state = new EntityLeaseService.State();
+    state.entityId = entity.getId();
+    state.entityKind = entity.getKind();
+    state.ownerTaskId = ownerTaskId;
+    state.leaseToken = leaseToken;
+    state.leaseOperation = leaseOperation;
+    state.documentSelfLink = entity.getId();
+    if (leaseOperation == EntityLeaseService.State.LeaseOperation.ACQUIRE) {
+      state.leaseDurationMillis = LEASE_DURATION_MILLIS;
+    }
+    return state;
+  }
+
+  /**
+   * Waits for an asynchronous request, surfacing its failure the way the synchronous requests of the client do.
+   */
+  private static Operation join(CompletableFuture<Operation> future) {
     try {
-      EntityLockService.State lockState = getByEntityId(entityId);
-      return StringUtils.isNotBlank(lockState.ownerTaskId);
-    } catch (DocumentNotFoundException ex) {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof XenonException) {
+        throw new XenonRuntimeException((XenonException) e.getCause());
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private static boolean isLeaseTaken(XenonRuntimeException e) {
+    if (e.getCompletedOperation() == null
+        || e.getCompletedOperation().getStatusCode() != Operation.STATUS_CODE_BAD_REQUEST) {
       return false;
     }
+
+    String errorMessage = e.getCompletedOperation().getBody(ServiceErrorResponse.class).message;
+    return StringUtils.isNotBlank(errorMessage) && errorMessage.contains(EntityLeaseService.LEASE_TAKEN_MESSAGE);
+  }
+
+  /**
+   * A lease held by a task of this node.
+   */
+  private static class Lease {
+    private final String ownerTaskId;
+    private final String entityKind;
+    private final Long token;
+    private final long acquiredNanos = System.nanoTime();
+    private volatile boolean lost;
+
+    private Lease(String ownerTaskId, String entityKind, Long token) {
+      this.ownerTaskId = ownerTaskId;
+      this.entityKind = entityKind;
+      this.token = token;
+    }
   }
 }
@@ -23,6 +23,8 @@ import com.vmware.photon.controller.api.model.ResourceList;
 
 import com.google.common.base.Optional;
 
+import java.util.List;
+
 /**
  * Backend interface for flavor related operations.
  */
@@ -44,5 +46,7 @@ public interface FlavorBackend {
 
   FlavorEntity getEntityById(String id) throws ExternalException;
 
+  List<FlavorEntity> getEntitiesByIds(List<String> ids);
+
   void tombstone(FlavorEntity flavor) throws ExternalException;
 }
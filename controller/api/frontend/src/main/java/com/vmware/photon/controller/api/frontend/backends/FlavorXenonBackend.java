@@ -14,6 +14,7 @@
 package com.vmware.photon.controller.api.frontend.backends;
 
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
 import com.vmware.photon.controller.api.frontend.entities.EntityStateValidator;
 import com.vmware.photon.controller.api.frontend.entities.FlavorEntity;
 import com.vmware.photon.controller.api.frontend.entities.QuotaLineItemEntity;
@@ -39,9 +40,11 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.common.Utils;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
@@ -264,6 +267,36 @@ public class FlavorXenonBackend implements FlavorBackend {
     return convertToEntity(findById(id));
   }
 
+  /**
+   * Gets several flavors with one query per {@link PaginationConfig#DEFAULT_MAX_PAGE_SIZE} flavors. Flavors which do
+   * not exist are left out of the result.
+   */
+  @Override
+  public List<FlavorEntity> getEntitiesByIds(List<String> ids) {
+    List<FlavorEntity> flavorEntities = new ArrayList<>();
+    if (ids.isEmpty()) {
+      return flavorEntities;
+    }
+
+    List<String> flavorLinks = new ArrayList<>();
+    for (String id : ids) {
+      flavorLinks.add(FlavorServiceFactory.SELF_LINK + "/" + id);
+    }
+
+    for (List<String> flavorLinkBatch : Lists.partition(flavorLinks, PaginationConfig.DEFAULT_MAX_PAGE_SIZE)) {
+      final ImmutableMap.Builder<String, List<String>> inClauseTermsBuilder = new ImmutableMap.Builder<>();
+      inClauseTermsBuilder.put(FlavorService.State.FIELD_NAME_SELF_LINK, flavorLinkBatch);
+
+      ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(FlavorService.State.class, null,
+          inClauseTermsBuilder.build(), Optional.<Integer>absent(), true, true);
+
+      for (Object document : queryResult.documents.values()) {
+        flavorEntities.add(convertToEntity(Utils.fromJson(document, FlavorService.State.class)));
+      }
+    }
+    return flavorEntities;
+  }
+
   @Override
   public void tombstone(FlavorEntity flavor) throws ExternalException {
     boolean flavorInUse;
@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.api.frontend.backends;
 
+import com.vmware.photon.controller.api.frontend.auth.SecurityGroupCache;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
 import com.vmware.photon.controller.api.frontend.entities.ProjectEntity;
@@ -77,6 +78,7 @@ public class ProjectXenonBackend implements ProjectBackend {
   private final VmBackend vmBackend;
   private final DiskBackend diskBackend;
   private final TombstoneBackend tombstoneBackend;
+  private final SecurityGroupCache securityGroupCache;
   private final boolean useVirtualNetwork;
 
   @Inject
@@ -88,6 +90,7 @@ public class ProjectXenonBackend implements ProjectBackend {
       VmBackend vmBackend,
       DiskBackend diskBackend,
       TombstoneBackend tombstoneBackend,
+      SecurityGroupCache securityGroupCache,
       @Named("useVirtualNetwork") Boolean useVirtualNetwork) {
     this.xenonClient = xenonClient;
     this.taskBackend = taskBackend;
@@ -96,6 +99,7 @@ public class ProjectXenonBackend implements ProjectBackend {
     this.vmBackend = vmBackend;
     this.diskBackend = diskBackend;
     this.tombstoneBackend = tombstoneBackend;
+    this.securityGroupCache = securityGroupCache;
     this.useVirtualNetwork = useVirtualNetwork;
     this.xenonClient.start();
   }
@@ -218,6 +222,8 @@ public class ProjectXenonBackend implements ProjectBackend {
       xenonClient.patch(ProjectServiceFactory.SELF_LINK + "/" + id, patch);
     } catch (DocumentNotFoundException e) {
       throw new ProjectNotFoundException(id);
+    } finally {
+      securityGroupCache.invalidateProject(id);
     }
   }
 
@@ -361,6 +367,7 @@ public class ProjectXenonBackend implements ProjectBackend {
 
     xenonClient.delete(ProjectServiceFactory.SELF_LINK + "/" + projectEntity.getId(),
         new ProjectService.State());
+    securityGroupCache.invalidateProject(projectEntity.getId());
     logger.info("Project {} has been deleted", projectEntity.getId());
 
     resourceTicketBackend.delete(projectTicket.getId());
@@ -0,0 +1,516 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.config.QuotaConfig;
+import com.vmware.photon.controller.api.frontend.exceptions.external.QuotaException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ResourceTicketNotFoundException;
+import com.vmware.photon.controller.api.model.QuotaLineItem;
+import com.vmware.photon.controller.api.model.QuotaUnit;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ResourceTicketService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ResourceTicketServiceFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
+import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Utils;
+
+import com.codahale.metrics.Counter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the escrows of this API node. An escrow is a resource ticket document which holds a slice of the limits of a
+ * project ticket. The quota of the project is consumed from and returned to the escrow of this node, so requests on
+ * different nodes do not contend on the project ticket, which is only patched to refill or release the escrow.
+ * <p>
+ * The ticket counts the whole escrow as used and the escrow counts what has been consumed from it, so that failures
+ * never allow the limits of the ticket to be exceeded:
+ * <ul>
+ * <li>An escrow is refilled by consuming from the ticket before growing the escrow. A refill takes at most half of
+ * the room left in the ticket, so other nodes can still refill their escrows from a nearly full ticket.</li>
+ * <li>An escrow is released by closing it, which rejects any further consumption, marking it as returned, which
+ * only one caller succeeds at, returning its unused part to the ticket and then deleting it.</li>
+ * <li>When a refill finds the ticket full, the escrows of other nodes which have not been updated for a release
+ * period are reclaimed, as are closed escrows whose release did not finish.</li>
+ * </ul>
+ * A failure between the writes of a refill, or between marking an escrow as returned and returning its unused part,
+ * leaves the slice counted as used by the ticket.
+ */
+@Singleton
+public class ResourceTicketEscrow {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResourceTicketEscrow.class);
+
+  /**
+   * The number of times a request tries to refill the escrow before it gives up, as concurrent requests on the
+   * same node may use up a refill before the request consumes from it.
+   */
+  private static final int MAX_REFILL_ATTEMPTS = 3;
+
+  /**
+   * A refill takes at most the room left in the ticket divided by this share.
+   */
+  private static final int SLICE_ROOM_SHARE = 2;
+
+  private static final ScheduledExecutorService releaseExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("QuotaEscrowRelease-%d").setDaemon(true).build());
+
+  private static final Counter refills =
+      DefaultMetricRegistry.REGISTRY.counter(name(ResourceTicketEscrow.class, "refills"));
+
+  private static final Counter releases =
+      DefaultMetricRegistry.REGISTRY.counter(name(ResourceTicketEscrow.class, "releases"));
+
+  private static final Counter reclaims =
+      DefaultMetricRegistry.REGISTRY.counter(name(ResourceTicketEscrow.class, "reclaims"));
+
+  private final ApiFeXenonRestClient xenonClient;
+
+  private final QuotaConfig config;
+
+  private final String holder = UUID.randomUUID().toString();
+
+  private final ConcurrentMap<String, Escrow> escrows = new ConcurrentHashMap<>();
+
+  @Inject
+  public ResourceTicketEscrow(ApiFeXenonRestClient xenonClient, QuotaConfig config) {
+    this.xenonClient = xenonClient;
+    this.config = config;
+
+    if (config.isEscrowEnabled()) {
+      xenonClient.start();
+      releaseExecutor.scheduleWithFixedDelay(() -> {
+        try {
+          releaseIdleEscrows();
+        } catch (Throwable t) {
+          logger.warn("Failed to release idle quota escrows", t);
+        }
+      }, config.getEscrowIdleReleaseSeconds(), config.getEscrowIdleReleaseSeconds(), TimeUnit.SECONDS);
+    }
+  }
+
+  public boolean isEnabled() {
+    return config.isEscrowEnabled();
+  }
+
+  /**
+   * Consumes quota of a ticket from the escrow of this node, refilling the escrow from the ticket when needed.
+   *
+   * @param resourceTicketId - id of the resource ticket
+   * @param cost             - the cost to consume, keyed by the quota keys
+   * @throws QuotaException when neither the escrow nor the ticket can accommodate the cost
+   */
+  public void consumeQuota(String resourceTicketId, Map<String, QuotaLineItem> cost)
+      throws QuotaException, ResourceTicketNotFoundException {
+    try {
+      consumeQuota(resourceTicketId, getEscrow(resourceTicketId), cost);
+    } catch (EscrowClosedException e) {
+      // The escrow has been reclaimed by another node, e.g. after this node was paused for a long time.
+      escrows.remove(resourceTicketId, e.escrow);
+      consumeQuota(resourceTicketId, getEscrow(resourceTicketId), cost);
+    }
+  }
+
+  /**
+   * Returns quota of a ticket to the escrow of this node, or to the ticket when this node holds no escrow for it.
+   *
+   * @param resourceTicketId - id of the resource ticket
+   * @param cost             - the cost to return, keyed by the quota keys
+   */
+  public void returnQuota(String resourceTicketId, Map<String, QuotaLineItem> cost)
+      throws ResourceTicketNotFoundException {
+    Escrow escrow = escrows.get(resourceTicketId);
+    if (escrow != null && escrow.covers(cost.keySet())) {
+      try {
+        patchEscrow(escrow, ResourceTicketService.Patch.PatchType.USAGE_RETURN, cost);
+        return;
+      } catch (EscrowClosedException e) {
+        escrows.remove(resourceTicketId, escrow);
+      } catch (QuotaException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    try {
+      patchTicket(resourceTicketId, ResourceTicketService.Patch.PatchType.USAGE_RETURN, cost);
+    } catch (QuotaException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Releases all the escrows of this node.
+   */
+  @VisibleForTesting
+  void releaseAll() {
+    releaseEscrows(Long.MAX_VALUE);
+  }
+
+  private void consumeQuota(String resourceTicketId, Escrow escrow, Map<String, QuotaLineItem> cost)
+      throws QuotaException, ResourceTicketNotFoundException {
+    for (int attempt = 0; ; attempt++) {
+      if (escrow.covers(cost.keySet())) {
+        try {
+          patchEscrow(escrow, ResourceTicketService.Patch.PatchType.USAGE_CONSUME, cost);
+          return;
+        } catch (QuotaException e) {
+          if (attempt == MAX_REFILL_ATTEMPTS) {
+            throw e;
+          }
+        }
+      }
+
+      synchronized (escrow) {
+        refill(resourceTicketId, escrow, cost);
+      }
+    }
+  }
+
+  private Escrow getEscrow(String resourceTicketId) {
+    return escrows.computeIfAbsent(resourceTicketId, id -> new Escrow());
+  }
+
+  /**
+   * Adds a slice of the ticket to the escrow, creating the escrow document when the escrow has none yet. The slice
+   * is the cost times the slice size, or a smaller multiple of the cost when the ticket has less room left, or just
+   * the cost when the ticket has been filled up in the meantime.
+   */
+  private void refill(String resourceTicketId, Escrow escrow, Map<String, QuotaLineItem> cost)
+      throws QuotaException, ResourceTicketNotFoundException {
+    Map<String, QuotaLineItem> slice = getSlice(resourceTicketId, cost);
+    try {
+      patchTicket(resourceTicketId, ResourceTicketService.Patch.PatchType.USAGE_CONSUME, slice);
+    } catch (QuotaException e) {
+      slice = cost;
+      try {
+        patchTicket(resourceTicketId, ResourceTicketService.Patch.PatchType.USAGE_CONSUME, slice);
+      } catch (QuotaException retryException) {
+        if (reclaimIdleEscrows(resourceTicketId) == 0) {
+          throw retryException;
+        }
+        patchTicket(resourceTicketId, ResourceTicketService.Patch.PatchType.USAGE_CONSUME, slice);
+      }
+    }
+
+    try {
+      if (escrow.link == null) {
+        ResourceTicketService.State state = new ResourceTicketService.State();
+        state.parentId = resourceTicketId;
+        state.escrowHolder = holder;
+        for (QuotaLineItem qli : slice.values()) {
+          state.limitMap.put(qli.getKey(), qli);
+          state.usageMap.put(qli.getKey(), new QuotaLineItem(qli.getKey(), 0.0, qli.getUnit()));
+        }
+        Operation result = xenonClient.post(ResourceTicketServiceFactory.SELF_LINK, state);
+        escrow.link = result.getBody(ResourceTicketService.State.class).documentSelfLink;
+      } else {
+        patchEscrow(escrow, ResourceTicketService.Patch.PatchType.ESCROW_GROW, slice);
+      }
+      escrow.keys.addAll(slice.keySet());
+      refills.inc();
+    } catch (Throwable t) {
+      returnToTicket(resourceTicketId, slice);
+      throw t;
+    }
+  }
+
+  /**
+   * Returns the cost times the largest factor up to the slice size which takes at most a share of the room left in
+   * the ticket for each quota key.
+   */
+  private Map<String, QuotaLineItem> getSlice(String resourceTicketId, Map<String, QuotaLineItem> cost)
+      throws ResourceTicketNotFoundException {
+    ResourceTicketService.State ticket;
+    try {
+      ticket = xenonClient.get(ResourceTicketServiceFactory.SELF_LINK + "/" + resourceTicketId)
+          .getBody(ResourceTicketService.State.class);
+    } catch (DocumentNotFoundException e) {
+      throw new ResourceTicketNotFoundException(resourceTicketId);
+    }
+
+    int factor = config.getEscrowSliceSize();
+    for (QuotaLineItem qli : cost.values()) {
+      QuotaLineItem limit = ticket.limitMap.get(qli.getKey());
+      if (limit == null || qli.getValue() <= 0.0) {
+        continue;
+      }
+      QuotaLineItem usage = ticket.usageMap.get(qli.getKey());
+      double room = inUnit(limit, qli.getUnit()) - (usage != null ? inUnit(usage, qli.getUnit()) : 0.0);
+      factor = Math.min(factor, (int) Math.floor(room / SLICE_ROOM_SHARE / qli.getValue()));
+    }
+
+    return multiply(cost, Math.max(1, factor));
+  }
+
+  private void releaseIdleEscrows() {
+    releaseEscrows(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(config.getEscrowIdleReleaseSeconds()));
+  }
+
+  private void releaseEscrows(long idleSinceMillis) {
+    for (Map.Entry<String, Escrow> entry : escrows.entrySet()) {
+      Escrow escrow = entry.getValue();
+      if (escrow.lastUsedMillis < idleSinceMillis) {
+        // An escrow document is only created while holding the lock, so an escrow which has none is left in place
+        // rather than risking a document nobody releases.
+        synchronized (escrow) {
+          if (escrow.link != null && escrows.remove(entry.getKey(), escrow)) {
+            release(entry.getKey(), escrow.link);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Reclaims the escrows of a ticket which have not been updated for a release period: the escrows of other nodes,
+   * which are idle or held by nodes which are gone, and closed escrows of any node whose release did not finish.
+   * A node whose escrow has been reclaimed creates a new one on its next consumption.
+   *
+   * @return the number of escrows which have been reclaimed
+   */
+  private int reclaimIdleEscrows(String resourceTicketId) {
+    long idleSinceMicros = Utils.getNowMicrosUtc() - TimeUnit.SECONDS.toMicros(config.getEscrowIdleReleaseSeconds());
+
+    List<ResourceTicketService.State> states = xenonClient.queryDocuments(ResourceTicketService.State.class,
+        ImmutableMap.of("parentId", resourceTicketId));
+
+    int reclaimed = 0;
+    for (ResourceTicketService.State state : states) {
+      if (state.escrowHolder == null || state.documentUpdateTimeMicros >= idleSinceMicros) {
+        continue;
+      }
+
+      boolean released;
+      if (Boolean.TRUE.equals(state.escrowClosed)) {
+        logger.info("Finishing release of escrow {} of holder {}", state.documentSelfLink, state.escrowHolder);
+        released = finishRelease(resourceTicketId, state.documentSelfLink);
+      } else if (!holder.equals(state.escrowHolder)) {
+        logger.info("Reclaiming escrow {} of holder {}", state.documentSelfLink, state.escrowHolder);
+        released = release(resourceTicketId, state.documentSelfLink);
+      } else {
+        continue;
+      }
+
+      if (released) {
+        reclaims.inc();
+        reclaimed++;
+      }
+    }
+
+    return reclaimed;
+  }
+
+  /**
+   * Closes an escrow and releases it. Only the caller which closes the escrow goes on, an escrow which has been
+   * closed by another caller is left to it, or to a reclaim if the other caller fails.
+   *
+   * @return whether the escrow has been released by this call
+   */
+  private boolean release(String resourceTicketId, String escrowLink) {
+    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+    patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_CLOSE;
+    try {
+      xenonClient.patch(escrowLink, patch);
+    } catch (DocumentNotFoundException e) {
+      // The escrow has been released by another node.
+      return false;
+    } catch (XenonRuntimeException e) {
+      if (e.getCause() instanceof BadRequestException) {
+        // The escrow has been closed by another node.
+        return false;
+      }
+      throw e;
+    }
+
+    return finishRelease(resourceTicketId, escrowLink);
+  }
+
+  /**
+   * Gives the unused part of a closed escrow back to its ticket and then deletes the escrow. Only the caller which
+   * marks the escrow as returned gives the unused part back, so it is never given back twice. An escrow which has
+   * been marked as returned before is only deleted.
+   *
+   * @return whether the escrow has been released by this call
+   */
+  private boolean finishRelease(String resourceTicketId, String escrowLink) {
+    try {
+      ResourceTicketService.State state = xenonClient.get(escrowLink).getBody(ResourceTicketService.State.class);
+      if (!Boolean.TRUE.equals(state.escrowReturned)) {
+        ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+        patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_RETURN;
+        try {
+          xenonClient.patch(escrowLink, patch);
+        } catch (XenonRuntimeException e) {
+          if (e.getCause() instanceof BadRequestException) {
+            // The unused part has been given back by another node.
+            return false;
+          }
+          throw e;
+        }
+
+        // A closed escrow is not consumed from any more, so the state read before marking it is final.
+        Map<String, QuotaLineItem> unused = new HashMap<>();
+        for (QuotaLineItem limit : state.limitMap.values()) {
+          QuotaLineItem usage = state.usageMap.get(limit.getKey());
+          double usageValue = usage != null ? usage.getValue() : 0.0;
+          unused.put(limit.getKey(),
+              new QuotaLineItem(limit.getKey(), limit.getValue() - usageValue, limit.getUnit()));
+        }
+        returnToTicket(resourceTicketId, unused);
+      }
+
+      xenonClient.delete(escrowLink, new ResourceTicketService.State());
+    } catch (DocumentNotFoundException e) {
+      // The escrow has been released by another node.
+      return false;
+    }
+
+    releases.inc();
+    return true;
+  }
+
+  private void returnToTicket(String resourceTicketId, Map<String, QuotaLineItem> cost) {
+    try {
+      patchTicket(resourceTicketId, ResourceTicketService.Patch.PatchType.USAGE_RETURN, cost);
+    } catch (ResourceTicketNotFoundException e) {
+      logger.info("Resource ticket {} has been deleted, its escrowed quota is dropped", resourceTicketId);
+    } catch (QuotaException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void patchTicket(String resourceTicketId, ResourceTicketService.Patch.PatchType patchType,
+                           Map<String, QuotaLineItem> cost)
+      throws QuotaException, ResourceTicketNotFoundException {
+    try {
+      patch(ResourceTicketServiceFactory.SELF_LINK + "/" + resourceTicketId, patchType, cost);
+    } catch (DocumentNotFoundException e) {
+      throw new ResourceTicketNotFoundException(resourceTicketId);
+    }
+  }
+
+  private void patchEscrow(Escrow escrow, ResourceTicketService.Patch.PatchType patchType,
+                           Map<String, QuotaLineItem> cost) throws QuotaException {
+    escrow.lastUsedMillis = System.currentTimeMillis();
+    try {
+      patch(escrow.link, patchType, cost);
+    } catch (DocumentNotFoundException e) {
+      throw new EscrowClosedException(escrow);
+    } catch (XenonRuntimeException e) {
+      if (e.getCause() instanceof BadRequestException) {
+        throw new EscrowClosedException(escrow);
+      }
+      throw e;
+    }
+  }
+
+  private void patch(String link, ResourceTicketService.Patch.PatchType patchType, Map<String, QuotaLineItem> cost)
+      throws QuotaException, DocumentNotFoundException {
+    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+    patch.patchtype = patchType;
+    patch.cost = cost;
+
+    try {
+      xenonClient.patch(link, patch);
+    } catch (XenonRuntimeException e) {
+      if (e.getCause() instanceof BadRequestException) {
+        ResourceTicketService.QuotaErrorResponse quotaErrorResponse =
+            e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class);
+        if (ResourceTicketService.QuotaErrorResponse.KIND.equals(quotaErrorResponse.documentKind)) {
+          throw ResourceTicketXenonBackend.toQuotaException(quotaErrorResponse);
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the value of a quota line item in the given unit. Counts are not converted.
+   */
+  private static double inUnit(QuotaLineItem qli, QuotaUnit unit) {
+    return qli.getValue() * bytesPerUnit(qli.getUnit()) / bytesPerUnit(unit);
+  }
+
+  private static double bytesPerUnit(QuotaUnit unit) {
+    switch (unit) {
+      case GB:
+        return 1024.0 * 1024.0 * 1024.0;
+      case MB:
+        return 1024.0 * 1024.0;
+      case KB:
+        return 1024.0;
+      default:
+        return 1.0;
+    }
+  }
+
+  private static Map<String, QuotaLineItem> multiply(Map<String, QuotaLineItem> cost, int factor) {
+    Map<String, QuotaLineItem> result = new HashMap<>();
+    for (QuotaLineItem qli : cost.values()) {
+      result.put(qli.getKey(), new QuotaLineItem(qli.getKey(), qli.getValue() * factor, qli.getUnit()));
+    }
+    return result;
+  }
+
+  /**
+   * The escrow of this node for one ticket.
+   */
+  private static class Escrow {
+    private volatile String link;
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+
+    /**
+     * Only the quota keys which the escrow holds limits for are accounted in the ticket when the escrow is
+     * released, so costs with other keys need a refill first.
+     */
+    private boolean covers(Set<String> costKeys) {
+      return link != null && keys.containsAll(costKeys);
+    }
+  }
+
+  /**
+   * Gets thrown when the escrow of this node has been closed or deleted.
+   */
+  private static class EscrowClosedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Escrow escrow;
+
+    private EscrowClosedException(Escrow escrow) {
+      super("Escrow " + escrow.link + " is closed");
+      this.escrow = escrow;
+    }
+  }
+}
@@ -53,6 +53,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -65,15 +66,18 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
   private final ApiFeXenonRestClient xenonClient;
   private final TenantBackend tenantBackend;
   private final TaskBackend taskBackend;
+  private final ResourceTicketEscrow escrow;
 
   @Inject
   public ResourceTicketXenonBackend(
       ApiFeXenonRestClient xenonClient,
                                   TenantBackend tenantBackend,
-                                  TaskBackend taskBackend) {
+                                  TaskBackend taskBackend,
+                                  ResourceTicketEscrow escrow) {
     this.xenonClient = xenonClient;
     this.tenantBackend = tenantBackend;
     this.taskBackend = taskBackend;
+    this.escrow = escrow;
 
     xenonClient.start();
   }
@@ -87,6 +91,8 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
    * can be set for a narrow set of metrics. Only these metrics are used
    * for limit enforcement. All metrics are tracked in usage.
    * <p/>
+   * When quota escrows are enabled the quota is consumed from the escrow of this node.
+   * <p/>
    *
    * @param resourceTicketId - id of the resource ticket
    * @param cost             - the cost object representing how much will be consumed
@@ -95,33 +101,12 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
   @Override
   public void consumeQuota(String resourceTicketId, QuotaCost cost)
       throws QuotaException, ResourceTicketNotFoundException {
-    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
-    patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
-    patch.cost = new HashMap<>();
-
-    for (String key : cost.getCostKeys()) {
-      QuotaLineItem costItem = new QuotaLineItem();
-      costItem.setKey(key);
-      costItem.setValue(cost.getCost(key).getValue());
-      costItem.setUnit(cost.getCost(key).getUnit());
-      patch.cost.put(costItem.getKey(), costItem);
+    if (escrow.isEnabled()) {
+      escrow.consumeQuota(resourceTicketId, toCostMap(cost));
+      return;
     }
 
-    try {
-      patchResourceTicketService(resourceTicketId, patch);
-    } catch (XenonRuntimeException e) {
-      if (e.getCause() instanceof BadRequestException) {
-        ResourceTicketService.QuotaErrorResponse quotaErrorResponse =
-            e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class);
-        throw new QuotaException(
-            new QuotaLineItemEntity(quotaErrorResponse.limit.getKey(),
-                quotaErrorResponse.limit.getValue(), quotaErrorResponse.limit.getUnit()),
-            new QuotaLineItemEntity(quotaErrorResponse.usage.getKey(),
-                quotaErrorResponse.usage.getValue(), quotaErrorResponse.usage.getUnit()),
-            new QuotaLineItemEntity(quotaErrorResponse.newUsage.getKey(),
-                quotaErrorResponse.newUsage.getValue(), quotaErrorResponse.newUsage.getUnit()));
-      }
-    }
+    consumeTicketQuota(resourceTicketId, cost);
   }
 
   /**
@@ -133,19 +118,12 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
    */
   @Override
   public void returnQuota(String resourceTicketId, QuotaCost cost) throws ResourceTicketNotFoundException {
-    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
-    patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_RETURN;
-    patch.cost = new HashMap<>();
-
-    for (String key : cost.getCostKeys()) {
-      QuotaLineItem costItem = new QuotaLineItem();
-      costItem.setKey(key);
-      costItem.setValue(cost.getCost(key).getValue());
-      costItem.setUnit(cost.getCost(key).getUnit());
-      patch.cost.put(costItem.getKey(), costItem);
+    if (escrow.isEnabled()) {
+      escrow.returnQuota(resourceTicketId, toCostMap(cost));
+      return;
     }
 
-    patchResourceTicketService(resourceTicketId, patch);
+    returnTicketQuota(resourceTicketId, cost);
   }
 
   /**
@@ -157,7 +135,7 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
   @Override
   public void returnQuota(ResourceTicketEntity childTicket)
       throws ResourceTicketNotFoundException {
-    returnQuota(childTicket.getParentId(), new QuotaCost(childTicket.getLimits()));
+    returnTicketQuota(childTicket.getParentId(), new QuotaCost(childTicket.getLimits()));
   }
 
   /**
@@ -213,7 +191,7 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
     ResourceTicketService.State createdResourceTicket = result.getBody(ResourceTicketService.State.class);
 
     try {
-      consumeQuota(resourceTicketId, new QuotaCost(limits));
+      consumeTicketQuota(resourceTicketId, new QuotaCost(limits));
     } catch (QuotaException qe) {
       logger.warn("Subdivide of resource ticket id {} failed", resourceTicketId);
       // compensate by deleting the created ticket document
@@ -393,6 +371,58 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
         state -> convertToResourceTicketEntity(state));
   }
 
+  /**
+   * Builds a QuotaException from the error response of a resource ticket which rejected a cost.
+   */
+  static QuotaException toQuotaException(ResourceTicketService.QuotaErrorResponse quotaErrorResponse) {
+    return new QuotaException(
+        new QuotaLineItemEntity(quotaErrorResponse.limit.getKey(),
+            quotaErrorResponse.limit.getValue(), quotaErrorResponse.limit.getUnit()),
+        new QuotaLineItemEntity(quotaErrorResponse.usage.getKey(),
+            quotaErrorResponse.usage.getValue(), quotaErrorResponse.usage.getUnit()),
+        new QuotaLineItemEntity(quotaErrorResponse.newUsage.getKey(),
+            quotaErrorResponse.newUsage.getValue(), quotaErrorResponse.newUsage.getUnit()));
+  }
+
+  private static Map<String, QuotaLineItem> toCostMap(QuotaCost cost) {
+    Map<String, QuotaLineItem> costMap = new HashMap<>();
+    for (String key : cost.getCostKeys()) {
+      QuotaLineItem costItem = new QuotaLineItem();
+      costItem.setKey(key);
+      costItem.setValue(cost.getCost(key).getValue());
+      costItem.setUnit(cost.getCost(key).getUnit());
+      costMap.put(costItem.getKey(), costItem);
+    }
+    return costMap;
+  }
+
+  /**
+   * Consumes quota from the ticket itself, bypassing the escrow. Project tickets are subdivided from the tenant
+   * ticket this way.
+   */
+  private void consumeTicketQuota(String resourceTicketId, QuotaCost cost)
+      throws QuotaException, ResourceTicketNotFoundException {
+    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+    patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
+    patch.cost = toCostMap(cost);
+
+    try {
+      patchResourceTicketService(resourceTicketId, patch);
+    } catch (XenonRuntimeException e) {
+      if (e.getCause() instanceof BadRequestException) {
+        throw toQuotaException(e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class));
+      }
+    }
+  }
+
+  private void returnTicketQuota(String resourceTicketId, QuotaCost cost) throws ResourceTicketNotFoundException {
+    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+    patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_RETURN;
+    patch.cost = toCostMap(cost);
+
+    patchResourceTicketService(resourceTicketId, patch);
+  }
+
   private void patchResourceTicketService(String resourceTicketId, ResourceTicketService.Patch patch)
       throws ResourceTicketNotFoundException {
     try {
@@ -27,6 +27,7 @@ import com.vmware.photon.controller.api.model.Task;
 import com.google.common.base.Optional;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Common task operations.
@@ -81,5 +82,11 @@ public interface TaskBackend {
 
   TaskEntity findById(String id) throws TaskNotFoundException;
 
+  /**
+   * Non-blocking variant of {@link #findById(String)}. The returned future fails with {@link TaskNotFoundException}
+   * if the task does not exist.
+   */
+  CompletableFuture<TaskEntity> findByIdAsync(String id);
+
   void setTaskResourceProperties(TaskEntity task, String properties) throws TaskNotFoundException;
 }
@@ -17,21 +17,37 @@ import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.OutOfThreadPoolWorkerException;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Wraps ThreadPoolExecutor to throttle submission size and log uncaught exceptions.
+ * Wraps ThreadPoolExecutor to run task commands and their steps and to log uncaught exceptions.
+ * <p/>
+ * Task commands submitted to this executor run their steps as separate units of work on it, so a worker is only
+ * held while a step is actually running and not while a step waits for a remote call. Work which does not fit into
+ * the work queue is parked in a bounded overflow queue and moved to the work queue as workers free up. New task
+ * commands are only rejected once the overflow queue is full as well.
+ * <p/>
+ * Continuations, i.e. the remaining work of task commands which have already been accepted, are never rejected
+ * while the executor is running. They are parked in an unbounded queue which is moved to the work queue ahead of the
+ * overflow queue, so an accepted task is never left half done and new tasks wait for the accepted ones.
  * <p/>
  * See {@link ThreadPoolExecutor#submit(java.util.concurrent.Callable)}.
  * See {@link ThreadPoolExecutor#afterExecute(Runnable, Throwable)}.
@@ -41,19 +57,63 @@ public class TaskCommandExecutorService extends ThreadPoolExecutor {
 
   private static final Logger logger = LoggerFactory.getLogger(TaskCommandExecutorService.class);
 
+  private final BlockingDeque<Runnable> overflowQueue;
+
+  private final BlockingDeque<Runnable> continuationQueue = new LinkedBlockingDeque<>();
+
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("BackendTimer-%d").setDaemon(true).build());
+
   public TaskCommandExecutorService(int corePoolSize,
                                     int maximumPoolSize,
                                     long keepAliveTime,
                                     TimeUnit unit,
                                     BlockingQueue<Runnable> workQueue,
                                     ThreadFactory threadFactory) {
+    this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, workQueue.remainingCapacity());
+  }
+
+  public TaskCommandExecutorService(int corePoolSize,
+                                    int maximumPoolSize,
+                                    long keepAliveTime,
+                                    TimeUnit unit,
+                                    BlockingQueue<Runnable> workQueue,
+                                    ThreadFactory threadFactory,
+                                    int overflowQueueCapacity) {
     super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
-    this.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    this.overflowQueue = new LinkedBlockingDeque<>(overflowQueueCapacity);
+    this.setRejectedExecutionHandler((runnable, executor) -> {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("Executor has been shut down");
+      }
+
+      // The work queue is full, so all workers are busy and will move the overflow to the work queue when they are
+      // done. Moving it right away covers the workers having freed up in the meantime.
+      if (runnable instanceof Continuation) {
+        continuationQueue.offerLast(runnable);
+      } else if (!overflowQueue.offerLast(runnable)) {
+        throw new RejectedExecutionException("Work queue and overflow queue are full");
+      }
+      drainOverflowQueue();
+    });
   }
 
-  public Future<?> submit(TaskCommand task) throws ExternalException {
+  /**
+   * Runs the command on this executor. The returned future completes once the command has finished, i.e. once all
+   * of its steps have run and it has been marked as done or failed.
+   */
+  public CompletableFuture<Void> submit(TaskCommand task) throws ExternalException {
+    CompletableFuture<Void> completion = new CompletableFuture<>();
+    task.setExecutorService(this);
     try {
-      return super.submit(task);
+      execute(() -> task.start().whenComplete((result, failure) -> {
+        if (failure != null) {
+          completion.completeExceptionally(failure);
+        } else {
+          completion.complete(null);
+        }
+      }));
+      return completion;
     } catch (RejectedExecutionException e) {
       logger.error("Fail to acquire ThreadPool worker", e);
       OutOfThreadPoolWorkerException ex = new OutOfThreadPoolWorkerException();
@@ -62,9 +122,42 @@ public class TaskCommandExecutorService extends ThreadPoolExecutor {
     }
   }
 
+  /**
+   * Runs work continuing a task command which has already been accepted. Unlike {@link #submit(TaskCommand)} this
+   * does not fail when the executor is full, the work is queued until a worker frees up instead.
+   *
+   * @throws RejectedExecutionException if the executor has been shut down
+   */
+  public void executeContinuation(Runnable continuation) {
+    execute(new Continuation(continuation));
+  }
+
+  /**
+   * Runs the continuation on this executor after the given delay. The timer only hands the continuation over, so it
+   * never runs on the timer thread.
+   */
+  public ScheduledFuture<?> schedule(Runnable continuation, long delay, TimeUnit unit) {
+    return timer.schedule(() -> handOver(continuation), delay, unit);
+  }
+
+  public int getOverflowQueueSize() {
+    return overflowQueue.size();
+  }
+
+  public int getContinuationQueueSize() {
+    return continuationQueue.size();
+  }
+
+  @Override
+  protected void terminated() {
+    super.terminated();
+    timer.shutdownNow();
+  }
+
   @Override
   protected void afterExecute(Runnable runnable, Throwable throwable) {
     super.afterExecute(runnable, throwable);
+    drainOverflowQueue();
 
     if (throwable == null && runnable instanceof Future<?>) {
       try {
@@ -85,4 +178,46 @@ public class TaskCommandExecutorService extends ThreadPoolExecutor {
       logger.error("Uncaught exception", throwable);
     }
   }
+
+  private void handOver(Runnable continuation) {
+    try {
+      executeContinuation(continuation);
+    } catch (RejectedExecutionException e) {
+      logger.warn("Dropping scheduled command, executor has been shut down");
+    }
+  }
+
+  private void drainOverflowQueue() {
+    // Continuations go first, they belong to tasks which have already been accepted.
+    Runnable runnable;
+    while ((runnable = continuationQueue.pollFirst()) != null) {
+      if (!getQueue().offer(runnable)) {
+        continuationQueue.offerFirst(runnable);
+        return;
+      }
+    }
+
+    while ((runnable = overflowQueue.pollFirst()) != null) {
+      if (!getQueue().offer(runnable)) {
+        overflowQueue.offerFirst(runnable);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Marks work which continues an accepted task command, so the rejection handler queues it instead of rejecting it.
+   */
+  private static class Continuation implements Runnable {
+    private final Runnable runnable;
+
+    private Continuation(Runnable runnable) {
+      this.runnable = runnable;
+    }
+
+    @Override
+    public void run() {
+      runnable.run();
+    }
+  }
 }
@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.api.frontend.backends;
 
+import com.vmware.photon.controller.api.frontend.BackendTaskExecutor;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.utils.StepUtils;
 import com.vmware.photon.controller.api.frontend.backends.utils.TaskUtils;
@@ -30,26 +31,58 @@ import com.vmware.photon.controller.api.model.ResourceList;
 import com.vmware.photon.controller.api.model.Task;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Common task operations using Xenon cloud store.
+ * <p>
+ * Progress updates (task started, step started or done, step warnings) are buffered per task and written behind the
+ * command on the backend executor, so that the transitions made within {@link #PROGRESS_FLUSH_DELAY_MILLIS} are
+ * merged into a single patch. Terminal transitions write the buffered updates together with the terminal state
+ * before they return. Reads and writes of a single task write its buffered updates first, and queries for the tasks of
+ * an entity write the buffered updates of that entity's tasks first. Further pages of a query reflect the tasks as of
+ * the first page.
+ * <p>
+ * Queries which are not limited to an entity do not wait for any writes, and neither do reads on other API nodes,
+ * since the updates are only buffered on the node which runs the command. Those reads can miss the progress made in
+ * the last {@link #PROGRESS_FLUSH_DELAY_MILLIS}, plus the time the delayed write waits for the backend executor.
+ * <p>
+ * The buffered updates are taken out under the lock of the task record and written outside of it, so commands which
+ * buffer an update never wait for cloud store. Writes of the same task are serialized by a separate write lock.
  */
 @Singleton
 public class TaskXenonBackend implements TaskBackend, StepBackend {
@@ -58,16 +91,47 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
   private static final ObjectMapper objectMapper = new ObjectMapper();
 
+  /**
+   * The delay after the first buffered progress update of a task at which the buffered updates are written.
+   */
+  @VisibleForTesting
+  static final long PROGRESS_FLUSH_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+  /**
+   * The time after which the buffered update record of a task which never reached a terminal state is dropped.
+   */
+  private static final long IDLE_RECORD_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /**
+   * Only times the delayed writes and hands them over to the backend executor, it never writes itself.
+   */
+  private static final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("TaskProgressTimer-%d").setDaemon(true).build());
+
+  private static final Counter savedPatches =
+      DefaultMetricRegistry.REGISTRY.counter(name(TaskXenonBackend.class, "saved-patches"));
+
+  private static final Histogram savedPatchesPerTask =
+      DefaultMetricRegistry.REGISTRY.histogram(name(TaskXenonBackend.class, "saved-patches-per-task"));
+
   private final ApiFeXenonRestClient xenonClient;
 
   private final EntityLockBackend entityLockBackend;
 
+  private final ExecutorService executor;
+
+  private final ConcurrentMap<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+
+  private final AtomicLong lastIdleSweepMillis = new AtomicLong(System.currentTimeMillis());
+
   @Inject
   public TaskXenonBackend(
       ApiFeXenonRestClient xenonClient,
-      EntityLockBackend entityLockBackend) {
+      EntityLockBackend entityLockBackend,
+      @BackendTaskExecutor ExecutorService executor) {
     this.xenonClient = xenonClient;
     this.entityLockBackend = entityLockBackend;
+    this.executor = executor;
 
     xenonClient.start();
   }
@@ -234,11 +298,14 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
   public void markTaskAsStarted(TaskEntity task) throws TaskNotFoundException {
     logger.info("Task {} has been marked as STARTED", task.getId());
 
-    TaskService.State taskServiceState = new TaskService.State();
-    taskServiceState.state = TaskService.State.TaskState.STARTED;
-    taskServiceState.startedTime = DateTime.now().toDate();
-
-    patchTaskService(task.getId(), taskServiceState);
+    task.setState(TaskEntity.State.STARTED);
+    task.setStartedTime(DateTime.now().toDate());
+    PendingUpdate pending = getPendingUpdate(task);
+    synchronized (pending) {
+      pending.startedTime = task.getStartedTime();
+      pending.transitions++;
+    }
+    scheduleFlush(task.getId(), pending);
   }
 
   @Override
@@ -246,7 +313,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     TaskService.State taskServiceState = new TaskService.State();
     taskServiceState.state = TaskService.State.TaskState.COMPLETED;
     taskServiceState.endTime = DateTime.now().toDate();
-    patchTaskService(task.getId(), taskServiceState);
+    finishTask(task.getId(), taskServiceState);
     logger.info("Task {} has been marked as COMPLETED", task.getId());
   }
 
@@ -255,7 +322,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     TaskService.State taskServiceState = new TaskService.State();
     taskServiceState.state = TaskService.State.TaskState.ERROR;
     taskServiceState.endTime = DateTime.now().toDate();
-    patchTaskService(task.getId(), taskServiceState);
+    finishTask(task.getId(), taskServiceState);
     logger.info("Task {} has been marked as ERROR", task);
   }
 
@@ -272,12 +339,29 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
       }
     }
 
+    // The patch holds every step, so the buffered step updates are superseded by it.
     TaskService.State task = TaskUtils.convertMiddleEndToBackEnd(taskEntity);
-    patchTaskService(taskEntity.getId(), task);
+    PendingUpdate pending = pendingUpdates.remove(taskEntity.getId());
+    if (pending == null) {
+      patchTaskService(taskEntity.getId(), task);
+      return;
+    }
+
+    synchronized (pending.writeLock) {
+      synchronized (pending) {
+        pending.savedPatches += pending.transitions;
+        savedPatches.inc(pending.transitions);
+        pending.clear();
+        savedPatchesPerTask.update(pending.savedPatches);
+      }
+
+      patchTaskService(taskEntity.getId(), task);
+    }
   }
 
   @Override
   public void update(TaskEntity task) throws TaskNotFoundException {
+    flush(task.getId());
     TaskService.State taskState = TaskUtils.convertMiddleEndToBackEnd(task);
     patchTaskService(task.getId(), taskState);
   }
@@ -349,6 +433,9 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
       termsBuilder.put("state", state.get().toUpperCase());
     }
 
+    if (entityId.isPresent()) {
+      flushEntity(entityId.get());
+    }
     ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(TaskService.State.class, termsBuilder.build(),
         pageSize, true);
 
@@ -375,6 +462,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
   @Override
   public void delete(TaskEntity task) {
+    pendingUpdates.remove(task.getId());
     xenonClient.delete(TaskServiceFactory.SELF_LINK + "/" + task.getId(), new TaskService.State());
   }
 
@@ -383,11 +471,40 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     return TaskUtils.convertBackEndToMiddleEnd(getTaskStateById(id));
   }
 
+  /**
+   * Buffered updates of the task are written on the backend executor before it is read, so the caller never waits
+   * for cloud store.
+   */
+  @Override
+  public CompletableFuture<TaskEntity> findByIdAsync(String id) {
+    CompletableFuture<Void> flushed;
+    if (pendingUpdates.containsKey(id)) {
+      try {
+        flushed = CompletableFuture.runAsync(() -> {
+          try {
+            flush(id);
+          } catch (TaskNotFoundException e) {
+            throw new CompletionException(e);
+          }
+        }, executor);
+      } catch (RejectedExecutionException e) {
+        flushed = new CompletableFuture<>();
+        flushed.completeExceptionally(e);
+      }
+    } else {
+      flushed = CompletableFuture.completedFuture(null);
+    }
+
+    return flushed
+        .thenCompose(ignored -> ApiFeXenonRestClient.mapNotFound(
+            xenonClient.getAsync(TaskServiceFactory.SELF_LINK + "/" + id), () -> new TaskNotFoundException(id)))
+        .thenApply(result -> TaskUtils.convertBackEndToMiddleEnd(result.getBody(TaskService.State.class)));
+  }
+
   @Override
   public void update(StepEntity stepEntity) throws TaskNotFoundException {
-    TaskService.State.Step step = StepUtils.convertMiddleEndToBackEnd(stepEntity);
-    TaskService.StepUpdate stepUpdate = new TaskService.StepUpdate(step);
-    patchTaskServiceWithStepUpdate(stepEntity.getTask().getId(), stepUpdate);
+    bufferStepUpdate(stepEntity);
+    flush(stepEntity.getTask().getId());
   }
 
   @Override
@@ -440,14 +557,14 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
   public void markStepAsStarted(StepEntity stepEntity) throws TaskNotFoundException {
     stepEntity.setState(StepEntity.State.STARTED);
     stepEntity.setStartedTime(DateTime.now().toDate());
-    update(stepEntity);
+    bufferStepUpdate(stepEntity);
   }
 
   @Override
   public void markStepAsDone(StepEntity stepEntity) throws TaskNotFoundException {
     stepEntity.setState(StepEntity.State.COMPLETED);
     stepEntity.setEndTime(DateTime.now().toDate());
-    update(stepEntity);
+    bufferStepUpdate(stepEntity);
   }
 
   @Override
@@ -464,7 +581,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
     stepEntity.addWarning(t);
     stepEntity.setEndTime(DateTime.now().toDate());
-    update(stepEntity);
+    bufferStepUpdate(stepEntity);
   }
 
   @Override
@@ -475,7 +592,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     }
 
     stepEntity.setEndTime(DateTime.now().toDate());
-    update(stepEntity);
+    bufferStepUpdate(stepEntity);
   }
 
   @Override
@@ -499,6 +616,8 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
   }
 
   private TaskService.State getTaskStateById(String taskId) throws TaskNotFoundException {
+    flush(taskId);
+
     com.vmware.xenon.common.Operation result;
     try {
       result = xenonClient.get(TaskServiceFactory.SELF_LINK + "/" + taskId);
@@ -597,4 +716,240 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     logger.info("created step: {}", stepEntity);
     return stepEntity;
   }
+
+  private PendingUpdate getPendingUpdate(TaskEntity task) {
+    return pendingUpdates.computeIfAbsent(task.getId(), id -> new PendingUpdate(task.getEntityId()));
+  }
+
+  private void bufferStepUpdate(StepEntity stepEntity) {
+    String taskId = stepEntity.getTask().getId();
+    PendingUpdate pending = getPendingUpdate(stepEntity.getTask());
+    synchronized (pending) {
+      pending.steps.put(stepEntity.getOperation().toString(), stepEntity);
+      pending.transitions++;
+    }
+    scheduleFlush(taskId, pending);
+  }
+
+  private void scheduleFlush(String taskId, PendingUpdate pending) {
+    synchronized (pending) {
+      pending.lastUpdateMillis = System.currentTimeMillis();
+      if (pending.flushScheduled) {
+        return;
+      }
+      pending.flushScheduled = true;
+    }
+
+    flushTimer.schedule(() -> submitFlush(taskId, pending), PROGRESS_FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void submitFlush(String taskId, PendingUpdate pending) {
+    try {
+      executor.execute(() -> {
+        try {
+          flush(taskId);
+        } catch (Throwable t) {
+          logger.warn("Failed to write progress of task {}", taskId, t);
+        }
+        removeIdleUpdatesIfDue();
+      });
+    } catch (RejectedExecutionException e) {
+      // The updates stay buffered until the next update, read or terminal transition of the task writes them.
+      logger.warn("Failed to schedule writing progress of task {}", taskId, e);
+      synchronized (pending) {
+        pending.flushScheduled = false;
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered updates of a task.
+   */
+  private void flush(String taskId) throws TaskNotFoundException {
+    PendingUpdate pending = pendingUpdates.get(taskId);
+    if (pending != null) {
+      synchronized (pending.writeLock) {
+        PendingUpdate updates;
+        synchronized (pending) {
+          pending.flushScheduled = false;
+          updates = pending.takeUpdates();
+        }
+        writePendingUpdate(taskId, pending, updates, null);
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered updates of the tasks of an entity. Tasks without buffered updates are skipped without
+   * waiting for their writes in flight.
+   */
+  private void flushEntity(String entityId) {
+    for (Map.Entry<String, PendingUpdate> entry : pendingUpdates.entrySet()) {
+      PendingUpdate pending = entry.getValue();
+      if (!entityId.equals(pending.entityId)) {
+        continue;
+      }
+      synchronized (pending) {
+        if (pending.transitions == 0) {
+          continue;
+        }
+      }
+
+      try {
+        flush(entry.getKey());
+      } catch (TaskNotFoundException e) {
+        logger.warn("Failed to write progress of task {}, task not found", entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered updates of a task together with its terminal state.
+   */
+  private void finishTask(String taskId, TaskService.State terminalState) throws TaskNotFoundException {
+    PendingUpdate pending = pendingUpdates.remove(taskId);
+    if (pending == null) {
+      patchTaskService(taskId, terminalState);
+      return;
+    }
+
+    synchronized (pending.writeLock) {
+      PendingUpdate updates;
+      synchronized (pending) {
+        updates = pending.takeUpdates();
+      }
+      writePendingUpdate(taskId, pending, updates, terminalState);
+      synchronized (pending) {
+        savedPatchesPerTask.update(pending.savedPatches);
+      }
+    }
+  }
+
+  /**
+   * Writes the updates taken out of the pending update with at most two patches, one for all updated steps and one
+   * for the task state. The steps are written first so that a terminal task state is only seen once its steps are
+   * final. The caller holds the write lock of the pending update, which keeps the writes of a task in order, but not
+   * its lock, so updates can be buffered while the patches are in flight.
+   */
+  private void writePendingUpdate(String taskId, PendingUpdate pending, PendingUpdate updates,
+                                  TaskService.State taskState) throws TaskNotFoundException {
+    int transitions = updates.transitions + (taskState != null ? 1 : 0);
+    if (transitions == 0) {
+      return;
+    }
+
+    int patches = 0;
+    try {
+      if (!updates.steps.isEmpty()) {
+        List<TaskService.State.Step> steps = new ArrayList<>();
+        for (StepEntity stepEntity : updates.steps.values()) {
+          steps.add(StepUtils.convertMiddleEndToBackEnd(stepEntity));
+        }
+        patchTaskServiceWithStepUpdate(taskId, new TaskService.StepUpdate(steps));
+        patches++;
+      }
+
+      if (updates.startedTime != null && taskState == null) {
+        taskState = new TaskService.State();
+        taskState.state = TaskService.State.TaskState.STARTED;
+      }
+      if (taskState != null) {
+        if (taskState.startedTime == null) {
+          taskState.startedTime = updates.startedTime;
+        }
+        patchTaskService(taskId, taskState);
+        patches++;
+      }
+    } catch (TaskNotFoundException e) {
+      pendingUpdates.remove(taskId);
+      throw e;
+    } catch (RuntimeException e) {
+      // Keep the updates which were not written, unless they have been superseded in the meantime.
+      synchronized (pending) {
+        pending.putBack(updates);
+      }
+      throw e;
+    }
+
+    synchronized (pending) {
+      pending.savedPatches += transitions - patches;
+    }
+    savedPatches.inc(transitions - patches);
+  }
+
+  private void removeIdleUpdatesIfDue() {
+    long now = System.currentTimeMillis();
+    long lastSweep = lastIdleSweepMillis.get();
+    if (now - lastSweep >= IDLE_RECORD_MILLIS && lastIdleSweepMillis.compareAndSet(lastSweep, now)) {
+      removeIdleUpdates();
+    }
+  }
+
+  /**
+   * Drops the records of tasks which have not been updated for a long time without reaching a terminal state, e.g.
+   * tasks which were left incomplete. Their buffered updates have been written by then. Runs at most once per
+   * {@link #IDLE_RECORD_MILLIS}, after a delayed write.
+   */
+  private void removeIdleUpdates() {
+    long idleSince = System.currentTimeMillis() - IDLE_RECORD_MILLIS;
+    Iterator<Map.Entry<String, PendingUpdate>> iterator = pendingUpdates.entrySet().iterator();
+    while (iterator.hasNext()) {
+      PendingUpdate pending = iterator.next().getValue();
+      synchronized (pending) {
+        if (pending.transitions == 0 && pending.lastUpdateMillis < idleSince) {
+          iterator.remove();
+          savedPatchesPerTask.update(pending.savedPatches);
+        }
+      }
+    }
+  }
+
+  /**
+   * The progress updates of a task which have not been written yet.
+   */
+  private static class PendingUpdate {
+    private final String entityId;
+    private final Map<String, StepEntity> steps = new LinkedHashMap<>();
+    private Date startedTime;
+    private int transitions;
+    private int savedPatches;
+    private boolean flushScheduled;
+    private long lastUpdateMillis = System.currentTimeMillis();
+    private final Object writeLock = new Object();
+
+    private PendingUpdate(String entityId) {
+      this.entityId = entityId;
+    }
+
+    private void clear() {
+      steps.clear();
+      startedTime = null;
+      transitions = 0;
+    }
+
+    /**
+     * Moves the buffered updates into a new record, which the caller writes.
+     */
+    private PendingUpdate takeUpdates() {
+      PendingUpdate updates = new PendingUpdate(entityId);
+      updates.steps.putAll(steps);
+      updates.startedTime = startedTime;
+      updates.transitions = transitions;
+      clear();
+      return updates;
+    }
+
+    /**
+     * Buffers updates again which could not be written. Step updates buffered since then take precedence.
+     */
+    private void putBack(PendingUpdate updates) {
+      for (Map.Entry<String, StepEntity> step : updates.steps.entrySet()) {
+        steps.putIfAbsent(step.getKey(), step.getValue());
+      }
+      if (startedTime == null) {
+        startedTime = updates.startedTime;
+      }
+      transitions += updates.transitions;
+    }
+  }
 }
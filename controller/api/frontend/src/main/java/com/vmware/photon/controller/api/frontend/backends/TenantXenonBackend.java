@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.api.frontend.backends;
 
+import com.vmware.photon.controller.api.frontend.auth.SecurityGroupCache;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
 import com.vmware.photon.controller.api.frontend.entities.ResourceTicketEntity;
@@ -76,6 +77,7 @@ public class TenantXenonBackend implements TenantBackend {
   private final ResourceTicketBackend resourceTicketBackend;
   private final TombstoneBackend tombstoneBackend;
   private final ProjectBackend projectBackend;
+  private final SecurityGroupCache securityGroupCache;
 
   @Inject
   public TenantXenonBackend(ApiFeXenonRestClient xenonClient,
@@ -83,13 +85,15 @@ public class TenantXenonBackend implements TenantBackend {
                           DeploymentBackend deploymentBackend,
                           ResourceTicketBackend resourceTicketBackend,
                           TombstoneBackend tombstoneBackend,
-                          ProjectBackend projectBackend) {
+                          ProjectBackend projectBackend,
+                          SecurityGroupCache securityGroupCache) {
     this.xenonClient = xenonClient;
     this.taskBackend = taskBackend;
     this.deploymentBackend = deploymentBackend;
     this.resourceTicketBackend = resourceTicketBackend;
     this.tombstoneBackend = tombstoneBackend;
     this.projectBackend = projectBackend;
+    this.securityGroupCache = securityGroupCache;
     this.xenonClient.start();
   }
 
@@ -223,6 +227,8 @@ public class TenantXenonBackend implements TenantBackend {
       xenonClient.patch(TenantServiceFactory.SELF_LINK + "/" + id, patch);
     } catch (DocumentNotFoundException e) {
       throw new TenantNotFoundException(id);
+    } finally {
+      securityGroupCache.invalidateTenant(id);
     }
 
   }
@@ -324,6 +330,7 @@ public class TenantXenonBackend implements TenantBackend {
 
     xenonClient.delete(TenantServiceFactory.SELF_LINK + "/" + tenantEntity.getId(),
         new TenantService.State());
+    securityGroupCache.invalidateTenant(tenantEntity.getId());
     logger.info("Tenant {} has been deleted", tenantEntity.getId());
 
     tombstoneBackend.create(tenantEntity.getKind(), tenantEntity.getId());
@@ -34,6 +34,7 @@ import com.google.common.base.Optional;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * VmBackend is performing VM operations such as create, delete, add tag etc.
@@ -65,6 +66,15 @@ public interface VmBackend {
                    String datastoreId, String datastoreName,
                    Map<String, VmService.NetworkInfo> networkInfo) throws ExternalException;
 
+  /**
+   * Non-blocking variant of {@link #updateState(VmEntity, VmState, String, String, String, String, Map)}. The returned
+   * future completes once the VM document has been patched and fails with {@link VmNotFoundException} if the VM does
+   * not exist.
+   */
+  CompletableFuture<Void> updateStateAsync(VmEntity vm, VmState state, String agent, String agentIp,
+                                           String datastoreId, String datastoreName,
+                                           Map<String, VmService.NetworkInfo> networkInfo);
+
   void updateState(VmEntity vm, List<VmService.NetworkInfo> updatedVmNetworkInfo) throws VmNotFoundException;
 
   TaskEntity addTag(String vmId, Tag tag) throws ExternalException;
@@ -102,6 +112,11 @@ public interface VmBackend {
 
   VmEntity findById(String id) throws VmNotFoundException;
 
+  /**
+   * Non-blocking variant of {@link #findById(String)}.
+   */
+  CompletableFuture<VmEntity> findByIdAsync(String id);
+
   VmService.State getVmById(String id) throws VmNotFoundException;
 
   void updateIsoEntitySize(IsoEntity isoEntity, long size);
@@ -34,6 +34,7 @@ import com.vmware.photon.controller.api.frontend.entities.base.BaseEntity;
 import com.vmware.photon.controller.api.frontend.entities.base.TagEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.DiskNotFoundException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.FlavorNotFoundException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.InvalidAttachDisksException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.InvalidFlavorStateException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.InvalidImageStateException;
@@ -70,6 +71,7 @@ import com.vmware.photon.controller.api.model.VmOperation;
 import com.vmware.photon.controller.api.model.VmState;
 import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.VmServiceFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.xenon.common.ServiceDocument;
@@ -77,24 +79,32 @@ import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.InputStream;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -106,6 +116,16 @@ public class VmXenonBackend implements VmBackend {
   private static final Logger logger = LoggerFactory.getLogger(VmXenonBackend.class);
   private static final int GB_TO_BYTE_CONVERSION_RATIO = 1024 * 1024 * 1024;
   private static final Long GET_NETWORK_ON_START_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+  private static final long FLAVOR_NAME_CACHE_MAXIMUM_SIZE = 1000;
+  private static final long FLAVOR_NAME_CACHE_EXPIRATION_MINUTES = 10;
+
+  private static final Timer representationTimer =
+      DefaultMetricRegistry.REGISTRY.timer(name(VmXenonBackend.class, "representation"));
+
+  private static final Cache<String, String> flavorNameCache = CacheBuilder.newBuilder()
+      .maximumSize(FLAVOR_NAME_CACHE_MAXIMUM_SIZE)
+      .expireAfterWrite(FLAVOR_NAME_CACHE_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+      .build();
 
   private final ApiFeXenonRestClient xenonClient;
 
@@ -214,15 +234,11 @@ public class VmXenonBackend implements VmBackend {
         Optional.<String>absent(),
         Optional.<Integer>absent());
 
-    List<Vm> result = new ArrayList<>();
-
-    if (vms != null) {
-      for (VmEntity vm : vms.getItems()) {
-        result.add(toApiRepresentation(vm));
-      }
+    if (vms == null) {
+      return new ArrayList<>();
     }
 
-    return result;
+    return toApiRepresentations(vms.getItems());
   }
 
   @Override
@@ -237,12 +253,7 @@ public class VmXenonBackend implements VmBackend {
         Optional.<String>absent(),
         Optional.<Integer>absent());
 
-    List<Vm> result = new ArrayList<>();
-    for (VmEntity vm : vms.getItems()) {
-      result.add(toApiRepresentation(vm));
-    }
-
-    return result;
+    return toApiRepresentations(vms.getItems());
   }
 
   @Override
@@ -257,12 +268,7 @@ public class VmXenonBackend implements VmBackend {
         Optional.of(networkId),
         Optional.<Integer>absent());
 
-    List<Vm> result = new ArrayList<>();
-    for (VmEntity vmEntity : vms.getItems()) {
-      result.add(toApiRepresentation(vmEntity));
-    }
-
-    return result;
+    return toApiRepresentations(vms.getItems());
   }
 
   @Override
@@ -277,13 +283,13 @@ public class VmXenonBackend implements VmBackend {
     ResourceList<VmService.State> vmStates = PaginationUtils.xenonQueryResultToResourceList(VmService.State.class,
         queryResult);
 
-    List<Vm> vms = new ArrayList<>();
+    List<VmEntity> vmEntities = new ArrayList<>();
     for (VmService.State vmState : vmStates.getItems()) {
-      vms.add(toApiRepresentation(toVmEntity(vmState)));
+      vmEntities.add(toVmEntity(vmState));
     }
 
     ResourceList<Vm> result = new ResourceList<>();
-    result.setItems(vms);
+    result.setItems(toApiRepresentations(vmEntities));
     result.setNextPageLink(vmStates.getNextPageLink());
     result.setPreviousPageLink(vmStates.getPreviousPageLink());
 
@@ -376,23 +382,18 @@ public class VmXenonBackend implements VmBackend {
                           String agentIp, String datastoreId, String datastoreName,
                           Map<String, VmService.NetworkInfo> networkInfo)
       throws ExternalException {
-    VmService.State vm = new VmService.State();
-    vm.vmState = state;
-    vm.agent = agent;
-    vm.host = agentIp;
-    vm.datastore = datastoreId;
-    vm.datastoreName = datastoreName;
-    vm.networkInfo = networkInfo;
-    if (networkInfo != null && !networkInfo.isEmpty()) {
-      vm.networks = new ArrayList<>(networkInfo.keySet());
-    }
+    patchVmService(vmEntity.getId(),
+        createPlacementPatch(state, agent, agentIp, datastoreId, datastoreName, networkInfo));
+    setPlacement(vmEntity, state, agent, agentIp, datastoreId, datastoreName);
+  }
 
-    patchVmService(vmEntity.getId(), vm);
-    vmEntity.setState(state);
-    vmEntity.setAgent(agent);
-    vmEntity.setHost(agentIp);
-    vmEntity.setDatastore(datastoreId);
-    vmEntity.setDatastoreName(datastoreName);
+  @Override
+  public CompletableFuture<Void> updateStateAsync(VmEntity vmEntity, VmState state, String agent,
+                                                  String agentIp, String datastoreId, String datastoreName,
+                                                  Map<String, VmService.NetworkInfo> networkInfo) {
+    return patchVmServiceAsync(vmEntity.getId(),
+        createPlacementPatch(state, agent, agentIp, datastoreId, datastoreName, networkInfo))
+        .thenRun(() -> setPlacement(vmEntity, state, agent, agentIp, datastoreId, datastoreName));
   }
 
   @Override
@@ -640,6 +641,13 @@ public class VmXenonBackend implements VmBackend {
     return toVmEntity(getVmById(id));
   }
 
+  @Override
+  public CompletableFuture<VmEntity> findByIdAsync(String id) {
+    return ApiFeXenonRestClient.mapNotFound(xenonClient.getAsync(VmServiceFactory.SELF_LINK + "/" + id),
+        () -> new VmNotFoundException(id))
+        .thenApply(result -> toVmEntity(result.getBody(VmService.State.class)));
+  }
+
   @Override
   public void updateIsoEntitySize(IsoEntity isoEntity, long size) {
     isoEntity.setSize(size);
@@ -906,12 +914,83 @@ public class VmXenonBackend implements VmBackend {
   }
 
   private Vm toApiRepresentation(VmEntity vmEntity) throws ExternalException {
+    return toApiRepresentations(ImmutableList.of(vmEntity)).get(0);
+  }
+
+  /**
+   * Builds the API representations of a list of VMs. The flavors, attached disks and disks of all the VMs are
+   * resolved with one query each, rather than with separate requests for every VM.
+   */
+  private List<Vm> toApiRepresentations(List<VmEntity> vmEntities) throws ExternalException {
+    Timer.Context timer = representationTimer.time();
+    try {
+      Map<String, String> flavorNames = getFlavorNames(vmEntities);
+
+      List<String> vmIds = vmEntities.stream().map(VmEntity::getId).collect(Collectors.toList());
+      Map<String, List<AttachedDiskEntity>> attachedDisks = attachedDiskBackend.findByVmIds(vmIds);
+
+      Map<String, String> diskKinds = new HashMap<>();
+      for (List<AttachedDiskEntity> vmAttachedDisks : attachedDisks.values()) {
+        for (AttachedDiskEntity attachedDisk : vmAttachedDisks) {
+          diskKinds.put(attachedDisk.getUnderlyingDiskId(), attachedDisk.getKind());
+        }
+      }
+      Map<String, BaseDiskEntity> disks = diskBackend.findByIds(diskKinds);
+
+      List<Vm> vms = new ArrayList<>();
+      for (VmEntity vmEntity : vmEntities) {
+        vms.add(toApiRepresentation(vmEntity, flavorNames.get(vmEntity.getFlavorId()),
+            attachedDisks.get(vmEntity.getId()), disks));
+      }
+
+      return vms;
+    } finally {
+      timer.stop();
+    }
+  }
+
+  /**
+   * Gets the names of the flavors of a list of VMs. Flavor names never change, so they are served from the cache
+   * when possible and the others are read with a single query.
+   */
+  private Map<String, String> getFlavorNames(List<VmEntity> vmEntities) throws ExternalException {
+    Map<String, String> flavorNames = new HashMap<>();
+    List<String> uncachedFlavorIds = new ArrayList<>();
+    for (VmEntity vmEntity : vmEntities) {
+      String flavorId = checkNotNull(vmEntity.getFlavorId());
+      if (flavorNames.containsKey(flavorId) || uncachedFlavorIds.contains(flavorId)) {
+        continue;
+      }
+
+      String flavorName = flavorNameCache.getIfPresent(flavorId);
+      if (flavorName != null) {
+        flavorNames.put(flavorId, flavorName);
+      } else {
+        uncachedFlavorIds.add(flavorId);
+      }
+    }
+
+    for (FlavorEntity flavorEntity : flavorBackend.getEntitiesByIds(uncachedFlavorIds)) {
+      flavorNameCache.put(flavorEntity.getId(), flavorEntity.getName());
+      flavorNames.put(flavorEntity.getId(), flavorEntity.getName());
+    }
+
+    for (String flavorId : uncachedFlavorIds) {
+      if (!flavorNames.containsKey(flavorId)) {
+        throw new FlavorNotFoundException(flavorId);
+      }
+    }
+
+    return flavorNames;
+  }
+
+  private Vm toApiRepresentation(VmEntity vmEntity, String flavorName, List<AttachedDiskEntity> attachedDisks,
+                                 Map<String, BaseDiskEntity> underlyingDisks) {
     Vm vm = new Vm();
 
     vm.setId(vmEntity.getId());
     vm.setName(vmEntity.getName());
-    FlavorEntity flavorEntity = flavorBackend.getEntityById(vmEntity.getFlavorId());
-    vm.setFlavor(flavorEntity.getName());
+    vm.setFlavor(flavorName);
 
     if (StringUtils.isNotBlank(vmEntity.getImageId())) {
       vm.setSourceImageId(vmEntity.getImageId());
@@ -925,12 +1004,12 @@ public class VmXenonBackend implements VmBackend {
     List<AttachedDisk> disks = new ArrayList<>();
     Set<String> tags = new HashSet<>();
 
-    for (AttachedDiskEntity attachedDisk : attachedDiskBackend.findByVmId(vmEntity.getId())) {
+    for (AttachedDiskEntity attachedDisk : attachedDisks) {
       AttachedDisk disk = new AttachedDisk();
 
       disk.setId(attachedDisk.getUnderlyingDiskId());
       disk.setKind(attachedDisk.getKind());
-      BaseDiskEntity underlyingDisk = diskBackend.find(attachedDisk.getKind(), attachedDisk.getUnderlyingDiskId());
+      BaseDiskEntity underlyingDisk = underlyingDisks.get(attachedDisk.getUnderlyingDiskId());
       disk.setName(underlyingDisk.getName());
       disk.setFlavor(underlyingDisk.getFlavorId());
       disk.setCapacityGb(underlyingDisk.getCapacityGb());
@@ -960,13 +1039,7 @@ public class VmXenonBackend implements VmBackend {
 
   private ResourceList<Vm> toApiRepresentation(ResourceList<VmEntity> vmEntities) throws ExternalException {
     ResourceList<Vm> result = new ResourceList<>();
-
-    List<Vm> vms = new ArrayList<>();
-    for (VmEntity vmEntity : vmEntities.getItems()) {
-      vms.add(toApiRepresentation(vmEntity));
-    }
-
-    result.setItems(vms);
+    result.setItems(toApiRepresentations(vmEntities.getItems()));
     result.setNextPageLink(vmEntities.getNextPageLink());
     result.setPreviousPageLink(vmEntities.getPreviousPageLink());
 
@@ -1164,6 +1237,37 @@ public class VmXenonBackend implements VmBackend {
     }
   }
 
+  private CompletableFuture<Void> patchVmServiceAsync(String vmId, VmService.State vmServiceState) {
+    return ApiFeXenonRestClient.mapNotFound(
+        xenonClient.patchAsync(VmServiceFactory.SELF_LINK + "/" + vmId, vmServiceState),
+        () -> new VmNotFoundException(vmId))
+        .thenApply(result -> null);
+  }
+
+  private VmService.State createPlacementPatch(VmState state, String agent, String agentIp, String datastoreId,
+                                               String datastoreName, Map<String, VmService.NetworkInfo> networkInfo) {
+    VmService.State vm = new VmService.State();
+    vm.vmState = state;
+    vm.agent = agent;
+    vm.host = agentIp;
+    vm.datastore = datastoreId;
+    vm.datastoreName = datastoreName;
+    vm.networkInfo = networkInfo;
+    if (networkInfo != null && !networkInfo.isEmpty()) {
+      vm.networks = new ArrayList<>(networkInfo.keySet());
+    }
+    return vm;
+  }
+
+  private void setPlacement(VmEntity vmEntity, VmState state, String agent, String agentIp, String datastoreId,
+                            String datastoreName) {
+    vmEntity.setState(state);
+    vmEntity.setAgent(agent);
+    vmEntity.setHost(agentIp);
+    vmEntity.setDatastore(datastoreId);
+    vmEntity.setDatastoreName(datastoreName);
+  }
+
   private Iso isoToApiRepresentation(IsoEntity isoEntity) {
     Iso iso = new Iso();
     iso.setId(isoEntity.getId());
@@ -15,12 +15,14 @@ package com.vmware.photon.controller.api.frontend.backends.clients;
 
 import com.vmware.photon.controller.api.frontend.BackendTaskExecutor;
 import com.vmware.photon.controller.api.frontend.ScheduledTaskExecutor;
+import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.common.PhotonControllerServerSet;
 import com.vmware.photon.controller.common.thrift.ServerSet;
 import com.vmware.photon.controller.common.xenon.OperationUtils;
 import com.vmware.photon.controller.common.xenon.XenonRestClient;
 import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.photon.controller.common.xenon.exceptions.XenonException;
 import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
@@ -38,9 +40,13 @@ import org.slf4j.LoggerFactory;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Http rest client to talk to Xenon.
@@ -247,6 +253,50 @@ public class ApiFeXenonRestClient extends XenonRestClient {
     }
   }
 
+  /**
+   * Waits for a future returned by one of the async methods of this client or of a backend. API-FE exceptions the
+   * future failed with are rethrown as they are, other failures surface the same way the synchronous methods of this
+   * client throw them. Backends return their futures instead of waiting, so only commands wait with this method.
+   */
+  public static <T> T await(CompletableFuture<T> future) throws ApiFeException {
+    try {
+      return future.get();
+    } catch (ExecutionException executionException) {
+      Throwable cause = executionException.getCause();
+      if (cause instanceof ApiFeException) {
+        throw (ApiFeException) cause;
+      } else if (cause instanceof XenonException) {
+        throw new XenonRuntimeException((XenonException) cause);
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(interruptedException);
+    }
+  }
+
+  /**
+   * Returns a future which fails with the exception created by notFound when the given future fails because the
+   * document does not exist, the way backends map {@link DocumentNotFoundException} of the synchronous methods.
+   */
+  public static <T> CompletableFuture<T> mapNotFound(CompletableFuture<T> future,
+                                                     Supplier<? extends ApiFeException> notFound) {
+    CompletableFuture<T> mapped = new CompletableFuture<>();
+    future.whenComplete((result, failure) -> {
+      if (failure == null) {
+        mapped.complete(result);
+        return;
+      }
+
+      Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+          failure.getCause() : failure;
+      mapped.completeExceptionally(cause instanceof DocumentNotFoundException ? notFound.get() : cause);
+    });
+    return mapped;
+  }
+
   @VisibleForTesting
   @Override
   protected void handleTimeoutException(Operation operation, TimeoutException timeoutException) {
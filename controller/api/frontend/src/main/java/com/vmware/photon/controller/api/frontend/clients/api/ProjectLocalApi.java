@@ -13,6 +13,7 @@
 package com.vmware.photon.controller.api.frontend.clients.api;
 
 import com.vmware.photon.controller.api.client.resource.ProjectApi;
+import com.vmware.photon.controller.api.client.resource.ResourceListIterator;
 import com.vmware.photon.controller.api.frontend.clients.VmFeClient;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.model.Cluster;
@@ -63,6 +64,11 @@ public class ProjectLocalApi implements ProjectApi {
     return null;
   }
 
+  @Override
+  public ResourceListIterator<Task> iterateTasksForProject(String projectId) throws IOException {
+    return null;
+  }
+
   @Override
   public void getTasksForProjectAsync(String projectId, FutureCallback<ResourceList<Task>> responseCallback)
       throws IOException {
@@ -133,6 +139,16 @@ public class ProjectLocalApi implements ProjectApi {
     return null;
   }
 
+  @Override
+  public ResourceListIterator<FlavoredCompact> iterateVmsInProject(String projectId) throws IOException {
+    return null;
+  }
+
+  @Override
+  public ResourceListIterator<Vm> iterateVmDetailsInProject(String projectId) throws IOException {
+    return null;
+  }
+
   @Override
   public void getVmsInProjectAsync(String projectId, FutureCallback<ResourceList<FlavoredCompact>> responseCallback)
       throws IOException {
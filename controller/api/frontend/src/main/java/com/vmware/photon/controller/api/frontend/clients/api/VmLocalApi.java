@@ -12,6 +12,7 @@
  */
 package com.vmware.photon.controller.api.frontend.clients.api;
 
+import com.vmware.photon.controller.api.client.resource.ResourceListIterator;
 import com.vmware.photon.controller.api.client.resource.VmApi;
 import com.vmware.photon.controller.api.frontend.clients.VmFeClient;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
@@ -64,6 +65,11 @@ public class VmLocalApi implements VmApi {
     return null;
   }
 
+  @Override
+  public ResourceListIterator<Task> iterateTasksForVm(String vmId) throws IOException {
+    return null;
+  }
+
   @Override
   public void getTasksForVmAsync(String vmId, FutureCallback<ResourceList<Task>> responseCallback) throws IOException {
 
@@ -25,6 +25,8 @@ import org.slf4j.MDC;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Base class for all Commands. From this class are derived both TaskCommand and StepCommand.
@@ -46,16 +48,62 @@ public abstract class BaseCommand implements Runnable {
 
   @Override
   public void run() {
-    if (loggerContextMap != null) {
-      MDC.setContextMap(loggerContextMap);
-      MDC.put("activity", " [Activity: " + activityId + "]");
-    }
+    start();
+  }
+
+  /**
+   * Runs the command and returns a future which completes once the command has been marked as done or failed and
+   * has been cleaned up. Failures are reported through {@link #markAsFailed(Throwable)}, the future itself
+   * never completes exceptionally. Unless the command overrides {@link #executeAsync()} the future is already
+   * complete when this method returns.
+   */
+  public CompletableFuture<Void> start() {
+    setLoggerContext();
 
     StopWatch stopwatch = new StopWatch();
     stopwatch.start();
+
+    CompletableFuture<Void> execution;
     try {
       markAsStarted();
+      execution = executeAsync();
+    } catch (Throwable t) {
+      execution = new CompletableFuture<>();
+      execution.completeExceptionally(t);
+    }
+
+    return execution.handle((result, failure) -> {
+      try {
+        finish(failure, stopwatch);
+      } catch (Throwable t) {
+        logger.error("Uncaught exception", t);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Executes the command and returns a future which completes when the execution has finished. The default
+   * implementation calls {@link #execute()} on the calling thread.
+   */
+  protected CompletableFuture<Void> executeAsync() {
+    CompletableFuture<Void> execution = new CompletableFuture<>();
+    try {
       execute();
+      execution.complete(null);
+    } catch (Throwable t) {
+      execution.completeExceptionally(t);
+    }
+    return execution;
+  }
+
+  private void finish(Throwable failure, StopWatch stopwatch) {
+    // The execution may have completed on a different thread than the one which started it.
+    setLoggerContext();
+    try {
+      if (failure != null) {
+        throw failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+      }
       markAsDone();
     } catch (Throwable t) {
       try {
@@ -76,6 +124,13 @@ public abstract class BaseCommand implements Runnable {
     }
   }
 
+  private void setLoggerContext() {
+    if (loggerContextMap != null) {
+      MDC.setContextMap(loggerContextMap);
+      MDC.put("activity", " [Activity: " + activityId + "]");
+    }
+  }
+
   protected abstract void execute() throws ApiFeException, InterruptedException, RpcException;
 
   protected abstract void cleanup();
@@ -17,6 +17,7 @@ import com.vmware.photon.controller.api.frontend.backends.DiskBackend;
 import com.vmware.photon.controller.api.frontend.backends.FlavorBackend;
 import com.vmware.photon.controller.api.frontend.backends.NetworkBackend;
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.backends.VmBackend;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.PhotonControllerXenonRestClient;
@@ -51,6 +52,7 @@ import com.vmware.photon.controller.api.model.Project;
 import com.vmware.photon.controller.api.model.Vm;
 import com.vmware.photon.controller.api.model.VmState;
 import com.vmware.photon.controller.cloudstore.xenon.entity.VirtualNetworkService;
+import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.SchedulerErrorCodeToExceptionMapper;
 import com.vmware.photon.controller.common.clients.exceptions.ConstraintMatchingDatastoreNotFoundException;
 import com.vmware.photon.controller.common.clients.exceptions.InvalidAgentStateException;
@@ -93,6 +95,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -142,19 +146,7 @@ public class ResourceReserveStepCmd extends StepCommand {
 
   @Override
   protected void execute() throws ApiFeException, InterruptedException, RpcException {
-    List<BaseEntity> entityList = step.getTransientResourceEntities();
-    for (BaseEntity entity : entityList) {
-      if (!entity.getKind().equals(Vm.KIND) && !entity.getKind().equals(PersistentDisk.KIND)) {
-        continue;
-      }
-
-      infrastructureEntity = (InfrastructureEntity) entity;
-    }
-    Preconditions.checkArgument(infrastructureEntity != null,
-        "There should be at least one InfrastructureEntity referenced by step %s", step.getId());
-
-    Resource resource = createResource(infrastructureEntity);
-    taskCommand.setResource(resource);
+    Resource resource = prepareResource();
 
     String reservation;
     if (infrastructureEntity.getKind().equals(Vm.KIND)) {
@@ -166,6 +158,30 @@ public class ResourceReserveStepCmd extends StepCommand {
     taskCommand.setReservation(reservation);
   }
 
+  /**
+   * Places and reserves the resource without holding a worker while the scheduler and the agent respond, when the
+   * task runs on an executor.
+   */
+  @Override
+  protected CompletableFuture<Void> executeAsync() {
+    TaskCommandExecutorService executorService = taskCommand.getExecutorService();
+    if (executorService == null) {
+      return super.executeAsync();
+    }
+
+    CompletableFuture<String> reservation;
+    try {
+      Resource resource = prepareResource();
+      String targetHostIp = infrastructureEntity.getKind().equals(Vm.KIND)
+          ? ((VmEntity) infrastructureEntity).getHostAffinity() : null;
+      reservation = loadReservationAsync(resource, targetHostIp, executorService, 0);
+    } catch (Throwable t) {
+      reservation = new CompletableFuture<>();
+      reservation.completeExceptionally(t);
+    }
+    return reservation.thenAccept(taskCommand::setReservation);
+  }
+
   @Override
   protected void cleanup() {
   }
@@ -396,6 +412,23 @@ public class ResourceReserveStepCmd extends StepCommand {
     return resourceConstraints;
   }
 
+  private Resource prepareResource() throws ApiFeException, RpcException {
+    List<BaseEntity> entityList = step.getTransientResourceEntities();
+    for (BaseEntity entity : entityList) {
+      if (!entity.getKind().equals(Vm.KIND) && !entity.getKind().equals(PersistentDisk.KIND)) {
+        continue;
+      }
+
+      infrastructureEntity = (InfrastructureEntity) entity;
+    }
+    Preconditions.checkArgument(infrastructureEntity != null,
+        "There should be at least one InfrastructureEntity referenced by step %s", step.getId());
+
+    Resource resource = createResource(infrastructureEntity);
+    taskCommand.setResource(resource);
+    return resource;
+  }
+
   private String loadReservation(Resource resource, String entityKind)
       throws InterruptedException, ApiFeException, RpcException {
 
@@ -436,37 +469,106 @@ public class ResourceReserveStepCmd extends StepCommand {
         String reservation = checkNotNull(reserveResponse.getReservation());
         logger.info("reserved resource, generation: {}, reservation: {}", generation, reservation);
         return reservation;
-      } catch (NoSuchResourceException e) {
-        logger.error("reserve resource failed: {}, {}", ErrorCode.NO_SUCH_RESOURCE, e.getMessage());
-        throw new com.vmware.photon.controller.api.frontend.exceptions.external.NoSuchResourceException();
-      } catch (ConstraintMatchingDatastoreNotFoundException e) {
-        logger.error("reserve resource failed: {}, {}", ErrorCode.NO_CONSTRAINT_MATCHING_DATASTORE, e.getMessage());
-        throw new UnfulfillableDiskAffinitiesException();
-      } catch (NotEnoughCpuResourceException e) {
-        logger.error("reserve resource failed: {}, {}", ErrorCode.NOT_ENOUGH_CPU_RESOURCE, e.getMessage());
-        throw new com.vmware.photon.controller.api.frontend.exceptions.external.NotEnoughCpuResourceException();
-      } catch (NotEnoughMemoryResourceException e) {
-        logger.error("reserve resource failed: {}, {}", ErrorCode.NOT_ENOUGH_MEMORY_RESOURCE, e.getMessage());
-        throw new com.vmware.photon.controller.api.frontend.exceptions.external.NotEnoughMemoryResourceException();
-      } catch (NotEnoughDatastoreCapacityException e) {
-        logger.error("reserve resource failed: {}, {}", ErrorCode.NOT_ENOUGH_DATASTORE_CAPACITY, e.getMessage());
-        throw new com.vmware.photon.controller.api.frontend.exceptions.external.NotEnoughDatastoreCapacityException();
-      } catch (ResourceConstraintException e) {
-        logger.error("reserve resource failed: {}", e.getMessage());
-        throw new UnfulfillableAffinitiesException();
-      } catch (InvalidAgentStateException e) {
-        logger.error("reserve resource failed: {}", e.getMessage());
-        throw e;
       } catch (StaleGenerationException e) {
         if (++retries >= MAX_PLACEMENT_RETRIES) {
           throw e;
         }
 
         logger.info("retrying: {}", e.getClass().toString());
+      } catch (RpcException e) {
+        ApiFeException failure = mapReserveFailure(e);
+        if (failure != null) {
+          throw failure;
+        }
+        throw e;
       }
     }
   }
 
+  /**
+   * Asynchronous version of {@link #loadReservation(Resource, String, String)}. The responses arrive on Thrift and
+   * Xenon threads, so the failures are handled and the placement is retried on the executor.
+   */
+  private CompletableFuture<String> loadReservationAsync(Resource resource, String targetHostIp,
+                                                         TaskCommandExecutorService executorService, int retries) {
+    HostClient hostClient = taskCommand.getHostClient();
+
+    // See loadReservation for how the target host is determined.
+    CompletableFuture<Integer> placement;
+    if (targetHostIp == null) {
+      placement = sendPlaceRequestAsync(resource).thenApply(placementResponse -> {
+        ServerAddress serverAddress = placementResponse.serverAddress;
+        resource.setPlacement_list(placementResponse.resource.getPlacement_list());
+        logger.info("placed resource, agent host ip: {}, port: {}", serverAddress.getHost(), serverAddress.getPort());
+        hostClient.setIpAndPort(serverAddress.getHost(), serverAddress.getPort());
+        return placementResponse.generation;
+      });
+    } else {
+      hostClient.setHostIp(targetHostIp);
+      placement = hostClient.placeAsync(resource).thenApply(placeResponse -> {
+        resource.setPlacement_list(placeResponse.getPlacementList());
+        logger.info("placed resource, host: {}", targetHostIp);
+        return placeResponse.getGeneration();
+      });
+    }
+
+    return placement
+        .thenCompose(generation -> hostClient.reserveAsync(resource, generation).thenApply(reserveResponse -> {
+          String reservation = checkNotNull(reserveResponse.getReservation());
+          logger.info("reserved resource, generation: {}, reservation: {}", generation, reservation);
+          return reservation;
+        }))
+        .handleAsync((reservation, failure) -> {
+          if (failure == null) {
+            return CompletableFuture.completedFuture(reservation);
+          }
+
+          Throwable cause =
+              failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+          if (cause instanceof StaleGenerationException && retries + 1 < MAX_PLACEMENT_RETRIES) {
+            logger.info("retrying: {}", cause.getClass().toString());
+            return loadReservationAsync(resource, targetHostIp, executorService, retries + 1);
+          }
+          if (cause instanceof RpcException && !(cause instanceof StaleGenerationException)) {
+            ApiFeException mapped = mapReserveFailure((RpcException) cause);
+            if (mapped != null) {
+              cause = mapped;
+            }
+          }
+          throw new CompletionException(cause);
+        }, executorService::executeContinuation)
+        .thenCompose(reservation -> reservation);
+  }
+
+  /**
+   * Logs a failed placement or reservation and returns the API error it maps to, or null if the failure is
+   * passed on as is.
+   */
+  private ApiFeException mapReserveFailure(RpcException e) {
+    if (e instanceof NoSuchResourceException) {
+      logger.error("reserve resource failed: {}, {}", ErrorCode.NO_SUCH_RESOURCE, e.getMessage());
+      return new com.vmware.photon.controller.api.frontend.exceptions.external.NoSuchResourceException();
+    } else if (e instanceof ConstraintMatchingDatastoreNotFoundException) {
+      logger.error("reserve resource failed: {}, {}", ErrorCode.NO_CONSTRAINT_MATCHING_DATASTORE, e.getMessage());
+      return new UnfulfillableDiskAffinitiesException();
+    } else if (e instanceof NotEnoughCpuResourceException) {
+      logger.error("reserve resource failed: {}, {}", ErrorCode.NOT_ENOUGH_CPU_RESOURCE, e.getMessage());
+      return new com.vmware.photon.controller.api.frontend.exceptions.external.NotEnoughCpuResourceException();
+    } else if (e instanceof NotEnoughMemoryResourceException) {
+      logger.error("reserve resource failed: {}, {}", ErrorCode.NOT_ENOUGH_MEMORY_RESOURCE, e.getMessage());
+      return new com.vmware.photon.controller.api.frontend.exceptions.external.NotEnoughMemoryResourceException();
+    } else if (e instanceof NotEnoughDatastoreCapacityException) {
+      logger.error("reserve resource failed: {}, {}", ErrorCode.NOT_ENOUGH_DATASTORE_CAPACITY, e.getMessage());
+      return new com.vmware.photon.controller.api.frontend.exceptions.external.NotEnoughDatastoreCapacityException();
+    } else if (e instanceof ResourceConstraintException) {
+      logger.error("reserve resource failed: {}", e.getMessage());
+      return new UnfulfillableAffinitiesException();
+    } else if (e instanceof InvalidAgentStateException) {
+      logger.error("reserve resource failed: {}", e.getMessage());
+    }
+    return null;
+  }
+
   /**
    * Searches for a host that have the specified resources.
    *
@@ -478,15 +580,38 @@ public class ResourceReserveStepCmd extends StepCommand {
   private PlacementTask sendPlaceRequest(Resource resource) throws RpcException {
     PhotonControllerXenonRestClient photonControllerXenonRestClient =
         taskCommand.getPhotonControllerXenonRestClient();
+
+    // Wait for the response of the PlacementTask
+    Operation placementResponse = photonControllerXenonRestClient.post(
+        PlacementTaskService.FACTORY_LINK, createPlacementTask(resource), PLACE_REQUEST_TIMEOUT_IN_MICROS);
+    return checkPlacementResponse(placementResponse);
+  }
+
+  private CompletableFuture<PlacementTask> sendPlaceRequestAsync(Resource resource) {
+    PhotonControllerXenonRestClient photonControllerXenonRestClient =
+        taskCommand.getPhotonControllerXenonRestClient();
+
+    return photonControllerXenonRestClient.postAsync(
+        PlacementTaskService.FACTORY_LINK, createPlacementTask(resource), PLACE_REQUEST_TIMEOUT_IN_MICROS)
+        .thenApply(placementResponse -> {
+          try {
+            return checkPlacementResponse(placementResponse);
+          } catch (RpcException e) {
+            throw new CompletionException(e);
+          }
+        });
+  }
+
+  private PlacementTask createPlacementTask(Resource resource) {
     logger.info("place request resource: {}", resource);
     PlacementTask placementTask = new PlacementTask();
     placementTask.resource = resource;
     placementTask.taskState = new TaskState();
     placementTask.taskState.isDirect = true;
+    return placementTask;
+  }
 
-    // Wait for the response of the PlacementTask
-    Operation placementResponse = photonControllerXenonRestClient.post(
-        PlacementTaskService.FACTORY_LINK, placementTask, PLACE_REQUEST_TIMEOUT_IN_MICROS);
+  private PlacementTask checkPlacementResponse(Operation placementResponse) throws RpcException {
     PlacementTask taskResponse = placementResponse.getBody(PlacementTask.class);
 
     SchedulerErrorCodeToExceptionMapper.mapErrorCodeToException(
@@ -27,6 +27,7 @@ import com.vmware.photon.controller.api.frontend.backends.StepBackend;
 import com.vmware.photon.controller.api.frontend.backends.TaskBackend;
 import com.vmware.photon.controller.api.frontend.backends.TenantBackend;
 import com.vmware.photon.controller.api.frontend.backends.VmBackend;
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.config.ImageConfig;
 import com.vmware.photon.controller.api.frontend.entities.StepEntity;
@@ -64,6 +65,7 @@ public class StepCommandFactory {
   private final TenantBackend tenantBackend;
   private final ProjectBackend projectBackend;
   private final NetworkHelper networkHelper;
+  private final ApiFeXenonRestClient xenonClient;
   private final Boolean useVirtualNetwork;
 
   @Inject
@@ -85,6 +87,7 @@ public class StepCommandFactory {
                             TenantBackend tenantBackend,
                             ProjectBackend projectBackend,
                             NetworkHelper networkHelper,
+                            ApiFeXenonRestClient xenonClient,
                             @Named("useVirtualNetwork") Boolean useVirtualNetwork) {
     this.stepBackend = stepBackend;
     this.entityLockBackend = entityLockBackend;
@@ -104,10 +107,20 @@ public class StepCommandFactory {
     this.tenantBackend = tenantBackend;
     this.projectBackend = projectBackend;
     this.networkHelper = networkHelper;
+    this.xenonClient = xenonClient;
     this.useVirtualNetwork = useVirtualNetwork;
   }
 
   public StepCommand createCommand(TaskCommand taskCommand, StepEntity stepEntity) throws InternalException {
+    StepCommand command = createStepCommand(taskCommand, stepEntity);
+    if (command instanceof XenonTaskStatusStepCmd) {
+      // Let the status steps wait for updates of the remote task instead of polling it.
+      ((XenonTaskStatusStepCmd) command).setXenonClient(xenonClient);
+    }
+    return command;
+  }
+
+  private StepCommand createStepCommand(TaskCommand taskCommand, StepEntity stepEntity) throws InternalException {
     checkNotNull(stepEntity);
     switch (stepEntity.getOperation()) {
       case RESERVE_RESOURCE:
@@ -15,6 +15,7 @@ package com.vmware.photon.controller.api.frontend.commands.steps;
 
 import com.vmware.photon.controller.api.frontend.backends.DiskBackend;
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.backends.VmBackend;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.entities.EphemeralDiskEntity;
@@ -42,6 +43,8 @@ import org.slf4j.LoggerFactory;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * StepCommand for VM creation.
@@ -75,6 +78,47 @@ public class VmCreateStepCmd extends StepCommand {
     attachDisks(vm);
   }
 
+  /**
+   * Creates the VM without holding a worker while the agent creates it, when the task runs on an executor.
+   */
+  @Override
+  protected CompletableFuture<Void> executeAsync() {
+    TaskCommandExecutorService executorService = taskCommand.getExecutorService();
+    if (executorService == null) {
+      return super.executeAsync();
+    }
+
+    CompletableFuture<CreateVmResponse> creation;
+    try {
+      vm = getVm();
+      creation = taskCommand.getHostClient().createVmAsync(taskCommand.getReservation(), vm.getEnvironment());
+    } catch (Throwable t) {
+      creation = new CompletableFuture<>();
+      creation.completeExceptionally(t);
+    }
+
+    // The response arrives on a Thrift thread, so the VM and its disks are updated on the executor. The VM document
+    // is patched without holding a worker either.
+    return creation
+        .thenComposeAsync(this::updateVmAsync, executorService::executeContinuation)
+        .handleAsync((createdVm, failure) -> {
+          try {
+            if (failure != null) {
+              Throwable cause =
+                  failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+              if (cause instanceof RpcException) {
+                markVmAsFailed((RpcException) cause);
+              }
+              throw cause;
+            }
+            attachDisks(createdVm);
+            return null;
+          } catch (Throwable t) {
+            throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+          }
+        }, executorService::executeContinuation);
+  }
+
   @Override
   protected void cleanup() {
   }
@@ -82,28 +126,14 @@ public class VmCreateStepCmd extends StepCommand {
   @VisibleForTesting
   protected VmEntity createVm() throws ApiFeException, InterruptedException, RpcException {
     try {
-      List<VmEntity> vmEntityList = step.getTransientResourceEntities(Vm.KIND);
-      Preconditions.checkArgument(vmEntityList.size() == 1,
-          "There should be only 1 VM referenced by step %s", step.getId());
-      vm = vmEntityList.get(0);
+      vm = getVm();
 
       CreateVmResponse response = taskCommand.getHostClient().createVm(
           taskCommand.getReservation(), vm.getEnvironment());
 
-      Map<String, VmService.NetworkInfo> networkInfoList = getNetworksFromCreateVMResponse(response.getNetwork_info());
-
-      vmBackend.updateState(vm, VmState.STOPPED,
-          taskCommand.lookupAgentId(taskCommand.getHostClient().getHostIp()),
-          taskCommand.getHostClient().getHostIp(),
-          response.getVm().getDatastore().getId(),
-          response.getVm().getDatastore().getName(),
-          networkInfoList);
-
-      logger.info("created VM: {}", vm);
-      return vm;
+      return updateVm(response);
     } catch (RpcException e) {
-      logger.error("failed creating VM {}", vm.getId(), e);
-      vmBackend.updateState(vm, VmState.ERROR);
+      markVmAsFailed(e);
       throw e;
     }
   }
@@ -121,6 +151,55 @@ public class VmCreateStepCmd extends StepCommand {
     }
   }
 
+  private VmEntity getVm() {
+    List<VmEntity> vmEntityList = step.getTransientResourceEntities(Vm.KIND);
+    Preconditions.checkArgument(vmEntityList.size() == 1,
+        "There should be only 1 VM referenced by step %s", step.getId());
+    return vmEntityList.get(0);
+  }
+
+  private VmEntity updateVm(CreateVmResponse response) throws ApiFeException {
+    Map<String, VmService.NetworkInfo> networkInfoList = getNetworksFromCreateVMResponse(response.getNetwork_info());
+
+    vmBackend.updateState(vm, VmState.STOPPED,
+        taskCommand.lookupAgentId(taskCommand.getHostClient().getHostIp()),
+        taskCommand.getHostClient().getHostIp(),
+        response.getVm().getDatastore().getId(),
+        response.getVm().getDatastore().getName(),
+        networkInfoList);
+
+    logger.info("created VM: {}", vm);
+    return vm;
+  }
+
+  private CompletableFuture<VmEntity> updateVmAsync(CreateVmResponse response) {
+    try {
+      Map<String, VmService.NetworkInfo> networkInfoList =
+          getNetworksFromCreateVMResponse(response.getNetwork_info());
+      String hostIp = taskCommand.getHostClient().getHostIp();
+
+      return vmBackend.updateStateAsync(vm, VmState.STOPPED,
+          taskCommand.lookupAgentId(hostIp),
+          hostIp,
+          response.getVm().getDatastore().getId(),
+          response.getVm().getDatastore().getName(),
+          networkInfoList)
+          .thenApply(ignored -> {
+            logger.info("created VM: {}", vm);
+            return vm;
+          });
+    } catch (Throwable t) {
+      CompletableFuture<VmEntity> failure = new CompletableFuture<>();
+      failure.completeExceptionally(t);
+      return failure;
+    }
+  }
+
+  private void markVmAsFailed(RpcException e) throws ApiFeException {
+    logger.error("failed creating VM {}", vm.getId(), e);
+    vmBackend.updateState(vm, VmState.ERROR);
+  }
+
   private  Map<String, VmService.NetworkInfo> getNetworksFromCreateVMResponse(List<VmNetworkInfo> agentNetworks)
           throws ExternalException {
     if (agentNetworks == null) {
@@ -16,6 +16,7 @@ package com.vmware.photon.controller.api.frontend.commands.steps;
 import com.vmware.photon.controller.api.frontend.backends.AttachedDiskBackend;
 import com.vmware.photon.controller.api.frontend.backends.DiskBackend;
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.entities.PersistentDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.StepEntity;
@@ -173,17 +174,17 @@ public class VmDiskOpStepCmd extends StepCommand {
     }
   }
 
-  private void attachDisks(List<PersistentDiskEntity> attachedDisks) throws ExternalException {
+  private void attachDisks(List<PersistentDiskEntity> attachedDisks) throws ApiFeException {
     if (attachedDisks.isEmpty()) {
       logger.info("Attach Disks, no persistent disk found");
       return;
     }
 
-    attachedDiskBackend.attachDisks(vm, attachedDisks);
+    ApiFeXenonRestClient.await(attachedDiskBackend.attachDisks(vm, attachedDisks));
     logger.info("Attached Disks: {}", attachedDisks);
   }
 
-  private void detachDisks() throws ExternalException {
+  private void detachDisks() throws ApiFeException {
     List<PersistentDiskEntity> persistentDisks = step.getTransientResourceEntities(PersistentDisk.KIND);
 
     if (persistentDisks.isEmpty()) {
@@ -191,7 +192,7 @@ public class VmDiskOpStepCmd extends StepCommand {
       return;
     }
 
-    attachedDiskBackend.deleteAttachedDisks(vm, persistentDisks);
+    ApiFeXenonRestClient.await(attachedDiskBackend.deleteAttachedDisks(vm, persistentDisks));
     logger.info("Detached Disks: {}", persistentDisks);
   }
 
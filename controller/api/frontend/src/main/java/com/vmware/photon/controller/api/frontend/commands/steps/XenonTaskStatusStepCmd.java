@@ -14,12 +14,15 @@
 package com.vmware.photon.controller.api.frontend.commands.steps;
 
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.entities.StepEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.model.Operation;
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
+import com.vmware.photon.controller.common.xenon.TaskCompletionNotifier;
+import com.vmware.photon.controller.common.xenon.XenonRestClient;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.xenon.common.TaskState;
 
@@ -29,7 +32,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * StepCommand that monitors the status of a Xenon task.
@@ -40,6 +48,7 @@ public class XenonTaskStatusStepCmd extends StepCommand {
 
   private static final long DEFAULT_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
   private static final long DEFAULT_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+  private static final long SUBSCRIBED_POLL_INTERVAL = TimeUnit.MINUTES.toMillis(1);
   private static final long DEFAULT_SERVICE_UNAVAILABLE_MAX_COUNT = 100;
 
   private long timeout;
@@ -49,6 +58,7 @@ public class XenonTaskStatusStepCmd extends StepCommand {
   private String remoteTaskLink;
   private final int targetSubStage;
   private final XenonTaskStatusPoller xenonTaskStatusPoller;
+  private XenonRestClient xenonClient;
 
   interface XenonTaskStatusPoller {
     TaskState poll(String taskLink)
@@ -81,6 +91,14 @@ public class XenonTaskStatusStepCmd extends StepCommand {
     this.remoteTaskLink = remoteTaskLink;
   }
 
+  /**
+   * Sets the client used to subscribe to the remote task. With a client the status is re-checked when the remote
+   * task is updated, and the poll interval only applies while the remote task cannot be found.
+   */
+  public void setXenonClient(XenonRestClient xenonClient) {
+    this.xenonClient = xenonClient;
+  }
+
   @VisibleForTesting
   protected void setTimeout(long timeout) {
     this.timeout = timeout;
@@ -103,20 +121,61 @@ public class XenonTaskStatusStepCmd extends StepCommand {
     logger.info("XenonTaskStatusStepCmd started, operation={}, remoteTaskLink={}",
         step.getOperation(), remoteTaskLink);
 
-    // Poll remote task status until currentSubStage is completed.
-    long startTime = System.currentTimeMillis();
-    while (!checkSubStageCompletion()) {
-      if (System.currentTimeMillis() - startTime >= timeout) {
-        throw new RuntimeException("Xenon task did not complete in timely fashion.");
+    // Check remote task status until currentSubStage is completed, either when the remote task changes or on the
+    // poll interval.
+    Semaphore taskUpdated = new Semaphore(0);
+    TaskCompletionNotifier.Subscription subscription = null;
+    if (xenonClient != null) {
+      subscription = xenonClient.subscribe(remoteTaskLink, taskUpdated::release);
+    }
+
+    try {
+      long startTime = System.currentTimeMillis();
+      while (!checkSubStageCompletion()) {
+        long remaining = timeout - (System.currentTimeMillis() - startTime);
+        if (remaining <= 0) {
+          throw new RuntimeException("Xenon task did not complete in timely fashion.");
+        }
+
+        long interval = getRecheckInterval(subscription != null);
+        taskUpdated.tryAcquire(Math.min(interval, remaining), TimeUnit.MILLISECONDS);
+        taskUpdated.drainPermits();
+      }
+    } finally {
+      if (subscription != null) {
+        subscription.close();
       }
-      Thread.sleep(pollInterval);
     }
   }
 
+  /**
+   * With a client and an executor service the step does not hold a worker while the remote task is running. The
+   * status is then checked on the executor service when the remote task changes or the poll interval has passed.
+   */
+  @Override
+  protected CompletableFuture<Void> executeAsync() {
+    TaskCommandExecutorService executorService = taskCommand.getExecutorService();
+    if (xenonClient == null || executorService == null) {
+      return super.executeAsync();
+    }
+
+    checkNotNull(remoteTaskLink, "remote-task-link is not defined in TransientResource");
+
+    logger.info("XenonTaskStatusStepCmd started asynchronously, operation={}, remoteTaskLink={}",
+        step.getOperation(), remoteTaskLink);
+
+    return new StatusWait(executorService).start();
+  }
+
   @Override
   protected void cleanup() {
   }
 
+  private long getRecheckInterval(boolean subscribed) {
+    return (!subscribed || documentNotFoundOccurrence > 0) ?
+        pollInterval : Math.max(pollInterval, SUBSCRIBED_POLL_INTERVAL);
+  }
+
   /**
    * this method returns true if targetSubStage completed successfully, returns false
    * if targetSubStage is in progress, and throws exception if encounter failures.
@@ -162,4 +221,71 @@ public class XenonTaskStatusStepCmd extends StepCommand {
         throw new IllegalStateException("Unexpected stage: " + taskState.stage);
     }
   }
+
+  /**
+   * Waits for the target sub-stage without holding a thread. Checks requested while a check is running are
+   * coalesced into a single follow-up check, so checks never run concurrently.
+   */
+  private class StatusWait {
+    private final TaskCommandExecutorService executorService;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final AtomicInteger pendingChecks = new AtomicInteger();
+    private volatile ScheduledFuture<?> recheck;
+
+    private StatusWait(TaskCommandExecutorService executorService) {
+      this.executorService = executorService;
+    }
+
+    private CompletableFuture<Void> start() {
+      ScheduledFuture<?> timeoutCheck = executorService.schedule(() -> future.completeExceptionally(
+          new RuntimeException("Xenon task did not complete in timely fashion.")), timeout, TimeUnit.MILLISECONDS);
+      // The subscription triggers the first check once it is in place.
+      TaskCompletionNotifier.Subscription subscription = xenonClient.subscribe(remoteTaskLink, this::trigger);
+
+      future.whenComplete((result, failure) -> {
+        subscription.close();
+        timeoutCheck.cancel(false);
+        ScheduledFuture<?> pendingRecheck = recheck;
+        if (pendingRecheck != null) {
+          pendingRecheck.cancel(false);
+        }
+      });
+      return future;
+    }
+
+    private void trigger() {
+      if (!future.isDone() && pendingChecks.getAndIncrement() == 0) {
+        submitCheck();
+      }
+    }
+
+    private void submitCheck() {
+      try {
+        executorService.execute(this::check);
+      } catch (RejectedExecutionException e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    private void check() {
+      int checks = pendingChecks.get();
+      try {
+        if (checkSubStageCompletion()) {
+          future.complete(null);
+        } else {
+          ScheduledFuture<?> previousRecheck = recheck;
+          if (previousRecheck != null) {
+            previousRecheck.cancel(false);
+          }
+          recheck = executorService.schedule(this::trigger, getRecheckInterval(true), TimeUnit.MILLISECONDS);
+        }
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+
+      if (pendingChecks.addAndGet(-checks) > 0 && !future.isDone()) {
+        submitCheck();
+      }
+    }
+  }
 }
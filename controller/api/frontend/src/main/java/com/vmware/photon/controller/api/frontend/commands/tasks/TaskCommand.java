@@ -15,6 +15,7 @@ package com.vmware.photon.controller.api.frontend.commands.tasks;
 
 import com.vmware.photon.controller.api.frontend.backends.EntityLockBackend;
 import com.vmware.photon.controller.api.frontend.backends.TaskBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.DeployerClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.HousekeeperClient;
@@ -26,7 +27,6 @@ import com.vmware.photon.controller.api.frontend.entities.BaseDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.StepEntity;
 import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.entities.VmEntity;
-import com.vmware.photon.controller.api.frontend.entities.base.BaseEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ConcurrentTaskException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.DiskNotFoundException;
@@ -52,10 +52,17 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * This class extends BaseCommand and represents a long running activity. Its corresponding DB/API
  * object is a Task.
+ * <p>
+ * When the command runs on a {@link TaskCommandExecutorService} each step is handed to the executor as a
+ * continuation once the steps before it have completed, so the command does not hold a worker while its steps run.
+ * Continuations are never rejected, so an accepted task always runs all of its steps.
  */
 public class TaskCommand extends BaseCommand {
 
@@ -78,6 +85,7 @@ public class TaskCommand extends BaseCommand {
   private com.vmware.photon.controller.api.frontend.backends.clients.DeployerClient deployerXenonClient;
   private com.vmware.photon.controller.api.frontend.backends.clients.HousekeeperClient housekeeperXenonClient;
   private EntityLockBackend entityLockBackend;
+  private TaskCommandExecutorService executorService;
 
   @Inject
   public TaskCommand(
@@ -105,27 +113,71 @@ public class TaskCommand extends BaseCommand {
   @Override
   protected void execute() throws ApiFeException, InterruptedException, RpcException {
     steps = getTask().getSteps();
-    for (StepEntity step : steps) {
-      if (!step.getState().equals(StepEntity.State.QUEUED) || step.isDisabled()) {
-        logger.info("Skip running step {}", step);
-        continue;
+    try {
+      // The steps run on the calling thread, so they have all completed once runSteps returns.
+      runSteps(0, Runnable::run).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof ApiFeException) {
+        throw (ApiFeException) e.getCause();
       }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  protected CompletableFuture<Void> executeAsync() {
+    if (executorService == null) {
+      return super.executeAsync();
+    }
+
+    steps = getTask().getSteps();
+    return runSteps(0, executorService::executeContinuation);
+  }
+
+  /**
+   * Runs the queued steps starting at the given index. Each step starts once the steps before it have completed, as
+   * a step may use the results of the steps before it.
+   */
+  private CompletableFuture<Void> runSteps(int first, Executor executor) {
+    int next = first;
+    while (next < steps.size()
+        && (!steps.get(next).getState().equals(StepEntity.State.QUEUED) || steps.get(next).isDisabled())) {
+      logger.info("Skip running step {}", steps.get(next));
+      next++;
+    }
 
-      StepCommand cmd = stepCommandFactory.createCommand(this, step);
-      cmd.run();
+    if (next == steps.size()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    StepEntity step = steps.get(next);
+    StepCommand cmd;
+    try {
+      // a task which has lost one of its locks must not touch its entities anymore
+      entityLockBackend.checkTaskLocks(task);
+      cmd = stepCommandFactory.createCommand(this, step);
+    } catch (Throwable t) {
+      CompletableFuture<Void> failure = new CompletableFuture<>();
+      failure.completeExceptionally(t);
+      return failure;
+    }
 
+    final int remaining = next + 1;
+    return CompletableFuture.supplyAsync(cmd::start, executor).thenCompose(run -> run).thenCompose(ignored -> {
       if (step.getState() != StepEntity.State.COMPLETED) {
-        throw new TaskNotCompletedException(step);
+        throw new CompletionException(new TaskNotCompletedException(step));
       }
-    }
+      return runSteps(remaining, executor);
+    });
   }
 
   @Override
   protected void markAsStarted() throws TaskNotFoundException, ConcurrentTaskException {
     taskBackend.markTaskAsStarted(task);
-    for (BaseEntity toBeLockedEntity : task.getToBeLockedEntities()) {
-      entityLockBackend.setTaskLock(toBeLockedEntity, task);
-    }
+    entityLockBackend.setTaskLocks(task.getToBeLockedEntities(), task);
   }
 
   @Override
@@ -165,6 +217,21 @@ public class TaskCommand extends BaseCommand {
     this.taskBackend = taskBackend;
   }
 
+  /**
+   * Sets the executor which runs the steps of this command. Set by the executor when the command is submitted to it.
+   */
+  public void setExecutorService(TaskCommandExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  /**
+   * Returns the executor which runs the steps of this command, or null if the steps run on the thread running
+   * this command.
+   */
+  public TaskCommandExecutorService getExecutorService() {
+    return executorService;
+  }
+
   @VisibleForTesting
   protected void setStepCommandFactory(StepCommandFactory stepCommandFactory) {
     this.stepCommandFactory = stepCommandFactory;
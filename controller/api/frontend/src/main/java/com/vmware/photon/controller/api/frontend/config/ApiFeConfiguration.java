@@ -42,5 +42,7 @@ public interface ApiFeConfiguration {
 
   public PaginationConfig getPaginationConfig();
 
+  public QuotaConfig getQuotaConfig();
+
   public boolean useVirtualNetwork();
 }
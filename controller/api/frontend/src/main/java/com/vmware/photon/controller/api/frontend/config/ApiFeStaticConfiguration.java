@@ -70,6 +70,10 @@ public class ApiFeStaticConfiguration extends Configuration implements ApiFeConf
   @JsonProperty("pagination")
   private PaginationConfig paginationConfig = new PaginationConfig();
 
+  @Valid
+  @JsonProperty("quota")
+  private QuotaConfig quotaConfig = new QuotaConfig();
+
   @JsonProperty("use_virtual_network")
   private boolean useVirtualNetwork = false;
 
@@ -130,6 +134,11 @@ public class ApiFeStaticConfiguration extends Configuration implements ApiFeConf
     return paginationConfig;
   }
 
+  @Override
+  public QuotaConfig getQuotaConfig() {
+    return quotaConfig;
+  }
+
   @Override
   public boolean useVirtualNetwork() {
     return useVirtualNetwork;
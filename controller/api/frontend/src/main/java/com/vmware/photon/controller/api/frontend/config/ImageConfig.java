@@ -13,10 +13,16 @@
 
 package com.vmware.photon.controller.api.frontend.config;
 
+import com.vmware.transfer.nfc.NfcClient;
+import com.vmware.transfer.nfc.NfcFileOutputStream;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.util.Duration;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
 import java.net.URI;
 
 /**
@@ -41,6 +47,14 @@ public class ImageConfig {
 
   private String datastore;
 
+  /**
+   * Number of bytes sent in each NFC write when uploading image files, at most the NFC transfer size.
+   */
+  @Min(1)
+  @Max(NfcClient.MAX_XFER_SIZE)
+  @JsonProperty("nfc_write_size")
+  private int nfcWriteSize = NfcFileOutputStream.DEFAULT_WRITE_SIZE;
+
   public ImageConfig() {
     replicationTimeout = DEFAULT_IMAGE_REPLICATION_TIMEOUT;
   }
@@ -81,4 +95,12 @@ public class ImageConfig {
   public void setDatastore(String datastore) {
     this.datastore = datastore;
   }
+
+  public int getNfcWriteSize() {
+    return nfcWriteSize;
+  }
+
+  public void setNfcWriteSize(int nfcWriteSize) {
+    this.nfcWriteSize = nfcWriteSize;
+  }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Quota accounting configuration.
+ * <p>
+ * With escrow enabled, each API node reserves slices of the resource tickets it consumes quota from and consumes
+ * quota against its own slices, so that concurrent requests on different nodes do not contend on the ticket. The
+ * usage reported for a ticket then includes the unused part of the slices until they are released.
+ */
+public class QuotaConfig {
+  public static final int DEFAULT_ESCROW_SLICE_SIZE = 10;
+  public static final int DEFAULT_ESCROW_IDLE_RELEASE_SECONDS = 60;
+
+  @JsonProperty("escrow_enabled")
+  private boolean escrowEnabled = false;
+
+  /**
+   * The number of requests of the same cost which a slice is refilled for.
+   */
+  @Min(1)
+  @JsonProperty("escrow_slice_size")
+  private int escrowSliceSize = DEFAULT_ESCROW_SLICE_SIZE;
+
+  /**
+   * The time after which an unused slice is released to its ticket.
+   */
+  @Min(1)
+  @JsonProperty("escrow_idle_release_seconds")
+  private int escrowIdleReleaseSeconds = DEFAULT_ESCROW_IDLE_RELEASE_SECONDS;
+
+  public boolean isEscrowEnabled() {
+    return escrowEnabled;
+  }
+
+  public void setEscrowEnabled(boolean escrowEnabled) {
+    this.escrowEnabled = escrowEnabled;
+  }
+
+  public int getEscrowSliceSize() {
+    return escrowSliceSize;
+  }
+
+  public void setEscrowSliceSize(int escrowSliceSize) {
+    this.escrowSliceSize = escrowSliceSize;
+  }
+
+  public int getEscrowIdleReleaseSeconds() {
+    return escrowIdleReleaseSeconds;
+  }
+
+  public void setEscrowIdleReleaseSeconds(int escrowIdleReleaseSeconds) {
+    this.escrowIdleReleaseSeconds = escrowIdleReleaseSeconds;
+  }
+}
@@ -211,7 +211,9 @@ public class VsphereImageStore implements ImageStore {
     checkArgument(ticket != null, "Null ticket passed to VsphereImageStore.getNfcClient");
 
     try {
-      return new NfcClient(ticket, NFC_CLIENT_TIMEOUT);
+      NfcClient nfcClient = new NfcClient(ticket, NFC_CLIENT_TIMEOUT);
+      nfcClient.setFileWriteSize(config.getNfcWriteSize());
+      return nfcClient;
     } catch (IOException e) {
       logger.error("Failed to create nfc client, due to: {}", e);
       throw new InternalException(e);
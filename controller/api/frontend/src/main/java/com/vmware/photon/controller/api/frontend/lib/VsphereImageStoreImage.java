@@ -63,9 +63,7 @@ public class VsphereImageStoreImage implements Image {
       String imagePath = getImageFilePath(fileName);
       logger.info("write to {}", imagePath);
       try (NfcFileOutputStream outputStream = nfcClient.putFile(imagePath, fileSize)) {
-        for (int i = 0; i < fileSize; i++) {
-          outputStream.write(inputStream.read());
-        }
+        outputStream.transferFrom(inputStream, fileSize);
       }
       return fileSize;
     } finally {
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.auth;
+
+import com.vmware.photon.controller.api.model.SecurityGroup;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link SecurityGroupCache}.
+ */
+public class SecurityGroupCacheTest {
+
+  private AtomicInteger loads;
+
+  private SecurityGroupCache.Loader loader;
+
+  @BeforeMethod
+  public void setUp() {
+    loads = new AtomicInteger();
+    loader = () -> {
+      loads.incrementAndGet();
+      return ImmutableList.of(new SecurityGroup("SG1", true));
+    };
+  }
+
+  @Test
+  public void testHit() throws Throwable {
+    SecurityGroupCache cache = new SecurityGroupCache();
+
+    List<SecurityGroup> first = cache.getTenantSecurityGroups("id", loader);
+    List<SecurityGroup> second = cache.getTenantSecurityGroups("id", loader);
+
+    assertThat(loads.get(), is(1));
+    assertThat(second, is(first));
+    assertThat(second.get(0).getName(), is("SG1"));
+  }
+
+  @Test
+  public void testTenantsAndProjectsAreSeparate() throws Throwable {
+    SecurityGroupCache cache = new SecurityGroupCache();
+
+    cache.getTenantSecurityGroups("id", loader);
+    cache.getProjectSecurityGroups("id", loader);
+
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test
+  public void testInvalidate() throws Throwable {
+    SecurityGroupCache cache = new SecurityGroupCache();
+
+    cache.getTenantSecurityGroups("id", loader);
+    cache.getProjectSecurityGroups("id", loader);
+    cache.invalidateTenant("id");
+    cache.invalidateProject("id");
+    cache.getTenantSecurityGroups("id", loader);
+    cache.getProjectSecurityGroups("id", loader);
+
+    assertThat(loads.get(), is(4));
+  }
+
+  @Test
+  public void testExpiration() throws Throwable {
+    SecurityGroupCache cache = new SecurityGroupCache(1, TimeUnit.MILLISECONDS);
+
+    cache.getTenantSecurityGroups("id", loader);
+    Thread.sleep(10);
+    cache.getTenantSecurityGroups("id", loader);
+
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test
+  public void testNullSecurityGroups() throws Throwable {
+    SecurityGroupCache cache = new SecurityGroupCache();
+
+    List<SecurityGroup> securityGroups = cache.getTenantSecurityGroups("id", () -> null);
+
+    assertThat(securityGroups.isEmpty(), is(true));
+  }
+}
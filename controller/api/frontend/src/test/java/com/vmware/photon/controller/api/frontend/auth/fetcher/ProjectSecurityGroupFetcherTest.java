@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.api.frontend.auth.fetcher;
 
+import com.vmware.photon.controller.api.frontend.auth.SecurityGroupCache;
 import com.vmware.photon.controller.api.frontend.auth.TransactionAuthorizationObject;
 import com.vmware.photon.controller.api.frontend.clients.ProjectFeClient;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ProjectNotFoundException;
@@ -58,7 +59,7 @@ public class ProjectSecurityGroupFetcherTest {
     @BeforeMethod
     private void setUp() {
       projectFeClient = mock(ProjectFeClient.class);
-      fetcher = new ProjectSecurityGroupFetcher(projectFeClient);
+      fetcher = new ProjectSecurityGroupFetcher(projectFeClient, new SecurityGroupCache());
 
       authorizationObject = new TransactionAuthorizationObject(
           TransactionAuthorizationObject.Kind.PROJECT,
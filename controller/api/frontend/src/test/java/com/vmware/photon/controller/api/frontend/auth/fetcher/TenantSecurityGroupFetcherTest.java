@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.api.frontend.auth.fetcher;
 
+import com.vmware.photon.controller.api.frontend.auth.SecurityGroupCache;
 import com.vmware.photon.controller.api.frontend.auth.TransactionAuthorizationObject;
 import com.vmware.photon.controller.api.frontend.clients.TenantFeClient;
 import com.vmware.photon.controller.api.frontend.exceptions.external.TenantNotFoundException;
@@ -28,6 +29,8 @@ import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.util.Set;
 
@@ -64,7 +67,7 @@ public class TenantSecurityGroupFetcherTest {
           TransactionAuthorizationObject.Strategy.SELF,
           "id");
 
-      fetcher = new TenantSecurityGroupFetcher(tenantFeClient);
+      fetcher = new TenantSecurityGroupFetcher(tenantFeClient, new SecurityGroupCache());
     }
 
     /**
@@ -117,5 +120,17 @@ public class TenantSecurityGroupFetcherTest {
       assertThat(groups.size(), is(2));
       assertThat(groups, contains("SG1", "SG2"));
     }
+
+    @Test
+    public void testSecurityGroupsAreCached() throws Throwable {
+      Tenant tenant = new Tenant();
+      tenant.setSecurityGroups(ImmutableList.of(new SecurityGroup("SG1", true)));
+      doReturn(tenant).when(tenantFeClient).get("id");
+
+      fetcher.fetchSecurityGroups(authorizationObject);
+      Set<String> groups = fetcher.fetchSecurityGroups(authorizationObject);
+      assertThat(groups, contains("SG1"));
+      verify(tenantFeClient, times(1)).get("id");
+    }
   }
 }
@@ -19,6 +19,7 @@ import com.vmware.photon.controller.api.frontend.entities.AttachedDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.PersistentDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.entities.VmEntity;
+import com.vmware.photon.controller.api.frontend.exceptions.external.DiskNotFoundException;
 import com.vmware.photon.controller.api.model.AttachedDiskCreateSpec;
 import com.vmware.photon.controller.api.model.DiskCreateSpec;
 import com.vmware.photon.controller.api.model.DiskState;
@@ -49,6 +50,7 @@ import static org.testng.FileAssert.fail;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -212,7 +214,7 @@ public class AttachedDiskXenonBackendTest {
       assertThat(attachedDisks.get(0).getUnderlyingTransientDisk().getState(), is(DiskState.CREATING));
 
 
-      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity));
+      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity)).join();
       assertThat(vmEntity.getAttachedDisks().size(), is(1));
       assertThat(vmEntity.getAttachedDisks().get(0).getPersistentDiskId(), notNullValue());
       assertThat(vmEntity.getAttachedDisks().get(0).getKind(), is(PersistentDisk.KIND));
@@ -232,6 +234,19 @@ public class AttachedDiskXenonBackendTest {
       assertThat(attachedDiskEntities.size(), is(2));
     }
 
+    @Test
+    public void testFindByVmIds() throws Exception {
+      attachedDiskBackend.createAttachedDisks(vmEntity, ImmutableList.of(spec));
+      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity)).join();
+      String otherVmId = UUID.randomUUID().toString();
+
+      Map<String, List<AttachedDiskEntity>> attachedDiskEntities =
+          attachedDiskBackend.findByVmIds(ImmutableList.of(vmEntity.getId(), otherVmId));
+      assertThat(attachedDiskEntities.size(), is(2));
+      assertThat(attachedDiskEntities.get(vmEntity.getId()).size(), is(2));
+      assertThat(attachedDiskEntities.get(otherVmId).size(), is(0));
+    }
+
     @Test
     public void testCreateInvalidAttachedDisk() throws Exception {
       spec.setKind(PersistentDisk.KIND);
@@ -356,7 +371,7 @@ public class AttachedDiskXenonBackendTest {
     @Test
     public void testDeleteAttachedDisk() throws Exception {
       PersistentDiskEntity persistentDiskEntity = (PersistentDiskEntity) diskBackend.find(PersistentDisk.KIND, diskId);
-      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity));
+      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity)).join();
 
       assertThat(vmEntity.getAttachedDisks().size(), is(1));
       assertThat(vmEntity.getAttachedDisks().get(0).getPersistentDiskId(), notNullValue());
@@ -379,21 +394,38 @@ public class AttachedDiskXenonBackendTest {
     public void testDeleteAttachedDisks() throws Exception {
       PersistentDiskEntity diskEntity1 = (PersistentDiskEntity) diskBackend.find(PersistentDisk.KIND, diskId);
       PersistentDiskEntity diskEntity2 = (PersistentDiskEntity) diskBackend.find(PersistentDisk.KIND, diskId2);
-      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(diskEntity1, diskEntity2));
+      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(diskEntity1, diskEntity2)).join();
 
       assertThat(vmEntity.getAttachedDisks().size(), is(2));
       assertThat(attachedDiskBackend.findAttachedDisk(diskEntity1), notNullValue());
       assertThat(attachedDiskBackend.findAttachedDisk(diskEntity2), notNullValue());
 
-      attachedDiskBackend.deleteAttachedDisks(vmEntity, ImmutableList.of(diskEntity1, diskEntity2));
+      attachedDiskBackend.deleteAttachedDisks(vmEntity, ImmutableList.of(diskEntity1, diskEntity2)).join();
       assertThat(attachedDiskBackend.findAttachedDisk(diskEntity1), nullValue());
       assertThat(attachedDiskBackend.findAttachedDisk(diskEntity2), nullValue());
     }
 
+    @Test
+    public void testDeleteAttachedDisksOfMissingDisk() throws Exception {
+      PersistentDiskEntity diskEntity = (PersistentDiskEntity) diskBackend.find(PersistentDisk.KIND, diskId);
+      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(diskEntity)).join();
+
+      PersistentDiskEntity missingDisk = new PersistentDiskEntity();
+      missingDisk.setId("missing-disk-id");
+      try {
+        attachedDiskBackend.deleteAttachedDisks(vmEntity, ImmutableList.of(diskEntity, missingDisk));
+        fail("should have failed with DiskNotFoundException");
+      } catch (DiskNotFoundException e) {
+      }
+
+      assertThat(attachedDiskBackend.findAttachedDisk(diskEntity), notNullValue());
+      assertThat(vmEntity.getAttachedDisks().size(), is(1));
+    }
+
     @Test
     public void testDeleteAttachedDiskById() throws Exception {
       PersistentDiskEntity persistentDiskEntity = (PersistentDiskEntity) diskBackend.find(PersistentDisk.KIND, diskId);
-      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity));
+      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity)).join();
 
       List<AttachedDiskEntity> attachedDiskEntities = attachedDiskBackend.findByVmId(vmEntity.getId());
       assertThat(attachedDiskEntities.size(), is(1));
@@ -57,8 +57,10 @@ import static org.testng.AssertJUnit.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -497,6 +499,31 @@ public class DiskXenonBackendTest {
       assertThat(persistentDiskList.getItems().get(0).getName(), is("disk-1"));
     }
 
+    @Test
+    public void testFindByIds() throws Exception {
+      Map<String, String> diskKinds = new HashMap<>();
+      spec.setCapacityGb(1);
+      for (int i = 0; i <= PaginationConfig.DEFAULT_MAX_PAGE_SIZE; i++) {
+        spec.setName("disk-" + i);
+        diskKinds.put(diskBackend.prepareDiskCreate(projectId, spec).getEntityId(), PersistentDisk.KIND);
+      }
+
+      Map<String, BaseDiskEntity> diskEntities = diskBackend.findByIds(diskKinds);
+      assertThat(diskEntities.size(), is(diskKinds.size()));
+      for (String id : diskKinds.keySet()) {
+        assertThat(diskEntities.get(id).getId(), is(id));
+        assertThat(diskEntities.get(id).getKind(), is(PersistentDisk.KIND));
+      }
+
+      diskKinds.put("invalid-disk", PersistentDisk.KIND);
+      try {
+        diskBackend.findByIds(diskKinds);
+        fail("should have failed with DiskNotFoundException.");
+      } catch (DiskNotFoundException e) {
+        assertThat(e.getMessage(), is("Disk #invalid-disk not found"));
+      }
+    }
+
     @Test
     public void testDiskExistsUsingFlavor() throws Exception {
       TaskEntity taskEntity = diskBackend.prepareDiskCreate(projectId, spec);
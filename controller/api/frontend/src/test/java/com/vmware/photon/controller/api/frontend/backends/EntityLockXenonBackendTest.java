@@ -28,12 +28,18 @@ import com.vmware.photon.controller.api.model.Image;
 import com.vmware.photon.controller.api.model.Iso;
 import com.vmware.photon.controller.api.model.PersistentDisk;
 import com.vmware.photon.controller.api.model.Vm;
+import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLeaseService;
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
+import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
 import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import org.junit.AfterClass;
+import org.mockito.ArgumentCaptor;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -43,11 +49,19 @@ import org.testng.annotations.Test;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.net.HttpURLConnection;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Tests {@link EntityLockXenonBackend}.
@@ -188,6 +202,31 @@ public class EntityLockXenonBackendTest {
       }
     }
 
+    @Test
+    public void testSetTaskLocksIsAllOrNothing() throws Throwable {
+      VmEntity vmEntity = new VmEntity();
+      vmEntity.setId(UUID.randomUUID().toString());
+      PersistentDiskEntity diskEntity = new PersistentDiskEntity();
+      diskEntity.setId(UUID.randomUUID().toString());
+      entityLockXenonBackend.setTaskLock(diskEntity, taskEntity);
+
+      TaskEntity taskEntityOther = new TaskEntity();
+      taskEntityOther.setId("task-id-other");
+      try {
+        entityLockXenonBackend.setTaskLocks(ImmutableList.of(vmEntity, diskEntity), taskEntityOther);
+        fail("should have failed with ConcurrentTaskException");
+      } catch (ConcurrentTaskException ignored) {
+      }
+
+      assertThat(taskEntityOther.getLockedEntityIds().size(), is(0));
+      assertThat(entityLockXenonBackend.lockExistsForEntityId(vmEntity.getId()), is(false));
+      assertThat(entityLockXenonBackend.lockExistsForEntityId(diskEntity.getId()), is(true));
+
+      entityLockXenonBackend.clearTaskLocks(taskEntity);
+      entityLockXenonBackend.setTaskLocks(ImmutableList.of(vmEntity, diskEntity), taskEntityOther);
+      assertThat(taskEntityOther.getLockedEntityIds().size(), is(2));
+    }
+
     @Test
     public void testSetLockNullEntity() throws Throwable {
       try {
@@ -328,4 +367,102 @@ public class EntityLockXenonBackendTest {
     }
   }
 
+  /**
+   * Tests for failed lease requests.
+   */
+  public static class FailedRequestTest {
+
+    private ApiFeXenonRestClient xenonClient;
+
+    private EntityLockXenonBackend entityLockXenonBackend;
+
+    private TaskEntity taskEntity;
+
+    private VmEntity vmEntity;
+
+    private PersistentDiskEntity diskEntity;
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      xenonClient = mock(ApiFeXenonRestClient.class);
+      entityLockXenonBackend = new EntityLockXenonBackend(xenonClient);
+
+      taskEntity = new TaskEntity();
+      taskEntity.setId("task-id");
+      vmEntity = new VmEntity();
+      vmEntity.setId(UUID.randomUUID().toString());
+      diskEntity = new PersistentDiskEntity();
+      diskEntity.setId(UUID.randomUUID().toString());
+    }
+
+    @Test
+    public void testSetTaskLocksRollsBackOnRuntimeException() throws Throwable {
+      CompletableFuture<Operation> interrupted = new CompletableFuture<>();
+      interrupted.completeExceptionally(new RuntimeException(new InterruptedException()));
+      when(xenonClient.postAsync(anyString(), any(ServiceDocument.class)))
+          .thenReturn(leaseGranted(1L))
+          .thenReturn(interrupted);
+      when(xenonClient.putAsync(anyString(), any(ServiceDocument.class)))
+          .thenReturn(CompletableFuture.completedFuture(new Operation()));
+
+      try {
+        entityLockXenonBackend.setTaskLocks(ImmutableList.of(vmEntity, diskEntity), taskEntity);
+        fail("should have failed with RuntimeException");
+      } catch (RuntimeException e) {
+        assertThat(e.getCause(), is(instanceOf(InterruptedException.class)));
+      }
+
+      ArgumentCaptor<EntityLeaseService.State> release = ArgumentCaptor.forClass(EntityLeaseService.State.class);
+      verify(xenonClient).putAsync(anyString(), release.capture());
+      assertThat(release.getValue().entityId, is(vmEntity.getId()));
+      assertThat(release.getValue().leaseToken, is(1L));
+      assertThat(release.getValue().leaseOperation, is(EntityLeaseService.State.LeaseOperation.RELEASE));
+      assertThat(taskEntity.getLockedEntityIds().contains(vmEntity), is(false));
+    }
+
+    @Test
+    public void testClearTaskLocksForgetsLeaseWhenReleaseFails() throws Throwable {
+      when(xenonClient.postAsync(anyString(), any(ServiceDocument.class))).thenReturn(leaseGranted(1L));
+      CompletableFuture<Operation> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new RuntimeException("release failed"));
+      when(xenonClient.putAsync(anyString(), any(ServiceDocument.class))).thenReturn(failed);
+
+      entityLockXenonBackend.setTaskLock(vmEntity, taskEntity);
+      entityLockXenonBackend.clearTaskLocks(taskEntity);
+      assertThat(taskEntity.getLockedEntityIds().size(), is(1));
+
+      // the lease is no longer held by this node, so a second release no longer carries its token
+      entityLockXenonBackend.clearTaskLocks(taskEntity);
+
+      ArgumentCaptor<EntityLeaseService.State> release = ArgumentCaptor.forClass(EntityLeaseService.State.class);
+      verify(xenonClient, times(2)).putAsync(anyString(), release.capture());
+      assertThat(release.getAllValues().get(0).leaseToken, is(1L));
+      assertThat(release.getAllValues().get(1).leaseToken, is(nullValue()));
+    }
+
+    @Test
+    public void testCheckTaskLocksFailsOnLostLease() throws Throwable {
+      when(xenonClient.postAsync(anyString(), any(ServiceDocument.class))).thenReturn(leaseGranted(1L));
+      entityLockXenonBackend.setTaskLock(vmEntity, taskEntity);
+      entityLockXenonBackend.checkTaskLocks(taskEntity);
+
+      // the lease has been granted to another task, so its renewal is rejected
+      CompletableFuture<Operation> lost = new CompletableFuture<>();
+      lost.completeExceptionally(new BadRequestException(new Operation(), new Operation()));
+      when(xenonClient.putAsync(anyString(), any(ServiceDocument.class))).thenReturn(lost);
+      entityLockXenonBackend.renewLeases();
+
+      try {
+        entityLockXenonBackend.checkTaskLocks(taskEntity);
+        fail("should have failed with ConcurrentTaskException");
+      } catch (ConcurrentTaskException e) {
+      }
+    }
+
+    private static CompletableFuture<Operation> leaseGranted(Long leaseToken) {
+      EntityLeaseService.State lease = new EntityLeaseService.State();
+      lease.leaseToken = leaseToken;
+      return CompletableFuture.completedFuture(new Operation().setBody(lease));
+    }
+  }
 }
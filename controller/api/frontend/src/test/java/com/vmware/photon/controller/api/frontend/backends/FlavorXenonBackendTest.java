@@ -15,6 +15,7 @@ package com.vmware.photon.controller.api.frontend.backends;
 
 import com.vmware.photon.controller.api.frontend.TestModule;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
 import com.vmware.photon.controller.api.frontend.entities.FlavorEntity;
 import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.FlavorNotFoundException;
@@ -54,7 +55,9 @@ import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -362,6 +365,24 @@ public class FlavorXenonBackendTest {
 
       assertThat(flavorSet.size(), is(documentCount));
     }
+
+    @Test
+    public void testGetEntitiesByIds() throws Throwable {
+      List<String> ids = new ArrayList<>();
+      for (int i = 0; i < 2 * PaginationConfig.DEFAULT_MAX_PAGE_SIZE; i++) {
+        ids.add(UUID.randomUUID().toString());
+      }
+      String flavorId1 = flavorBackend.createFlavor(createTestFlavorSpec(Vm.KIND)).getEntityId();
+      String flavorId2 = flavorBackend.createFlavor(createTestFlavorSpec(Vm.KIND)).getEntityId();
+      ids.set(0, flavorId1);
+      ids.set(ids.size() - 1, flavorId2);
+
+      List<FlavorEntity> flavors = flavorBackend.getEntitiesByIds(ids);
+      assertThat(flavors.size(), is(2));
+      assertThat(flavors.get(0).getId(), anyOf(is(flavorId1), is(flavorId2)));
+      assertThat(flavors.get(1).getId(), anyOf(is(flavorId1), is(flavorId2)));
+      assertThat(flavors.get(0).getId(), is(not(flavors.get(1).getId())));
+    }
   }
 
   /**
@@ -17,6 +17,7 @@ import com.vmware.photon.controller.api.frontend.Data;
 import com.vmware.photon.controller.api.frontend.TestModule;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
+import com.vmware.photon.controller.api.frontend.config.QuotaConfig;
 import com.vmware.photon.controller.api.frontend.entities.QuotaLineItemEntity;
 import com.vmware.photon.controller.api.frontend.entities.ResourceTicketEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ErrorCode;
@@ -41,6 +42,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import org.junit.AfterClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Guice;
@@ -56,12 +59,18 @@ import static org.testng.Assert.fail;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests {@link ResourceTicketXenonBackend}.
  */
 public class ResourceTicketXenonBackendTest {
 
+  private static final Logger logger = LoggerFactory.getLogger(ResourceTicketXenonBackendTest.class);
+
   private static ApiFeXenonRestClient xenonClient;
   private static BasicServiceHost host;
 
@@ -1061,4 +1070,176 @@ public class ResourceTicketXenonBackendTest {
       return projectTickets;
     }
   }
+
+  /**
+   * Tests for consuming quota through the escrow of this node.
+   */
+  @Guice(modules = {XenonBackendTestModule.class, TestModule.class})
+  public static class EscrowTest {
+
+    private static final int CONSUMERS = 8;
+
+    private static final int CONSUMES = 200;
+
+    @Inject
+    private BasicServiceHost basicServiceHost;
+
+    @Inject
+    private ApiFeXenonRestClient apiFeXenonRestClient;
+
+    @Inject
+    private TenantXenonBackend tenantXenonBackend;
+
+    @Inject
+    private TaskBackend taskBackend;
+
+    private ResourceTicketEscrow escrow;
+    private ResourceTicketXenonBackend escrowBackend;
+    private ResourceTicketXenonBackend ticketBackend;
+    private String tenantId;
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      commonHostAndClientSetup(basicServiceHost, apiFeXenonRestClient);
+
+      QuotaConfig quotaConfig = new QuotaConfig();
+      quotaConfig.setEscrowEnabled(true);
+      quotaConfig.setEscrowSliceSize(4);
+      escrow = new ResourceTicketEscrow(apiFeXenonRestClient, quotaConfig);
+      escrowBackend = new ResourceTicketXenonBackend(apiFeXenonRestClient, tenantXenonBackend, taskBackend, escrow);
+      ticketBackend = new ResourceTicketXenonBackend(apiFeXenonRestClient, tenantXenonBackend, taskBackend,
+          new ResourceTicketEscrow(apiFeXenonRestClient, new QuotaConfig()));
+
+      tenantId = XenonBackendTestHelper.createTenant(tenantXenonBackend, "t1");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      commonHostDocumentsCleanup();
+    }
+
+    @AfterClass
+    public static void afterClassCleanup() throws Throwable {
+      commonHostAndClientTeardown();
+    }
+
+    @Test
+    public void testConsumeQuotaStopsAtLimit() throws Throwable {
+      String resourceTicketId = createTicket("rt1", 10);
+      QuotaCost cost = new QuotaCost(ImmutableList.of(new QuotaLineItemEntity(QuotaLineItem.VM, 1, QuotaUnit.COUNT)));
+
+      for (int i = 0; i < 10; i++) {
+        escrowBackend.consumeQuota(resourceTicketId, cost);
+      }
+
+      try {
+        escrowBackend.consumeQuota(resourceTicketId, cost);
+        fail("consume quota exceeding limit should have failed");
+      } catch (QuotaException e) {
+        assertThat(e.getLimit().getValue(), is(10.0));
+      }
+
+      escrowBackend.returnQuota(resourceTicketId, cost);
+      escrow.releaseAll();
+
+      assertThat(escrowBackend.findById(resourceTicketId).getUsage(QuotaLineItem.VM).getValue(), is(9.0));
+      assertThat(escrowBackend.filterByParentId(resourceTicketId).isEmpty(), is(true));
+    }
+
+    /**
+     * Consumes quota of a nearly full ticket from the escrows of two nodes. The second node gets the room the first
+     * node left, and reclaims the unused part of the first node's escrow once it has been idle for a release period.
+     */
+    @Test
+    public void testTwoNodesShareNearlyFullTicket() throws Throwable {
+      QuotaConfig otherQuotaConfig = new QuotaConfig();
+      otherQuotaConfig.setEscrowEnabled(true);
+      otherQuotaConfig.setEscrowSliceSize(4);
+      otherQuotaConfig.setEscrowIdleReleaseSeconds(1);
+      ResourceTicketEscrow otherEscrow = new ResourceTicketEscrow(apiFeXenonRestClient, otherQuotaConfig);
+      ResourceTicketXenonBackend otherBackend =
+          new ResourceTicketXenonBackend(apiFeXenonRestClient, tenantXenonBackend, taskBackend, otherEscrow);
+
+      String resourceTicketId = createTicket("rt1", 10);
+      QuotaCost cost = new QuotaCost(ImmutableList.of(new QuotaLineItemEntity(QuotaLineItem.VM, 1, QuotaUnit.COUNT)));
+
+      // The escrow of the first node takes slices of 4 and 3 and keeps 2 of them unused.
+      for (int i = 0; i < 5; i++) {
+        escrowBackend.consumeQuota(resourceTicketId, cost);
+      }
+      assertThat(ticketBackend.findById(resourceTicketId).getUsage(QuotaLineItem.VM).getValue(), is(7.0));
+
+      for (int i = 0; i < 3; i++) {
+        otherBackend.consumeQuota(resourceTicketId, cost);
+      }
+
+      Thread.sleep(TimeUnit.SECONDS.toMillis(otherQuotaConfig.getEscrowIdleReleaseSeconds()) + 500);
+      for (int i = 0; i < 2; i++) {
+        otherBackend.consumeQuota(resourceTicketId, cost);
+      }
+
+      try {
+        otherBackend.consumeQuota(resourceTicketId, cost);
+        fail("consume quota exceeding limit should have failed");
+      } catch (QuotaException e) {
+        assertThat(e.getLimit().getValue(), is(10.0));
+      }
+
+      escrow.releaseAll();
+      otherEscrow.releaseAll();
+
+      assertThat(ticketBackend.findById(resourceTicketId).getUsage(QuotaLineItem.VM).getValue(), is(10.0));
+      assertThat(ticketBackend.filterByParentId(resourceTicketId).isEmpty(), is(true));
+    }
+
+    /**
+     * Consumes quota of one ticket from concurrent requests, once directly from the ticket and once through the
+     * escrow, and checks that both account the same usage. The elapsed times are logged for comparison.
+     */
+    @Test
+    public void testConcurrentConsumeQuota() throws Throwable {
+      String directTicketId = createTicket("rt1", CONSUMES);
+      String escrowTicketId = createTicket("rt2", CONSUMES);
+
+      long directMillis = consumeConcurrently(ticketBackend, directTicketId);
+      long escrowMillis = consumeConcurrently(escrowBackend, escrowTicketId);
+      escrow.releaseAll();
+
+      logger.info("Consumed {} quota items from {} threads in {} ms from the ticket and in {} ms from the escrow",
+          CONSUMES, CONSUMERS, directMillis, escrowMillis);
+
+      assertThat(ticketBackend.findById(directTicketId).getUsage(QuotaLineItem.VM).getValue(),
+          is((double) CONSUMES));
+      assertThat(ticketBackend.findById(escrowTicketId).getUsage(QuotaLineItem.VM).getValue(),
+          is((double) CONSUMES));
+    }
+
+    private String createTicket(String name, double vmLimit) throws Throwable {
+      ResourceTicketCreateSpec spec = new ResourceTicketCreateSpec();
+      spec.setName(name);
+      spec.setLimits(ImmutableList.of(new QuotaLineItem(QuotaLineItem.VM, vmLimit, QuotaUnit.COUNT)));
+      return ticketBackend.create(tenantId, spec).getId();
+    }
+
+    private long consumeConcurrently(ResourceTicketBackend backend, String resourceTicketId) throws Throwable {
+      QuotaCost cost = new QuotaCost(ImmutableList.of(new QuotaLineItemEntity(QuotaLineItem.VM, 1, QuotaUnit.COUNT)));
+      ExecutorService executor = Executors.newFixedThreadPool(CONSUMERS);
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < CONSUMES; i++) {
+          futures.add(executor.submit(() -> {
+            backend.consumeQuota(resourceTicketId, cost);
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+        return System.currentTimeMillis() - start;
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
 }
@@ -19,7 +19,6 @@ import com.vmware.photon.controller.api.frontend.backends.clients.HousekeeperCli
 import com.vmware.photon.controller.api.frontend.backends.clients.PhotonControllerXenonRestClient;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
-import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.OutOfThreadPoolWorkerException;
 import com.vmware.photon.controller.common.clients.HostClient;
@@ -34,6 +33,7 @@ import static org.hamcrest.Matchers.is;
 import static org.powermock.api.mockito.PowerMockito.mock;
 
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -73,21 +73,109 @@ public class TaskCommandExecutorServiceTest {
         0L,
         TimeUnit.MILLISECONDS,
         new ArrayBlockingQueue<Runnable>(poolBufferSize),
-        new ThreadFactoryBuilder().setNameFormat("BackendWorker" + "-%d").build()
+        new ThreadFactoryBuilder().setNameFormat("BackendWorker" + "-%d").build(),
+        extra
     );
     CountDownLatch countDownLatch = new CountDownLatch(1);
 
     // fill thread pool
     TestTaskCommand[] commands = startCommands(service, poolSize + poolBufferSize, countDownLatch);
 
-    // try to submit extra commands - these should all fail
+    // submit extra commands - these should be queued instead of rejected
     TestTaskCommand[] extraCommands = startCommands(service, extra, null);
+    assertThat(service.getOverflowQueueSize(), is(extra));
+
+    // try to submit more commands than the overflow queue holds - these should all fail
+    TestTaskCommand[] rejectedCommands = startCommands(service, 2, null);
+    assertThat(getFailureCount(rejectedCommands), is(2));
 
     // release threads
     countDownLatch.countDown();
 
     assertThat(getFailureCount(commands), is(0));
-    assertThat(getFailureCount(extraCommands), is(extra));
+    assertThat(getFailureCount(extraCommands), is(0));
+    assertThat(service.getOverflowQueueSize(), is(0));
+  }
+
+  @Test
+  public void testSubmitAfterShutdown() throws Exception {
+    final TaskCommandExecutorService service = new TaskCommandExecutorService(
+        1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(1),
+        new ThreadFactoryBuilder().setNameFormat("BackendWorker" + "-%d").build()
+    );
+    service.shutdown();
+
+    TestTaskCommand[] commands = startCommands(service, 1, null);
+    assertThat(getFailureCount(commands), is(1));
+  }
+
+  @Test
+  public void testContinuationsAreNeverRejected() throws Exception {
+    final TaskCommandExecutorService service = new TaskCommandExecutorService(
+        1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(1),
+        new ThreadFactoryBuilder().setNameFormat("BackendWorker" + "-%d").build(),
+        1
+    );
+    CountDownLatch countDownLatch = new CountDownLatch(1);
+
+    // fill thread pool and overflow queue
+    TestTaskCommand[] commands = startCommands(service, 3, countDownLatch);
+    assertThat(service.getOverflowQueueSize(), is(1));
+
+    // new commands are rejected while the continuations of accepted commands are queued
+    TestTaskCommand[] rejectedCommands = startCommands(service, 1, null);
+    CountDownLatch continuations = new CountDownLatch(5);
+    for (int i = 0; i < 5; i++) {
+      service.executeContinuation(continuations::countDown);
+    }
+    assertThat(service.getContinuationQueueSize(), is(5));
+
+    // release threads
+    countDownLatch.countDown();
+
+    assertThat(continuations.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(getFailureCount(rejectedCommands), is(1));
+    assertThat(getFailureCount(commands), is(0));
+    assertThat(service.getContinuationQueueSize(), is(0));
+  }
+
+  @Test
+  public void testSubmitCompletesWhenCommandIsDone() throws Exception {
+    final TaskCommandExecutorService service = new TaskCommandExecutorService(
+        1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(1),
+        new ThreadFactoryBuilder().setNameFormat("BackendWorker" + "-%d").build()
+    );
+    TaskEntity task = new TaskEntity();
+    task.setId("t0");
+    TestTaskCommand command = new TestTaskCommand(xenonClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, deployerClient, deployerXenonClient, housekeeperXenonClient, task, null);
+    CompletableFuture<Void> execution = new CompletableFuture<>();
+    command.setExecution(execution);
+
+    CompletableFuture<Void> completion = service.submit(command);
+
+    // the worker is released while the command waits for its steps
+    while (service.getCompletedTaskCount() == 0) {
+      Thread.sleep(10);
+    }
+    assertThat(completion.isDone(), is(false));
+    assertThat(command.isDone(), is(false));
+
+    execution.complete(null);
+    completion.get(10, TimeUnit.SECONDS);
+    assertThat(command.isDone(), is(true));
   }
 
   private int getFailureCount(TestTaskCommand[] commands) throws InterruptedException {
@@ -138,6 +226,7 @@ public class TaskCommandExecutorServiceTest {
     private final CountDownLatch countDownLatch;
     private volatile Throwable exception = null;
     private volatile boolean done = false;
+    private CompletableFuture<Void> execution = CompletableFuture.completedFuture(null);
 
     public TestTaskCommand(
         ApiFeXenonRestClient xenonClient,
@@ -155,10 +244,20 @@ public class TaskCommandExecutorServiceTest {
     }
 
     @Override
-    protected void execute() throws ApiFeException, InterruptedException {
+    protected CompletableFuture<Void> executeAsync() {
+      // Holds the worker like a step which is blocked on a remote call.
       if (null != countDownLatch) {
-        countDownLatch.await();
+        try {
+          countDownLatch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
       }
+      return execution;
+    }
+
+    public void setExecution(CompletableFuture<Void> execution) {
+      this.execution = execution;
     }
 
     @Override
@@ -36,9 +36,13 @@ import com.vmware.photon.controller.api.model.PersistentDisk;
 import com.vmware.photon.controller.api.model.ResourceList;
 import com.vmware.photon.controller.api.model.Task;
 import com.vmware.photon.controller.api.model.Vm;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 
+import com.codahale.metrics.Counter;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import org.joda.time.DateTime;
@@ -47,6 +51,7 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Guice;
 import org.testng.annotations.Test;
+import static com.codahale.metrics.MetricRegistry.name;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
@@ -54,6 +59,7 @@ import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Mockito.mock;
+import static org.testng.Assert.fail;
 
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -61,6 +67,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests {@link TaskXenonBackend}.
@@ -427,6 +437,94 @@ public class TaskXenonBackendTest {
       assertThat(createdTask.getSteps().get(0).getId(), is(createdStep.getId()));
     }
 
+    @Test
+    public void testProgressUpdatesAreWrittenWithTerminalState() throws Throwable {
+      Counter savedPatches = DefaultMetricRegistry.REGISTRY.counter(name(TaskXenonBackend.class, "saved-patches"));
+      long savedPatchesBefore = savedPatches.getCount();
+
+      TaskEntity taskEntity = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
+      StepEntity stepEntity1 = stepBackend.createQueuedStep(taskEntity, Operation.RESERVE_RESOURCE);
+      StepEntity stepEntity2 = stepBackend.createQueuedStep(taskEntity, Operation.CREATE_VM);
+
+      taskBackend.markTaskAsStarted(taskEntity);
+      stepBackend.markStepAsStarted(stepEntity1);
+      stepBackend.markStepAsDone(stepEntity1);
+      stepBackend.markStepAsStarted(stepEntity2);
+      stepBackend.markStepAsDone(stepEntity2);
+      taskBackend.markTaskAsDone(taskEntity);
+
+      taskEntity = taskBackend.findById(taskEntity.getId());
+      assertThat(taskEntity.getState(), is(TaskEntity.State.COMPLETED));
+      assertThat(taskEntity.getStartedTime(), is(notNullValue()));
+      assertThat(taskEntity.getEndTime(), is(notNullValue()));
+      for (StepEntity stepEntity : taskEntity.getSteps()) {
+        assertThat(stepEntity.getState(), is(StepEntity.State.COMPLETED));
+        assertThat(stepEntity.getStartedTime(), is(notNullValue()));
+        assertThat(stepEntity.getEndTime(), is(notNullValue()));
+      }
+      assertThat(savedPatches.getCount(), is(greaterThan(savedPatchesBefore)));
+    }
+
+    @Test
+    public void testProgressIsWrittenOnBackendExecutor() throws Throwable {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        TaskXenonBackend backend = new TaskXenonBackend(apiFeXenonRestClient, mock(EntityLockBackend.class), executor);
+        TaskEntity taskEntity = backend.createQueuedTask(vmEntity, Operation.CREATE_VM);
+
+        backend.markTaskAsStarted(taskEntity);
+
+        // Read the document directly, as reads through the backend would write the buffered progress themselves.
+        long deadline = System.currentTimeMillis() + TaskXenonBackend.PROGRESS_FLUSH_DELAY_MILLIS
+            + TimeUnit.SECONDS.toMillis(10);
+        TaskService.State taskState;
+        do {
+          Thread.sleep(100);
+          taskState = apiFeXenonRestClient.get(TaskServiceFactory.SELF_LINK + "/" + taskEntity.getId())
+              .getBody(TaskService.State.class);
+        } while (taskState.state != TaskService.State.TaskState.STARTED && System.currentTimeMillis() < deadline);
+
+        assertThat(taskState.state, is(TaskService.State.TaskState.STARTED));
+        assertThat(taskState.startedTime, is(notNullValue()));
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    @Test
+    public void testQueryWritesBufferedProgress() throws Throwable {
+      TaskEntity taskEntity = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
+      taskBackend.markTaskAsStarted(taskEntity);
+
+      ResourceList<Task> tasks = taskBackend.filter(vmEntity.getId(), vmEntity.getKind(),
+          Optional.of(TaskEntity.State.STARTED.toString()), Optional.absent());
+
+      assertThat(tasks.getItems().size(), is(1));
+      assertThat(tasks.getItems().get(0).getId(), is(taskEntity.getId()));
+    }
+
+    @Test
+    public void testQueryWritesBufferedProgressOfEntityOnly() throws Throwable {
+      TaskEntity taskEntity = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
+      taskBackend.markTaskAsStarted(taskEntity);
+
+      VmEntity otherVmEntity = new VmEntity();
+      otherVmEntity.setId(UUID.randomUUID().toString());
+      TaskEntity otherTaskEntity = taskBackend.createQueuedTask(otherVmEntity, Operation.CREATE_VM);
+      taskBackend.markTaskAsStarted(otherTaskEntity);
+
+      taskBackend.filter(vmEntity.getId(), vmEntity.getKind(), Optional.absent(), Optional.absent());
+
+      // Read the documents directly, as reads through the backend would write the buffered progress themselves.
+      TaskService.State taskState = apiFeXenonRestClient.get(TaskServiceFactory.SELF_LINK + "/" + taskEntity.getId())
+          .getBody(TaskService.State.class);
+      assertThat(taskState.state, is(TaskService.State.TaskState.STARTED));
+      TaskService.State otherTaskState = apiFeXenonRestClient
+          .get(TaskServiceFactory.SELF_LINK + "/" + otherTaskEntity.getId())
+          .getBody(TaskService.State.class);
+      assertThat(otherTaskState.state, is(TaskService.State.TaskState.QUEUED));
+    }
+
     @Test
     public void testAddResourcePropertiesToTask() throws ExternalException {
       TaskEntity task = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
@@ -484,6 +582,26 @@ public class TaskXenonBackendTest {
       taskBackend.findById(UUID.randomUUID().toString());
     }
 
+    @Test
+    public void testFindByIdAsync() throws Throwable {
+      TaskEntity task = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
+      taskBackend.markTaskAsStarted(task);
+
+      TaskEntity foundTask = taskBackend.findByIdAsync(task.getId()).join();
+      assertThat(foundTask.getId(), is(task.getId()));
+      assertThat(foundTask.getState(), is(TaskEntity.State.STARTED));
+    }
+
+    @Test
+    public void testFindByIdAsyncFailure() throws Throwable {
+      try {
+        taskBackend.findByIdAsync(UUID.randomUUID().toString()).join();
+        fail("taskBackend.findByIdAsync for a non existing id should have failed");
+      } catch (CompletionException e) {
+        assertThat(e.getCause() instanceof TaskNotFoundException, is(true));
+      }
+    }
+
     @Test
     public void testGetById() throws Throwable {
       TaskEntity task = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
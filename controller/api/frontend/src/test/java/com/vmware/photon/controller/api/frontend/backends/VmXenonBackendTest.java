@@ -121,6 +121,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -485,6 +487,62 @@ public class VmXenonBackendTest {
       }
     }
 
+    @Test
+    public void testFindByIdAsync() throws Throwable {
+      VmEntity foundVmEntity = vmXenonBackend.findByIdAsync(vmId).join();
+      assertThat(foundVmEntity.getId(), is(vmId));
+      assertThat(foundVmEntity.getName(), is(vm.name));
+      assertThat(foundVmEntity.getState(), is(vm.vmState));
+    }
+
+    @Test
+    public void testFindByIdAsyncWithNonExistingId() throws Throwable {
+      String id = UUID.randomUUID().toString();
+      try {
+        vmXenonBackend.findByIdAsync(id).join();
+        fail("vmXenonBackend.findByIdAsync for a non existing id should have failed");
+      } catch (CompletionException e) {
+        assertThat(e.getCause() instanceof VmNotFoundException, is(true));
+        assertThat(e.getCause().getMessage(), containsString(id));
+      }
+    }
+
+    @Test
+    public void testUpdateStateAsync() throws Throwable {
+      VmEntity vmEntity = vmXenonBackend.findById(vmId);
+      Map<String, VmService.NetworkInfo> networkInfo = new HashMap<>();
+      VmService.NetworkInfo network = new VmService.NetworkInfo();
+      network.id = "network-id";
+      networkInfo.put(network.id, network);
+
+      CompletableFuture<Void> update = vmXenonBackend.updateStateAsync(vmEntity, VmState.STOPPED, "agent-id",
+          "1.1.1.1", "datastore-id", "datastore-name", networkInfo);
+      update.join();
+      assertThat(vmEntity.getState(), is(VmState.STOPPED));
+      assertThat(vmEntity.getAgent(), is("agent-id"));
+      assertThat(vmEntity.getDatastore(), is("datastore-id"));
+
+      VmService.State updatedVm = vmXenonBackend.getVmById(vmId);
+      assertThat(updatedVm.vmState, is(VmState.STOPPED));
+      assertThat(updatedVm.host, is("1.1.1.1"));
+      assertThat(updatedVm.datastoreName, is("datastore-name"));
+      assertThat(updatedVm.networks, is(ImmutableList.of("network-id")));
+    }
+
+    @Test
+    public void testUpdateStateAsyncWithNonExistingId() throws Throwable {
+      VmEntity vmEntity = new VmEntity();
+      vmEntity.setId(UUID.randomUUID().toString());
+      try {
+        vmXenonBackend.updateStateAsync(vmEntity, VmState.STOPPED, "agent-id", "1.1.1.1", "datastore-id",
+            "datastore-name", null).join();
+        fail("vmXenonBackend.updateStateAsync for a non existing id should have failed");
+      } catch (CompletionException e) {
+        assertThat(e.getCause() instanceof VmNotFoundException, is(true));
+      }
+      assertThat(vmEntity.getState(), nullValue());
+    }
+
     @Test
     public void testFilter() throws Throwable {
       ResourceList<Vm> foundVms =
@@ -15,6 +15,7 @@ package com.vmware.photon.controller.api.frontend.backends;
 
 import com.vmware.photon.controller.api.backend.helpers.TestHost;
 import com.vmware.photon.controller.api.backend.helpers.mocks.MockSubnetConfigurationService;
+import com.vmware.photon.controller.api.frontend.BackendTaskExecutor;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.PhotonControllerXenonRestClient;
 import com.vmware.photon.controller.api.frontend.utils.NetworkHelper;
@@ -42,6 +43,7 @@ import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
@@ -108,6 +110,13 @@ public class XenonBackendTestModule extends AbstractModule {
     return host;
   }
 
+  @Provides
+  @Singleton
+  @BackendTaskExecutor
+  public ExecutorService getBackendTaskExecutor() {
+    return mock(ExecutorService.class);
+  }
+
   @Provides
   @Singleton
   ApiFeXenonRestClient getApiFeXenonRestClient(BasicServiceHost host) {
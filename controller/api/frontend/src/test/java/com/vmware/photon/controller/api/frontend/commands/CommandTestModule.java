@@ -13,7 +13,6 @@
 
 package com.vmware.photon.controller.api.frontend.commands;
 
-import com.vmware.photon.controller.api.frontend.BackendTaskExecutor;
 import com.vmware.photon.controller.api.frontend.lib.ImageStoreFactory;
 import com.vmware.photon.controller.api.frontend.lib.VsphereIsoStore;
 import com.vmware.photon.controller.common.PhotonControllerServerSet;
@@ -24,8 +23,6 @@ import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import static org.powermock.api.mockito.PowerMockito.mock;
 
-import java.util.concurrent.ExecutorService;
-
 /**
  * The test module for Commands tests.
  */
@@ -46,13 +43,6 @@ public class CommandTestModule extends AbstractModule {
     return mock(VsphereIsoStore.class);
   }
 
-  @Provides
-  @Singleton
-  @BackendTaskExecutor
-  public ExecutorService getBackendTaskExecutor() {
-    return mock(ExecutorService.class);
-  }
-
   @Provides
   @Singleton
   @PhotonControllerServerSet
@@ -17,6 +17,7 @@ import com.vmware.photon.controller.api.frontend.backends.DiskBackend;
 import com.vmware.photon.controller.api.frontend.backends.FlavorBackend;
 import com.vmware.photon.controller.api.frontend.backends.NetworkBackend;
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.backends.VmBackend;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.PhotonControllerXenonRestClient;
@@ -95,6 +96,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
@@ -104,11 +106,14 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.spy;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Tests {@link ResourceReserveStepCmd}.
@@ -153,6 +158,9 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
   @Mock
   private TaskCommand taskCommand;
 
+  @Mock
+  private TaskCommandExecutorService executorService;
+
   @Mock
   private StepBackend stepBackend;
 
@@ -608,6 +616,45 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
     verify(hostClient, times(2)).reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION));
   }
 
+  @Test
+  public void testAsyncReservationFailedOnFirstTry() throws Throwable {
+    ResourceReserveStepCmd command = getVmReservationCommand();
+    useInlineExecutor();
+
+    Operation placementOperation = new Operation().setBody(generateResourcePlacementList());
+    CompletableFuture<ReserveResponse> staleReservation = new CompletableFuture<>();
+    staleReservation.completeExceptionally(new StaleGenerationException("Error"));
+    when(photonControllerXenonRestClient.postAsync(any(), any(), anyLong()))
+        .thenReturn(CompletableFuture.completedFuture(placementOperation));
+    when(hostClient.reserveAsync(any(Resource.class), eq(SUCCESSFUL_GENERATION)))
+        .thenReturn(staleReservation)
+        .thenReturn(CompletableFuture.completedFuture(SUCCESSFUL_RESERVE_RESPONSE));
+
+    command.executeAsync().join();
+
+    verify(photonControllerXenonRestClient, times(2)).postAsync(any(), any(), anyLong());
+    verify(hostClient, times(2)).reserveAsync(any(Resource.class), eq(SUCCESSFUL_GENERATION));
+    verify(taskCommand).setReservation(SUCCESSFUL_RESERVE_RESPONSE.getReservation());
+  }
+
+  @Test
+  public void testAsyncFailedPlaceResultCode() throws Throwable {
+    ResourceReserveStepCmd command = getVmReservationCommand();
+    useInlineExecutor();
+
+    PlacementTask placementTask = generateResourcePlacementList();
+    placementTask.resultCode = PlaceResultCode.NOT_ENOUGH_CPU_RESOURCE;
+    when(photonControllerXenonRestClient.postAsync(any(), any(), anyLong()))
+        .thenReturn(CompletableFuture.completedFuture(new Operation().setBody(placementTask)));
+
+    try {
+      command.executeAsync().join();
+      fail("should have failed due to not enough cpu");
+    } catch (CompletionException e) {
+      assertThat(e.getCause().getClass().equals(NotEnoughCpuResourceException.class), is(true));
+    }
+  }
+
   @Test
   public void testOnFailureWithVmReservation() throws Throwable {
     ResourceReserveStepCmd command = getVmReservationCommand();
@@ -881,6 +928,14 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
     command.execute();
   }
 
+  private void useInlineExecutor() {
+    doAnswer(invocation -> {
+      ((Runnable) invocation.getArguments()[0]).run();
+      return null;
+    }).when(executorService).executeContinuation(any(Runnable.class));
+    when(taskCommand.getExecutorService()).thenReturn(executorService);
+  }
+
   private ResourceReserveStepCmd getVmReservationCommand() {
     return this.getVmReservationCommand(false);
   }
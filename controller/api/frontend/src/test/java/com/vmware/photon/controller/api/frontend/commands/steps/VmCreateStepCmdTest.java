@@ -15,6 +15,7 @@ package com.vmware.photon.controller.api.frontend.commands.steps;
 
 import com.vmware.photon.controller.api.frontend.backends.DiskBackend;
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.backends.VmBackend;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.entities.EphemeralDiskEntity;
@@ -25,6 +26,7 @@ import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.entities.VmEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.StepNotFoundException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.VmNotFoundException;
 import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
 import com.vmware.photon.controller.api.frontend.utils.NetworkHelper;
 import com.vmware.photon.controller.api.model.DiskState;
@@ -42,11 +44,15 @@ import org.mockito.Mock;
 import org.powermock.modules.testng.PowerMockTestCase;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.spy;
@@ -54,6 +60,8 @@ import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
 import static org.testng.AssertJUnit.fail;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Tests {@link VmCreateStepCmd}.
@@ -78,6 +86,9 @@ public class VmCreateStepCmdTest extends PowerMockTestCase {
   @Mock
   private TaskCommand taskCommand;
 
+  @Mock
+  private TaskCommandExecutorService executorService;
+
   @Mock
   private TaskEntity task;
 
@@ -170,6 +181,73 @@ public class VmCreateStepCmdTest extends PowerMockTestCase {
     verify(vmBackend).updateState(vm, VmState.ERROR);
   }
 
+  @Test
+  public void testSuccessfulAsyncVmCreate() throws Throwable {
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    useInlineExecutor();
+
+    CompletableFuture<CreateVmResponse> response = new CompletableFuture<>();
+    when(hostClient.createVmAsync(reservationId, new HashMap<>())).thenReturn(response);
+    CompletableFuture<Void> update = new CompletableFuture<>();
+    when(vmBackend.updateStateAsync(vm, VmState.STOPPED, agentId, agentIp, "datastore-1", "datastore-name", null))
+        .thenReturn(update);
+
+    CompletableFuture<Void> execution = command.executeAsync();
+    assertThat(execution.isDone(), is(false));
+    verifyNoMoreInteractions(vmBackend);
+
+    response.complete(createVmResponse);
+    assertThat(execution.isDone(), is(false));
+
+    update.complete(null);
+    execution.join();
+
+    verify(vmBackend).updateStateAsync(vm, VmState.STOPPED, agentId, agentIp, "datastore-1", "datastore-name", null);
+    verifyNoMoreInteractions(vmBackend);
+    verify(hostClient, never()).createVm(anyString(), anyMap());
+  }
+
+  @Test
+  public void testFailedAsyncVmUpdate() throws Throwable {
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    useInlineExecutor();
+
+    when(hostClient.createVmAsync(reservationId, new HashMap<>()))
+        .thenReturn(CompletableFuture.completedFuture(createVmResponse));
+    CompletableFuture<Void> update = new CompletableFuture<>();
+    update.completeExceptionally(new VmNotFoundException(vm.getId()));
+    when(vmBackend.updateStateAsync(vm, VmState.STOPPED, agentId, agentIp, "datastore-1", "datastore-name", null))
+        .thenReturn(update);
+
+    try {
+      command.executeAsync().join();
+      fail("should have failed due to vm not found exception");
+    } catch (CompletionException e) {
+      assertThat(e.getCause() instanceof VmNotFoundException, is(true));
+    }
+
+    verify(vmBackend, never()).updateState(vm, VmState.ERROR);
+  }
+
+  @Test
+  public void testFailedAsyncVmCreate() throws Throwable {
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    useInlineExecutor();
+
+    CompletableFuture<CreateVmResponse> response = new CompletableFuture<>();
+    response.completeExceptionally(new InvalidReservationException(null));
+    when(hostClient.createVmAsync(reservationId, new HashMap<>())).thenReturn(response);
+
+    try {
+      command.executeAsync().join();
+      fail("should have failed due to invalid reservation exception");
+    } catch (CompletionException e) {
+      assertThat(e.getCause() instanceof InvalidReservationException, is(true));
+    }
+
+    verify(vmBackend).updateState(vm, VmState.ERROR);
+  }
+
   @Test
   public void testSuccessfulDisksAttach() throws Throwable {
     VmCreateStepCmd command = getVmCreateStepCmd();
@@ -204,6 +282,14 @@ public class VmCreateStepCmdTest extends PowerMockTestCase {
     }
   }
 
+  private void useInlineExecutor() {
+    doAnswer(invocation -> {
+      ((Runnable) invocation.getArguments()[0]).run();
+      return null;
+    }).when(executorService).executeContinuation(any(Runnable.class));
+    when(taskCommand.getExecutorService()).thenReturn(executorService);
+  }
+
   private VmCreateStepCmd getVmCreateStepCmd() throws Throwable {
     when(hostClient.createVm(anyString(), anyMap())).thenReturn(createVmResponse);
 
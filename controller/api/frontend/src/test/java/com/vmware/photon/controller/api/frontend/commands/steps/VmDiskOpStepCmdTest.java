@@ -58,6 +58,7 @@ import static org.powermock.api.mockito.PowerMockito.spy;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Tests {@link VmPowerOpStepCmd}.
@@ -252,6 +253,10 @@ public class VmDiskOpStepCmdTest extends PowerMockTestCase {
 
     when(attachedDiskBackend.findAttachedDisk(disk1)).thenReturn(attachedDiskEntity1);
     when(attachedDiskBackend.findAttachedDisk(disk2)).thenReturn(attachedDiskEntity2);
+    when(attachedDiskBackend.attachDisks(vm, persistentDiskEntities))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    when(attachedDiskBackend.deleteAttachedDisks(vm, persistentDiskEntities))
+        .thenReturn(CompletableFuture.completedFuture(null));
     when(taskCommand.getHostClient()).thenReturn(hostClient);
     HostService.State hostServiceState = new HostService.State();
     hostServiceState.hostAddress = "host-ip";
@@ -14,30 +14,42 @@
 package com.vmware.photon.controller.api.frontend.commands.steps;
 
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.entities.StepEntity;
 import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.model.Operation;
+import com.vmware.photon.controller.common.xenon.TaskCompletionNotifier;
+import com.vmware.photon.controller.common.xenon.XenonRestClient;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.xenon.common.TaskState;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests {@link XenonTaskStatusStepCmd}.
@@ -295,4 +307,71 @@ public class XenonTaskStatusStepCmdTest extends PowerMockTestCase {
       verify(xenonTaskStatusPoller, times(1)).poll(remoteTaskLink);
     }
   }
+
+  /**
+   * Tests for waiting on the remote task without holding a worker.
+   */
+  public class AsyncTest {
+    private TaskCommandExecutorService executorService;
+    private TaskCompletionNotifier.Subscription subscription;
+    private ArgumentCaptor<Runnable> listener;
+
+    @BeforeMethod
+    public void setUp() throws JsonProcessingException {
+      setUpCommon(true, 1);
+
+      executorService = new TaskCommandExecutorService(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(1), new ThreadFactoryBuilder().setNameFormat("BackendWorker-%d").build());
+      when(taskCommand.getExecutorService()).thenReturn(executorService);
+
+      XenonRestClient xenonClient = mock(XenonRestClient.class);
+      subscription = mock(TaskCompletionNotifier.Subscription.class);
+      listener = ArgumentCaptor.forClass(Runnable.class);
+      when(xenonClient.subscribe(any(String.class), listener.capture())).thenReturn(subscription);
+      command.setXenonClient(xenonClient);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+      executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCompletesOnNotification() throws Throwable {
+      when(xenonTaskStatusPoller.poll(any(String.class)))
+          .thenReturn(buildTaskState(TaskState.TaskStage.STARTED))
+          .thenReturn(buildTaskState(TaskState.TaskStage.FINISHED));
+
+      CompletableFuture<Void> future = command.executeAsync();
+
+      // The subscription is in place.
+      listener.getValue().run();
+      verify(xenonTaskStatusPoller, timeout(5000).times(1)).poll(remoteTaskLink);
+      assertFalse(future.isDone());
+
+      // The remote task has been updated.
+      listener.getValue().run();
+      future.get(5, TimeUnit.SECONDS);
+      verify(xenonTaskStatusPoller, times(2)).poll(remoteTaskLink);
+      verify(subscription).close();
+    }
+
+    @Test
+    public void testTimeout() throws Throwable {
+      when(xenonTaskStatusPoller.poll(any(String.class)))
+          .thenReturn(buildTaskState(TaskState.TaskStage.STARTED));
+      command.setTimeout(10);
+
+      CompletableFuture<Void> future = command.executeAsync();
+      listener.getValue().run();
+
+      try {
+        future.get(5, TimeUnit.SECONDS);
+        fail("should have failed with RuntimeException.");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof RuntimeException);
+      }
+      verify(subscription).close();
+    }
+  }
 }
@@ -21,6 +21,7 @@ import com.vmware.photon.controller.api.frontend.backends.ProjectXenonBackend;
 import com.vmware.photon.controller.api.frontend.backends.ResourceTicketXenonBackend;
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
 import com.vmware.photon.controller.api.frontend.backends.TaskBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.backends.TenantXenonBackend;
 import com.vmware.photon.controller.api.frontend.backends.XenonBackendTestHelper;
 import com.vmware.photon.controller.api.frontend.backends.XenonBackendTestModule;
@@ -58,6 +59,7 @@ import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.resource.gen.Datastore;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import org.junit.AfterClass;
 import org.mockito.ArgumentCaptor;
@@ -86,6 +88,8 @@ import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests {@link TaskCommand}.
@@ -473,6 +477,40 @@ public class TaskCommandTest {
     assertThat(stepCommands[2].performed, is(true));
   }
 
+  @Test
+  public void testExecuteOnExecutorService() throws Throwable {
+    StepEntity[] steps = new StepEntity[]{
+        createStep("step-1", StepEntity.State.QUEUED),
+        createStep("step-2", StepEntity.State.QUEUED),
+        createStep("step-3", StepEntity.State.QUEUED)
+    };
+    TestStepCommand[] stepCommands = new TestStepCommand[steps.length];
+    TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+
+    for (int i = 0; i < steps.length; i++) {
+      StepEntity step = steps[i];
+      task.addStep(step);
+      stepCommands[i] = new TestStepCommand(command, stepBackend, step);
+      doReturn(stepCommands[i]).when(stepCommandFactory).createCommand(command, step);
+    }
+
+    TaskCommandExecutorService executorService = new TaskCommandExecutorService(2, 2, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(1), new ThreadFactoryBuilder().setNameFormat("BackendWorker-%d").build());
+    try {
+      command.setExecutorService(executorService);
+      command.start().get(10, TimeUnit.SECONDS);
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    for (int i = 0; i < steps.length; i++) {
+      assertThat(stepCommands[i].performed, is(true));
+      assertThat(steps[i].getState(), is(StepEntity.State.COMPLETED));
+    }
+  }
+
   @Test
   public void testCleanup() {
     TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
@@ -13,6 +13,8 @@
 
 package com.vmware.photon.controller.api.frontend.config;
 
+import com.vmware.transfer.nfc.NfcFileOutputStream;
+
 import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -60,4 +62,28 @@ public class ImageConfigTest {
       }
     }
   }
+
+  /**
+   * Tests for the nfc_write_size property.
+   */
+  public class NfcWriteSize {
+
+    @Test
+    public void testDefaultNfcWriteSize() throws Exception {
+      config = ConfigurationUtils.parseConfiguration(
+          ImageConfigTest.class.getResource("/config.yml").getPath()).getImage();
+      assertThat(config.getNfcWriteSize(), is(NfcFileOutputStream.DEFAULT_WRITE_SIZE));
+    }
+
+    @Test
+    public void testInvalidNfcWriteSize() {
+      try {
+        ConfigurationUtils.parseConfiguration(
+            ImageConfigTest.class.getResource("/config_invalid_nfc_write_size.yml").getPath());
+        fail("invalid config did not fail");
+      } catch (Exception e) {
+        assertThat(e.getMessage(), containsString("nfcWriteSize"));
+      }
+    }
+  }
 }
@@ -21,8 +21,10 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreServiceFact
 import com.vmware.photon.controller.cloudstore.xenon.entity.DeploymentServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DhcpSubnetService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DiskServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLeaseServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLockServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostHeartbeatService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageToImageDatastoreMappingServiceFactory;
@@ -49,8 +51,6 @@ import com.vmware.photon.controller.cloudstore.xenon.task.TombstoneCleanerFactor
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.AvailabilityZoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DatastoreCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DhcpSubnetDeleteTriggerBuilder;
-import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockCleanerTriggerBuilder;
-import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockDeleteTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.IpLeaseCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.TombstoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
@@ -93,6 +93,7 @@ public class CloudStoreServiceGroup
       DeploymentServiceFactory.class,
       TaskServiceFactory.class,
       EntityLockServiceFactory.class,
+      EntityLeaseServiceFactory.class,
       ProjectServiceFactory.class,
       TenantServiceFactory.class,
       ResourceTicketServiceFactory.class,
@@ -145,12 +146,6 @@ public class CloudStoreServiceGroup
           TombstoneCleanerTriggerBuilder.DEFAULT_TRIGGER_INTERVAL_MILLIS,
           TombstoneCleanerTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS,
           TombstoneCleanerTriggerBuilder.DEFAULT_TOMBSTONE_EXPIRATION_AGE_MILLIS),
-      new EntityLockCleanerTriggerBuilder(
-          EntityLockCleanerTriggerBuilder.DEFAULT_TRIGGER_INTERVAL_MILLIS,
-          EntityLockCleanerTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS),
-      new EntityLockDeleteTriggerBuilder(
-          EntityLockDeleteTriggerBuilder.DEFAULT_TRIGGER_INTERVAL_MILLIS,
-          EntityLockDeleteTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS),
       new AvailabilityZoneCleanerTriggerBuilder(
           AvailabilityZoneCleanerTriggerBuilder.DEFAULT_TRIGGER_INTERVAL_MILLIS,
           AvailabilityZoneCleanerTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS),
@@ -187,6 +182,7 @@ public class CloudStoreServiceGroup
     ServiceHostUtils.startFactoryServices(photonControllerXenonHost, FACTORY_SERVICES_MAP);
 
     // Start all special services
+    ServiceHostUtils.startService(photonControllerXenonHost, HostHeartbeatService.class);
     startTaskTriggerServices();
     startTaskSchedulerServices();
 
@@ -214,6 +210,7 @@ public class CloudStoreServiceGroup
             && photonControllerXenonHost.checkServiceAvailable(DeploymentServiceFactory.SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(TaskServiceFactory.SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(EntityLockServiceFactory.SELF_LINK)
+            && photonControllerXenonHost.checkServiceAvailable(EntityLeaseServiceFactory.SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(ProjectServiceFactory.SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(TenantServiceFactory.SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(ResourceTicketServiceFactory.SELF_LINK)
@@ -239,12 +236,8 @@ public class CloudStoreServiceGroup
             // triggers
             && photonControllerXenonHost.checkServiceAvailable(TaskTriggerFactoryService.SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + EntityLockCleanerTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
             TaskTriggerFactoryService.SELF_LINK + TombstoneCleanerTriggerBuilder.TRIGGER_SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + EntityLockDeleteTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
             TaskTriggerFactoryService.SELF_LINK + AvailabilityZoneCleanerTriggerBuilder.TRIGGER_SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(
             TaskTriggerFactoryService.SELF_LINK + DatastoreCleanerTriggerBuilder.TRIGGER_SELF_LINK)
@@ -256,6 +249,7 @@ public class CloudStoreServiceGroup
             TaskTriggerFactoryService.SELF_LINK + IpLeaseCleanerTriggerBuilder.TRIGGER_SELF_LINK)
 
             // special services
+            && photonControllerXenonHost.checkServiceAvailable(HostHeartbeatService.SELF_LINK)
             && photonControllerXenonHost.checkServiceAvailable(SchedulingConstantGenerator.SINGLETON_LINK);
   }
 
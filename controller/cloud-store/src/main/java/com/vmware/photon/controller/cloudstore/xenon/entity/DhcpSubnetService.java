@@ -22,7 +22,6 @@ import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.ValidationUtils;
 import com.vmware.photon.controller.common.xenon.deployment.MigrateDuringDeployment;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
-import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.photon.controller.common.xenon.migration.MigrateDuringUpgrade;
 import com.vmware.photon.controller.common.xenon.migration.MigrationUtils;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
@@ -42,8 +41,17 @@ import com.vmware.xenon.common.Utils;
 import com.google.common.base.Preconditions;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 /**
  * Used for allocating IPs from a subnet and also to track ownership of a CIDR range by a network.
@@ -105,6 +113,18 @@ public class DhcpSubnetService extends StatefulService {
             IpOperationPatch.class, "kind", IpOperationPatch.Kind.ReleaseIp),
         this::handleReleaseIpPatch, "Release Ip lease for the provided IP address");
 
+    myRouter.register(
+        Action.PATCH,
+        new RequestRouter.RequestBodyMatcher<>(
+            IpBatchOperationPatch.class, "kind", IpBatchOperationPatch.Kind.AllocateIps),
+        this::handleAllocateIpsToMacsPatch, "Allocate IPs to MAC addresses");
+
+    myRouter.register(
+        Action.PATCH,
+        new RequestRouter.RequestBodyMatcher<>(
+            IpBatchOperationPatch.class, "kind", IpBatchOperationPatch.Kind.ReleaseIps),
+        this::handleReleaseIpsPatch, "Release Ip leases for the provided IP addresses");
+
     myRouter.register(
             Action.PATCH,
             new RequestRouter.RequestBodyMatcher<>(
@@ -127,99 +147,230 @@ public class DhcpSubnetService extends StatefulService {
     ServiceUtils.logInfo(this, "Patching service %s to allocate IP to MAC", getSelfLink());
 
     try {
-      String allocatedIp = null;
       IpOperationPatch ipOperationPatch = patch.getBody(IpOperationPatch.class);
-      State currentState = getState(patch);
-
       ipOperationPatch.ipAddress = null;
-      Long dynamicRangeSize = currentState.highIpDynamic - currentState.lowIpDynamic + 1;
-
-      if (currentState.ipAllocations.length() < dynamicRangeSize) {
-        int cur = currentState.ipAllocations.nextClearBit(0);
-        currentState.ipAllocations.set(cur);
-
-        allocatedIp = IpHelper.longToIpString(cur + currentState.lowIpDynamic);
 
-        IpLeaseService.IpLeaseOperationPatch ipLeaseOperationPatch =
-            new IpLeaseService.IpLeaseOperationPatch(
-                IpLeaseService.IpLeaseOperationPatch.Kind.ACQUIRE,
-                ipOperationPatch.ownerVmId,
-                ipOperationPatch.macAddress);
+      IpAllocation ipAllocation = new IpAllocation(ipOperationPatch.ownerVmId, ipOperationPatch.macAddress, null);
+      allocateIps(patch, Collections.singletonList(ipAllocation), ipOperationPatch.ownerVmId,
+          () -> ipOperationPatch.ipAddress = ipAllocation.ipAddress);
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      patch.fail(t);
+    }
+  }
 
-        Operation patchOperation = Operation
-            .createPatch(this, makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, allocatedIp))
-            .setBody(ipLeaseOperationPatch);
+  public void handleReleaseIpPatch(Operation patch) {
+    ServiceUtils.logInfo(this, "Patching service %s to release IP for MAC", getSelfLink());
 
-        try {
-          ServiceUtils.doServiceOperation(this, patchOperation);
-        } catch (DocumentNotFoundException de) {
-          IpLeaseService.State ipLease = new IpLeaseService.State();
-          ipLease.ownerVmId = ipLeaseOperationPatch.ownerVmId;
-          ipLease.macAddress = ipLeaseOperationPatch.macAddress;
-          ipLease.ip = allocatedIp;
-          ipLease.subnetId = currentState.subnetId;
-          ipLease.documentSelfLink =
-              makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, allocatedIp);
+    try {
+      IpOperationPatch ipOperationPatch = patch.getBody(IpOperationPatch.class);
+      releaseIps(patch, Collections.singletonList(
+          new IpAllocation(ipOperationPatch.ownerVmId, ipOperationPatch.macAddress, ipOperationPatch.ipAddress)));
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      patch.fail(t);
+    }
+  }
 
-          Operation postOperation = Operation
-              .createPost(this, IpLeaseService.FACTORY_LINK)
-              .setBody(ipLease);
-          ServiceUtils.doServiceOperation(this, postOperation);
-        }
+  public void handleAllocateIpsToMacsPatch(Operation patch) {
+    ServiceUtils.logInfo(this, "Patching service %s to allocate IPs to MACs", getSelfLink());
 
-        ipOperationPatch.ipAddress = allocatedIp;
-      } else {
-        ServiceUtils.failOperationAsBadRequest(this, patch, new IllegalArgumentException("range is full"),
-            new RangeFullyAllocatedError(currentState, ipOperationPatch.ownerVmId));
-        return;
-      }
+    try {
+      IpBatchOperationPatch ipBatchOperationPatch = patch.getBody(IpBatchOperationPatch.class);
+      ipBatchOperationPatch.validate();
+      ipBatchOperationPatch.ipAllocations.forEach(ipAllocation -> ipAllocation.ipAddress = null);
+
+      String requestedByVmIds = ipBatchOperationPatch.ipAllocations.stream()
+          .map(ipAllocation -> ipAllocation.ownerVmId)
+          .distinct()
+          .collect(Collectors.joining(","));
+      allocateIps(patch, ipBatchOperationPatch.ipAllocations, requestedByVmIds, () -> {
+      });
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      patch.fail(t);
+    }
+  }
 
-      currentState.version++;
-      setState(patch, currentState);
+  public void handleReleaseIpsPatch(Operation patch) {
+    ServiceUtils.logInfo(this, "Patching service %s to release IPs for MACs", getSelfLink());
 
-      patch.complete();
+    try {
+      IpBatchOperationPatch ipBatchOperationPatch = patch.getBody(IpBatchOperationPatch.class);
+      ipBatchOperationPatch.validate();
+      releaseIps(patch, ipBatchOperationPatch.ipAllocations);
     } catch (Throwable t) {
       ServiceUtils.logSevere(this, t);
       patch.fail(t);
     }
   }
 
-  public void handleReleaseIpPatch(Operation patch) {
-    ServiceUtils.logInfo(this, "Patching service %s to release IP for MAC", getSelfLink());
-    try {
-      State currentState = getState(patch);
-      IpOperationPatch ipOperationPatch = patch.getBody(IpOperationPatch.class);
+  /**
+   * Reserves an IP for each of the allocations and acquires their leases. The leases are acquired in parallel and
+   * the reserved IPs are committed with a single state update once all of them have been acquired. If any of the
+   * leases cannot be acquired, the leases which were acquired are released again and the patch fails without
+   * changing the state.
+   */
+  private void allocateIps(Operation patch, List<IpAllocation> ipAllocations, String requestedByVmIds,
+                           Runnable onAllocated) {
+    State currentState = getState(patch);
+    int dynamicRangeSize = IpHelper.safeLongToInt(currentState.highIpDynamic - currentState.lowIpDynamic + 1);
+
+    if (currentState.ipAllocations.cardinality() + ipAllocations.size() > dynamicRangeSize) {
+      ServiceUtils.failOperationAsBadRequest(this, patch, new IllegalArgumentException("range is full"),
+          new RangeFullyAllocatedError(currentState, requestedByVmIds));
+      return;
+    }
 
-      String ipLeaseLink =
-          makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, ipOperationPatch.ipAddress);
+    BitSet reservedIps = (BitSet) currentState.ipAllocations.clone();
+    int cur = 0;
+    for (IpAllocation ipAllocation : ipAllocations) {
+      cur = reservedIps.nextClearBit(cur);
+      reservedIps.set(cur);
+      ipAllocation.ipAddress = IpHelper.longToIpString(cur + currentState.lowIpDynamic);
+    }
 
-      long ipToRelease = IpHelper.ipStringToLong(ipOperationPatch.ipAddress);
+    updateIpLeases(currentState, ipAllocations, this::acquireIpLease, (acquired, failure) -> {
+      if (failure == null) {
+        currentState.ipAllocations = reservedIps;
+        currentState.version++;
+        setState(patch, currentState);
+        onAllocated.run();
+        patch.complete();
+        return;
+      }
 
-      IpLeaseService.IpLeaseOperationPatch ipLeaseOperationPatch =
-          new IpLeaseService.IpLeaseOperationPatch(
-              IpLeaseService.IpLeaseOperationPatch.Kind.RELEASE,
-              ipOperationPatch.ownerVmId,
-              ipOperationPatch.macAddress);
+      ServiceUtils.logSevere(this, failure);
+      updateIpLeases(currentState, acquired, this::releaseIpLease, (released, releaseFailure) -> {
+        if (releaseFailure != null) {
+          ServiceUtils.logWarning(this, "Failed to release IP leases acquired by failed allocation: %s",
+              releaseFailure.getMessage());
+        }
+        patch.fail(failure);
+      });
+    });
+  }
 
-      Operation patchOperation = Operation.createPatch(this, ipLeaseLink)
-          .setBody(ipLeaseOperationPatch);
+  /**
+   * Releases the leases of the IPs in parallel and frees the IPs with a single state update once all of them have
+   * been released. If any of the leases cannot be released, the patch fails without changing the state. Retrying the
+   * release is safe as releasing a lease which is not owned by any VM succeeds.
+   */
+  private void releaseIps(Operation patch, List<IpAllocation> ipAllocations) {
+    State currentState = getState(patch);
+    int dynamicRangeSize = IpHelper.safeLongToInt(currentState.highIpDynamic - currentState.lowIpDynamic + 1);
+
+    BitSet releasedIps = new BitSet(dynamicRangeSize);
+    for (IpAllocation ipAllocation : ipAllocations) {
+      long index = IpHelper.ipStringToLong(ipAllocation.ipAddress) - currentState.lowIpDynamic;
+      Preconditions.checkArgument(index >= 0 && index < dynamicRangeSize,
+          "IP %s is not in the dynamic range of the subnet", ipAllocation.ipAddress);
+      releasedIps.set((int) index);
+    }
 
-      try {
-        ServiceUtils.doServiceOperation(this, patchOperation);
-      } catch (DocumentNotFoundException de) {
-        ServiceUtils.logWarning(this, "Ignoring error: No lease file found for IP: %s for subnetId: %s",
-            ipOperationPatch.ipAddress, currentState.subnetId);
+    updateIpLeases(currentState, ipAllocations, this::releaseIpLease, (released, failure) -> {
+      if (failure != null) {
+        ServiceUtils.logSevere(this, failure);
+        patch.fail(failure);
+        return;
       }
 
-      currentState.ipAllocations.clear((int) (ipToRelease - currentState.lowIpDynamic));
-
+      currentState.ipAllocations.andNot(releasedIps);
       currentState.version++;
       setState(patch, currentState);
       patch.complete();
-    } catch (Throwable t) {
-      ServiceUtils.logSevere(this, t);
-      patch.fail(t);
+    });
+  }
+
+  /**
+   * Applies the lease operation to all the allocations in parallel. The completion is called once all of the
+   * operations have completed, with the allocations which succeeded and the first failure if any.
+   */
+  private void updateIpLeases(State currentState, List<IpAllocation> ipAllocations, IpLeaseOperation ipLeaseOperation,
+                              BiConsumer<List<IpAllocation>, Throwable> completion) {
+    if (ipAllocations.isEmpty()) {
+      completion.accept(Collections.emptyList(), null);
+      return;
     }
+
+    AtomicInteger pending = new AtomicInteger(ipAllocations.size());
+    Queue<IpAllocation> succeeded = new ConcurrentLinkedQueue<>();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    for (IpAllocation ipAllocation : ipAllocations) {
+      ipLeaseOperation.send(currentState, ipAllocation, (op, ex) -> {
+        if (ex == null) {
+          succeeded.add(ipAllocation);
+        } else {
+          failure.compareAndSet(null, ex);
+        }
+
+        if (pending.decrementAndGet() == 0) {
+          completion.accept(new ArrayList<>(succeeded), failure.get());
+        }
+      });
+    }
+  }
+
+  private void acquireIpLease(State currentState, IpAllocation ipAllocation, Operation.CompletionHandler completion) {
+    String ipLeaseLink =
+        makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, ipAllocation.ipAddress);
+
+    IpLeaseService.IpLeaseOperationPatch ipLeaseOperationPatch =
+        new IpLeaseService.IpLeaseOperationPatch(
+            IpLeaseService.IpLeaseOperationPatch.Kind.ACQUIRE,
+            ipAllocation.ownerVmId,
+            ipAllocation.macAddress);
+
+    Operation patchOperation = Operation
+        .createPatch(this, ipLeaseLink)
+        .setBody(ipLeaseOperationPatch)
+        .setCompletion((op, ex) -> {
+          if (ex == null || op.getStatusCode() != Operation.STATUS_CODE_NOT_FOUND) {
+            completion.handle(op, ex);
+            return;
+          }
+
+          IpLeaseService.State ipLease = new IpLeaseService.State();
+          ipLease.ownerVmId = ipLeaseOperationPatch.ownerVmId;
+          ipLease.macAddress = ipLeaseOperationPatch.macAddress;
+          ipLease.ip = ipAllocation.ipAddress;
+          ipLease.subnetId = currentState.subnetId;
+          ipLease.documentSelfLink = ipLeaseLink;
+
+          Operation postOperation = Operation
+              .createPost(this, IpLeaseService.FACTORY_LINK)
+              .setBody(ipLease)
+              .setCompletion(completion);
+          sendRequest(postOperation);
+        });
+    sendRequest(patchOperation);
+  }
+
+  private void releaseIpLease(State currentState, IpAllocation ipAllocation, Operation.CompletionHandler completion) {
+    String ipLeaseLink =
+        makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, ipAllocation.ipAddress);
+
+    IpLeaseService.IpLeaseOperationPatch ipLeaseOperationPatch =
+        new IpLeaseService.IpLeaseOperationPatch(
+            IpLeaseService.IpLeaseOperationPatch.Kind.RELEASE,
+            ipAllocation.ownerVmId,
+            ipAllocation.macAddress);
+
+    Operation patchOperation = Operation
+        .createPatch(this, ipLeaseLink)
+        .setBody(ipLeaseOperationPatch)
+        .setCompletion((op, ex) -> {
+          if (ex != null && op.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
+            ServiceUtils.logWarning(this, "Ignoring error: No lease file found for IP: %s for subnetId: %s",
+                ipAllocation.ipAddress, currentState.subnetId);
+            completion.handle(op, null);
+            return;
+          }
+
+          completion.handle(op, ex);
+        });
+    sendRequest(patchOperation);
   }
 
   @Override
@@ -390,6 +541,87 @@ public class DhcpSubnetService extends StatefulService {
     }
   }
 
+  /**
+   * Class for allocating IPs to or releasing IPs of several MAC addresses with a single patch.
+   */
+  @NoMigrationDuringUpgrade
+  @NoMigrationDuringDeployment
+  public static class IpBatchOperationPatch extends ServiceDocument {
+    public final Kind kind;
+    public List<IpAllocation> ipAllocations;
+
+    private IpBatchOperationPatch() {
+      kind = null;
+    }
+
+    public IpBatchOperationPatch(Kind kind, List<IpAllocation> ipAllocations) {
+      if (kind == null) {
+        throw new IllegalArgumentException("kind cannot be null");
+      }
+
+      this.kind = kind;
+      this.ipAllocations = ipAllocations;
+      validate();
+    }
+
+    private void validate() {
+      if (ipAllocations == null || ipAllocations.isEmpty()) {
+        throw new IllegalArgumentException("ipAllocations cannot be empty");
+      }
+
+      for (IpAllocation ipAllocation : ipAllocations) {
+        if (ipAllocation == null) {
+          throw new IllegalArgumentException("ipAllocations cannot contain null");
+        }
+
+        if (StringUtils.isBlank(ipAllocation.ownerVmId)) {
+          throw new IllegalArgumentException("ownerVmId cannot be blank for allocate or release ips operation");
+        }
+
+        if (kind == Kind.AllocateIps && StringUtils.isBlank(ipAllocation.macAddress)) {
+          throw new IllegalArgumentException("macAddress cannot be blank for allocate ips operation");
+        }
+
+        if (kind == Kind.ReleaseIps && StringUtils.isBlank(ipAllocation.ipAddress)) {
+          throw new IllegalArgumentException("ipAddress cannot be blank for release ips operation");
+        }
+      }
+    }
+
+    /**
+     * Defines type of batch IP operations that are supported.
+     */
+    public enum Kind {
+      AllocateIps,
+      ReleaseIps
+    }
+  }
+
+  /**
+   * Describes the IP of a MAC address owned by a VM. The IP address is filled in by an allocate operation.
+   */
+  public static class IpAllocation {
+    public String ownerVmId;
+    public String macAddress;
+    public String ipAddress;
+
+    public IpAllocation() {
+    }
+
+    public IpAllocation(String ownerVmId, String macAddress, String ipAddress) {
+      this.ownerVmId = ownerVmId;
+      this.macAddress = macAddress;
+      this.ipAddress = ipAddress;
+    }
+  }
+
+  /**
+   * Sends an operation on the lease of an IP.
+   */
+  private interface IpLeaseOperation {
+    void send(State currentState, IpAllocation ipAllocation, Operation.CompletionHandler completion);
+  }
+
   /**
    * Class for patching staged and pushed versions.
    */
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.common.xenon.ValidationUtils;
+import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
+import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
+import com.vmware.photon.controller.common.xenon.validation.NotBlank;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatefulService;
+import com.vmware.xenon.common.Utils;
+
+import org.apache.commons.lang3.StringUtils;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class EntityLeaseService provides leases on other entities based on their unique ID.
+ * The service is owner selected and replicated but not persisted, so leases are kept in memory on the cloud store
+ * nodes and acquiring or releasing one does not write to the index.
+ * A lease expires unless its holder renews it, so the leases of a holder which is gone are released by timing out.
+ * Each grant of a lease gets a new lease token. Renewing a lease requires the token of the current grant and releasing
+ * it with the token of an earlier grant has no effect, so a holder whose lease has expired and has been granted to
+ * another task cannot interfere with the new holder.
+ * This service uses idempotent POSTs, which means that a POST will be converted to a PUT if the lease already exists.
+ * The recommended usage is:
+ * POST to acquire a lease (works if lease exists or not)
+ * PUT to renew or release a lease
+ */
+public class EntityLeaseService extends StatefulService {
+
+  public static final String LEASE_TAKEN_MESSAGE = "Lease already taken";
+
+  public static final String LEASE_LOST_MESSAGE = "Lease lost";
+
+  /**
+   * The default duration of a lease. Holders are expected to renew their leases well within this duration.
+   */
+  public static final long DEFAULT_LEASE_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  public EntityLeaseService() {
+    super(State.class);
+    super.toggleOption(ServiceOption.PERSISTENCE, false);
+    super.toggleOption(ServiceOption.REPLICATION, true);
+    super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+    super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+    super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+    super.setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(DEFAULT_LEASE_DURATION_MILLIS));
+  }
+
+  @Override
+  public void handleCreate(Operation op) {
+    State payload = op.getBody(State.class);
+    validatePayload(payload);
+
+    if (payload.leaseOperation != State.LeaseOperation.ACQUIRE) {
+      throw new IllegalArgumentException("Creating a lease with leaseOperation!=ACQUIRE is not allowed");
+    }
+
+    State state = grant(null, payload);
+    validateState(state);
+    setState(op, state);
+    op.setBody(state);
+    op.complete();
+  }
+
+  @Override
+  public void handleStart(Operation op) {
+    State payload = op.getBody(State.class);
+    checkArgument(payload != null, "state cannot be null");
+    checkArgument(payload.leaseOperation == null, "leaseOperation should be null");
+    validateState(payload);
+    setState(op, payload);
+    op.complete();
+  }
+
+  @Override
+  public void handlePut(Operation op) {
+    if (!op.hasBody()) {
+      op.fail(new IllegalArgumentException("body is required"));
+      return;
+    }
+
+    State currentState = getState(op);
+    State payload = op.getBody(State.class);
+    validatePayload(payload);
+
+    checkArgument(currentState.entityId.equalsIgnoreCase(payload.entityId),
+        "entityId for a lease cannot be changed");
+
+    State newState;
+    switch (payload.leaseOperation) {
+      case ACQUIRE:
+        newState = handleAcquireLeaseRequest(currentState, payload);
+        break;
+      case RENEW:
+        newState = handleRenewLeaseRequest(currentState, payload);
+        break;
+      case RELEASE:
+        newState = handleReleaseLeaseRequest(op, currentState, payload);
+        break;
+      default:
+        op.fail(Operation.STATUS_CODE_BAD_REQUEST);
+        return;
+    }
+
+    validateState(newState);
+    setState(op, newState);
+    op.setBody(newState);
+    op.complete();
+  }
+
+  @Override
+  public void handlePatch(Operation op) {
+    ServiceUtils.logWarning(this, "PATCH operation is not supported for EntityLeaseService %s", getSelfLink());
+    op.fail(Operation.STATUS_CODE_BAD_METHOD);
+  }
+
+  /**
+   * Deletes the lease. A DELETE with the EXPIRE operation only deletes the lease if it has been released or has
+   * expired for a whole lease duration. The check runs in order with the acquires, renewals and releases of the
+   * lease, so a lease which has been acquired again in the meantime is kept.
+   */
+  @Override
+  public void handleDelete(Operation delete) {
+    if (delete.hasBody()) {
+      State payload = delete.getBody(State.class);
+      State currentState = getState(delete);
+      long idleSinceMicros = Utils.getNowMicrosUtc() - TimeUnit.MILLISECONDS.toMicros(DEFAULT_LEASE_DURATION_MILLIS);
+      if (payload.leaseOperation == State.LeaseOperation.EXPIRE
+          && currentState != null && isHeld(currentState, idleSinceMicros)) {
+        delete.fail(new IllegalArgumentException(LEASE_TAKEN_MESSAGE + ". Current ownerTaskId: "
+            + currentState.ownerTaskId + ", EntityId: " + currentState.entityId));
+        return;
+      }
+    }
+
+    super.handleDelete(delete);
+  }
+
+  /**
+   * Stops the service once its lease is idle, so that the leases of deleted entities do not stay in memory.
+   */
+  @Override
+  public void handlePeriodicMaintenance(Operation maintenance) {
+    maintenance.complete();
+
+    State request = new State();
+    request.leaseOperation = State.LeaseOperation.EXPIRE;
+    sendRequest(Operation.createDelete(this, getSelfLink()).setBody(request));
+  }
+
+  private State handleAcquireLeaseRequest(State currentState, State payload) {
+    if (isHeld(currentState, Utils.getNowMicrosUtc())) {
+      // the lease is held by another task, return lease already taken error
+      checkArgument(currentState.ownerTaskId.equalsIgnoreCase(payload.ownerTaskId),
+          LEASE_TAKEN_MESSAGE + ". Current ownerTaskId: %s, Request ownerTaskId: %s, EntityId: %s",
+          currentState.ownerTaskId, payload.ownerTaskId, currentState.entityId);
+
+      // the owner acquires the lease again, extend it under the same token
+      return extend(currentState, payload);
+    }
+
+    return grant(currentState, payload);
+  }
+
+  private State handleRenewLeaseRequest(State currentState, State payload) {
+    // an expired lease can be renewed as long as it has not been granted again
+    checkArgument(StringUtils.isNotBlank(currentState.ownerTaskId)
+            && currentState.ownerTaskId.equalsIgnoreCase(payload.ownerTaskId)
+            && currentState.leaseToken.equals(payload.leaseToken),
+        LEASE_LOST_MESSAGE + ". Current ownerTaskId: %s, Request ownerTaskId: %s, EntityId: %s",
+        currentState.ownerTaskId, payload.ownerTaskId, currentState.entityId);
+
+    return extend(currentState, payload);
+  }
+
+  private State handleReleaseLeaseRequest(Operation op, State currentState, State payload) {
+    if (StringUtils.isBlank(currentState.ownerTaskId)
+        || (payload.leaseToken != null && !payload.leaseToken.equals(currentState.leaseToken))) {
+      // the lease is already available or has been granted again since, make this a no-op
+      op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
+      return currentState;
+    }
+
+    // if the release requester is not the owner of the lease then throw BadRequestException
+    checkArgument(currentState.ownerTaskId.equalsIgnoreCase(payload.ownerTaskId),
+        "Only the current owner can release a lease. Current ownerTaskId: %s, Request ownerTaskId: %s, EntityId: %s",
+        currentState.ownerTaskId, payload.ownerTaskId, currentState.entityId);
+
+    State newState = copy(currentState);
+    newState.ownerTaskId = null;
+    newState.leaseExpirationTimeMicros = null;
+    return newState;
+  }
+
+  /**
+   * Grants the lease to the requester under a new token. Tokens are taken from the clock, so that they keep
+   * increasing when the service is stopped and started again.
+   */
+  private State grant(State currentState, State payload) {
+    State newState = copy(payload);
+    long lastToken = currentState != null ? currentState.leaseToken : 0L;
+    newState.leaseToken = Math.max(lastToken + 1, Utils.getNowMicrosUtc());
+    newState.leaseExpirationTimeMicros = computeExpirationTime(payload);
+    return newState;
+  }
+
+  private State extend(State currentState, State payload) {
+    State newState = copy(currentState);
+    newState.leaseExpirationTimeMicros = computeExpirationTime(payload);
+    return newState;
+  }
+
+  private static long computeExpirationTime(State payload) {
+    long leaseDurationMillis = payload.leaseDurationMillis != null
+        ? payload.leaseDurationMillis : DEFAULT_LEASE_DURATION_MILLIS;
+    return Utils.getNowMicrosUtc() + TimeUnit.MILLISECONDS.toMicros(leaseDurationMillis);
+  }
+
+  private static boolean isHeld(State state, long nowMicros) {
+    return StringUtils.isNotBlank(state.ownerTaskId)
+        && state.leaseExpirationTimeMicros != null
+        && state.leaseExpirationTimeMicros > nowMicros;
+  }
+
+  private static State copy(State state) {
+    State newState = new State();
+    newState.entityId = state.entityId;
+    newState.entityKind = state.entityKind;
+    newState.ownerTaskId = state.ownerTaskId;
+    newState.leaseToken = state.leaseToken;
+    newState.leaseExpirationTimeMicros = state.leaseExpirationTimeMicros;
+    return newState;
+  }
+
+  private void validateState(State state) {
+    checkState(state.leaseOperation == null, "leaseOperation should always be null");
+    checkState(state.leaseDurationMillis == null, "leaseDurationMillis should always be null");
+    ValidationUtils.validateState(state);
+  }
+
+  private void validatePayload(State state) {
+    checkArgument(state != null, "state cannot be null");
+    checkArgument(state.leaseOperation != null, "leaseOperation cannot be null");
+    checkArgument(StringUtils.isNotBlank(state.entityId), "entityId cannot be blank");
+    checkArgument(StringUtils.isNotBlank(state.ownerTaskId), "ownerTaskId cannot be blank");
+    checkArgument(state.leaseDurationMillis == null || state.leaseDurationMillis > 0,
+        "leaseDurationMillis must be positive");
+  }
+
+  /**
+   * Service state data. Class encapsulating the data for EntityLease. The state is not persisted.
+   */
+  @NoMigrationDuringUpgrade
+  @NoMigrationDuringDeployment
+  public static class State extends ServiceDocument {
+
+    @NotBlank
+    public String entityId;
+
+    public String entityKind;
+
+    public String ownerTaskId;
+
+    /**
+     * The token of the current grant of the lease, returned to the holder on acquire.
+     */
+    public Long leaseToken;
+
+    public Long leaseExpirationTimeMicros;
+
+    /**
+     * The requested duration of the lease on acquire and renew, not kept in the state.
+     */
+    public Long leaseDurationMillis;
+
+    public LeaseOperation leaseOperation;
+
+    /**
+     * Definition of lease operations.
+     */
+    public enum LeaseOperation {
+      ACQUIRE,
+      RENEW,
+      RELEASE,
+      /**
+       * Deletes the lease unless it is held, sent with a DELETE by the periodic maintenance of the service.
+       */
+      EXPIRE
+    }
+  }
+}
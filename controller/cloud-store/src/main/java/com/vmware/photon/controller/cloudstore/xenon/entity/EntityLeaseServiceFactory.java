@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.xenon.common.FactoryService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+
+/**
+ * Class EntityLeaseServiceFactory is a factory to create EntityLeaseService instances. The leases are created with the
+ * entity ID as their self link.
+ */
+public class EntityLeaseServiceFactory extends FactoryService {
+
+  public static final String SELF_LINK = ServiceUriPaths.CLOUDSTORE_ROOT + "/entity-leases";
+
+  public EntityLeaseServiceFactory() {
+    super(EntityLeaseService.State.class);
+    super.setPeerNodeSelectorPath(ServiceUriPaths.DEFAULT_CLOUD_STORE_NODE_SELECTOR);
+    super.toggleOption(ServiceOption.IDEMPOTENT_POST, true);
+  }
+
+  @Override
+  public Service createServiceInstance() throws Throwable {
+    return new EntityLeaseService();
+  }
+
+  @Override
+  public void handleStop(Operation stop) {
+    ServiceUtils.logWarning(this, "Stopping factory service %s", stop);
+    super.handleStop(stop);
+  }
+
+  @Override
+  public void handleDelete(Operation delete) {
+    ServiceUtils.logWarning(this, "Deleting factory service %s", delete);
+    super.handleDelete(delete);
+  }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.agent.gen.AgentControl;
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.cloudstore.SystemConfig;
+import com.vmware.photon.controller.common.clients.AgentControlClient;
+import com.vmware.photon.controller.common.clients.AgentControlClientProvider;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.thrift.async.AsyncMethodCallback;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * This class implements a service which checks that the agents of the hosts are alive.
+ * <p>
+ * One instance runs on each node and periodically sweeps the {@link HostService} documents owned by that node. The
+ * agent of each host is pinged, with a bounded number of pings in flight, and the host document is only patched when
+ * its agent state changes. The host configuration (datastores, networks, etc.) is synchronized through the host
+ * service once per {@link HostService#UPDATE_HOST_METADATA_INTERVAL}, spread evenly over the sweeps in that interval.
+ * <p>
+ * The agent clients are kept between sweeps, so that each sweep reuses the connections to the agents.
+ */
+public class HostHeartbeatService extends StatelessService {
+
+  public static final String SELF_LINK = ServiceUriPaths.CLOUDSTORE_ROOT + "/host-heartbeat";
+
+  /**
+   * The default interval between two sweeps.
+   */
+  public static final long DEFAULT_SWEEP_INTERVAL_MILLIS = HostService.DEFAULT_MAINTENANCE_INTERVAL_MILLIS;
+
+  /**
+   * The default maximum number of hosts which are checked at the same time.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_CHECKS = 32;
+
+  private static boolean inUnitTests = false;
+
+  private final int maxConcurrentChecks;
+  private final Map<String, AgentControlClient> agentControlClients = new ConcurrentHashMap<>();
+  private final AtomicBoolean sweepInProgress = new AtomicBoolean();
+
+  private final Timer sweepDuration = DefaultMetricRegistry.REGISTRY.timer(name(HostHeartbeatService.class, "sweeps"));
+  private final Histogram sweptHosts =
+      DefaultMetricRegistry.REGISTRY.histogram(name(HostHeartbeatService.class, "hosts"));
+  private final Histogram missingHosts =
+      DefaultMetricRegistry.REGISTRY.histogram(name(HostHeartbeatService.class, "missing-hosts"));
+
+  public HostHeartbeatService() {
+    this(DEFAULT_SWEEP_INTERVAL_MILLIS, DEFAULT_MAX_CONCURRENT_CHECKS);
+  }
+
+  public HostHeartbeatService(long sweepIntervalMillis, int maxConcurrentChecks) {
+    super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+    super.setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(sweepIntervalMillis));
+    this.maxConcurrentChecks = maxConcurrentChecks;
+  }
+
+  /**
+   * When we are running in the unit tests, we want to disable the host ping because it will always fail (we have fake
+   * hosts) and mark the agentState as missing. This allows us to do so.
+   *
+   * @param inUnitTests
+   */
+  public static void setInUnitTests(boolean inUnitTests) {
+    HostHeartbeatService.inUnitTests = inUnitTests;
+  }
+
+  @Override
+  public void handlePeriodicMaintenance(Operation maintenance) {
+    maintenance.complete();
+    if (HostHeartbeatService.inUnitTests || SystemConfig.getInstance().isBackgroundPaused()) {
+      return;
+    }
+
+    sweep(null);
+  }
+
+  /**
+   * A patch starts a sweep right away. It completes when the sweep is done.
+   */
+  @Override
+  public void handlePatch(Operation patch) {
+    sweep(patch);
+  }
+
+  private void sweep(Operation operation) {
+    if (!sweepInProgress.compareAndSet(false, true)) {
+      ServiceUtils.logInfo(this, "Skipping host heartbeat, previous sweep is still running");
+      if (operation != null) {
+        operation.complete();
+      }
+      return;
+    }
+
+    Timer.Context sweepTimer = sweepDuration.time();
+    Runnable onCompletion = () -> {
+      sweepTimer.stop();
+      sweepInProgress.set(false);
+      if (operation != null) {
+        operation.complete();
+      }
+    };
+
+    QueryTask queryTask = QueryTask.Builder.createDirectTask()
+        .setQuery(QueryTask.Query.Builder.create()
+            .addKindFieldClause(HostService.State.class)
+            .build())
+        .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT)
+        .build();
+
+    sendRequest(Operation
+        .createPost(UriUtils.buildUri(getHost(),
+            com.vmware.xenon.services.common.ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+        .setBody(queryTask)
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            ServiceUtils.logWarning(this, "Failed to query hosts for heartbeat " + ex.getMessage());
+            onCompletion.run();
+            return;
+          }
+
+          try {
+            List<HostService.State> hosts = getOwnedHosts(op.getBody(QueryTask.class));
+            closeUnusedClients(hosts);
+            new Sweep(hosts, onCompletion).start();
+          } catch (Throwable t) {
+            ServiceUtils.logSevere(this, t);
+            onCompletion.run();
+          }
+        }));
+  }
+
+  private List<HostService.State> getOwnedHosts(QueryTask queryTask) {
+    List<HostService.State> hosts = new ArrayList<>();
+    if (queryTask.results == null || queryTask.results.documents == null) {
+      return hosts;
+    }
+
+    for (Object document : queryTask.results.documents.values()) {
+      HostService.State host = Utils.fromJson(document, HostService.State.class);
+      if (Objects.equals(host.documentOwner, getHost().getId())) {
+        hosts.add(host);
+      }
+    }
+
+    return hosts;
+  }
+
+  /**
+   * Closes the clients of the hosts which were deleted or are now owned by another node.
+   */
+  private void closeUnusedClients(List<HostService.State> hosts) {
+    Set<String> hostLinks = hosts.stream().map(host -> host.documentSelfLink).collect(Collectors.toSet());
+    agentControlClients.keySet().removeIf(hostLink -> {
+      if (hostLinks.contains(hostLink)) {
+        return false;
+      }
+      agentControlClients.get(hostLink).close();
+      return true;
+    });
+  }
+
+  /**
+   * Returns whether the configuration of a host should be synchronized in the current sweep. Each host gets a slot
+   * among the sweeps in the metadata update interval, so that the synchronizations are spread over that interval.
+   */
+  @VisibleForTesting
+  static boolean isHostConfigSyncDue(String hostLink, long nowMillis, long sweepIntervalMillis) {
+    long slots = Math.max(1, HostService.UPDATE_HOST_METADATA_INTERVAL / sweepIntervalMillis);
+    long slot = Math.floorMod(hostLink.hashCode(), slots);
+    return (nowMillis / sweepIntervalMillis) % slots == slot;
+  }
+
+  private AgentControlClient getAgentControlClient(HostService.State host) {
+    AgentControlClient client = agentControlClients.computeIfAbsent(host.documentSelfLink,
+        hostLink -> ((AgentControlClientProvider) getHost()).getAgentControlClient());
+    client.setIpAndPort(host.hostAddress, host.agentPort);
+    return client;
+  }
+
+  /**
+   * One pass over the hosts owned by this node.
+   */
+  private class Sweep {
+    private final List<HostService.State> hosts;
+    private final Runnable onCompletion;
+    private final long startTimeMillis = System.currentTimeMillis();
+    private final AtomicInteger nextHost = new AtomicInteger();
+    private final AtomicInteger pendingHosts;
+    private final AtomicInteger missing = new AtomicInteger();
+
+    private Sweep(List<HostService.State> hosts, Runnable onCompletion) {
+      this.hosts = hosts;
+      this.onCompletion = onCompletion;
+      this.pendingHosts = new AtomicInteger(hosts.size());
+    }
+
+    private void start() {
+      if (hosts.isEmpty()) {
+        finish();
+        return;
+      }
+
+      for (int i = 0; i < Math.min(maxConcurrentChecks, hosts.size()); i++) {
+        checkNextHost();
+      }
+    }
+
+    private void checkNextHost() {
+      int index = nextHost.getAndIncrement();
+      if (index >= hosts.size()) {
+        return;
+      }
+
+      HostService.State host = hosts.get(index);
+      long sweepIntervalMillis = TimeUnit.MICROSECONDS.toMillis(getMaintenanceIntervalMicros());
+      if (isHostConfigSyncDue(host.documentSelfLink, startTimeMillis, sweepIntervalMillis)) {
+        syncHostConfig(host);
+      } else {
+        pingHost(host);
+      }
+    }
+
+    /**
+     * Asks the host service to retrieve the host configuration, which also updates the agent state.
+     */
+    private void syncHostConfig(HostService.State host) {
+      if (host.agentState == AgentState.MISSING) {
+        missing.incrementAndGet();
+      }
+
+      HostService.State patchState = new HostService.State();
+      patchState.syncHostConfigTrigger = true;
+      sendRequest(Operation
+          .createPatch(HostHeartbeatService.this, host.documentSelfLink)
+          .setBody(patchState)
+          .setCompletion((op, ex) -> {
+            if (ex != null) {
+              ServiceUtils.logWarning(HostHeartbeatService.this,
+                  "Failed to synchronize host config of " + host.hostAddress + " " + ex.getMessage());
+            }
+            hostChecked();
+          }));
+    }
+
+    private void pingHost(HostService.State host) {
+      try {
+        getAgentControlClient(host).ping(new AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call>() {
+          @Override
+          public void onComplete(AgentControl.AsyncSSLClient.ping_call pingCall) {
+            updateAgentState(host, AgentState.ACTIVE);
+          }
+
+          @Override
+          public void onError(Exception e) {
+            ServiceUtils.logInfo(HostHeartbeatService.this,
+                "Failed to ping " + host.hostAddress + ", will be marked as missing:" + e.getMessage());
+            updateAgentState(host, AgentState.MISSING);
+          }
+        });
+      } catch (Exception ex) {
+        ServiceUtils.logWarning(HostHeartbeatService.this,
+            "Unexpected exception while pinging " + host.hostAddress + ", will be marked as missing:" +
+                ex.getMessage());
+        updateAgentState(host, AgentState.MISSING);
+      }
+    }
+
+    /**
+     * Patches the host document with the agent state if it has changed.
+     */
+    private void updateAgentState(HostService.State host, AgentState agentState) {
+      if (agentState == AgentState.MISSING) {
+        missing.incrementAndGet();
+      }
+
+      if (host.agentState == agentState) {
+        hostChecked();
+        return;
+      }
+
+      ServiceUtils.logInfo(HostHeartbeatService.this, "Agent state for host " + host.hostAddress + " changed from " +
+          host.agentState + " " + "-> " + agentState);
+      HostService.State patchState = new HostService.State();
+      patchState.agentState = agentState;
+      sendRequest(Operation
+          .createPatch(HostHeartbeatService.this, host.documentSelfLink)
+          .setBody(patchState)
+          .setCompletion((op, ex) -> {
+            if (ex != null) {
+              ServiceUtils.logWarning(HostHeartbeatService.this,
+                  "Failed to update agent state of " + host.hostAddress + " " + ex.getMessage());
+            }
+            hostChecked();
+          }));
+    }
+
+    private void hostChecked() {
+      if (pendingHosts.decrementAndGet() == 0) {
+        finish();
+      } else {
+        checkNextHost();
+      }
+    }
+
+    private void finish() {
+      sweptHosts.update(hosts.size());
+      missingHosts.update(missing.get());
+      ServiceUtils.logInfo(HostHeartbeatService.this, "Checked %d hosts in %d ms, %d missing",
+          hosts.size(), System.currentTimeMillis() - startTimeMillis, missing.get());
+      onCompletion.run();
+    }
+  }
+}
@@ -18,7 +18,6 @@ import com.vmware.photon.controller.agent.gen.UpdateConfigResponse;
 import com.vmware.photon.controller.api.model.AgentState;
 import com.vmware.photon.controller.api.model.HostState;
 import com.vmware.photon.controller.api.model.UsageTag;
-import com.vmware.photon.controller.cloudstore.SystemConfig;
 import com.vmware.photon.controller.cloudstore.xenon.task.DatastoreDeleteFactoryService;
 import com.vmware.photon.controller.cloudstore.xenon.task.DatastoreDeleteService;
 import com.vmware.photon.controller.cloudstore.xenon.upgrade.HostTransformationService;
@@ -27,6 +26,7 @@ import com.vmware.photon.controller.common.clients.AgentControlClient;
 import com.vmware.photon.controller.common.clients.AgentControlClientProvider;
 import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.HostClientProvider;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
 import com.vmware.photon.controller.common.xenon.PatchUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
@@ -58,7 +58,9 @@ import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 
+import com.codahale.metrics.Counter;
 import org.apache.thrift.async.AsyncMethodCallback;
+import static com.codahale.metrics.MetricRegistry.name;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
@@ -68,9 +70,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -81,22 +84,24 @@ import java.util.stream.Collectors;
  */
 public class HostService extends StatefulService {
 
+  /**
+   * Counts the host and datastore writes skipped because the configuration reported by the agent has not
+   * changed since it was last stored.
+   */
+  private static final Counter suppressedWrites =
+      DefaultMetricRegistry.REGISTRY.counter(name(HostService.class, "suppressed-writes"));
+
   private final Random random = new Random();
 
   /**
-   * All the default values specified below are just good starting points. We might
-   * need to adjust them after scale testing.
-   *
-   * DEFAULT_MAINTENANCE_INTERVAL = DEFAULT_MAX_PING_WAIT_TIME + MAX_TIME_TO_PING + BUFFER = 50 + 5 + 5 = 60s
-   *
-   * At DEFAULT_MAX_PING_WAIT_TIME of 50 seconds, we will send 20 pings every second if we have 1000 hosts and 200
-   * pings every second if we have 10,000 hosts. The actual ping, get and post are all asynchronous. So we should be
-   * able to scale to 1000 hosts without issues and 10,000 hosts depending on the load on cloud store by other services.
+   * Hash of the datastores last stored from the host config of this host. It is soft state of the owner, so
+   * after a restart or an owner change the datastore documents are written once more.
    */
+  private volatile Integer storedDatastoresHash;
 
   /**
-   * The default maintenance interval controls how often we poll the agent for its
-   * state (60 seconds).
+   * The default interval at which the agent of a host is checked (60 seconds). The checks are done by
+   * {@link HostHeartbeatService}.
    */
   public static final long DEFAULT_MAINTENANCE_INTERVAL_MILLIS = 60 * 1000;
 
@@ -106,12 +111,6 @@ public class HostService extends StatefulService {
    */
   public static final long DEFAULT_DELETE_TASK_TRIGGER_WAIT_MILLIS = 5 * 1000;
 
-  /**
-   * This value represents the upper bound of the wait time in milliseconds for a host
-   * service instance to ping the agent within its polling interval (10 seconds).
-   */
-  public static final int DEFAULT_MAX_PING_WAIT_TIME_MILLIS = 50 * 1000;
-
   /**
    * The scheduling constant is a random number in (0, MAX_SCHEDULING_CONSTANT] assigned to each HostService.State. The
    * CloudStoreContraintChecker uses it to randomly select hosts.
@@ -133,22 +132,11 @@ public class HostService extends StatefulService {
    */
   public static final long UPDATE_HOST_METADATA_INTERVAL = TimeUnit.MINUTES.toMillis(10);
 
-  /**
-   * This represents the soft state that maintains the last maintenance time of the host metadata (datastores and
-   * networks) update.
-   */
-  private long lastHostMetadataUpdateTime;
-
-  private static boolean inUnitTests = false;
-
   public HostService() {
     super(State.class);
     super.toggleOption(ServiceOption.OWNER_SELECTION, true);
     super.toggleOption(ServiceOption.PERSISTENCE, true);
     super.toggleOption(ServiceOption.REPLICATION, true);
-    super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
-    super.setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(DEFAULT_MAINTENANCE_INTERVAL_MILLIS));
-    this.lastHostMetadataUpdateTime = System.currentTimeMillis();
   }
 
   @Override
@@ -203,8 +191,8 @@ public class HostService extends StatefulService {
   }
 
   /**
-   * Perform final validation of a new HostService's state, set maintenance
-   * interval, and complete or fail the start operation.
+   * Perform final validation of a new HostService's state, and complete or
+   * fail the start operation.
    *
    * finishHandleStart can be called synchronously or it can be called
    * asynchronously from a completion handler.
@@ -220,8 +208,6 @@ public class HostService extends StatefulService {
         throw new IllegalStateException("scheduling constant was not assigned");
       }
 
-      // set the maintenance interval to match the value in the state.
-      this.setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(startState.triggerIntervalMillis));
       startOperation.complete();
     } catch (IllegalStateException t) {
       ServiceUtils.failOperationAsBadRequest(this, startOperation, t);
@@ -242,7 +228,9 @@ public class HostService extends StatefulService {
       validatePatchState(startState, patchState);
 
       if (patchState.syncHostConfigTrigger != null && patchState.syncHostConfigTrigger) {
-        // Handle special patch operation to trigger immediate Host Configuration Synchronization.
+        // Handle special patch operation to trigger immediate Host Configuration Synchronization. The trigger
+        // itself does not change the document, so it is not written.
+        patchOperation.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
         getHostConfig(patchOperation, startState);
         return;
       }
@@ -270,8 +258,7 @@ public class HostService extends StatefulService {
       // patch is not from a getHostConfig() call), then also the host service proactively calls the agent to get
       // host configuration and update the host document. This is needed to make sure that when an agent which was
       // temporarily unavailable came back online, we make sure that the host config has not changed.
-      // Apart from these two cases, host configuration is updated as part of handlePeriodicMaintenance of the Host
-      // Service at periodic intervals.
+      // Apart from these two cases, host configuration is updated at periodic intervals by HostHeartbeatService.
       if (stateChangedToReady || (agentStateChangedToActive && newEsxVersion == null)) {
         getHostConfig(null, startState);
       }
@@ -284,12 +271,16 @@ public class HostService extends StatefulService {
       // If not, get the list of datastores which became inactive since the last update and call the datastore delete
       // task on them as they might be eligible for deletion.
       if (agentStateChangedToMissing) {
+        storedDatastoresHash = null;
         scheduleDatastoreDeleteTasks(startState, previouslyReportedDatastores);
       } else {
         if (previouslyReportedDatastores != null && newlyReportedDatastores != null) {
           Set<String> inactiveDatastoreIds = previouslyReportedDatastores.stream()
               .filter(id -> !newlyReportedDatastores.contains(id))
               .collect(Collectors.toSet());
+          if (!inactiveDatastoreIds.isEmpty()) {
+            storedDatastoresHash = null;
+          }
           scheduleDatastoreDeleteTasks(startState, inactiveDatastoreIds);
         }
       }
@@ -307,107 +298,20 @@ public class HostService extends StatefulService {
     ServiceUtils.expireDocumentOnDelete(this, State.class, deleteOperation);
   }
 
-  /**
-   * When we are running in the unit tests, we want to disable the host ping because it will always fail (we have fake
-   * hosts) and mark the agentState as missing. This allows us to do so.
-   *
-   * @param inUnitTests
-   */
-  public static void setInUnitTests(boolean inUnitTests) {
-    HostService.inUnitTests = inUnitTests;
-  }
-
-  /**
-   * Handle periodic maintenance calls for all host service instances. We will be using this to ping all the hosts
-   * periodically to check if they are alive.
-   *
-   * @param maintenance
-   */
-  @Override
-  public void handlePeriodicMaintenance(Operation maintenance) {
-    if (HostService.inUnitTests) {
-      maintenance.complete();
-      return;
-    }
-    if (SystemConfig.getInstance().isBackgroundPaused()) {
-      maintenance.complete();
-      return;
-    }
-    try {
-      getHost().schedule(() -> {
-        Operation getOperation = Operation.createGet(this, maintenance.getUri().getPath())
-            .setCompletion((op, ex) -> {
-              if (ex != null) {
-                ServiceUtils.logWarning(this, "Get request failed on Host Service to ping agent " + ex.getMessage());
-                maintenance.fail(ex);
-                return;
-              }
-
-              State hostState = op.getBody(State.class);
-              // Retrieve host metadata if the interval has elapsed. Otherwise, just ping the
-              // host to perform a health-check.
-              if (System.currentTimeMillis() - lastHostMetadataUpdateTime >= UPDATE_HOST_METADATA_INTERVAL) {
-                getHostConfig(maintenance, hostState);
-              } else {
-                pingHost(maintenance, hostState);
-              }
-            });
-        sendRequest(getOperation);
-      }, ThreadLocalRandom.current().nextInt(1, DEFAULT_MAX_PING_WAIT_TIME_MILLIS), TimeUnit.MILLISECONDS);
-    } catch (Exception exception) {
-      ServiceUtils.logWarning(this, "Handle maintenance failed " + exception.getMessage());
-      maintenance.fail(exception);
-    }
-  }
-
-  /**
-   * This method pings the agent on the host identified by the host document and updates the agent state in the host
-   * document if it determines a change in agent state.
-   * The thrift call to ping the agent is implemented as a runnable, which will be scheduled to run in the future.
-   * The time after which it runs is determined by a random integer between 1 and maxPingWaitTimeMillis. This is needed
-   * to achieve a randomized distribution of the polling task so that we reduce the number of concurrent connections.
-   *
-   * @param maintenance
-   * @param hostState
-   */
-  private void pingHost(Operation maintenance, State hostState) {
-    final Service service = this;
-    try {
-      AgentControlClient agentControlClient = ((AgentControlClientProvider) getHost()).getAgentControlClient();
-      agentControlClient.setIpAndPort(hostState.hostAddress, hostState.agentPort);
-      agentControlClient.ping(new AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call>() {
-        @Override
-        public void onComplete(AgentControl.AsyncSSLClient.ping_call pingCall) {
-          updateHostState(maintenance, hostState, AgentState.ACTIVE);
-        }
-
-        @Override
-        public void onError(Exception e) {
-          ServiceUtils.logInfo(service, "Failed to ping " + hostState.hostAddress + ", will be marked as missing:" +
-              e.getMessage());
-          updateHostState(maintenance, hostState, AgentState.MISSING);
-        }
-      });
-    } catch (Exception ex) {
-      ServiceUtils.logWarning(this, "Unexpected exception while pinging " + hostState.hostAddress + ", will be " +
-          "marked as missing:" + ex.getMessage());
-      updateHostState(maintenance, hostState, AgentState.MISSING);
-    }
-  }
-
   /**
    * This method gets the host config (datastores, networks, etc.) from agent.
    * It also sets the agentState to ACTIVE or MISSING, depending on the result
-   * of the getHostConfig call. Because this updates agentState, handlePeriodicMaintenance
-   * does not call pingHost when host configuration is updated.
+   * of the getHostConfig call. Because this updates agentState, {@link HostHeartbeatService}
+   * does not ping the host when it asks for the host configuration to be updated.
    * <p>
-   * The operation parameter is null when executed by handlePatch. But it
-   * is set for handlePeriodicMaintenance.
+   * The operation parameter is null when executed by a state change in handlePatch. But it
+   * is set for the patch which triggers the synchronization. Only the periodic synchronization
+   * skips the datastore writes when the reported datastores have not changed; a state change
+   * always writes them, so datastore documents deleted in the meantime are recreated.
    */
   private void getHostConfig(Operation operation, State hostState) {
     try {
       final Service service = this;
-      lastHostMetadataUpdateTime = System.currentTimeMillis();
       HostClient hostClient = ((HostClientProvider) getHost()).getHostClient();
       hostClient.setIpAndPort(hostState.hostAddress, hostState.agentPort);
       hostClient.getHostConfig(new AsyncMethodCallback<Host.AsyncSSLClient.get_host_config_call>() {
@@ -416,7 +320,7 @@ public class HostService extends StatefulService {
           try {
             GetConfigResponse response = getHostConfigCall.getResult();
             HostClient.ResponseValidator.checkGetConfigResponse(response);
-            processHostConfig(operation, hostState, response.getHostConfig());
+            processHostConfig(operation, hostState, response.getHostConfig(), operation != null);
           } catch (Throwable t) {
             ServiceUtils.logWarning(service, "Failed to retrieve host config. Setting agentState to MISSING. " +
                 "Exception:" + t.getMessage());
@@ -439,13 +343,16 @@ public class HostService extends StatefulService {
   }
 
   /**
-   * This method updates the host state with the received host config.
+   * This method updates the host state with the received host config. The host document is only
+   * patched when the reported config differs from the stored state.
    *
    * @param operation
    * @param hostState
    * @param hostConfig
+   * @param skipUnchangedDatastores
    */
-  private void processHostConfig(Operation operation, State hostState, HostConfig hostConfig) {
+  private void processHostConfig(Operation operation, State hostState, HostConfig hostConfig,
+                                 boolean skipUnchangedDatastores) {
     List<Datastore> datastores = hostConfig.getDatastores();
     List<Network> networks = hostConfig.getNetworks();
     Set<String> imageDatastoreIds = hostConfig.getImage_datastore_ids();
@@ -493,14 +400,61 @@ public class HostService extends StatefulService {
         patchState.memoryMb = hostConfig.getMemory_mb();
       }
 
-      TaskUtils.sendSelfPatch(this, patchState);
+      if (isHostConfigChanged(hostState, patchState)) {
+        TaskUtils.sendSelfPatch(this, patchState);
+      } else {
+        suppressedWrites.inc();
+      }
     } catch (Throwable ex) {
       ServiceUtils.logWarning(this, "Failed to update " + hostState.hostAddress + " with state: " +
           Utils.toJson(true, false, hostState) + " " + ex.getMessage());
     }
 
     // Update datastore state
-    setDatastoreState(operation, hostState, datastores, imageDatastoreIds, hostConfig.getDeployment_id());
+    Integer datastoresHash = getDatastoresHash(datastores, imageDatastoreIds);
+    if (skipUnchangedDatastores && datastoresHash != null && datastoresHash.equals(storedDatastoresHash)) {
+      suppressedWrites.inc(datastores.size());
+      getDeployment(operation, hostState, datastores, imageDatastoreIds, hostConfig.getDeployment_id());
+      return;
+    }
+
+    setDatastoreState(operation, hostState, datastores, imageDatastoreIds, hostConfig.getDeployment_id(),
+        datastoresHash);
+  }
+
+  /**
+   * This method checks whether the host config fields of the patch differ from the current state. Fields
+   * which are not set in the patch are left unchanged by it.
+   */
+  private static boolean isHostConfigChanged(State currentState, State patchState) {
+    return !Objects.equals(currentState.agentState, patchState.agentState)
+        || !Objects.equals(currentState.reportedDatastores, patchState.reportedDatastores)
+        || !Objects.equals(currentState.datastoreServiceLinks, patchState.datastoreServiceLinks)
+        || !Objects.equals(currentState.reportedImageDatastores, patchState.reportedImageDatastores)
+        || !Objects.equals(currentState.reportedNetworks, patchState.reportedNetworks)
+        || (patchState.cpuCount != null && !patchState.cpuCount.equals(currentState.cpuCount))
+        || (patchState.esxVersion != null && !patchState.esxVersion.equals(currentState.esxVersion))
+        || (patchState.memoryMb != null && !patchState.memoryMb.equals(currentState.memoryMb));
+  }
+
+  /**
+   * This method computes a hash over the content of the reported datastores which is independent of
+   * the order in which the agent reports them. It returns null when no datastores are reported.
+   */
+  private static Integer getDatastoresHash(List<Datastore> datastores, Set<String> imageDatastores) {
+    if (datastores == null || imageDatastores == null) {
+      return null;
+    }
+
+    Map<String, List<Object>> content = new TreeMap<>();
+    for (Datastore datastore : datastores) {
+      content.put(datastore.getId(), Arrays.asList(
+          datastore.getName(),
+          datastore.getType() != null ? datastore.getType().toString() : null,
+          datastore.getTags(),
+          imageDatastores.contains(datastore.getId())));
+    }
+    return content.hashCode();
   }
 
   /**
@@ -510,12 +464,15 @@ public class HostService extends StatefulService {
    * @param datastores
    * @param imageDatastores
    * @param deploymentId
+   * @param datastoresHash
    */
   private void setDatastoreState(Operation operation, State hostState, List<Datastore> datastores,
-                                 Set<String> imageDatastores, String deploymentId) {
+                                 Set<String> imageDatastores, String deploymentId, Integer datastoresHash) {
     if (datastores != null) {
-      // Create datastore documents.
+      // Create datastore documents. The hash is only remembered when all of them were written.
+      storedDatastoresHash = null;
       final AtomicInteger latch = new AtomicInteger(datastores.size());
+      final AtomicInteger failures = new AtomicInteger(0);
       for (Datastore datastore : datastores) {
         DatastoreService.State datastoreState = new DatastoreService.State();
         datastoreState.documentSelfLink = datastore.getId();
@@ -534,8 +491,12 @@ public class HostService extends StatefulService {
               .setCompletion((op, ex) -> {
                 if (ex != null) {
                   ServiceUtils.logWarning(this, "Set datastore state failed " + ex.getMessage());
+                  failures.incrementAndGet();
                 }
                 if (0 == latch.decrementAndGet()) {
+                  if (failures.get() == 0) {
+                    storedDatastoresHash = datastoresHash;
+                  }
                   getDeployment(operation, hostState, datastores, imageDatastores, deploymentId);
                 }
               });
@@ -947,8 +908,8 @@ public class HostService extends StatefulService {
     public Long schedulingConstant;
 
     /**
-     * The time interval to trigger the service. (This value will be used to set the
-     * maintenance interval on the service.)
+     * The time interval to trigger the service. This is no longer used, the agents of all the hosts are checked by
+     * {@link HostHeartbeatService} at its own interval.
      */
     @DefaultLong(value = DEFAULT_MAINTENANCE_INTERVAL_MILLIS)
     @Positive
@@ -78,6 +78,10 @@ public class ResourceTicketService extends StatefulService {
       State currentState = getState(patchOperation);
       Patch patch = patchOperation.getBody(Patch.class);
 
+      if (Boolean.TRUE.equals(currentState.escrowClosed) && patch.patchtype != Patch.PatchType.ESCROW_RETURN) {
+        throw new IllegalStateException(String.format("Escrow %s is closed", getSelfLink()));
+      }
+
       switch (patch.patchtype) {
         case USAGE_CONSUME:
           consumeQuota(patch, currentState);
@@ -85,6 +89,18 @@ public class ResourceTicketService extends StatefulService {
         case USAGE_RETURN:
           returnUsage(patch, currentState);
           break;
+        case ESCROW_GROW:
+          checkEscrow(currentState);
+          growEscrow(patch, currentState);
+          break;
+        case ESCROW_CLOSE:
+          checkEscrow(currentState);
+          currentState.escrowClosed = true;
+          break;
+        case ESCROW_RETURN:
+          checkEscrow(currentState);
+          returnEscrow(currentState);
+          break;
         default:
           String message =
               String.format("PatchType {%s} in patchOperation {%s}", patch.patchtype, patchOperation);
@@ -164,6 +180,41 @@ public class ResourceTicketService extends StatefulService {
     }
   }
 
+  private void checkEscrow(State currentState) {
+    if (currentState.escrowHolder == null) {
+      throw new IllegalStateException(String.format("%s is not an escrow", getSelfLink()));
+    }
+  }
+
+  private void returnEscrow(State currentState) {
+    // only one caller gets to give the unused part of a closed
+    // escrow back to the parent ticket
+    if (!Boolean.TRUE.equals(currentState.escrowClosed)) {
+      throw new IllegalStateException(String.format("Escrow %s is not closed", getSelfLink()));
+    }
+    if (Boolean.TRUE.equals(currentState.escrowReturned)) {
+      throw new IllegalStateException(String.format("Escrow %s has been returned", getSelfLink()));
+    }
+    currentState.escrowReturned = true;
+  }
+
+  private void growEscrow(Patch patch, State currentState) {
+    // raise the limits of the escrow by the cost, which has been
+    // consumed from the parent ticket by the escrow holder
+    for (String key : patch.cost.keySet()) {
+      QuotaLineItem cost = patch.cost.get(key);
+      if (!currentState.usageMap.containsKey(key)) {
+        currentState.usageMap.put(key, new QuotaLineItem(key, 0.0, cost.getUnit()));
+      }
+
+      if (currentState.limitMap.containsKey(key)) {
+        currentState.limitMap.put(key, add(currentState.limitMap.get(key), cost));
+      } else {
+        currentState.limitMap.put(key, new QuotaLineItem(key, cost.getValue(), cost.getUnit()));
+      }
+    }
+  }
+
   /**
    * Returns a QuotaLineItem whose value is this + val. The unit in the result are the same as
    * the unit in "this". That is to say if "this" is in KB and "val" is in MB, the result is in KB.
@@ -390,7 +441,10 @@ public class ResourceTicketService extends StatefulService {
     public enum PatchType {
       NONE,
       USAGE_CONSUME,
-      USAGE_RETURN
+      USAGE_RETURN,
+      ESCROW_GROW,
+      ESCROW_CLOSE,
+      ESCROW_RETURN
     }
   }
 
@@ -426,5 +480,18 @@ public class ResourceTicketService extends StatefulService {
     public Map<String, QuotaLineItem> limitMap = new HashMap<>();
 
     public Map<String, QuotaLineItem> usageMap = new HashMap<>();
+
+    // an escrow is a slice of the limits of its parent ticket which
+    // is held by one API node. the node consumes and returns quota
+    // against the escrow instead of the parent, and refills it from
+    // the parent or closes it to give the unused part back.
+    @Immutable
+    public String escrowHolder;
+
+    // a closed escrow rejects all further patches except the one
+    // which marks its unused part as given back to the parent
+    public Boolean escrowClosed;
+
+    public Boolean escrowReturned;
   }
 }
@@ -29,6 +29,7 @@ import com.vmware.xenon.common.RequestRouter;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatefulService;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -72,29 +73,43 @@ public class TaskService extends StatefulService {
       State currentState = getState(patch);
       StepUpdate stepUpdate = patch.getBody(StepUpdate.class);
 
-      if (stepUpdate.step == null) {
-        throw new IllegalArgumentException("Null step is not allowed for StepUpdate patch");
+      List<State.Step> updatedSteps = new ArrayList<>();
+      if (stepUpdate.step != null) {
+        updatedSteps.add(stepUpdate.step);
+      }
+      if (stepUpdate.steps != null) {
+        updatedSteps.addAll(stepUpdate.steps);
       }
 
-      if (stepUpdate.step.operation == null) {
-        throw new IllegalArgumentException("Null step.operation is not allowed for StepUpdate patch");
+      if (updatedSteps.isEmpty()) {
+        throw new IllegalArgumentException("Null step is not allowed for StepUpdate patch");
       }
 
-      State.Step step = null;
-      if (currentState.steps != null) {
-        for (State.Step currentStep : currentState.steps) {
-          if (currentStep.operation.equals(stepUpdate.step.operation)) {
-            step = currentStep;
+      for (State.Step updatedStep : updatedSteps) {
+        if (updatedStep == null) {
+          throw new IllegalArgumentException("Null step is not allowed for StepUpdate patch");
+        }
+
+        if (updatedStep.operation == null) {
+          throw new IllegalArgumentException("Null step.operation is not allowed for StepUpdate patch");
+        }
+
+        State.Step step = null;
+        if (currentState.steps != null) {
+          for (State.Step currentStep : currentState.steps) {
+            if (currentStep.operation.equals(updatedStep.operation)) {
+              step = currentStep;
+            }
           }
         }
-      }
 
-      if (step == null) {
-        throw new IllegalArgumentException("Cannot update a step that does not exist");
-      }
+        if (step == null) {
+          throw new IllegalArgumentException("Cannot update a step that does not exist");
+        }
 
-      currentState.steps.remove(step);
-      currentState.steps.add(stepUpdate.step);
+        currentState.steps.remove(step);
+        currentState.steps.add(updatedStep);
+      }
 
       validateState(currentState);
 
@@ -166,6 +181,11 @@ public class TaskService extends StatefulService {
     public final String kind;
     public State.Step step;
 
+    /**
+     * Further steps replaced by the same patch, so that several step transitions are written at once.
+     */
+    public List<State.Step> steps;
+
     //We do not want to allow creating this update patch without setting "kind".
     //That will lead to handlePatch to be invoked with an empty patch wiping the state of the document clean.
     //We also cannot set "kind" in default constructor as that would lead to all patches getting matched to StepUpdate
@@ -190,6 +210,21 @@ public class TaskService extends StatefulService {
       this.kind = KIND;
       this.step = step;
     }
+
+    public StepUpdate(List<State.Step> steps) {
+      if (steps == null || steps.isEmpty()) {
+        throw new IllegalArgumentException("steps cannot be empty");
+      }
+
+      for (State.Step step : steps) {
+        if (step == null || step.operation == null) {
+          throw new IllegalArgumentException("Null step.operation is not allowed");
+        }
+      }
+
+      this.kind = KIND;
+      this.steps = steps;
+    }
   }
 
   /**
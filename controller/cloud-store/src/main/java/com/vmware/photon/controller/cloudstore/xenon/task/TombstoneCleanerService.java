@@ -24,6 +24,7 @@ import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDep
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
 import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
 import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
+import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
 import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.photon.controller.common.xenon.validation.Immutable;
 import com.vmware.photon.controller.common.xenon.validation.NotNull;
@@ -64,8 +65,23 @@ import java.util.Set;
  *
  * The TombstoneCleanerService keeps the tasks for five hours so that audits can be done or problems debugged after the
  * object has been deleted.
+ *
+ * Stale tombstones are processed a page at a time: the tasks of all the tombstones in a page are found with a single
+ * broadcast query, and the tasks and tombstones are deleted with bounded concurrency before the next page is fetched.
  */
 public class TombstoneCleanerService extends StatefulService {
+
+  /**
+   * Number of tombstones whose tasks are looked up with one broadcast query. Each tombstone adds a clause to the
+   * query, so this must stay well below the Lucene limit of 1024 clauses.
+   */
+  public static final int DEFAULT_QUERY_PAGE_SIZE = 100;
+
+  /**
+   * Maximum number of concurrent delete operations.
+   */
+  public static final int DELETE_BATCH_SIZE = 20;
+
   public TombstoneCleanerService() {
     super(State.class);
     super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -182,6 +198,11 @@ public class TombstoneCleanerService extends StatefulService {
       switch (current.taskState.stage) {
         case STARTED:
           final State finishPatch = new State();
+          finishPatch.staleTombstones = 0;
+          finishPatch.staleTasks = 0;
+          finishPatch.deletedTombstones = 0;
+          finishPatch.deletedTasks = 0;
+          finishPatch.queriedPages = 0;
           this.queryStaleTombstones(current, finishPatch);
           break;
 
@@ -208,6 +229,7 @@ public class TombstoneCleanerService extends StatefulService {
    * @param finishPatch
    */
   private void queryStaleTombstones(final State current, final State finishPatch) {
+    final long startTimeMillis = System.currentTimeMillis();
     Operation.CompletionHandler handler = new Operation.CompletionHandler() {
       @Override
       public void handle(Operation completedOp, Throwable failure) {
@@ -217,18 +239,7 @@ public class TombstoneCleanerService extends StatefulService {
         }
 
         try {
-          List<TombstoneService.State> tombstoneList =
-              parseTombstoneQueryResults(completedOp.getBody(QueryTask.class));
-          if (tombstoneList.size() == 0) {
-            ServiceUtils.logInfo(TombstoneCleanerService.this, "No stale tombstones found.");
-            finishTask(finishPatch);
-            return;
-          }
-
-          ServiceUtils.logInfo(TombstoneCleanerService.this,
-              "Count of stale tombstones found = " + tombstoneList.size());
-          finishPatch.staleTombstones = tombstoneList.size();
-          queryStaleTasks(finishPatch, tombstoneList);
+          processTombstonePage(current, finishPatch, startTimeMillis, completedOp.getBody(QueryTask.class));
         } catch (Throwable ex) {
           failTask(ex);
         }
@@ -244,45 +255,103 @@ public class TombstoneCleanerService extends StatefulService {
   }
 
   /**
-   * Retrieves the list of stale tasks.
+   * Cleans up the tombstones in a page of query results, then moves on to the next page. The task finishes after
+   * the last page.
+   *
+   * @param current
+   * @param finishPatch
+   * @param startTimeMillis
+   * @param page
+   */
+  private void processTombstonePage(final State current,
+                                    final State finishPatch,
+                                    final long startTimeMillis,
+                                    final QueryTask page) {
+    List<TombstoneService.State> tombstoneList = parseTombstoneQueryResults(page);
+    String nextPageLink = page.results.nextPageLink;
+    Runnable nextPage = () -> {
+      if (nextPageLink == null) {
+        finishPatch.durationMillis = System.currentTimeMillis() - startTimeMillis;
+        ServiceUtils.logInfo(this, "Deleted %d of %d stale tombstones and %d of %d tasks in %d pages, %d ms",
+            finishPatch.deletedTombstones, finishPatch.staleTombstones, finishPatch.deletedTasks,
+            finishPatch.staleTasks, finishPatch.queriedPages, finishPatch.durationMillis);
+        finishTask(finishPatch);
+        return;
+      }
+
+      Operation getNextPage = Operation
+          .createGet(UriUtils.buildUri(getHost(), nextPageLink))
+          .setCompletion((op, failure) -> {
+            if (failure != null) {
+              failTask(failure);
+              return;
+            }
+
+            try {
+              processTombstonePage(current, finishPatch, startTimeMillis, op.getBody(QueryTask.class));
+            } catch (Throwable ex) {
+              failTask(ex);
+            }
+          });
+      this.sendRequest(getNextPage);
+    };
+
+    if (tombstoneList.size() == 0) {
+      if (nextPageLink == null && finishPatch.staleTombstones == 0) {
+        ServiceUtils.logInfo(TombstoneCleanerService.this, "No stale tombstones found.");
+      }
+
+      nextPage.run();
+      return;
+    }
+
+    ServiceUtils.logInfo(TombstoneCleanerService.this,
+        "Count of stale tombstones found in page = " + tombstoneList.size());
+    finishPatch.staleTombstones += tombstoneList.size();
+    finishPatch.queriedPages++;
+    queryStaleTasks(finishPatch, tombstoneList, nextPage);
+  }
+
+  /**
+   * Retrieves the list of stale tasks of a page of tombstones with a single broadcast query.
    *
    * @param finishPatch
    * @param tombstoneList
+   * @param nextPage
    */
   private void queryStaleTasks(final State finishPatch,
-                               List<TombstoneService.State> tombstoneList) {
-    OperationJoin.JoinedCompletionHandler handler = new OperationJoin.JoinedCompletionHandler() {
+                               List<TombstoneService.State> tombstoneList,
+                               Runnable nextPage) {
+    Operation.CompletionHandler handler = new Operation.CompletionHandler() {
       @Override
-      public void handle(Map<Long, Operation> ops, Map<Long, Throwable> failures) {
-        if (failures != null && !failures.isEmpty()) {
-          failTask(failures.values().iterator().next());
+      public void handle(Operation completedOp, Throwable failure) {
+        if (failure != null) {
+          failTask(failure);
           return;
         }
 
         try {
           Set<String> taskSet = new HashSet<>();
-          for (Operation op : ops.values()) {
-            NodeGroupBroadcastResponse query = op.getBody(NodeGroupBroadcastResponse.class);
+          NodeGroupBroadcastResponse query = completedOp.getBody(NodeGroupBroadcastResponse.class);
+          if (!query.failures.isEmpty()) {
             ServiceUtils.logInfo(TombstoneCleanerService.this, "Task broadcast query: %s",
                 Utils.toJson(false, false, query));
-            if (!query.failures.isEmpty()) {
-              failTask(new RuntimeException("Failures in broadcast query for stale tasks."));
-              return;
-            }
+            failTask(new RuntimeException("Failures in broadcast query for stale tasks."));
+            return;
+          }
 
-            for (Map.Entry<URI, String> entry : query.jsonResponses.entrySet()) {
-              QueryTask queryTask = Utils.fromJson(entry.getValue(), QueryTask.class);
-              if (queryTask != null && queryTask.results != null) {
-                taskSet.addAll(queryTask.results.documentLinks);
-              }
+          for (Map.Entry<URI, String> entry : query.jsonResponses.entrySet()) {
+            QueryTask queryTask = Utils.fromJson(entry.getValue(), QueryTask.class);
+            if (queryTask != null && queryTask.results != null) {
+              taskSet.addAll(queryTask.results.documentLinks);
             }
           }
 
-          finishPatch.staleTasks = taskSet.size();
+          finishPatch.staleTasks += taskSet.size();
           if (taskSet.size() == 0) {
-            deleteTombstones(finishPatch, tombstoneList);
+            deleteTombstones(finishPatch, tombstoneList, nextPage);
           } else {
-            deleteTasks(finishPatch, tombstoneList, taskSet);
+            deleteTasks(finishPatch, tombstoneList, taskSet, nextPage);
           }
         } catch (Throwable ex) {
           failTask(ex);
@@ -294,20 +363,14 @@ public class TombstoneCleanerService extends StatefulService {
         UriUtils.buildUri(getHost(), com.vmware.xenon.services.common.ServiceUriPaths.CORE_LOCAL_QUERY_TASKS),
         ServiceUriPaths.DEFAULT_NODE_SELECTOR);
 
-    Collection<Operation> posts = new LinkedList<>();
-    for (TombstoneService.State tombstone : tombstoneList) {
-      Operation post = Operation
-          .createPost(queryUri)
-          .setBody(buildTaskQuery(tombstone))
-          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
-          .forceRemote();
-
-      posts.add(post);
-    }
+    Operation post = Operation
+        .createPost(queryUri)
+        .setBody(buildTaskQuery(tombstoneList))
+        .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
+        .forceRemote()
+        .setCompletion(handler);
 
-    OperationJoin join = OperationJoin.create(posts);
-    join.setCompletion(handler);
-    join.sendWith(this);
+    this.sendRequest(post);
   }
 
   /**
@@ -316,8 +379,12 @@ public class TombstoneCleanerService extends StatefulService {
    * @param finishPatch
    * @param tombstoneList
    * @param taskSet
+   * @param nextPage
    */
-  private void deleteTasks(final State finishPatch, List<TombstoneService.State> tombstoneList, Set<String> taskSet) {
+  private void deleteTasks(final State finishPatch,
+                           List<TombstoneService.State> tombstoneList,
+                           Set<String> taskSet,
+                           Runnable nextPage) {
     OperationJoin.JoinedCompletionHandler handler = new OperationJoin.JoinedCompletionHandler() {
       @Override
       public void handle(Map<Long, Operation> ops, Map<Long, Throwable> failures) {
@@ -326,8 +393,8 @@ public class TombstoneCleanerService extends StatefulService {
           return;
         }
 
-        finishPatch.deletedTasks = taskSet.size();
-        deleteTombstones(finishPatch, tombstoneList);
+        finishPatch.deletedTasks += taskSet.size();
+        deleteTombstones(finishPatch, tombstoneList, nextPage);
       }
     };
 
@@ -344,7 +411,7 @@ public class TombstoneCleanerService extends StatefulService {
 
     OperationJoin join = OperationJoin.create(deletes);
     join.setCompletion(handler);
-    join.sendWith(this);
+    join.sendWith(this, DELETE_BATCH_SIZE);
   }
 
   /**
@@ -352,8 +419,11 @@ public class TombstoneCleanerService extends StatefulService {
    *
    * @param finishPatch
    * @param tombstoneList
+   * @param nextPage
    */
-  private void deleteTombstones(final State finishPatch, List<TombstoneService.State> tombstoneList) {
+  private void deleteTombstones(final State finishPatch,
+                                List<TombstoneService.State> tombstoneList,
+                                Runnable nextPage) {
     OperationJoin.JoinedCompletionHandler handler = new OperationJoin.JoinedCompletionHandler() {
       @Override
       public void handle(Map<Long, Operation> ops, Map<Long, Throwable> failures) {
@@ -362,8 +432,8 @@ public class TombstoneCleanerService extends StatefulService {
           return;
         }
 
-        finishPatch.deletedTombstones = tombstoneList.size();
-        finishTask(finishPatch);
+        finishPatch.deletedTombstones += tombstoneList.size();
+        nextPage.run();
       }
     };
 
@@ -380,13 +450,15 @@ public class TombstoneCleanerService extends StatefulService {
 
     OperationJoin join = OperationJoin.create(deletes);
     join.setCompletion(handler);
-    join.sendWith(this);
+    join.sendWith(this, DELETE_BATCH_SIZE);
   }
 
   private List<TombstoneService.State> parseTombstoneQueryResults(QueryTask result) {
-    ServiceUtils.logInfo(TombstoneCleanerService.this, "Tombstone query: %s", Utils.toJson(false, false, result));
-
     List<TombstoneService.State> tombstoneList = new LinkedList<>();
+    if (result.results == null || result.results.documents == null) {
+      return tombstoneList;
+    }
+
     for (Map.Entry<String, Object> doc : result.results.documents.entrySet()) {
       tombstoneList.add(
           Utils.fromJson(doc.getValue(), TombstoneService.State.class));
@@ -494,6 +566,7 @@ public class TombstoneCleanerService extends StatefulService {
     spec.query
         .addBooleanClause(kindClause)
         .addBooleanClause(ageClause);
+    spec.resultLimit = current.queryPageSize;
 
     QueryTask task = QueryTask.create(spec)
         .setDirect(true);
@@ -501,24 +574,38 @@ public class TombstoneCleanerService extends StatefulService {
     return task;
   }
 
-  private QueryTask buildTaskQuery(final TombstoneService.State tombstone) {
+  /**
+   * Builds the query spec to retrieve the tasks of all the entities of a page of tombstones.
+   *
+   * @param tombstoneList
+   * @return
+   */
+  private QueryTask buildTaskQuery(final List<TombstoneService.State> tombstoneList) {
     QueryTask.Query kindClause = new QueryTask.Query()
         .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
         .setTermMatchValue(Utils.buildKind(TaskService.State.class));
 
-    QueryTask.Query entityIdClause = new QueryTask.Query()
-        .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_ID)
-        .setTermMatchValue(tombstone.entityId);
-
-    QueryTask.Query entityKindClause = new QueryTask.Query()
-        .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_KIND)
-        .setTermMatchValue(tombstone.entityKind);
+    QueryTask.Query entitiesClause = new QueryTask.Query();
+    for (TombstoneService.State tombstone : tombstoneList) {
+      QueryTask.Query entityIdClause = new QueryTask.Query()
+          .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_ID)
+          .setTermMatchValue(tombstone.entityId);
+
+      QueryTask.Query entityKindClause = new QueryTask.Query()
+          .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_KIND)
+          .setTermMatchValue(tombstone.entityKind);
+
+      QueryTask.Query entityClause = new QueryTask.Query()
+          .addBooleanClause(entityIdClause)
+          .addBooleanClause(entityKindClause);
+      entityClause.occurance = QueryTask.Query.Occurance.SHOULD_OCCUR;
+      entitiesClause.addBooleanClause(entityClause);
+    }
 
     QueryTask.QuerySpecification spec = new QueryTask.QuerySpecification();
     spec.query
         .addBooleanClause(kindClause)
-        .addBooleanClause(entityIdClause)
-        .addBooleanClause(entityKindClause);
+        .addBooleanClause(entitiesClause);
 
     QueryTask task = QueryTask.create(spec)
         .setDirect(true);
@@ -553,6 +640,14 @@ public class TombstoneCleanerService extends StatefulService {
     @Positive
     public Long tombstoneExpirationAgeMillis;
 
+    /**
+     * Number of tombstones processed at a time.
+     */
+    @Immutable
+    @DefaultInteger(value = DEFAULT_QUERY_PAGE_SIZE)
+    @Positive
+    public Integer queryPageSize;
+
     /**
      * The number of tombstones to delete.
      */
@@ -576,5 +671,17 @@ public class TombstoneCleanerService extends StatefulService {
      */
     @DefaultInteger(value = 0)
     public Integer deletedTasks;
+
+    /**
+     * The number of pages of tombstones that were processed.
+     */
+    @DefaultInteger(value = 0)
+    public Integer queriedPages;
+
+    /**
+     * How long the cleanup took. (milliseconds)
+     */
+    @DefaultLong(value = 0)
+    public Long durationMillis;
   }
 }
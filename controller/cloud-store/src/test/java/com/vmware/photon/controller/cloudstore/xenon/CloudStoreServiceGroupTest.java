@@ -21,6 +21,7 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.ClusterServiceFactor
 import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DeploymentServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DiskServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLeaseServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLockServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
@@ -48,8 +49,6 @@ import com.vmware.photon.controller.cloudstore.xenon.task.TombstoneCleanerFactor
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.AvailabilityZoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DatastoreCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DhcpSubnetDeleteTriggerBuilder;
-import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockCleanerTriggerBuilder;
-import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockDeleteTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.IpLeaseCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.TombstoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
@@ -106,6 +105,7 @@ public class CloudStoreServiceGroupTest {
       DeploymentServiceFactory.SELF_LINK,
       TaskServiceFactory.SELF_LINK,
       EntityLockServiceFactory.SELF_LINK,
+      EntityLeaseServiceFactory.SELF_LINK,
       ProjectServiceFactory.SELF_LINK,
       TenantServiceFactory.SELF_LINK,
       ResourceTicketServiceFactory.SELF_LINK,
@@ -121,8 +121,6 @@ public class CloudStoreServiceGroupTest {
 
       // triggers
       TaskTriggerFactoryService.SELF_LINK,
-      TaskTriggerFactoryService.SELF_LINK + EntityLockCleanerTriggerBuilder.TRIGGER_SELF_LINK,
-      TaskTriggerFactoryService.SELF_LINK + EntityLockDeleteTriggerBuilder.TRIGGER_SELF_LINK,
       TaskTriggerFactoryService.SELF_LINK + TombstoneCleanerTriggerBuilder.TRIGGER_SELF_LINK,
       TaskTriggerFactoryService.SELF_LINK + AvailabilityZoneCleanerTriggerBuilder.TRIGGER_SELF_LINK,
       TaskTriggerFactoryService.SELF_LINK + DatastoreCleanerTriggerBuilder.TRIGGER_SELF_LINK,
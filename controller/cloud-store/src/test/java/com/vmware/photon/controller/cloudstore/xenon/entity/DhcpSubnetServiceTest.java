@@ -34,9 +34,14 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -378,6 +383,85 @@ public class DhcpSubnetServiceTest {
       assertThat(currentState.ipAllocations.nextClearBit(0), is(0));
     }
 
+    @Test
+    public void testAllocateAndReleaseIpsInBatch() throws Throwable {
+      List<DhcpSubnetService.IpAllocation> ipAllocations = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        ipAllocations.add(new DhcpSubnetService.IpAllocation("vm-id-" + i, macAddress, null));
+      }
+
+      Operation completedOperation = xenonClient.patch(startState.documentSelfLink,
+          new DhcpSubnetService.IpBatchOperationPatch(
+              DhcpSubnetService.IpBatchOperationPatch.Kind.AllocateIps, ipAllocations));
+      DhcpSubnetService.IpBatchOperationPatch operationResult =
+          completedOperation.getBody(DhcpSubnetService.IpBatchOperationPatch.class);
+
+      DhcpSubnetService.State currentState = host.getServiceState(DhcpSubnetService.State.class,
+          startState.documentSelfLink);
+
+      assertThat(currentState.version, is(startState.version + 1));
+      assertThat(currentState.ipAllocations.cardinality(), is(5));
+      assertThat(currentState.ipAllocations.nextClearBit(0), is(5));
+
+      Set<String> ipAddresses = new HashSet<>();
+      for (int i = 0; i < 5; i++) {
+        DhcpSubnetService.IpAllocation ipAllocation = operationResult.ipAllocations.get(i);
+        assertThat(ipAllocation.ownerVmId, is("vm-id-" + i));
+        ipAddresses.add(ipAllocation.ipAddress);
+
+        IpLeaseService.State ipLease = host.getServiceState(IpLeaseService.State.class,
+            DhcpSubnetService.makeIpLeaseUrl(false, startState.subnetId, ipAllocation.ipAddress));
+        assertThat(ipLease.ownerVmId, is("vm-id-" + i));
+        assertThat(ipLease.macAddress, is(macAddress));
+      }
+      assertThat(ipAddresses.size(), is(5));
+
+      xenonClient.patch(startState.documentSelfLink,
+          new DhcpSubnetService.IpBatchOperationPatch(
+              DhcpSubnetService.IpBatchOperationPatch.Kind.ReleaseIps, operationResult.ipAllocations));
+
+      currentState = host.getServiceState(DhcpSubnetService.State.class,
+          startState.documentSelfLink);
+
+      assertThat(currentState.version, is(startState.version + 2));
+      assertThat(currentState.ipAllocations.cardinality(), is(0));
+
+      for (DhcpSubnetService.IpAllocation ipAllocation : operationResult.ipAllocations) {
+        IpLeaseService.State ipLease = host.getServiceState(IpLeaseService.State.class,
+            DhcpSubnetService.makeIpLeaseUrl(false, startState.subnetId, ipAllocation.ipAddress));
+        assertThat(ipLease.ownerVmId, is(nullValue()));
+      }
+    }
+
+    @Test
+    public void testAllocateIpsInBatchWhenRangeIsTooSmall() throws Throwable {
+      DhcpSubnetService.State currentState = host.getServiceState(DhcpSubnetService.State.class,
+          startState.documentSelfLink);
+      long dynamicRangeSize = currentState.highIpDynamic - currentState.lowIpDynamic + 1;
+
+      List<DhcpSubnetService.IpAllocation> ipAllocations = new ArrayList<>();
+      for (int i = 0; i <= dynamicRangeSize; i++) {
+        ipAllocations.add(new DhcpSubnetService.IpAllocation("vm-id", macAddress, null));
+      }
+
+      try {
+        xenonClient.patch(startState.documentSelfLink,
+            new DhcpSubnetService.IpBatchOperationPatch(
+                DhcpSubnetService.IpBatchOperationPatch.Kind.AllocateIps, ipAllocations));
+        Assert.fail("Allocation request larger than the free range should have failed");
+      } catch (BadRequestException be) {
+        DhcpSubnetService.RangeFullyAllocatedError error = be.getCompletedOperation()
+            .getBody(DhcpSubnetService.RangeFullyAllocatedError.class);
+        assertThat(error, is(notNullValue()));
+      }
+
+      currentState = host.getServiceState(DhcpSubnetService.State.class,
+          startState.documentSelfLink);
+
+      assertThat(currentState.version, is(startState.version));
+      assertThat(currentState.ipAllocations.cardinality(), is(0));
+    }
+
   }
 
   private static DhcpSubnetService.State createInitialState() {
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.api.model.Vm;
+import com.vmware.photon.controller.common.thrift.StaticServerSet;
+import com.vmware.photon.controller.common.xenon.BasicServiceHost;
+import com.vmware.photon.controller.common.xenon.XenonRestClient;
+import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
+import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.testng.Assert.fail;
+
+import java.net.InetSocketAddress;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests {@link EntityLeaseService}.
+ */
+public class EntityLeaseServiceTest {
+
+  private XenonRestClient xenonRestClient;
+  private BasicServiceHost host;
+  private EntityLeaseService service;
+
+  /**
+   * Dummy test case to make Intellij recognize this as a test class.
+   */
+  @Test
+  private void dummy() {
+  }
+
+  /**
+   * Tests for the constructors.
+   */
+  public class InitializationTest {
+    @BeforeMethod
+    public void setUp() {
+      service = new EntityLeaseService();
+    }
+
+    /**
+     * Test that the service starts with the expected options, in particular without persistence.
+     */
+    @Test
+    public void testServiceOptions() {
+      EnumSet<Service.ServiceOption> expected = EnumSet.of(
+          Service.ServiceOption.CONCURRENT_GET_HANDLING,
+          Service.ServiceOption.REPLICATION,
+          Service.ServiceOption.OWNER_SELECTION,
+          Service.ServiceOption.INSTRUMENTATION,
+          Service.ServiceOption.PERIODIC_MAINTENANCE);
+      assertThat(service.getOptions(), is(expected));
+    }
+  }
+
+  /**
+   * Tests for acquiring, renewing and releasing leases.
+   */
+  public class LeaseTest {
+
+    private String entityId;
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      host = BasicServiceHost.create(
+          null,
+          EntityLeaseServiceFactory.SELF_LINK,
+          10, 10);
+
+      StaticServerSet serverSet = new StaticServerSet(
+          new InetSocketAddress(host.getPreferredAddress(), host.getPort()));
+      xenonRestClient =
+          new XenonRestClient(serverSet, Executors.newFixedThreadPool(1), Executors.newScheduledThreadPool(1), host);
+      xenonRestClient.start();
+
+      host.startServiceSynchronously(new EntityLeaseServiceFactory(), null);
+      entityId = UUID.randomUUID().toString();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      if (host != null) {
+        BasicServiceHost.destroy(host);
+      }
+
+      xenonRestClient.stop();
+    }
+
+    @Test
+    public void testAcquire() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", null);
+
+      assertThat(lease.entityId, is(entityId));
+      assertThat(lease.ownerTaskId, is("task-1"));
+      assertThat(lease.leaseToken, is(notNullValue()));
+      assertThat(lease.leaseExpirationTimeMicros, is(notNullValue()));
+      assertThat(lease.leaseOperation, is(nullValue()));
+      assertThat(lease.leaseDurationMillis, is(nullValue()));
+
+      // acquiring again by the same owner extends the lease under the same token
+      EntityLeaseService.State reacquired = acquire("task-1", null);
+      assertThat(reacquired.leaseToken, is(lease.leaseToken));
+      assertThat(reacquired.leaseExpirationTimeMicros, is(greaterThan(lease.leaseExpirationTimeMicros)));
+    }
+
+    @Test
+    public void testAcquireTakenLease() throws Throwable {
+      acquire("task-1", null);
+
+      try {
+        acquire("task-2", null);
+        fail("Acquiring a lease held by another task should have failed");
+      } catch (BadRequestException e) {
+        assertThat(e.getMessage(), containsString(EntityLeaseService.LEASE_TAKEN_MESSAGE));
+      }
+    }
+
+    @Test
+    public void testAcquireExpiredLease() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", 1L);
+      Thread.sleep(10);
+
+      EntityLeaseService.State newLease = acquire("task-2", null);
+      assertThat(newLease.ownerTaskId, is("task-2"));
+      assertThat(newLease.leaseToken, is(greaterThan(lease.leaseToken)));
+
+      // the first holder has been fenced off
+      try {
+        send("task-1", lease.leaseToken, EntityLeaseService.State.LeaseOperation.RENEW);
+        fail("Renewing a lease which has been granted again should have failed");
+      } catch (BadRequestException e) {
+        assertThat(e.getMessage(), containsString(EntityLeaseService.LEASE_LOST_MESSAGE));
+      }
+    }
+
+    @Test
+    public void testRenew() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", null);
+
+      EntityLeaseService.State renewed =
+          send("task-1", lease.leaseToken, EntityLeaseService.State.LeaseOperation.RENEW);
+      assertThat(renewed.leaseToken, is(lease.leaseToken));
+      assertThat(renewed.leaseExpirationTimeMicros, is(greaterThan(lease.leaseExpirationTimeMicros)));
+    }
+
+    @Test
+    public void testRelease() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", null);
+
+      EntityLeaseService.State released =
+          send("task-1", lease.leaseToken, EntityLeaseService.State.LeaseOperation.RELEASE);
+      assertThat(released.ownerTaskId, is(nullValue()));
+      assertThat(released.leaseExpirationTimeMicros, is(nullValue()));
+
+      EntityLeaseService.State newLease = acquire("task-2", null);
+      assertThat(newLease.ownerTaskId, is("task-2"));
+      assertThat(newLease.leaseToken, is(greaterThan(lease.leaseToken)));
+    }
+
+    @Test
+    public void testReleaseWithStaleToken() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", null);
+
+      send("task-1", lease.leaseToken - 1, EntityLeaseService.State.LeaseOperation.RELEASE);
+
+      EntityLeaseService.State state = host.getServiceState(EntityLeaseService.State.class,
+          EntityLeaseServiceFactory.SELF_LINK + "/" + entityId);
+      assertThat(state.ownerTaskId, is(equalTo("task-1")));
+      assertThat(state.leaseToken, is(lease.leaseToken));
+    }
+
+    @Test
+    public void testReleaseByOtherOwner() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", null);
+
+      try {
+        send("task-2", lease.leaseToken, EntityLeaseService.State.LeaseOperation.RELEASE);
+        fail("Releasing a lease held by another task should have failed");
+      } catch (BadRequestException e) {
+        assertThat(e.getMessage(), containsString("Only the current owner can release a lease"));
+      }
+    }
+
+    @Test
+    public void testExpireKeepsHeldLease() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", null);
+
+      try {
+        expire();
+        fail("Expiring a lease which is held should have failed");
+      } catch (BadRequestException e) {
+        assertThat(e.getMessage(), containsString(EntityLeaseService.LEASE_TAKEN_MESSAGE));
+      }
+
+      EntityLeaseService.State state = host.getServiceState(EntityLeaseService.State.class,
+          EntityLeaseServiceFactory.SELF_LINK + "/" + entityId);
+      assertThat(state.ownerTaskId, is(equalTo("task-1")));
+      assertThat(state.leaseToken, is(lease.leaseToken));
+    }
+
+    @Test
+    public void testExpireDeletesReleasedLease() throws Throwable {
+      EntityLeaseService.State lease = acquire("task-1", null);
+      send("task-1", lease.leaseToken, EntityLeaseService.State.LeaseOperation.RELEASE);
+
+      expire();
+
+      try {
+        xenonRestClient.get(EntityLeaseServiceFactory.SELF_LINK + "/" + entityId);
+        fail("An expired lease should have been deleted");
+      } catch (DocumentNotFoundException e) {
+      }
+    }
+
+    private void expire() throws Throwable {
+      EntityLeaseService.State state = new EntityLeaseService.State();
+      state.leaseOperation = EntityLeaseService.State.LeaseOperation.EXPIRE;
+      xenonRestClient.delete(EntityLeaseServiceFactory.SELF_LINK + "/" + entityId, state);
+    }
+
+    private EntityLeaseService.State acquire(String ownerTaskId, Long leaseDurationMillis) throws Throwable {
+      EntityLeaseService.State state = new EntityLeaseService.State();
+      state.entityId = entityId;
+      state.entityKind = Vm.KIND;
+      state.ownerTaskId = ownerTaskId;
+      state.leaseDurationMillis = leaseDurationMillis;
+      state.leaseOperation = EntityLeaseService.State.LeaseOperation.ACQUIRE;
+      state.documentSelfLink = entityId;
+
+      Operation result = xenonRestClient.post(EntityLeaseServiceFactory.SELF_LINK, state);
+      return result.getBody(EntityLeaseService.State.class);
+    }
+
+    private EntityLeaseService.State send(String ownerTaskId, Long leaseToken,
+                                          EntityLeaseService.State.LeaseOperation leaseOperation) throws Throwable {
+      EntityLeaseService.State state = new EntityLeaseService.State();
+      state.entityId = entityId;
+      state.entityKind = Vm.KIND;
+      state.ownerTaskId = ownerTaskId;
+      state.leaseToken = leaseToken;
+      state.leaseOperation = leaseOperation;
+
+      Operation result = xenonRestClient.put(EntityLeaseServiceFactory.SELF_LINK + "/" + entityId, state);
+      return result.getBody(EntityLeaseService.State.class);
+    }
+  }
+}
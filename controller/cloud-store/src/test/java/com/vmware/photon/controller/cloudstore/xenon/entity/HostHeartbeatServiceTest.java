@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.agent.gen.AgentControl;
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.cloudstore.xenon.helpers.TestEnvironment;
+import com.vmware.photon.controller.cloudstore.xenon.helpers.TestHelper;
+import com.vmware.photon.controller.common.clients.AgentControlClient;
+import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.UUID;
+
+/**
+ * This class implements tests for the {@link HostHeartbeatService} class.
+ */
+public class HostHeartbeatServiceTest {
+
+  private TestEnvironment testEnvironment;
+  private AgentControlClientFactory agentControlClientFactory;
+
+  @AfterMethod
+  public void tearDown() throws Throwable {
+    if (testEnvironment != null) {
+      testEnvironment.stop();
+      testEnvironment = null;
+    }
+  }
+
+  @Test
+  public void testHostConfigSyncIsSpreadOverSweeps() {
+    long sweepInterval = HostHeartbeatService.DEFAULT_SWEEP_INTERVAL_MILLIS;
+    long sweeps = HostService.UPDATE_HOST_METADATA_INTERVAL / sweepInterval;
+    String hostLink = HostServiceFactory.SELF_LINK + "/" + UUID.randomUUID().toString();
+
+    int dueSweeps = 0;
+    for (long sweep = 0; sweep < sweeps; sweep++) {
+      if (HostHeartbeatService.isHostConfigSyncDue(hostLink, sweep * sweepInterval, sweepInterval)) {
+        dueSweeps++;
+      }
+    }
+
+    assertThat(dueSweeps, is(1));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testMissingAgentIsMarked() throws Throwable {
+    AgentControlClient agentControlClient = mock(AgentControlClient.class);
+    doAnswer(invocation -> {
+      ((AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call>) invocation.getArguments()[0])
+          .onError(new Exception("ping failed"));
+      return null;
+    }).when(agentControlClient).ping(any(AsyncMethodCallback.class));
+
+    HostService.State host = createHost(agentControlClient, AgentState.ACTIVE);
+    sweep();
+
+    HostService.State savedState = testEnvironment.getServiceState(host.documentSelfLink, HostService.State.class);
+    assertThat(savedState.agentState, is(AgentState.MISSING));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testUnchangedAgentStateIsNotWritten() throws Throwable {
+    AgentControlClient agentControlClient = mock(AgentControlClient.class);
+    doAnswer(invocation -> {
+      ((AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call>) invocation.getArguments()[0])
+          .onComplete(mock(AgentControl.AsyncSSLClient.ping_call.class));
+      return null;
+    }).when(agentControlClient).ping(any(AsyncMethodCallback.class));
+
+    HostService.State host = createHost(agentControlClient, AgentState.ACTIVE);
+    sweep();
+    sweep();
+
+    HostService.State savedState = testEnvironment.getServiceState(host.documentSelfLink, HostService.State.class);
+    assertThat(savedState.agentState, is(AgentState.ACTIVE));
+    assertThat(savedState.documentVersion, is(host.documentVersion));
+    // The client of the host is reused by the second sweep
+    verify(agentControlClientFactory, times(1)).create();
+  }
+
+  private HostService.State createHost(AgentControlClient agentControlClient, AgentState agentState)
+      throws Throwable {
+    agentControlClientFactory = mock(AgentControlClientFactory.class);
+    doReturn(agentControlClient).when(agentControlClientFactory).create();
+    testEnvironment = new TestEnvironment.Builder()
+        .agentControlClientFactory(agentControlClientFactory)
+        .hostCount(1)
+        .build();
+
+    // Pick a host which is pinged rather than synchronized in the sweeps of this test.
+    String id;
+    long now = System.currentTimeMillis();
+    long sweepInterval = HostHeartbeatService.DEFAULT_SWEEP_INTERVAL_MILLIS;
+    do {
+      id = UUID.randomUUID().toString();
+    } while (HostHeartbeatService.isHostConfigSyncDue(HostServiceFactory.SELF_LINK + "/" + id, now, sweepInterval)
+        || HostHeartbeatService.isHostConfigSyncDue(HostServiceFactory.SELF_LINK + "/" + id, now + sweepInterval,
+        sweepInterval));
+
+    HostService.State startState = TestHelper.getHostServiceStartState();
+    startState.documentSelfLink = id;
+    startState.agentState = agentState;
+    Operation result = testEnvironment.sendPostAndWait(HostServiceFactory.SELF_LINK, startState);
+    assertThat(result.getStatusCode(), is(Operation.STATUS_CODE_OK));
+    return result.getBody(HostService.State.class);
+  }
+
+  private void sweep() throws Throwable {
+    Operation result = testEnvironment.sendPatchAndWait(HostHeartbeatService.SELF_LINK, new ServiceDocument());
+    assertThat(result.getStatusCode(), is(Operation.STATUS_CODE_OK));
+  }
+}
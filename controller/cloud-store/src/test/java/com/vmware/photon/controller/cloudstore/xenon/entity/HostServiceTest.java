@@ -27,6 +27,7 @@ import com.vmware.photon.controller.common.clients.AgentControlClient;
 import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
 import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.HostClientFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.thrift.StaticServerSet;
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
@@ -41,13 +42,14 @@ import com.vmware.photon.controller.resource.gen.Datastore;
 import com.vmware.photon.controller.resource.gen.DatastoreType;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
-import com.vmware.xenon.common.ServiceConfiguration;
 import com.vmware.xenon.common.ServiceDocumentDescription;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.NodeGroupBroadcastResponse;
 import com.vmware.xenon.services.common.QueryTask;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableSet;
 import org.apache.thrift.async.AsyncMethodCallback;
 import org.hamcrest.CoreMatchers;
@@ -123,12 +125,9 @@ public class HostServiceTest {
           Service.ServiceOption.CONCURRENT_GET_HANDLING,
           Service.ServiceOption.OWNER_SELECTION,
           Service.ServiceOption.PERSISTENCE,
-          Service.ServiceOption.REPLICATION,
-          Service.ServiceOption.PERIODIC_MAINTENANCE);
+          Service.ServiceOption.REPLICATION);
 
       HostService service = new HostService();
-      assertThat(service.getMaintenanceIntervalMicros(),
-          is(TimeUnit.MILLISECONDS.toMicros(HostService.DEFAULT_MAINTENANCE_INTERVAL_MILLIS)));
       assertThat(service.getOptions(), is(expected));
     }
   }
@@ -312,28 +311,6 @@ public class HostServiceTest {
         assertThat(e.getMessage(), is("state cannot be null"));
       }
     }
-
-    /**
-     * Test that maintenance interval passed in the start state is applied.
-     *
-     * @throws Throwable
-     */
-    @Test
-    public void testCustomMaintenanceInerval() throws Throwable {
-      HostService.State startState = TestHelper.getHostServiceStartState();
-      startState.triggerIntervalMillis = (long) 20 * 1000;
-
-      host.startServiceSynchronously(new HostServiceFactory(), null);
-      Operation result = xenonRestClient.post(HostServiceFactory.SELF_LINK,
-          startState);
-      assertThat(result.getStatusCode(), is(Operation.STATUS_CODE_OK));
-      HostService.State createdState = result.getBody(HostService.State.class);
-
-      ServiceConfiguration config = host.getServiceState(ServiceConfiguration.class, createdState.documentSelfLink +
-          "/config");
-      assertThat(config.maintenanceIntervalMicros,
-          is(TimeUnit.MILLISECONDS.toMicros(startState.triggerIntervalMillis)));
-    }
   }
 
   /**
@@ -826,6 +803,68 @@ public class HostServiceTest {
       assertThat(latch.await(5, TimeUnit.SECONDS), CoreMatchers.is(true));
     }
 
+    // Test that synchronizing an unchanged host config writes neither the host nor its datastores.
+    @Test
+    public void syncUnchangedHostConfigIsNotWritten() throws Throwable {
+      HostClientFactory hostClientFactory = mock(HostClientFactory.class);
+      HostClient hostClient = mock(HostClient.class);
+      doReturn(hostClient).when(hostClientFactory).create();
+
+      testEnvironment = new TestEnvironment.Builder()
+          .hostClientFactory(hostClientFactory)
+          .hostCount(1)
+          .build();
+      DeploymentService.State startState = new DeploymentService.State();
+      startState.imageDataStoreNames = Collections.singleton(datastoreList.get(0).getName());
+      startState.imageDataStoreUsedForVMs = true;
+      startState.state = DeploymentState.READY;
+      DeploymentService.State deploymentState = testEnvironment.callServiceSynchronously(
+          DeploymentServiceFactory.SELF_LINK,
+          startState,
+          DeploymentService.State.class);
+
+      // Return OK response with host config which has datastores.
+      GetConfigResponse response = getConfigResponse(true, getHostConfig(true, ServiceUtils.getIDFromDocumentSelfLink
+          (deploymentState.documentSelfLink)));
+      Host.AsyncSSLClient.get_host_config_call call = mock(Host.AsyncSSLClient.get_host_config_call.class);
+      doReturn(response).when(call).getResult();
+      doAnswer(invocation -> {
+        ((AsyncMethodCallback<Host.AsyncSSLClient.get_host_config_call>) invocation.getArguments()[0]).onComplete(call);
+        return null;
+      }).when(hostClient).getHostConfig(any(AsyncMethodCallback.class));
+
+      // Start host service with default state.
+      Operation result = testEnvironment.sendPostAndWait(HostServiceFactory.SELF_LINK,
+          TestHelper.getHostServiceStartState());
+      assertThat(result.getStatusCode(), is(Operation.STATUS_CODE_OK));
+      HostService.State createdState = result.getBody(HostService.State.class);
+
+      // The first synchronization stores the host config and the datastores.
+      HostService.State patchState = new HostService.State();
+      patchState.syncHostConfigTrigger = true;
+      testEnvironment.sendPatchAndWait(createdState.documentSelfLink, patchState);
+
+      int retryCount = 0;
+      HostService.State savedState;
+      do {
+        savedState = testEnvironment.getServiceState(createdState.documentSelfLink, HostService.State.class);
+        Thread.sleep(500);
+      } while (savedState.cpuCount == null && retryCount++ < 10);
+      assertNotNull(savedState.cpuCount, "Failed to update Host configuration");
+      assertThat(getTotalDatastoreCount(testEnvironment), is(10L));
+
+      // The second synchronization reports the same host config.
+      Counter suppressedWrites =
+          DefaultMetricRegistry.REGISTRY.counter(MetricRegistry.name(HostService.class, "suppressed-writes"));
+      long suppressedWritesBefore = suppressedWrites.getCount();
+      testEnvironment.sendPatchAndWait(createdState.documentSelfLink, patchState);
+
+      HostService.State unchangedState =
+          testEnvironment.getServiceState(createdState.documentSelfLink, HostService.State.class);
+      assertThat(unchangedState.documentVersion, is(savedState.documentVersion));
+      assertThat(suppressedWrites.getCount() - suppressedWritesBefore, is(1L + datastoreList.size()));
+    }
+
     private GetConfigResponse getConfigResponse(boolean success, HostConfig hostConfig) throws Throwable {
       GetConfigResponse response;
       if (success) {
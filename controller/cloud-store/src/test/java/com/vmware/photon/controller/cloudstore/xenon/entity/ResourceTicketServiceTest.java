@@ -374,6 +374,119 @@ public class ResourceTicketServiceTest {
       assertThat(patchedState.usageMap.get("key1").getValue(), is(0.0));
       assertThat(patchedState.usageMap.get("key2").getValue(), is(0.0));
     }
+
+    /**
+     * Test growing and closing an escrow.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testGrowAndCloseEscrow() throws Throwable {
+      testState.escrowHolder = UUID.randomUUID().toString();
+      Operation result = xenonRestClient.post(ResourceTicketServiceFactory.SELF_LINK, testState);
+      assertThat(result.getStatusCode(), is(200));
+      ResourceTicketService.State createdState = result.getBody(ResourceTicketService.State.class);
+
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_GROW;
+      patch.cost = new HashMap<>();
+      patch.cost.put("key1", new QuotaLineItem("key1", 5.0, QuotaUnit.COUNT));
+      patch.cost.put("key2", new QuotaLineItem("key2", 2.0, QuotaUnit.COUNT));
+      xenonRestClient.patch(createdState.documentSelfLink, patch);
+
+      Operation found = xenonRestClient.get(createdState.documentSelfLink);
+      ResourceTicketService.State patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.limitMap.get("key1").getValue(), is(15.0));
+      assertThat(patchedState.limitMap.get("key2").getValue(), is(2.0));
+      assertThat(patchedState.usageMap.get("key2").getValue(), is(0.0));
+
+      patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_CLOSE;
+      xenonRestClient.patch(createdState.documentSelfLink, patch);
+
+      found = xenonRestClient.get(createdState.documentSelfLink);
+      patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.escrowClosed, is(true));
+
+      patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
+      patch.cost = new HashMap<>();
+      patch.cost.put("key1", new QuotaLineItem("key1", 1.0, QuotaUnit.COUNT));
+      try {
+        xenonRestClient.patch(createdState.documentSelfLink, patch);
+        fail("consume from a closed escrow should have failed");
+      } catch (BadRequestException e) {
+        ServiceErrorResponse serviceErrorResponse =
+            e.getCompletedOperation().getBody(ServiceErrorResponse.class);
+        assertThat(serviceErrorResponse.message, containsString("is closed"));
+      }
+    }
+
+    /**
+     * Test that the unused part of a closed escrow is only returned once.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testReturnClosedEscrow() throws Throwable {
+      testState.escrowHolder = UUID.randomUUID().toString();
+      Operation result = xenonRestClient.post(ResourceTicketServiceFactory.SELF_LINK, testState);
+      ResourceTicketService.State createdState = result.getBody(ResourceTicketService.State.class);
+
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_RETURN;
+      try {
+        xenonRestClient.patch(createdState.documentSelfLink, patch);
+        fail("returning an open escrow should have failed");
+      } catch (BadRequestException e) {
+        ServiceErrorResponse serviceErrorResponse =
+            e.getCompletedOperation().getBody(ServiceErrorResponse.class);
+        assertThat(serviceErrorResponse.message, containsString("is not closed"));
+      }
+
+      patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_CLOSE;
+      xenonRestClient.patch(createdState.documentSelfLink, patch);
+      patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_RETURN;
+      xenonRestClient.patch(createdState.documentSelfLink, patch);
+
+      Operation found = xenonRestClient.get(createdState.documentSelfLink);
+      ResourceTicketService.State patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.escrowReturned, is(true));
+
+      try {
+        xenonRestClient.patch(createdState.documentSelfLink, patch);
+        fail("returning an escrow twice should have failed");
+      } catch (BadRequestException e) {
+        ServiceErrorResponse serviceErrorResponse =
+            e.getCompletedOperation().getBody(ServiceErrorResponse.class);
+        assertThat(serviceErrorResponse.message, containsString("has been returned"));
+      }
+    }
+
+    /**
+     * Test that a ticket which is not an escrow cannot be grown.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testGrowNonEscrowFails() throws Throwable {
+      Operation result = xenonRestClient.post(ResourceTicketServiceFactory.SELF_LINK, testState);
+      assertThat(result.getStatusCode(), is(200));
+      ResourceTicketService.State createdState = result.getBody(ResourceTicketService.State.class);
+
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.ESCROW_GROW;
+      patch.cost = new HashMap<>();
+      patch.cost.put("key1", new QuotaLineItem("key1", 5.0, QuotaUnit.COUNT));
+      try {
+        xenonRestClient.patch(createdState.documentSelfLink, patch);
+        fail("growing a ticket which is not an escrow should have failed");
+      } catch (BadRequestException e) {
+        ServiceErrorResponse serviceErrorResponse =
+            e.getCompletedOperation().getBody(ServiceErrorResponse.class);
+        assertThat(serviceErrorResponse.message, containsString("is not an escrow"));
+      }
+    }
   }
 
   /**
@@ -34,6 +34,7 @@ import static org.hamcrest.Matchers.nullValue;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -269,6 +270,36 @@ public class TaskServiceTest {
           is(testState.steps.get(0).warnings.get(0).code));
       assertThat(taskState.steps.get(0).endTime, is(stepUpdate.step.endTime));
     }
+
+    @Test
+    public void testUpdateMultipleSteps() throws Throwable {
+      TaskService.State.Step secondStep = new TaskService.State.Step();
+      secondStep.sequence = 1;
+      secondStep.operation = com.vmware.photon.controller.api.model.Operation.ATTACH_DISK.getOperation();
+      secondStep.state = TaskService.State.StepState.QUEUED;
+      testState.steps.add(secondStep);
+      host.startServiceSynchronously(service, testState);
+
+      List<TaskService.State.Step> steps = new ArrayList<>();
+      for (TaskService.State.Step testStep : testState.steps) {
+        TaskService.State.Step step = new TaskService.State.Step();
+        step.sequence = testStep.sequence;
+        step.operation = testStep.operation;
+        step.state = TaskService.State.StepState.COMPLETED;
+        steps.add(step);
+      }
+
+      Operation patch = Operation
+          .createPatch(UriUtils.buildUri(host, BasicServiceHost.SERVICE_URI, null))
+          .setBody(new TaskService.StepUpdate(steps));
+      host.sendRequestAndWait(patch);
+
+      TaskService.State taskState = host.getServiceState(TaskService.State.class, BasicServiceHost.SERVICE_URI);
+      assertThat(taskState.steps.size(), is(2));
+      for (TaskService.State.Step step : taskState.steps) {
+        assertThat(step.state, is(TaskService.State.StepState.COMPLETED));
+      }
+    }
   }
 
   /**
@@ -14,7 +14,7 @@
 package com.vmware.photon.controller.cloudstore.xenon.helpers;
 
 import com.vmware.photon.controller.cloudstore.xenon.CloudStoreServiceGroup;
-import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostHeartbeatService;
 import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
 import com.vmware.photon.controller.common.clients.HostClientFactory;
 import com.vmware.photon.controller.common.xenon.MultiHostEnvironment;
@@ -57,7 +57,7 @@ public class TestEnvironment extends MultiHostEnvironment<PhotonControllerXenonH
       hosts[i].registerCloudStore(cloudStoreServiceGroup);
     }
     // Disable host ping: we have fake hosts and don't want them to be marked as missing
-    HostService.setInUnitTests(true);
+    HostHeartbeatService.setInUnitTests(true);
 
     TaskSchedulerServiceStateBuilder.triggerInterval = TimeUnit.MILLISECONDS.toMicros(500);
   }
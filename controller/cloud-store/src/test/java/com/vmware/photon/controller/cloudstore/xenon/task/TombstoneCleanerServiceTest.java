@@ -164,7 +164,9 @@ public class TombstoneCleanerServiceTest {
     public Object[][] getPositiveFieldsParams() {
       return new Object[][]{
           {"tombstoneExpirationAgeMillis", 0L},
-          {"tombstoneExpirationAgeMillis", -1L}
+          {"tombstoneExpirationAgeMillis", -1L},
+          {"queryPageSize", 0},
+          {"queryPageSize", -1}
       };
     }
 
@@ -203,7 +205,10 @@ public class TombstoneCleanerServiceTest {
           {"staleTombstones", 0},
           {"staleTasks", 0},
           {"deletedTombstones", 0},
-          {"deletedTasks", 0}
+          {"deletedTasks", 0},
+          {"queryPageSize", TombstoneCleanerService.DEFAULT_QUERY_PAGE_SIZE},
+          {"queriedPages", 0},
+          {"durationMillis", 0L}
       };
     }
 
@@ -321,7 +326,8 @@ public class TombstoneCleanerServiceTest {
     @DataProvider(name = "ImmutableFields")
     public Object[][] getImmutableFieldsParams() {
       return new Object[][]{
-          {"tombstoneExpirationAgeMillis", 10L}
+          {"tombstoneExpirationAgeMillis", 10L},
+          {"queryPageSize", 10}
       };
     }
   }
@@ -406,6 +412,33 @@ public class TombstoneCleanerServiceTest {
           TaskServiceFactory.SELF_LINK);
     }
 
+    /**
+     * Tests that stale tombstones spread over several pages are all cleaned up.
+     *
+     * @throws Throwable
+     */
+    @Test(dataProvider = "Success")
+    public void testSuccessWithMultiplePages(int totalTombstones, int staleTombstones, int tasksPerTombstone,
+                                             int hostCount) throws Throwable {
+      request.queryPageSize = 2;
+
+      TombstoneCleanerService.State response = machine.callServiceAndWaitForState(
+          TombstoneCleanerFactoryService.SELF_LINK,
+          request,
+          TombstoneCleanerService.State.class,
+          (TombstoneCleanerService.State state) -> state.taskState.stage == TaskState.TaskStage.FINISHED);
+
+      assertThat(response.staleTombstones, is(staleTombstones));
+      assertThat(response.staleTasks, is(tasksPerTombstone * staleTombstones));
+      assertThat(response.deletedTombstones, is(staleTombstones));
+      assertThat(response.deletedTasks, is(tasksPerTombstone * staleTombstones));
+      assertThat(response.queriedPages, is((staleTombstones + 1) / 2));
+
+      waitForReplication(machine, totalTombstones - staleTombstones, TombstoneServiceFactory.SELF_LINK);
+      waitForReplication(machine, (totalTombstones - staleTombstones) * tasksPerTombstone,
+          TaskServiceFactory.SELF_LINK);
+    }
+
     @DataProvider(name = "Success")
     public Object[][] getSuccessData() {
       return new Object[][]{
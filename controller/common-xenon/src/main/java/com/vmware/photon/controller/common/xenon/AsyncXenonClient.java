@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.services.common.QueryTask;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking REST client API to access Xenon services.
+ * <p>
+ * Each method sends its operation and returns immediately. The returned future completes with the completed operation
+ * or completes exceptionally with the exception the matching {@link XenonClient} method would have thrown, e.g.
+ * {@link com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException}.
+ */
+public interface AsyncXenonClient {
+
+  CompletableFuture<Operation> postAsync(String serviceSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> postAsync(String serviceSelfLink, ServiceDocument body, long timeOutInMicros);
+
+  CompletableFuture<Operation> postAsync(Boolean forceIndexUpdate, String serviceSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> putAsync(String serviceSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> getAsync(String documentSelfLink);
+
+  CompletableFuture<Map<String, Operation>> getAsync(Collection<String> documentSelfLinks, int batchSize);
+
+  CompletableFuture<Operation> getAsync(URI documentServiceUri);
+
+  CompletableFuture<Operation> postToBroadcastQueryServiceAsync(QueryTask.QuerySpecification spec);
+
+  CompletableFuture<Operation> postToBroadcastQueryServiceAsync(QueryTask query);
+
+  CompletableFuture<Operation> deleteAsync(String documentSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body);
+
+  CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body,
+                                          EnumSet<XenonClient.HeaderOption> headerOptions);
+
+  CompletableFuture<Operation> queryAsync(QueryTask.QuerySpecification spec, boolean isDirect);
+
+  CompletableFuture<Operation> queryAsync(QueryTask queryTask);
+
+  CompletableFuture<Operation> waitForTaskToFinishAsync(String taskSelfLink);
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon;
+
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.TaskState;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Notifies callers about state changes of Xenon task services so that they do not have to poll them.
+ * <p>
+ * A wait subscribes to the task service and reads the task state once the subscription is in place and after every
+ * notification, so it holds no thread and sends no GETs while the task is not changing. Notifications are only used
+ * as a trigger because the body of a PATCH notification can be a partial state. The task is polled at the poll
+ * interval until the subscription is in place, which covers a subscription that could not be created, and re-checked
+ * at the much longer re-check interval after that, which covers a lost notification.
+ * <p>
+ * A wait fails as soon as a read of the task is rejected with a client error, except for "not found" before the task
+ * has been read for the first time, as the task service may not have been started yet.
+ */
+public class TaskCompletionNotifier {
+
+  private static final Logger logger = LoggerFactory.getLogger(TaskCompletionNotifier.class);
+
+  private static final Counter outstandingWaits =
+      DefaultMetricRegistry.REGISTRY.counter(name(TaskCompletionNotifier.class, "outstanding-waits"));
+  private static final Counter activeSubscriptions =
+      DefaultMetricRegistry.REGISTRY.counter(name(TaskCompletionNotifier.class, "subscriptions"));
+  private static final Meter notifications =
+      DefaultMetricRegistry.REGISTRY.meter(name(TaskCompletionNotifier.class, "notifications"));
+  private static final Meter timeouts =
+      DefaultMetricRegistry.REGISTRY.meter(name(TaskCompletionNotifier.class, "timeouts"));
+
+  private final ServiceHost serviceHost;
+  private final Scheduler scheduler;
+  private final Consumer<Operation> requestSender;
+
+  public TaskCompletionNotifier(ServiceHost serviceHost, ScheduledExecutorService scheduledExecutorService) {
+    checkNotNull(scheduledExecutorService);
+    this.serviceHost = serviceHost;
+    this.scheduler = scheduledExecutorService::schedule;
+    this.requestSender = (op) -> serviceHost.sendRequest(op);
+  }
+
+  /**
+   * Creates a notifier for the waits of a Xenon service. The GETs of the task are sent by the service, and the
+   * re-checks and timeouts are scheduled on its host.
+   */
+  public TaskCompletionNotifier(Service service) {
+    this.serviceHost = service.getHost();
+    this.scheduler = serviceHost::schedule;
+    this.requestSender = service::sendRequest;
+  }
+
+  /**
+   * Subscribes to the task service at the given URI. The listener is called once the subscription request has
+   * completed, whether it succeeded or not, and then on every notification from the task service.
+   */
+  public Subscription subscribe(URI taskUri, Runnable listener) {
+    Subscription subscription = new Subscription(taskUri, listener);
+    subscription.start();
+    return subscription;
+  }
+
+  /**
+   * Returns a future which completes with the GET of the task once the task has reached a final stage.
+   */
+  public CompletableFuture<Operation> waitForFinalStage(URI taskUri,
+                                                        Function<Operation, TaskState.TaskStage> stageReader,
+                                                        long pollIntervalMicros,
+                                                        long recheckIntervalMicros,
+                                                        long timeoutMicros) {
+    return waitFor(taskUri, (op) -> TaskUtils.finalTaskStages.contains(stageReader.apply(op)),
+        pollIntervalMicros, recheckIntervalMicros, timeoutMicros);
+  }
+
+  /**
+   * Returns a future which completes with the GET of the task once the condition holds for it, or fails with a
+   * {@link TimeoutException} if that does not happen within the timeout. If a GET of the task is rejected with a client
+   * error, the future fails with a {@link XenonRuntimeException} which holds the rejected operation.
+   * <p>
+   * The task is polled every poll interval until the subscription to it is in place, and re-checked every re-check
+   * interval after that.
+   */
+  public CompletableFuture<Operation> waitFor(URI taskUri,
+                                              Predicate<Operation> condition,
+                                              long pollIntervalMicros,
+                                              long recheckIntervalMicros,
+                                              long timeoutMicros) {
+    Wait wait = new Wait(taskUri, condition, false);
+    wait.start(pollIntervalMicros, recheckIntervalMicros, timeoutMicros);
+    return wait.future;
+  }
+
+  /**
+   * Returns a future which completes with the GET of a child task once the condition holds for it. Unlike
+   * {@link #waitFor(URI, Predicate, long, long, long)}, the wait does not time out and fails with the failure of the
+   * first GET of the task which fails.
+   */
+  CompletableFuture<Operation> waitForChildTask(URI taskUri,
+                                                Predicate<Operation> condition,
+                                                long pollIntervalMicros,
+                                                long recheckIntervalMicros) {
+    Wait wait = new Wait(taskUri, condition, true);
+    wait.start(pollIntervalMicros, recheckIntervalMicros, 0);
+    return wait.future;
+  }
+
+  public static long getOutstandingWaitCount() {
+    return outstandingWaits.getCount();
+  }
+
+  /**
+   * A subscription to a task service. Closing it removes the subscription from the task service.
+   */
+  public class Subscription implements AutoCloseable {
+    private final URI taskUri;
+    private final Runnable listener;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile URI notificationTarget;
+    private volatile boolean active;
+
+    private Subscription(URI taskUri, Runnable listener) {
+      this.taskUri = taskUri;
+      this.listener = listener;
+    }
+
+    private void start() {
+      activeSubscriptions.inc();
+      Operation subscribe = Operation.createPost(taskUri)
+          .setReferer(serviceHost.getUri())
+          .setCompletion((op, ex) -> {
+            if (ex != null) {
+              logger.warn("Failed to subscribe to {}, relying on re-checks: {}", taskUri, ex.getMessage());
+            } else {
+              active = true;
+            }
+            listener.run();
+          });
+
+      URI target = serviceHost.startSubscriptionService(subscribe, (notification) -> {
+        notification.complete();
+        if (!closed.get()) {
+          notifications.mark();
+          listener.run();
+        }
+      });
+
+      notificationTarget = target;
+      if (closed.get()) {
+        // Closed by the listener before the notification target was known.
+        unsubscribe(target);
+      }
+    }
+
+    /**
+     * Returns true once the subscription is in place and until it is closed.
+     */
+    public boolean isActive() {
+      return active && !closed.get();
+    }
+
+    @Override
+    public void close() {
+      if (!closed.compareAndSet(false, true)) {
+        return;
+      }
+
+      activeSubscriptions.dec();
+      URI target = notificationTarget;
+      if (target != null) {
+        unsubscribe(target);
+      }
+    }
+
+    private void unsubscribe(URI target) {
+      serviceHost.stopSubscriptionService(
+          Operation.createDelete(taskUri).setReferer(serviceHost.getUri()),
+          target);
+    }
+  }
+
+  /**
+   * Schedules the re-checks and timeouts of the waits.
+   */
+  private interface Scheduler {
+    ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+  }
+
+  /**
+   * A pending wait for a condition on a task. Checks requested while a GET is outstanding are coalesced into a
+   * single follow-up GET.
+   */
+  private class Wait {
+    private final URI taskUri;
+    private final Predicate<Operation> condition;
+    private final boolean failOnAnyError;
+    private final CompletableFuture<Operation> future = new CompletableFuture<>();
+    private final AtomicInteger pendingChecks = new AtomicInteger();
+    private volatile boolean read;
+    private volatile Subscription subscription;
+    private volatile ScheduledFuture<?> recheck;
+
+    private Wait(URI taskUri, Predicate<Operation> condition, boolean failOnAnyError) {
+      this.taskUri = taskUri;
+      this.condition = condition;
+      this.failOnAnyError = failOnAnyError;
+    }
+
+    /**
+     * Starts the wait. A timeout of zero means that the wait does not time out.
+     */
+    private void start(long pollIntervalMicros, long recheckIntervalMicros, long timeoutMicros) {
+      outstandingWaits.inc();
+      subscription = subscribe(taskUri, this::check);
+      scheduleRecheck(pollIntervalMicros, recheckIntervalMicros);
+      ScheduledFuture<?> timeout = timeoutMicros == 0 ? null : scheduler.schedule(() -> {
+        TimeoutException timeoutException = new TimeoutException(String.format(
+            "Timeout:{%s}, TimeUnit:{%s}, Task:{%s}", timeoutMicros, TimeUnit.MICROSECONDS, taskUri));
+        if (future.completeExceptionally(timeoutException)) {
+          timeouts.mark();
+        }
+      }, timeoutMicros, TimeUnit.MICROSECONDS);
+
+      future.whenComplete((result, failure) -> {
+        outstandingWaits.dec();
+        // There is no re-check if the wait completed while starting, and a stopping host hands out no future.
+        ScheduledFuture<?> pendingRecheck = recheck;
+        if (pendingRecheck != null) {
+          pendingRecheck.cancel(false);
+        }
+        if (timeout != null) {
+          timeout.cancel(false);
+        }
+        subscription.close();
+      });
+    }
+
+    /**
+     * Schedules the next re-check, which comes after the poll interval as long as the subscription is not in place.
+     */
+    private void scheduleRecheck(long pollIntervalMicros, long recheckIntervalMicros) {
+      if (future.isDone()) {
+        return;
+      }
+
+      long delayMicros = subscription.isActive() ? recheckIntervalMicros : pollIntervalMicros;
+      recheck = scheduler.schedule(() -> {
+        check();
+        scheduleRecheck(pollIntervalMicros, recheckIntervalMicros);
+      }, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void check() {
+      if (!future.isDone() && pendingChecks.getAndIncrement() == 0) {
+        sendGet();
+      }
+    }
+
+    private void sendGet() {
+      int checks = pendingChecks.get();
+      Operation get = Operation.createGet(taskUri)
+          .setReferer(serviceHost.getUri())
+          .setCompletion((op, ex) -> {
+            if (ex != null) {
+              if (failOnAnyError) {
+                logger.warn("Failed to get {}: {}", taskUri, ex.getMessage());
+                future.completeExceptionally(ex);
+              } else if (isRejected(op)) {
+                logger.warn("Failed to get {}: {}", taskUri, ex.getMessage());
+                future.completeExceptionally(new XenonRuntimeException(get, op));
+              } else {
+                // The task may not be available yet, the next notification or re-check will try again.
+                logger.debug("Failed to get {}: {}", taskUri, ex.getMessage());
+              }
+            } else {
+              read = true;
+              try {
+                if (condition.test(op)) {
+                  future.complete(op);
+                }
+              } catch (Throwable t) {
+                future.completeExceptionally(t);
+              }
+            }
+
+            if (pendingChecks.addAndGet(-checks) > 0 && !future.isDone()) {
+              sendGet();
+            }
+          });
+
+      requestSender.accept(get);
+    }
+
+    /**
+     * Returns true if the GET failed with a client error which a later GET would get as well.
+     */
+    private boolean isRejected(Operation op) {
+      switch (op.getStatusCode()) {
+        case Operation.STATUS_CODE_NOT_FOUND:
+          return read;
+        case Operation.STATUS_CODE_TIMEOUT:
+          return false;
+        default:
+          return op.getStatusCode() >= Operation.STATUS_CODE_FAILURE_THRESHOLD
+              && op.getStatusCode() < Operation.STATUS_CODE_SERVER_FAILURE_THRESHOLD;
+      }
+    }
+  }
+}
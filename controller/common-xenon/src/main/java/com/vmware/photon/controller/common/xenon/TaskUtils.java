@@ -23,7 +23,6 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.FutureCallback;
 
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -32,6 +31,12 @@ import java.util.concurrent.TimeUnit;
  */
 public class TaskUtils {
 
+  /**
+   * The factor by which a child task is re-checked less often once the subscription to it is in place. The re-check
+   * covers notifications which got lost.
+   */
+  private static final int SUBSCRIBED_RECHECK_FACTOR = 10;
+
   public static Set<TaskState.TaskStage> finalTaskStages =
       ImmutableSet.of(TaskState.TaskStage.CANCELLED, TaskState.TaskStage.FINISHED, TaskState.TaskStage.FAILED);
 
@@ -66,6 +71,21 @@ public class TaskUtils {
     service.sendRequest(post);
   }
 
+  /**
+   * This function calls the callback once the state of the specified task service satisfies the predicate.
+   * <p>
+   * The task service is read when the subscription to it is in place and then whenever it notifies a change, so no
+   * thread is held and hardly any GET is sent while the task is not changing. The task service is polled every
+   * taskPollDelay milliseconds until the subscription is in place, and re-checked ten times less often after that.
+   *
+   * @param service       Supplies the Xenon service which is waiting for the task.
+   * @param serviceLink   Supplies the document self-link of the task service.
+   * @param predicate     Supplies the condition on the task state to wait for.
+   * @param type          Supplies the type of the task state.
+   * @param taskPollDelay Supplies the poll interval in milliseconds, used until the subscription is in place.
+   * @param callback      Supplies the callback to invoke with the task state, or with the failure.
+   * @param <T>           Supplies the type of the task state.
+   */
   public static <T extends ServiceDocument> void checkProgress(
       final Service service,
       final String serviceLink,
@@ -74,49 +94,21 @@ public class TaskUtils {
       final int taskPollDelay,
       final FutureCallback<T> callback) {
 
-    try {
-      Thread.sleep(Math.abs(new Random().nextLong()) % (taskPollDelay + 1) + 1);
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    }
-
-    Operation.CompletionHandler completionHandler = new Operation.CompletionHandler() {
-      @Override
-      public void handle(Operation operation, Throwable throwable) {
-        if (null != throwable) {
-          ServiceUtils.logSevere(service, "error when contacting [" + serviceLink + "] " + throwable.getMessage());
-          ServiceUtils.logSevere(service, throwable);
-          callback.onFailure(throwable);
-          return;
-        }
-        final T state = operation.getBody(type);
-
-        if (predicate.apply(state)) {
-          callback.onSuccess(state);
-          return;
-        }
-
-        Runnable runnable = new Runnable() {
-          @Override
-          public void run() {
-            try {
-              checkProgress(service, serviceLink, predicate, type, taskPollDelay, callback);
-            } catch (Throwable t) {
-              ServiceUtils.logSevere(service,
-                  "error when contacting [" + state.documentSelfLink + "]" + t.getMessage());
-              ServiceUtils.logSevere(service, t);
-              callback.onFailure(t);
-            }
+    long pollIntervalMicros = TimeUnit.MILLISECONDS.toMicros(taskPollDelay);
+    new TaskCompletionNotifier(service)
+        .waitForChildTask(UriUtils.buildUri(service.getHost(), serviceLink),
+            (operation) -> predicate.apply(operation.getBody(type)),
+            pollIntervalMicros, pollIntervalMicros * SUBSCRIBED_RECHECK_FACTOR)
+        .whenComplete((operation, throwable) -> {
+          if (null != throwable) {
+            ServiceUtils.logSevere(service, "error when waiting for [" + serviceLink + "] " + throwable.getMessage());
+            ServiceUtils.logSevere(service, throwable);
+            callback.onFailure(throwable);
+            return;
           }
-        };
-        service.getHost().schedule(runnable, taskPollDelay, TimeUnit.MILLISECONDS);
-      }
-    };
 
-    Operation get = Operation
-        .createGet(UriUtils.buildUri(service.getHost(), serviceLink))
-        .setCompletion(completionHandler);
-    service.sendRequest(get);
+          callback.onSuccess(operation.getBody(type));
+        });
   }
 
   /**
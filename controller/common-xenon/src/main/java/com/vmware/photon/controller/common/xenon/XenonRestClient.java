@@ -24,7 +24,6 @@ import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.ServiceErrorResponse;
 import com.vmware.xenon.common.ServiceHost;
-import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
@@ -49,15 +48,19 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * REST client to access Xenon services.
  */
-public class XenonRestClient implements XenonClient {
+public class XenonRestClient implements XenonClient, AsyncXenonClient {
 
   private static final long POST_OPERATION_EXPIRATION_MICROS = TimeUnit.SECONDS.toMicros(60);
   private long postOperationExpirationMicros = POST_OPERATION_EXPIRATION_MICROS;
@@ -74,6 +77,7 @@ public class XenonRestClient implements XenonClient {
   private static final long DEFAULT_OPERATION_LATCH_TIMEOUT_MICROS = TimeUnit.SECONDS.toMicros(90);
   private static final long SERVICE_DOCUMENT_STATUS_CHECK_INTERVAL_MILLIS = 100L;
   private long serviceDocumentStatusCheckIntervalMillis = SERVICE_DOCUMENT_STATUS_CHECK_INTERVAL_MILLIS;
+  private static final long SERVICE_DOCUMENT_STATUS_RECHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
   private static final Logger logger = LoggerFactory.getLogger(XenonRestClient.class);
 
   // APIFE will use the Xenon service host to communicate with the other Xenon services like deployer, scheduler,
@@ -87,6 +91,7 @@ public class XenonRestClient implements XenonClient {
   private URI localHostUri;
   private List<String> localHostIpAddresses;
   private ScheduledExecutorService scheduledExecutorService;
+  private TaskCompletionNotifier taskCompletionNotifier;
 
   @Inject
   public XenonRestClient(ServerSet serverSet,
@@ -105,6 +110,7 @@ public class XenonRestClient implements XenonClient {
     this.serviceHost = serviceHost;
     this.localHostUri = OperationUtils.getLocalHostUri();
     this.localHostIpAddresses = OperationUtils.getLocalHostIpAddresses();
+    this.taskCompletionNotifier = new TaskCompletionNotifier(serviceHost, scheduledExecutorService);
   }
 
   // This method is no longer needed, will be removed in a future change
@@ -144,114 +150,39 @@ public class XenonRestClient implements XenonClient {
   @Override
   public Operation post(Boolean forceIndexUpdate, String serviceSelfLink, ServiceDocument body, long timeOutInMicros)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(serviceSelfLink);
-
-    Operation postOperation = Operation
-        .createPost(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + timeOutInMicros)
-        .setBody(body)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    if (forceIndexUpdate) {
-      // this pragma will allow POST to a previously deleted service.
-      postOperation.addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
-    }
-
-    return send(postOperation);
+    return send(createPostOperation(forceIndexUpdate, serviceSelfLink, body, timeOutInMicros));
   }
 
   @Override
   public Operation put(String serviceSelfLink, ServiceDocument body)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(serviceSelfLink);
-
-    Operation putOperation = Operation
-        .createPut(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getPutOperationExpirationMicros())
-        .setBody(body)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(putOperation);
+    return send(createPutOperation(serviceSelfLink, body));
   }
 
   @Override
   public Operation get(String documentSelfLink)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(documentSelfLink);
-
-    Operation getOperation = Operation
-        .createGet(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getGetOperationExpirationMicros())
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(getOperation);
+    return send(createGetOperation(getServiceUri(documentSelfLink), getGetOperationExpirationMicros()));
   }
 
   @Override
   public Operation get(URI documentServiceUri)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-
-    Operation getOperation = Operation
-        .createGet(documentServiceUri)
-        .setUri(documentServiceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getGetOperationExpirationMicros())
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(getOperation);
+    return send(createGetOperation(documentServiceUri, getGetOperationExpirationMicros()));
   }
 
   @Override
   public Map<String, Operation> get(Collection<String> documentSelfLinks, int batchSize)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-
-    if (documentSelfLinks.isEmpty()) {
-      throw new IllegalArgumentException("documentSelfLinks collection cannot be empty");
-    }
-
-    if (batchSize <= 0) {
-      throw new IllegalArgumentException("batchSize must be greater than zero");
-    }
-
-    int batchCount = 1 + (documentSelfLinks.size() - 1) / batchSize;
-    Map<Long, Operation> operations = new HashMap<>(documentSelfLinks.size());
     Map<Long, String> sourceLinks = new HashMap<>(documentSelfLinks.size());
-    for (String documentSelfLink : documentSelfLinks) {
-      URI serviceUri = getServiceUri(documentSelfLink);
-
-      Operation getOperation = Operation
-          .createGet(serviceUri)
-          .setUri(serviceUri)
-          .setExpiration(Utils.getNowMicrosUtc() + batchCount * getGetOperationExpirationMicros())
-          .setReferer(this.localHostUri)
-          .setContextId(LoggingUtils.getRequestId());
-
-      operations.put(getOperation.getId(), getOperation);
-      sourceLinks.put(getOperation.getId(), documentSelfLink);
-    }
-
+    Map<Long, Operation> operations = createGetOperations(documentSelfLinks, batchSize, sourceLinks);
     return send(operations, sourceLinks, batchSize);
   }
 
   @Override
   public Operation delete(String documentSelfLink, ServiceDocument body)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(documentSelfLink);
-
-    Operation deleteOperation = Operation
-        .createDelete(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getDeleteOperationExpirationMicros())
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId())
-        .setBody(body);
-
-    return send(deleteOperation);
+    return send(createDeleteOperation(documentSelfLink, body));
   }
 
   @Override
@@ -280,25 +211,7 @@ public class XenonRestClient implements XenonClient {
       DocumentNotFoundException,
       TimeoutException,
       InterruptedException {
-
-    // Build the URI that will broadcast. The base URI is something like /core-node-selectors/default/forwarding
-    // (which is the node selector's forwarder that will pick all nodes), and there is a query term to
-    // tell it where to forward the query to on each node (for us it's /core/local-query-tasks)
-    URI serviceUri = UriUtils.buildBroadcastRequestUri(
-        getServiceUri(ServiceUriPaths.CORE_LOCAL_QUERY_TASKS),
-        ServiceUriPaths.DEFAULT_NODE_SELECTOR);
-
-    query.setDirect(true);
-
-    Operation queryOperation = Operation
-        .createPost(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
-        .setBody(query)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(queryOperation);
+    return send(createBroadcastQueryOperation(query));
   }
 
   @Override
@@ -310,16 +223,7 @@ public class XenonRestClient implements XenonClient {
   @Override
   public Operation patch(String serviceSelfLink, Object body, EnumSet<HeaderOption> headerOptions)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-
-    Operation patchOperation = Operation
-        .createPatch(getServiceUri(serviceSelfLink))
-        .setExpiration(Utils.getNowMicrosUtc() + getPatchOperationExpirationMicros())
-        .setBody(body)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    addRequestHeaders(patchOperation, headerOptions);
-    return send(patchOperation);
+    return send(createPatchOperation(serviceSelfLink, body, headerOptions));
   }
 
   @Override
@@ -331,18 +235,98 @@ public class XenonRestClient implements XenonClient {
   @Override
   public Operation query(QueryTask queryTask)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
+    return send(createQueryOperation(queryTask));
+  }
 
-    URI queryFactoryUri = getServiceUri(ServiceUriPaths.CORE_QUERY_TASKS);
+  /**
+   * Subscribes to the task service with the given link. The listener is called when the subscription is in place and
+   * on every update of the task, which lets callers re-check the task on change instead of on a fixed interval.
+   */
+  public TaskCompletionNotifier.Subscription subscribe(String taskSelfLink, Runnable listener) {
+    return taskCompletionNotifier.subscribe(getServiceUri(taskSelfLink), listener);
+  }
 
-    Operation queryOperation = Operation
-        .createPost(queryFactoryUri)
-        .setUri(queryFactoryUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
-        .setBody(queryTask)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
+  @Override
+  public CompletableFuture<Operation> postAsync(String serviceSelfLink, ServiceDocument body) {
+    return postAsync(false, serviceSelfLink, body);
+  }
+
+  @Override
+  public CompletableFuture<Operation> postAsync(String serviceSelfLink, ServiceDocument body, long timeOutInMicros) {
+    return sendAsync(createPostOperation(false, serviceSelfLink, body, timeOutInMicros));
+  }
+
+  @Override
+  public CompletableFuture<Operation> postAsync(Boolean forceIndexUpdate, String serviceSelfLink,
+                                                ServiceDocument body) {
+    return sendAsync(createPostOperation(forceIndexUpdate, serviceSelfLink, body, getPostOperationExpirationMicros()));
+  }
+
+  @Override
+  public CompletableFuture<Operation> putAsync(String serviceSelfLink, ServiceDocument body) {
+    return sendAsync(createPutOperation(serviceSelfLink, body));
+  }
+
+  @Override
+  public CompletableFuture<Operation> getAsync(String documentSelfLink) {
+    return sendAsync(createGetOperation(getServiceUri(documentSelfLink), getGetOperationExpirationMicros()));
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Operation>> getAsync(Collection<String> documentSelfLinks, int batchSize) {
+    Map<Long, String> sourceLinks = new HashMap<>(documentSelfLinks.size());
+    Map<Long, Operation> operations = createGetOperations(documentSelfLinks, batchSize, sourceLinks);
+    return sendAsync(operations, sourceLinks, batchSize);
+  }
+
+  @Override
+  public CompletableFuture<Operation> getAsync(URI documentServiceUri) {
+    return sendAsync(createGetOperation(documentServiceUri, getGetOperationExpirationMicros()));
+  }
+
+  @Override
+  public CompletableFuture<Operation> postToBroadcastQueryServiceAsync(QueryTask.QuerySpecification spec) {
+    return postToBroadcastQueryServiceAsync(QueryTask.create(spec));
+  }
+
+  @Override
+  public CompletableFuture<Operation> postToBroadcastQueryServiceAsync(QueryTask query) {
+    return sendAsync(createBroadcastQueryOperation(query));
+  }
+
+  @Override
+  public CompletableFuture<Operation> deleteAsync(String documentSelfLink, ServiceDocument body) {
+    return sendAsync(createDeleteOperation(documentSelfLink, body));
+  }
+
+  @Override
+  public CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body) {
+    return patchAsync(serviceSelfLink, body, null);
+  }
+
+  @Override
+  public CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body,
+                                                 EnumSet<HeaderOption> headerOptions) {
+    return sendAsync(createPatchOperation(serviceSelfLink, body, headerOptions));
+  }
+
+  /**
+   * Returns a future which completes with the GET of the task once it has reached a final stage, without holding a
+   * thread while the task runs. The future fails with the exception a GET of the task would have thrown.
+   */
+  @Override
+  public CompletableFuture<Operation> waitForTaskToFinishAsync(String taskSelfLink) {
+    return waitForTaskToFinishAsync(getServiceUri(taskSelfLink));
+  }
+
+  @Override
+  public CompletableFuture<Operation> queryAsync(QueryTask.QuerySpecification spec, boolean isDirect) {
+    return queryAsync(QueryTask.create(spec).setDirect(isDirect));
+  }
 
-    return send(queryOperation);
+  @Override
+  public CompletableFuture<Operation> queryAsync(QueryTask queryTask) {
+    return sendAsync(createQueryOperation(queryTask));
   }
 
   /**
@@ -633,6 +617,65 @@ public class XenonRestClient implements XenonClient {
     return result;
   }
 
+  /**
+   * Sends the operation without blocking the calling thread. The returned future is completed from the operation
+   * completion handler once the result has gone through {@link #handleOperationResult}, so it fails with the same
+   * exceptions {@link #send(Operation)} would throw.
+   */
+  @VisibleForTesting
+  protected CompletableFuture<Operation> sendAsync(Operation requestedOperation) {
+    logger.debug("sendAsync: STARTED {}", OperationUtils.createLogMessage(requestedOperation));
+    CompletableFuture<Operation> future = new CompletableFuture<>();
+    requestedOperation.setCompletion((completedOperation, failure) -> {
+      try {
+        logCompletedOperation(completedOperation);
+        handleOperationResult(requestedOperation, completedOperation);
+        future.complete(completedOperation);
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+
+    serviceHost.sendRequest(requestedOperation);
+    failOnTimeout(future, DEFAULT_OPERATION_LATCH_TIMEOUT_MICROS,
+        () -> OperationUtils.createLogMessageWithStatus(requestedOperation));
+    return future;
+  }
+
+  @VisibleForTesting
+  protected CompletableFuture<Map<String, Operation>> sendAsync(Map<Long, Operation> requestedOperations,
+                                                                Map<Long, String> sourceLinks,
+                                                                int batchSize) {
+
+    for (Operation requestedOperation : requestedOperations.values()) {
+      logger.debug("sendAsync: STARTED {}", OperationUtils.createLogMessage(requestedOperation));
+    }
+
+    CompletableFuture<Map<String, Operation>> future = new CompletableFuture<>();
+    OperationJoin operationJoin = OperationJoin.create(requestedOperations.values());
+    operationJoin.setCompletion((Map<Long, Operation> completedOperations, Map<Long, Throwable> failures) -> {
+      try {
+        for (Operation completedOperation : completedOperations.values()) {
+          logCompletedOperation(completedOperation);
+        }
+        handleOperationResults(requestedOperations, completedOperations.values());
+        Map<String, Operation> result = new HashMap<>(completedOperations.size());
+        for (Operation operation : completedOperations.values()) {
+          result.put(sourceLinks.get(operation.getId()), operation);
+        }
+        future.complete(result);
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+
+    operationJoin.sendWith(serviceHost, batchSize);
+    int batchCount = 1 + (requestedOperations.size() - 1) / batchSize;
+    failOnTimeout(future, batchCount * DEFAULT_OPERATION_LATCH_TIMEOUT_MICROS,
+        () -> "OperationJoin.size:{" + requestedOperations.size() + "}");
+    return future;
+  }
+
   @VisibleForTesting
   protected long getPostOperationExpirationMicros() {
     return postOperationExpirationMicros;
@@ -672,6 +715,145 @@ public class XenonRestClient implements XenonClient {
     return inetSocketAddress.getPort();
   }
 
+  private Operation createPostOperation(Boolean forceIndexUpdate, String serviceSelfLink, ServiceDocument body,
+                                        long timeOutInMicros) {
+    URI serviceUri = getServiceUri(serviceSelfLink);
+
+    Operation postOperation = Operation
+        .createPost(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + timeOutInMicros)
+        .setBody(body)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+
+    if (forceIndexUpdate) {
+      // this pragma will allow POST to a previously deleted service.
+      postOperation.addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
+    }
+
+    return postOperation;
+  }
+
+  private Operation createPutOperation(String serviceSelfLink, ServiceDocument body) {
+    URI serviceUri = getServiceUri(serviceSelfLink);
+
+    return Operation
+        .createPut(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getPutOperationExpirationMicros())
+        .setBody(body)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  private Operation createGetOperation(URI serviceUri, long expirationMicros) {
+    return Operation
+        .createGet(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + expirationMicros)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  private Map<Long, Operation> createGetOperations(Collection<String> documentSelfLinks,
+                                                   int batchSize,
+                                                   Map<Long, String> sourceLinks) {
+
+    if (documentSelfLinks.isEmpty()) {
+      throw new IllegalArgumentException("documentSelfLinks collection cannot be empty");
+    }
+
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be greater than zero");
+    }
+
+    int batchCount = 1 + (documentSelfLinks.size() - 1) / batchSize;
+    Map<Long, Operation> operations = new HashMap<>(documentSelfLinks.size());
+    for (String documentSelfLink : documentSelfLinks) {
+      Operation getOperation = createGetOperation(
+          getServiceUri(documentSelfLink), batchCount * getGetOperationExpirationMicros());
+
+      operations.put(getOperation.getId(), getOperation);
+      sourceLinks.put(getOperation.getId(), documentSelfLink);
+    }
+
+    return operations;
+  }
+
+  private Operation createDeleteOperation(String documentSelfLink, ServiceDocument body) {
+    URI serviceUri = getServiceUri(documentSelfLink);
+
+    return Operation
+        .createDelete(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getDeleteOperationExpirationMicros())
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId())
+        .setBody(body);
+  }
+
+  private Operation createBroadcastQueryOperation(QueryTask query) {
+    // Build the URI that will broadcast. The base URI is something like /core-node-selectors/default/forwarding
+    // (which is the node selector's forwarder that will pick all nodes), and there is a query term to
+    // tell it where to forward the query to on each node (for us it's /core/local-query-tasks)
+    URI serviceUri = UriUtils.buildBroadcastRequestUri(
+        getServiceUri(ServiceUriPaths.CORE_LOCAL_QUERY_TASKS),
+        ServiceUriPaths.DEFAULT_NODE_SELECTOR);
+
+    query.setDirect(true);
+
+    return Operation
+        .createPost(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
+        .setBody(query)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  private Operation createPatchOperation(String serviceSelfLink, Object body, EnumSet<HeaderOption> headerOptions) {
+    Operation patchOperation = Operation
+        .createPatch(getServiceUri(serviceSelfLink))
+        .setExpiration(Utils.getNowMicrosUtc() + getPatchOperationExpirationMicros())
+        .setBody(body)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+
+    return addRequestHeaders(patchOperation, headerOptions);
+  }
+
+  private Operation createQueryOperation(QueryTask queryTask) {
+    URI queryFactoryUri = getServiceUri(ServiceUriPaths.CORE_QUERY_TASKS);
+
+    return Operation
+        .createPost(queryFactoryUri)
+        .setUri(queryFactoryUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
+        .setBody(queryTask)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  /**
+   * Fails the future with a {@link TimeoutException} if it is still pending after the given time. This is the
+   * non-blocking counterpart of the latch timeout used by the synchronous methods.
+   */
+  private void failOnTimeout(CompletableFuture<?> future, long timeoutMicros, Supplier<String> description) {
+    if (future.isDone()) {
+      return;
+    }
+
+    ScheduledFuture<?> timer = scheduledExecutorService.schedule(() -> {
+      if (!future.isDone()) {
+        String timeOutMessage = String.format("TIMEOUT:{%s}, TimeUnit:{%s}, Operation:{%s}",
+            timeoutMicros, TimeUnit.MICROSECONDS, description.get());
+        logger.warn("sendAsync: {}", timeOutMessage);
+        future.completeExceptionally(new TimeoutException(timeOutMessage));
+      }
+    }, timeoutMicros, TimeUnit.MICROSECONDS);
+    future.whenComplete((result, failure) -> timer.cancel(false));
+  }
+
   private void handleUnknownError(Operation requestedOperation, Operation completedOperation) {
     throw new XenonRuntimeException(requestedOperation, completedOperation);
   }
@@ -740,25 +922,66 @@ public class XenonRestClient implements XenonClient {
     }
   }
 
+  /**
+   * Waits for the task of a synchronous call. Callers which must not block use
+   * {@link #waitForTaskToFinishAsync(String)} instead.
+   */
   private Operation waitForTaskToFinish(URI serviceUri)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
 
-    Operation result = null;
-    do {
-      result = get(serviceUri);
-      TaskState.TaskStage taskStage = QueryTaskUtils.getServiceState(result);
-      if (taskStage == TaskState.TaskStage.FINISHED
-          || taskStage == TaskState.TaskStage.FAILED
-          || taskStage == TaskState.TaskStage.CANCELLED) {
-
-        return result;
+    try {
+      return waitForTaskToFinishAsync(serviceUri).get();
+    } catch (ExecutionException executionException) {
+      Throwable cause = executionException.getCause();
+      if (cause instanceof TimeoutException) {
+        throw (TimeoutException) cause;
       }
+      if (cause instanceof BadRequestException) {
+        throw (BadRequestException) cause;
+      }
+      if (cause instanceof DocumentNotFoundException) {
+        throw (DocumentNotFoundException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new XenonRuntimeException(cause);
+    }
+  }
 
-      Thread.sleep(getServiceDocumentStatusCheckIntervalMillis());
-    } while (Utils.getNowMicrosUtc() <= result.getExpirationMicrosUtc());
-
-    throw new TimeoutException(String.format("Timeout:{%s}, TimeUnit:{%s}", result.getExpirationMicrosUtc(),
-        TimeUnit.MICROSECONDS));
+  /**
+   * The task is polled at the status check interval until the subscription to it is in place. After that it is only
+   * read when it notifies a change, and re-checked every few seconds in case a notification was lost.
+   */
+  private CompletableFuture<Operation> waitForTaskToFinishAsync(URI serviceUri) {
+    CompletableFuture<Operation> finished = new CompletableFuture<>();
+    taskCompletionNotifier.waitForFinalStage(
+        serviceUri,
+        QueryTaskUtils::getServiceState,
+        TimeUnit.MILLISECONDS.toMicros(getServiceDocumentStatusCheckIntervalMillis()),
+        TimeUnit.MILLISECONDS.toMicros(SERVICE_DOCUMENT_STATUS_RECHECK_INTERVAL_MILLIS),
+        getGetOperationExpirationMicros())
+        .whenComplete((completedOperation, failure) -> {
+          if (failure == null) {
+            finished.complete(completedOperation);
+            return;
+          }
+
+          Throwable cause = failure;
+          if (failure instanceof XenonRuntimeException
+              && ((XenonRuntimeException) failure).getCompletedOperation() != null) {
+            // Surface a rejected read of the task the same way a blocking get would.
+            XenonRuntimeException xenonRuntimeException = (XenonRuntimeException) failure;
+            try {
+              handleOperationResult(xenonRuntimeException.getRequestedOperation(),
+                  xenonRuntimeException.getCompletedOperation());
+            } catch (Throwable t) {
+              cause = t;
+            }
+          }
+          finished.completeExceptionally(cause);
+        });
+    return finished;
   }
 
   private String encodePageLink(String pageLink) {
@@ -35,12 +35,42 @@ import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Class TaskSchedulerService: periodically starts new services based on the threshold of how many services
- * can be running simultaneously.
+ * Class TaskSchedulerService: starts new services based on the threshold of how many services can be running
+ * simultaneously.
+ * <p>
+ * The owner of the scheduler subscribes to a continuous query on the scheduled service documents and keeps the
+ * CREATED and STARTED services in memory, so a CREATED service is started as soon as a slot is free. The in-memory
+ * counts are reconciled against the index at every periodic maintenance.
  */
 public class TaskSchedulerService extends StatefulService {
 
+  private static final long CONTINUOUS_QUERY_EXPIRATION_MICROS = TimeUnit.DAYS.toMicros(365 * 100);
+
+  private final Admission admission = new Admission();
+
+  private final Object subscriptionLock = new Object();
+
+  private String continuousQueryLink;
+
+  private URI notificationTarget;
+
+  private boolean subscribing;
+
   /**
    * Default constructor.
    */
@@ -61,6 +91,9 @@ public class TaskSchedulerService extends StatefulService {
       this.validateState(s);
 
       start.complete();
+
+      // Subscribe right away instead of waiting for the first maintenance if this host is the owner.
+      this.selectOwnerAndProcess();
     } catch (Throwable e) {
       ServiceUtils.logSevere(this, e);
       if (!OperationUtils.isCompleted(start)) {
@@ -93,13 +126,26 @@ public class TaskSchedulerService extends StatefulService {
     }
   }
 
+  @Override
+  public void handleStop(Operation stop) {
+    unsubscribe();
+    stop.complete();
+  }
+
   /**
    * Handle service periodic maintenance calls.
    */
   @Override
   public void handlePeriodicMaintenance(Operation post) {
     post.complete();
+    selectOwnerAndProcess();
+  }
 
+  /**
+   * Sends a self patch, which subscribes to the scheduled services and reconciles the running counts, if this host
+   * is the owner of the scheduler. Otherwise drops the subscription and the in-memory state.
+   */
+  private void selectOwnerAndProcess() {
     Operation.CompletionHandler handler = (Operation op, Throwable failure) -> {
       if (null != failure) {
         // query failed so abort and retry next time
@@ -112,6 +158,7 @@ public class TaskSchedulerService extends StatefulService {
         ServiceUtils.logInfo(TaskSchedulerService.this,
             "Host[%s]: Not owner of scheduler [%s] (Owner Info [%s])",
             getHost().getId(), getSelfLink(), Utils.toJson(false, false, rsp));
+        unsubscribe();
         return;
       }
 
@@ -166,61 +213,194 @@ public class TaskSchedulerService extends StatefulService {
   }
 
   /**
-   * Process patch. Triggers a query task for started service, and if the count of services in STARTED is less than
-   * the pre-defined threshold, it will move the services in CREATED stage to STARTED stage, until the count
-   * reached the threshold.
+   * Process patch. Makes sure the scheduled services are subscribed to, and reconciles the in-memory CREATED and
+   * STARTED services with a query for them. Services in CREATED stage are then moved to STARTED stage until the
+   * count of running services reaches the pre-defined threshold.
    */
   private void processPatch(final State current) {
-    Operation.CompletionHandler handler = new Operation.CompletionHandler() {
-      @Override
-      public void handle(Operation completedOp, Throwable failure) {
-        if (failure != null) {
-          // The serivce log the failed query, and let the next handlePeriodicMaintenance function trigger
-          // another one.
-          logFailure(failure);
-          return;
-        }
-
-        int serviceCount = completedOp.getBody(QueryTask.class).results.documentLinks.size();
-        int runningTasksLimit = current.tasksLimits;
-        if (serviceCount >= runningTasksLimit) {
-          return;
-        }
+    subscribe(current);
+    reconcile(current);
+  }
 
-        startServices(current, runningTasksLimit - serviceCount);
+  /**
+   * Creates a continuous query for the documents of the scheduled service and subscribes to it. Every update of a
+   * scheduled service is applied to the in-memory state, so a slot freed by a finished service is used right away.
+   */
+  private void subscribe(final State current) {
+    synchronized (subscriptionLock) {
+      if (subscribing || continuousQueryLink != null) {
+        return;
       }
-    };
+      subscribing = true;
+    }
+
+    try {
+      Class<?> documentClass = getDocumentClass(current);
+      Field stageField = getStageField(documentClass);
+
+      QueryTask.QuerySpecification spec = new QueryTask.QuerySpecification();
+      spec.query = QueryTask.Query.Builder.create().addKindFieldClause(documentClass).build();
+      spec.options.add(QueryTask.QuerySpecification.QueryOption.CONTINUOUS);
+      spec.options.add(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+      QueryTask query = QueryTask.create(spec);
+      query.documentExpirationTimeMicros = Utils.getNowMicrosUtc() + CONTINUOUS_QUERY_EXPIRATION_MICROS;
+
+      Operation queryPost = Operation
+          .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+          .setBody(query)
+          .setCompletion((op, ex) -> {
+            if (ex != null) {
+              logFailure(ex);
+              subscriptionFailed();
+              return;
+            }
+
+            String queryLink = op.getBody(QueryTask.class).documentSelfLink;
+            Operation subscribe = Operation
+                .createPost(UriUtils.buildUri(getHost(), queryLink))
+                .setReferer(getUri())
+                .setCompletion((subscribeOp, subscribeEx) -> {
+                  if (subscribeEx != null) {
+                    logFailure(subscribeEx);
+                  }
+                });
+
+            URI target = getHost().startSubscriptionService(subscribe, (notification) -> {
+              notification.complete();
+              QueryTask queryTask = notification.getBody(QueryTask.class);
+              if (queryTask.results != null && queryTask.results.documents != null) {
+                for (Object document : queryTask.results.documents.values()) {
+                  applyUpdate(documentClass, stageField, document);
+                }
+                startServices(current);
+              }
+            });
+
+            synchronized (subscriptionLock) {
+              continuousQueryLink = queryLink;
+              notificationTarget = target;
+              subscribing = false;
+            }
+
+            // Catch up with the services updated before the subscription was in place.
+            reconcile(current);
+          });
+      sendRequest(queryPost);
+    } catch (Throwable e) {
+      logFailure(e);
+      subscriptionFailed();
+    }
+  }
 
-    sendTaskStateQuery(current, TaskState.TaskStage.STARTED, handler);
+  private void subscriptionFailed() {
+    synchronized (subscriptionLock) {
+      subscribing = false;
+    }
   }
 
   /**
-   * Triggers a query task for started service in CREATED stage and moves servicesToStartCount service to STARTED stage.
+   * Removes the subscription to the scheduled services and clears the in-memory state. Called when this host is no
+   * longer the owner of the scheduler and when the scheduler stops.
    */
-  private void startServices(final State current, final int servicesToStartCount) {
-    Operation.CompletionHandler handler = new Operation.CompletionHandler() {
-      @Override
-      public void handle(Operation completedOp, Throwable failure) {
-        if (failure != null) {
-          logFailure(failure);
-          return;
-        }
+  private void unsubscribe() {
+    String queryLink;
+    URI target;
+    synchronized (subscriptionLock) {
+      queryLink = continuousQueryLink;
+      target = notificationTarget;
+      continuousQueryLink = null;
+      notificationTarget = null;
+    }
 
-        ServiceDocumentQueryResult results = completedOp.getBody(QueryTask.class).results;
-        if (results.documentLinks.size() == 0) {
-          return;
-        }
+    admission.clear();
+    if (queryLink == null) {
+      return;
+    }
 
-        ServiceUtils.logInfo(TaskSchedulerService.this,
-            "Host[%s]: Services to start: %s", getHost().getId(), Utils.toJson(false, false, results.documentLinks));
-        for (int count = 0; count < Math.min(servicesToStartCount, results.documentLinks.size()); count++) {
-          String docLink = results.documentLinks.get(count);
-          sendStartPatch(current, docLink);
-        }
-      }
-    };
+    URI queryUri = UriUtils.buildUri(getHost(), queryLink);
+    getHost().stopSubscriptionService(
+        Operation.createDelete(queryUri).setReferer(getUri()),
+        target);
+    sendRequest(Operation.createDelete(queryUri));
+  }
+
+  /**
+   * Applies a document received from the continuous query to the in-memory state.
+   */
+  private void applyUpdate(Class<?> documentClass, Field stageField, Object document) {
+    try {
+      ServiceDocument serviceDocument = (ServiceDocument) Utils.fromJson(document, documentClass);
+      boolean deleted = Action.DELETE.name().equals(serviceDocument.documentUpdateAction);
+      admission.update(serviceDocument.documentSelfLink, serviceDocument.documentVersion,
+          deleted ? null : getStage(stageField, serviceDocument), Utils.getNowMicrosUtc());
+    } catch (Throwable e) {
+      logFailure(e);
+    }
+  }
+
+  /**
+   * Triggers a query task for the services in CREATED and STARTED stage and replaces the in-memory state with the
+   * result. The query only corrects what the continuous query missed, e.g. while this host was not the owner.
+   */
+  private void reconcile(final State current) {
+    try {
+      Class<?> documentClass = getDocumentClass(current);
+      Field stageField = getStageField(documentClass);
+      long queryTimeMicros = Utils.getNowMicrosUtc();
 
-    sendTaskStateQuery(current, TaskState.TaskStage.CREATED, handler);
+      QueryTask.QuerySpecification spec = QueryTaskUtils.buildTaskStatusQuerySpec(documentClass,
+          TaskState.TaskStage.CREATED, TaskState.TaskStage.STARTED);
+      spec.options.add(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+
+      QueryTask query = QueryTask.create(spec).setDirect(true);
+      Operation queryPost = Operation
+          .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
+          .setBody(query)
+          .setCompletion((completedOp, failure) -> {
+            if (failure != null) {
+              // The service logs the failed query, and lets the next handlePeriodicMaintenance function trigger
+              // another one.
+              logFailure(failure);
+              return;
+            }
+
+            try {
+              ServiceDocumentQueryResult results = completedOp.getBody(QueryTask.class).results;
+              Set<String> documentLinks = new HashSet<>();
+              if (results.documents != null) {
+                for (Object document : results.documents.values()) {
+                  ServiceDocument serviceDocument = (ServiceDocument) Utils.fromJson(document, documentClass);
+                  documentLinks.add(serviceDocument.documentSelfLink);
+                  admission.update(serviceDocument.documentSelfLink, serviceDocument.documentVersion,
+                      getStage(stageField, serviceDocument), queryTimeMicros);
+                }
+              }
+              admission.removeMissing(documentLinks, queryTimeMicros);
+              startServices(current);
+            } catch (Throwable e) {
+              logFailure(e);
+            }
+          });
+      sendRequest(queryPost);
+    } catch (Throwable e) {
+      logFailure(e);
+    }
+  }
+
+  /**
+   * Moves CREATED services to STARTED stage while the count of running services is below the threshold.
+   */
+  private void startServices(final State current) {
+    List<String> docLinks = admission.admit(current.tasksLimits, Utils.getNowMicrosUtc());
+    if (docLinks.isEmpty()) {
+      return;
+    }
+
+    ServiceUtils.logInfo(TaskSchedulerService.this,
+        "Host[%s]: Services to start: %s", getHost().getId(), Utils.toJson(false, false, docLinks));
+    for (String docLink : docLinks) {
+      sendStartPatch(current, docLink);
+    }
   }
 
   /**
@@ -235,38 +415,44 @@ public class TaskSchedulerService extends StatefulService {
               .getStartPatch(Class.forName(current.schedulerServiceClassName));
       Operation patch = Operation.createPatch(UriUtils.buildUri(getHost(), docSelfLink))
           .setBody(startedPatch)
-          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()));
+          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
+          .setCompletion((op, ex) -> {
+            if (ex != null) {
+              // Free the slot; the next reconciliation picks the service up again if it is still CREATED.
+              logFailure(ex);
+              admission.release(docSelfLink);
+              startServices(current);
+            }
+          });
       sendRequest(patch);
 
       ServiceUtils.logInfo(this,
           "Host[%s]: TaskSchedulerService moving service %s from CREATED to STARTED", getHost().getId(), docSelfLink);
     } catch (Exception e) {
       logFailure(e);
+      admission.release(docSelfLink);
     }
   }
 
-  /**
-   * Triggers a query task with the spec passed as parameters and calls the handler param on success.
-   *
-   * @param stage
-   * @param handler
-   */
-  private void sendTaskStateQuery(final State current, final TaskState.TaskStage stage,
-                                  final Operation.CompletionHandler handler) {
-    try {
-      QueryTask.QuerySpecification spec =
-          QueryTaskUtils.buildTaskStatusQuerySpec(Class.forName(current.schedulerServiceClassName)
-              .getDeclaredClasses()[0], stage);
+  private static Class<?> getDocumentClass(State current) throws ClassNotFoundException {
+    return Class.forName(current.schedulerServiceClassName).getDeclaredClasses()[0];
+  }
 
-      QueryTask query = QueryTask.create(spec).setDirect(true);
-      Operation queryPost = Operation
-          .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
-          .setBody(query)
-          .setCompletion(handler);
-      sendRequest(queryPost);
-    } catch (ClassNotFoundException e) {
-      logFailure(e);
+  private static Field getStageField(Class<?> documentClass) {
+    for (Field field : documentClass.getFields()) {
+      if (TaskState.class.isAssignableFrom(field.getType())) {
+        return field;
+      }
     }
+
+    throw new IllegalArgumentException(
+        String.format("%s does not have a member of type %s", documentClass, TaskState.class));
+  }
+
+  private static TaskState.TaskStage getStage(Field stageField, ServiceDocument document)
+      throws IllegalAccessException {
+    TaskState taskState = (TaskState) stageField.get(document);
+    return taskState != null ? taskState.stage : null;
   }
 
   /**
@@ -290,6 +476,127 @@ public class TaskSchedulerService extends StatefulService {
     ServiceUtils.logSevere(this, e);
   }
 
+  /**
+   * The in-memory CREATED and STARTED services of the owner. Services are admitted in the order in which they were
+   * seen in CREATED stage, and count as running from the start patch until they reach a terminal stage. Updates
+   * older than the last one seen for a service are ignored, so a reconciliation query does not undo notifications
+   * received while it was running.
+   */
+  @VisibleForTesting
+  static class Admission {
+
+    private final Map<String, TrackedService> services = new HashMap<>();
+
+    private final Set<String> created = new LinkedHashSet<>();
+
+    private final Set<String> running = new HashSet<>();
+
+    /**
+     * Applies an update of a service. A null stage means the service was deleted; it is removed like a service in a
+     * terminal stage.
+     */
+    synchronized void update(String documentLink, long documentVersion, TaskState.TaskStage stage,
+                             long seenTimeMicros) {
+      TrackedService service = services.get(documentLink);
+      if (service != null && documentVersion < service.documentVersion) {
+        return;
+      }
+
+      if (stage != TaskState.TaskStage.CREATED && stage != TaskState.TaskStage.STARTED) {
+        remove(documentLink);
+        return;
+      }
+
+      if (service == null) {
+        service = new TrackedService();
+        services.put(documentLink, service);
+      }
+      service.documentVersion = documentVersion;
+      service.seenTimeMicros = Math.max(service.seenTimeMicros, seenTimeMicros);
+
+      if (stage == TaskState.TaskStage.CREATED) {
+        if (!running.contains(documentLink)) {
+          created.add(documentLink);
+        }
+      } else {
+        created.remove(documentLink);
+        running.add(documentLink);
+        service.admitted = false;
+      }
+    }
+
+    /**
+     * Removes the services which were not returned by a reconciliation query and not seen or admitted since it was
+     * sent.
+     */
+    synchronized void removeMissing(Set<String> documentLinks, long queryTimeMicros) {
+      Iterator<Map.Entry<String, TrackedService>> iterator = services.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, TrackedService> entry = iterator.next();
+        if (!documentLinks.contains(entry.getKey()) && entry.getValue().seenTimeMicros < queryTimeMicros) {
+          iterator.remove();
+          created.remove(entry.getKey());
+          running.remove(entry.getKey());
+        }
+      }
+    }
+
+    /**
+     * Returns the CREATED services to start so that at most tasksLimit services are running.
+     */
+    synchronized List<String> admit(int tasksLimit, long admitTimeMicros) {
+      List<String> documentLinks = new ArrayList<>();
+      Iterator<String> iterator = created.iterator();
+      while (running.size() < tasksLimit && iterator.hasNext()) {
+        String documentLink = iterator.next();
+        iterator.remove();
+        running.add(documentLink);
+        TrackedService service = services.get(documentLink);
+        service.admitted = true;
+        service.seenTimeMicros = admitTimeMicros;
+        documentLinks.add(documentLink);
+      }
+
+      return documentLinks;
+    }
+
+    /**
+     * Frees the slot of an admitted service whose start patch failed.
+     */
+    synchronized void release(String documentLink) {
+      TrackedService service = services.get(documentLink);
+      if (service != null && service.admitted) {
+        remove(documentLink);
+      }
+    }
+
+    synchronized int getRunningCount() {
+      return running.size();
+    }
+
+    synchronized int getCreatedCount() {
+      return created.size();
+    }
+
+    synchronized void clear() {
+      services.clear();
+      created.clear();
+      running.clear();
+    }
+
+    private void remove(String documentLink) {
+      services.remove(documentLink);
+      created.remove(documentLink);
+      running.remove(documentLink);
+    }
+
+    private static class TrackedService {
+      long documentVersion;
+      long seenTimeMicros;
+      boolean admitted;
+    }
+  }
+
   /**
    * Class defines the durable state of the TaskSchedulerService.
    */
@@ -14,6 +14,7 @@
 package com.vmware.photon.controller.common.xenon.serializer;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -22,58 +23,146 @@ import java.util.BitSet;
 
 /**
  * This class implements a customized BitSet serializer for Kryo.
+ * <p>
+ * The bits are written as 64-bit words, and runs of words which are all zeros or all ones are written as a single
+ * run header. IP allocation bitmaps are mostly made of such runs, so a large subnet which is empty or fully
+ * allocated is written in a few bytes.
+ * <p>
+ * The first value written is a format marker. It is negative so that it cannot be confused with the bit length
+ * written first by the original bit-by-bit format, which can still be read.
  */
 public class BitSetSerializer extends Serializer<BitSet> {
 
+  /**
+   * Marks a bit set written as run-length encoded words.
+   */
+  private static final int FORMAT_RUN_LENGTH_WORDS = -1;
+
+  /**
+   * Types of runs, stored in the low bits of a run header. The rest of the header is the number of words in the run.
+   */
+  private static final int RUN_ZEROS = 0;
+  private static final int RUN_ONES = 1;
+  private static final int RUN_LITERALS = 2;
+
+  private static final int RUN_TYPE_BITS = 2;
+  private static final int RUN_TYPE_MASK = (1 << RUN_TYPE_BITS) - 1;
+
   @Override
   public BitSet copy(final Kryo kryo, final BitSet original) {
-    final BitSet result = new BitSet();
-    final int length = original.length();
-    for (int i = 0; i < length; i++) {
-      result.set(i, original.get(i));
-    }
-    return result;
+    return (BitSet) original.clone();
   }
 
   @Override
   public void write(final Kryo kryo, final Output output, final BitSet bitSet) {
-    final int bitLen = bitSet.length();
-    output.writeInt(bitLen, true);
+    final long[] words = bitSet.toLongArray();
+    output.writeInt(FORMAT_RUN_LENGTH_WORDS, true);
+    output.writeInt(words.length, true);
 
-    int wordNum = bitLen / Long.SIZE;
-    if (bitLen % Long.SIZE > 0) {
-      ++wordNum;
-    }
+    int start = 0;
+    while (start < words.length) {
+      final int type = getRunType(words[start]);
+      int end = start + 1;
+      if (type == RUN_LITERALS) {
+        // A single zeros or ones word is cheaper to keep in the literal run than to start a run of its own.
+        while (end < words.length && !startsRun(words, end)) {
+          ++end;
+        }
+      } else {
+        while (end < words.length && words[end] == words[start]) {
+          ++end;
+        }
+      }
 
-    long[] words = new long[wordNum];
-    for (int i = 0; i < bitLen; ++i) {
-      if (bitSet.get(i)) {
-        words[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+      output.writeInt(((end - start) << RUN_TYPE_BITS) | type, true);
+      if (type == RUN_LITERALS) {
+        for (int i = start; i < end; ++i) {
+          output.writeLong(words[i]);
+        }
       }
-    }
 
-    output.writeLongs(words);
+      start = end;
+    }
   }
 
   @Override
   public BitSet read(final Kryo kryo, final Input input, final Class<BitSet> bitSetClass) {
-    final int bitLen = input.readInt(true);
-    final BitSet bitSet = new BitSet(bitLen);
+    final int header = input.readInt(true);
+    if (header >= 0) {
+      return readBitByBitFormat(input, header);
+    }
+
+    if (header != FORMAT_RUN_LENGTH_WORDS) {
+      throw new KryoException("Unknown BitSet format " + header);
+    }
+
+    final long[] words = new long[input.readInt(true)];
+    int start = 0;
+    while (start < words.length) {
+      final int runHeader = input.readInt(true);
+      final int end = start + (runHeader >>> RUN_TYPE_BITS);
+      if (end > words.length) {
+        throw new KryoException("BitSet run exceeds the number of words " + words.length);
+      }
 
+      switch (runHeader & RUN_TYPE_MASK) {
+        case RUN_ZEROS:
+          break;
+        case RUN_ONES:
+          for (int i = start; i < end; ++i) {
+            words[i] = -1L;
+          }
+          break;
+        case RUN_LITERALS:
+          for (int i = start; i < end; ++i) {
+            words[i] = input.readLong();
+          }
+          break;
+        default:
+          throw new KryoException("Unknown BitSet run type " + (runHeader & RUN_TYPE_MASK));
+      }
+
+      start = end;
+    }
+
+    return BitSet.valueOf(words);
+  }
+
+  /**
+   * Reads a bit set written by the original format, which is the bit length followed by the words.
+   */
+  private static BitSet readBitByBitFormat(final Input input, final int bitLen) {
     int wordNum = bitLen / Long.SIZE;
     if (bitLen % Long.SIZE > 0) {
       ++wordNum;
     }
 
-    long[] words = input.readLongs(wordNum);
-    for (int i = 0; i < bitLen; ++i) {
-      if ((words[i / Long.SIZE] & (1L << (i % Long.SIZE))) != 0L) {
-        bitSet.set(i, true);
-      } else {
-        bitSet.set(i, false);
-      }
+    final BitSet bitSet = BitSet.valueOf(input.readLongs(wordNum));
+    if (bitSet.length() > bitLen) {
+      bitSet.clear(bitLen, bitSet.length());
     }
 
     return bitSet;
   }
+
+  /**
+   * Returns whether a run of at least two zeros or ones words starts at the index.
+   */
+  private static boolean startsRun(final long[] words, final int index) {
+    return getRunType(words[index]) != RUN_LITERALS
+        && index + 1 < words.length
+        && words[index + 1] == words[index];
+  }
+
+  private static int getRunType(final long word) {
+    if (word == 0L) {
+      return RUN_ZEROS;
+    }
+
+    if (word == -1L) {
+      return RUN_ONES;
+    }
+
+    return RUN_LITERALS;
+  }
 }
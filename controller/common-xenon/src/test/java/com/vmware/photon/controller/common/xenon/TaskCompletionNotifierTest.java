@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon;
+
+import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.services.common.ExampleService;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.fail;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests {@link TaskCompletionNotifier}.
+ */
+public class TaskCompletionNotifierTest {
+
+  private static final long LONG_INTERVAL_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+  private BasicServiceHost host;
+  private ScheduledExecutorService executor;
+  private TaskCompletionNotifier notifier;
+  private URI documentUri;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    host = BasicServiceHost.create();
+    host.startServiceSynchronously(ExampleService.createFactory(), null, ExampleService.FACTORY_LINK);
+    executor = Executors.newScheduledThreadPool(1);
+    notifier = new TaskCompletionNotifier(host, executor);
+
+    ExampleService.ExampleServiceState state = new ExampleService.ExampleServiceState();
+    state.name = "started";
+    Operation result = host.sendRequestAndWait(
+        Operation.createPost(UriUtils.buildUri(host, ExampleService.FACTORY_LINK)).setBody(state));
+    documentUri = UriUtils.buildUri(host,
+        result.getBody(ExampleService.ExampleServiceState.class).documentSelfLink);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Throwable {
+    executor.shutdownNow();
+    if (host != null) {
+      host.destroy();
+    }
+  }
+
+  @Test
+  public void testConditionAlreadyMet() throws Throwable {
+    Operation result = notifier.waitFor(documentUri, (op) -> hasName(op, "started"),
+        LONG_INTERVAL_MICROS, LONG_INTERVAL_MICROS, LONG_INTERVAL_MICROS).get(10, TimeUnit.SECONDS);
+
+    assertThat(hasName(result, "started"), is(true));
+  }
+
+  @Test
+  public void testCompletesOnUpdate() throws Throwable {
+    long outstandingWaits = TaskCompletionNotifier.getOutstandingWaitCount();
+    CompletableFuture<Operation> future = notifier.waitFor(documentUri, (op) -> hasName(op, "finished"),
+        LONG_INTERVAL_MICROS, LONG_INTERVAL_MICROS, LONG_INTERVAL_MICROS);
+    assertThat(future.isDone(), is(false));
+    assertThat(TaskCompletionNotifier.getOutstandingWaitCount(), is(outstandingWaits + 1));
+
+    patchName("running");
+    patchName("finished");
+
+    Operation result = future.get(10, TimeUnit.SECONDS);
+    assertThat(hasName(result, "finished"), is(true));
+  }
+
+  @Test
+  public void testSendsNoGetsBetweenNotifications() throws Throwable {
+    Semaphore reads = new Semaphore(0);
+    CompletableFuture<Operation> future = notifier.waitFor(documentUri, (op) -> {
+      reads.release();
+      return hasName(op, "finished");
+    }, TimeUnit.MILLISECONDS.toMicros(10), LONG_INTERVAL_MICROS, LONG_INTERVAL_MICROS);
+
+    // The task is polled until the subscription is in place, which is read once more.
+    assertThat(reads.tryAcquire(10, TimeUnit.SECONDS), is(true));
+    Thread.sleep(500);
+    reads.drainPermits();
+
+    // Once subscribed, the poll interval no longer applies.
+    Thread.sleep(500);
+    assertThat(reads.availablePermits(), is(0));
+
+    patchName("running");
+    assertThat(reads.tryAcquire(10, TimeUnit.SECONDS), is(true));
+    Thread.sleep(500);
+    assertThat(reads.availablePermits(), is(0));
+
+    patchName("finished");
+    Operation result = future.get(10, TimeUnit.SECONDS);
+    assertThat(hasName(result, "finished"), is(true));
+  }
+
+  @Test
+  public void testTimeout() throws Throwable {
+    CompletableFuture<Operation> future = notifier.waitFor(documentUri, (op) -> hasName(op, "finished"),
+        LONG_INTERVAL_MICROS, LONG_INTERVAL_MICROS, TimeUnit.MILLISECONDS.toMicros(100));
+
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail("wait should have timed out");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause() instanceof TimeoutException, is(true));
+    }
+  }
+
+  @Test
+  public void testWaitsForTaskToBeStarted() throws Throwable {
+    URI laterUri = UriUtils.buildUri(host, ExampleService.FACTORY_LINK + "/later");
+    CompletableFuture<Operation> future = notifier.waitFor(laterUri, (op) -> hasName(op, "started"),
+        TimeUnit.MILLISECONDS.toMicros(100), TimeUnit.MILLISECONDS.toMicros(100), LONG_INTERVAL_MICROS);
+
+    // The task is not found until it is created, which does not fail the wait.
+    Thread.sleep(500);
+    assertThat(future.isDone(), is(false));
+
+    ExampleService.ExampleServiceState state = new ExampleService.ExampleServiceState();
+    state.name = "started";
+    state.documentSelfLink = "later";
+    host.sendRequestAndWait(
+        Operation.createPost(UriUtils.buildUri(host, ExampleService.FACTORY_LINK)).setBody(state));
+
+    Operation result = future.get(10, TimeUnit.SECONDS);
+    assertThat(hasName(result, "started"), is(true));
+  }
+
+  @Test
+  public void testFailsWhenReadTaskIsDeleted() throws Throwable {
+    Semaphore reads = new Semaphore(0);
+    CompletableFuture<Operation> future = notifier.waitFor(documentUri, (op) -> {
+      reads.release();
+      return hasName(op, "finished");
+    }, TimeUnit.MILLISECONDS.toMicros(100), TimeUnit.MILLISECONDS.toMicros(100), LONG_INTERVAL_MICROS);
+    assertThat(reads.tryAcquire(10, TimeUnit.SECONDS), is(true));
+
+    host.sendRequestAndWait(Operation.createDelete(documentUri).setBody(new ExampleService.ExampleServiceState()));
+
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail("wait should have failed");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause() instanceof XenonRuntimeException, is(true));
+      assertThat(((XenonRuntimeException) e.getCause()).getCompletedOperation().getStatusCode(),
+          is(Operation.STATUS_CODE_NOT_FOUND));
+    }
+  }
+
+  @Test
+  public void testSubscriptionListener() throws Throwable {
+    Semaphore updates = new Semaphore(0);
+    try (TaskCompletionNotifier.Subscription subscription = notifier.subscribe(documentUri, updates::release)) {
+      // The listener is called once the subscription is in place.
+      assertThat(updates.tryAcquire(10, TimeUnit.SECONDS), is(true));
+
+      patchName("running");
+      assertThat(updates.tryAcquire(10, TimeUnit.SECONDS), is(true));
+    }
+  }
+
+  private void patchName(String name) throws Throwable {
+    ExampleService.ExampleServiceState patch = new ExampleService.ExampleServiceState();
+    patch.name = name;
+    host.sendRequestAndWait(Operation.createPatch(documentUri).setBody(patch));
+  }
+
+  private static boolean hasName(Operation op, String name) {
+    return name.equals(op.getBody(ExampleService.ExampleServiceState.class).name);
+  }
+}
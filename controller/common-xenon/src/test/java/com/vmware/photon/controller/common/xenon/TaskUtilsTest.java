@@ -27,6 +27,8 @@ import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -34,7 +36,12 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.fail;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * This class implements tests for {@link TaskUtilsTest}.
@@ -45,10 +52,29 @@ public class TaskUtilsTest {
   private ServiceHost host;
   private Operation operation;
 
+  private Consumer<Operation> notificationConsumer;
+
   @Test
   private void dummy() {
   }
 
+  /**
+   * Makes subscriptions on the mocked host complete immediately, failing them with the given exception if any.
+   */
+  @SuppressWarnings("unchecked")
+  private void mockSubscriptions(Throwable subscriptionFailure) {
+    doAnswer((invocation) -> {
+      notificationConsumer = (Consumer<Operation>) invocation.getArguments()[1];
+      Operation subscribe = (Operation) invocation.getArguments()[0];
+      if (subscriptionFailure != null) {
+        subscribe.fail(subscriptionFailure);
+      } else {
+        subscribe.complete();
+      }
+      return UriUtils.buildUri("http://localhost:0/subscription");
+    }).when(host).startSubscriptionService(any(Operation.class), any(Consumer.class));
+  }
+
   /**
    * This class tests the startTaskAsync method.
    */
@@ -60,6 +86,7 @@ public class TaskUtilsTest {
       host = mock(ServiceHost.class);
       when(host.getUri()).thenReturn(UriUtils.buildUri("http://localhost:0/mock"));
       when(service.getHost()).thenReturn(host);
+      mockSubscriptions(null);
       operation = mock(Operation.class);
     }
 
@@ -146,6 +173,7 @@ public class TaskUtilsTest {
       host = mock(ServiceHost.class);
       when(host.getUri()).thenReturn(UriUtils.buildUri("http://localhost:0/mock"));
       when(service.getHost()).thenReturn(host);
+      mockSubscriptions(null);
       operation = mock(Operation.class);
     }
 
@@ -188,7 +216,53 @@ public class TaskUtilsTest {
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Test
-    public void shouldRetry() {
+    public void checksAgainOnNotification() {
+      final AtomicInteger checks = new AtomicInteger(0);
+      final AtomicInteger count = new AtomicInteger(0);
+      ServiceDocument document = new ServiceDocument();
+      document.documentSelfLink = "selfLink";
+      when(operation.getBody(any(Class.class))).thenReturn(document);
+      doAnswer(new Answer() {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+          ((Operation) invocation.getArguments()[0]).getCompletion().handle(operation, null);
+          return null;
+        }
+      }).when(service).sendRequest(any(Operation.class));
+
+      FutureCallback<ServiceDocument> futureCallback = new FutureCallback<ServiceDocument>() {
+        @Override
+        public void onSuccess(ServiceDocument result) {
+          count.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          fail();
+        }
+      };
+
+      TaskUtils.checkProgress(service,
+          "factoryLink",
+          (input) -> checks.incrementAndGet() > 1,
+          null,
+          0,
+          futureCallback);
+
+      verify(service, times(1)).sendRequest(any(Operation.class));
+      assertThat(count.get(), is(0));
+
+      notificationConsumer.accept(Operation.createPatch(UriUtils.buildUri("http://localhost:0/factoryLink")));
+
+      verify(service, times(2)).sendRequest(any(Operation.class));
+      assertThat(count.get(), is(1));
+      verify(host).stopSubscriptionService(any(Operation.class), any(URI.class));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void pollsWhenSubscriptionFails() {
+      mockSubscriptions(new RuntimeException());
       ServiceDocument document = new ServiceDocument();
       document.documentSelfLink = "selfLink";
       when(operation.getBody(any(Class.class))).thenReturn(document);
@@ -200,6 +274,15 @@ public class TaskUtilsTest {
         }
       }).when(service).sendRequest(any(Operation.class));
 
+      final List<Runnable> scheduled = new ArrayList<>();
+      doAnswer(new Answer() {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+          scheduled.add((Runnable) invocation.getArguments()[0]);
+          return null;
+        }
+      }).when(host).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
       TaskUtils.checkProgress(service,
           "factoryLink",
           (input) -> false,
@@ -207,7 +290,54 @@ public class TaskUtilsTest {
           0,
           null);
 
-      verify(service, times(2)).getHost();
+      verify(service, times(1)).sendRequest(any(Operation.class));
+      assertThat(scheduled.size(), is(1));
+
+      scheduled.get(0).run();
+
+      verify(service, times(2)).sendRequest(any(Operation.class));
+      assertThat(scheduled.size(), is(2));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void rechecksSlowlyWhileSubscribed() {
+      ServiceDocument document = new ServiceDocument();
+      document.documentSelfLink = "selfLink";
+      when(operation.getBody(any(Class.class))).thenReturn(document);
+      doAnswer(new Answer() {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+          ((Operation) invocation.getArguments()[0]).getCompletion().handle(operation, null);
+          return null;
+        }
+      }).when(service).sendRequest(any(Operation.class));
+
+      final List<Runnable> scheduled = new ArrayList<>();
+      doAnswer(new Answer() {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+          scheduled.add((Runnable) invocation.getArguments()[0]);
+          return null;
+        }
+      }).when(host).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+      TaskUtils.checkProgress(service,
+          "factoryLink",
+          (input) -> false,
+          null,
+          100,
+          null);
+
+      verify(service, times(1)).sendRequest(any(Operation.class));
+      verify(host).schedule(any(Runnable.class), eq(TimeUnit.SECONDS.toMicros(1)), eq(TimeUnit.MICROSECONDS));
+
+      // A lost notification does not leave the wait hanging.
+      scheduled.get(0).run();
+
+      verify(service, times(2)).sendRequest(any(Operation.class));
+      verify(host, times(2))
+          .schedule(any(Runnable.class), eq(TimeUnit.SECONDS.toMicros(1)), eq(TimeUnit.MICROSECONDS));
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
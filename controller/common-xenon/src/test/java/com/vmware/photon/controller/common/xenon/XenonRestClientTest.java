@@ -54,6 +54,7 @@ import static org.testng.Assert.fail;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
@@ -63,7 +64,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -358,6 +361,118 @@ public class XenonRestClientTest {
     }
   }
 
+  /**
+   * Tests for the async operations.
+   */
+  public class AsyncTest {
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      setUpHostAndClient();
+      xenonRestClient.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      if (host != null) {
+        host.destroy();
+      }
+
+      if (xenonRestClient != null) {
+        xenonRestClient.stop();
+      }
+    }
+
+    @Test
+    public void testPostAndGetOfDocument() throws Throwable {
+      ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+      exampleServiceState.name = UUID.randomUUID().toString();
+
+      Operation result = xenonRestClient.postAsync(ExampleService.FACTORY_LINK, exampleServiceState)
+          .thenCompose(op -> xenonRestClient.getAsync(
+              op.getBody(ExampleService.ExampleServiceState.class).documentSelfLink))
+          .get();
+
+      assertThat(result.getStatusCode(), is(200));
+      ExampleService.ExampleServiceState savedState = result.getBody(ExampleService.ExampleServiceState.class);
+      assertThat(savedState.name, is(equalTo(exampleServiceState.name)));
+    }
+
+    @Test
+    public void testGetOfNonExistingDocument() throws Throwable {
+      CompletableFuture<Operation> future =
+          xenonRestClient.getAsync(ExampleService.FACTORY_LINK + "/" + UUID.randomUUID().toString());
+
+      try {
+        future.get();
+        fail("get of a non-existing document should fail");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause() instanceof DocumentNotFoundException, is(true));
+      }
+    }
+
+    @Test
+    public void testConcurrentPostsAndBatchGet() throws Throwable {
+      List<CompletableFuture<Operation>> posts = new ArrayList<>();
+      for (int i = 0; i < MAX_ITERATIONS; i++) {
+        ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+        exampleServiceState.name = "name-" + i;
+        posts.add(xenonRestClient.postAsync(ExampleService.FACTORY_LINK, exampleServiceState));
+      }
+
+      Map<String, String> names = new HashMap<>();
+      for (CompletableFuture<Operation> post : posts) {
+        ExampleService.ExampleServiceState createdState = post.get().getBody(ExampleService.ExampleServiceState.class);
+        names.put(createdState.documentSelfLink, createdState.name);
+      }
+
+      Map<String, Operation> results = xenonRestClient.getAsync(names.keySet(), 3).get();
+      assertThat(results.size(), is(MAX_ITERATIONS));
+      for (Map.Entry<String, Operation> result : results.entrySet()) {
+        assertThat(result.getValue().getBody(ExampleService.ExampleServiceState.class).name,
+            is(names.get(result.getKey())));
+      }
+    }
+
+    @Test
+    public void testBatchGetOfOneMissingDocument() throws Throwable {
+      ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+      exampleServiceState.name = UUID.randomUUID().toString();
+      String documentSelfLink = createDocument(exampleServiceState);
+
+      CompletableFuture<Map<String, Operation>> future = xenonRestClient.getAsync(
+          Arrays.asList(documentSelfLink, ExampleService.FACTORY_LINK + "/" + UUID.randomUUID().toString()), 2);
+
+      try {
+        future.get();
+        fail("get of a non-existing document should fail");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause() instanceof DocumentNotFoundException, is(true));
+      }
+    }
+
+    @Test
+    public void testPatchAndBroadcastQuery() throws Throwable {
+      ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+      exampleServiceState.name = UUID.randomUUID().toString();
+      String documentSelfLink = createDocument(exampleServiceState);
+
+      ExampleService.ExampleServiceState patchState = new ExampleService.ExampleServiceState();
+      patchState.name = UUID.randomUUID().toString();
+      xenonRestClient.patchAsync(documentSelfLink, patchState).get();
+
+      QueryTask.QuerySpecification spec =
+          QueryTaskUtils.buildQuerySpec(ExampleService.ExampleServiceState.class, null);
+      spec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+      Operation result = xenonRestClient.postToBroadcastQueryServiceAsync(spec).get();
+
+      List<ExampleService.ExampleServiceState> documents =
+          QueryTaskUtils.getBroadcastQueryDocuments(ExampleService.ExampleServiceState.class, result);
+      assertThat(documents.size(), is(1));
+      assertThat(documents.get(0).name, is(patchState.name));
+    }
+  }
+
   /**
    * Tests for the send operation.
    */
@@ -32,9 +32,12 @@ import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.startsWith;
 import static org.testng.Assert.fail;
 
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
@@ -167,6 +170,76 @@ public class TaskSchedulerServiceTest {
     }
   }
 
+  /**
+   * Tests for the in-memory admission state.
+   */
+  public class AdmissionTest {
+    private TaskSchedulerService.Admission admission;
+
+    @BeforeMethod
+    public void setUp() {
+      admission = new TaskSchedulerService.Admission();
+    }
+
+    @Test
+    public void testAdmitsInCreatedOrderUpToLimit() {
+      admission.update("/a", 0, TaskState.TaskStage.CREATED, 1);
+      admission.update("/b", 0, TaskState.TaskStage.CREATED, 1);
+      admission.update("/c", 0, TaskState.TaskStage.STARTED, 1);
+
+      assertThat(admission.admit(2, 2), contains("/a"));
+      assertThat(admission.admit(2, 2), is(empty()));
+      assertThat(admission.getRunningCount(), is(2));
+      assertThat(admission.getCreatedCount(), is(1));
+    }
+
+    @Test
+    public void testFinishedServiceFreesSlot() {
+      admission.update("/a", 0, TaskState.TaskStage.CREATED, 1);
+      admission.update("/b", 0, TaskState.TaskStage.CREATED, 1);
+      assertThat(admission.admit(1, 2), contains("/a"));
+
+      admission.update("/a", 1, TaskState.TaskStage.STARTED, 3);
+      admission.update("/a", 2, TaskState.TaskStage.FINISHED, 4);
+
+      assertThat(admission.admit(1, 5), contains("/b"));
+    }
+
+    @Test
+    public void testStaleUpdateIsIgnored() {
+      admission.update("/a", 0, TaskState.TaskStage.CREATED, 1);
+      admission.admit(1, 2);
+      admission.update("/a", 1, TaskState.TaskStage.STARTED, 3);
+
+      // A reconciliation query which ran before the start patch still returns the service as CREATED.
+      admission.update("/a", 0, TaskState.TaskStage.CREATED, 2);
+
+      assertThat(admission.getCreatedCount(), is(0));
+      assertThat(admission.getRunningCount(), is(1));
+    }
+
+    @Test
+    public void testReleaseFreesSlot() {
+      admission.update("/a", 0, TaskState.TaskStage.CREATED, 1);
+      admission.update("/b", 0, TaskState.TaskStage.CREATED, 1);
+      admission.admit(1, 2);
+
+      admission.release("/a");
+
+      assertThat(admission.admit(1, 3), contains("/b"));
+    }
+
+    @Test
+    public void testRemoveMissingKeepsRecentServices() {
+      admission.update("/a", 0, TaskState.TaskStage.STARTED, 1);
+      admission.update("/b", 0, TaskState.TaskStage.STARTED, 5);
+
+      admission.removeMissing(Collections.emptySet(), 3);
+
+      assertThat(admission.getRunningCount(), is(1));
+    }
+  }
+
   /**
    * EndToEndTest for TaskSchedulerService.
    */
@@ -278,7 +351,39 @@ public class TaskSchedulerServiceTest {
       assertThat(response.results.documentLinks.size(), is(tasksLimit + 3));
     }
 
+    @Test(dataProvider = "hostCount")
+    public void testFinishedTaskStartsNextWithoutMaintenance(int count) throws Throwable {
+      initEnvironment(count, TimeUnit.HOURS.toMicros(1), 1);
+      startDummyServices(2, TaskState.TaskStage.CREATED);
+
+      QueryTask query = QueryTask.create(
+          QueryTaskUtils.buildTaskStatusQuerySpec(
+              TestServiceWithStage.State.class,
+              TaskState.TaskStage.STARTED))
+          .setDirect(true);
+
+      QueryTask response = environment.waitForQuery(query,
+          (queryTask) -> queryTask.results.documentLinks.size() >= 1);
+      assertThat(response.results.documentLinks.size(), is(1));
+
+      // finish the started service; the free slot is used without waiting for a maintenance interval
+      TestServiceWithStage.State finishPatch = new TestServiceWithStage.State();
+      finishPatch.taskInfo = new TaskState();
+      finishPatch.taskInfo.stage = TaskState.TaskStage.FINISHED;
+      String finishedLink = response.results.documentLinks.get(0);
+      environment.sendPatchAndWait(finishedLink, finishPatch);
+
+      response = environment.waitForQuery(query,
+          (queryTask) -> queryTask.results.documentLinks.size() >= 1
+              && !queryTask.results.documentLinks.contains(finishedLink));
+      assertThat(response.results.documentLinks.size(), is(1));
+    }
+
     private void initEnvironment(int count) throws Throwable {
+      initEnvironment(count, testInterval, tasksLimit);
+    }
+
+    private void initEnvironment(int count, long interval, int limit) throws Throwable {
       BasicServiceHost[] hosts = new BasicServiceHost[count];
       for (int i = 0; i < count; i++) {
         hosts[i] = BasicServiceHost.create();
@@ -294,8 +399,10 @@ public class TaskSchedulerServiceTest {
 
       for (BasicServiceHost host : hosts) {
         service = new TaskSchedulerService();
-        service.setMaintenanceIntervalMicros(testInterval);
-        host.startServiceSynchronously(service, buildValidStartupState(), selfLink, false);
+        service.setMaintenanceIntervalMicros(interval);
+        TaskSchedulerService.State startState = buildValidStartupState();
+        startState.tasksLimits = limit;
+        host.startServiceSynchronously(service, startState, selfLink, false);
       }
     }
 
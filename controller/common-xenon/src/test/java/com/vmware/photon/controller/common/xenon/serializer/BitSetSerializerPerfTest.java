@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.mockito.Mockito.mock;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performance tests for {@link BitSetSerializer}.
+ * <p/>
+ * Writes and reads the IP allocation bitmaps of subnets from /24 to /16, with the original bit-by-bit format and
+ * with the current format, and logs the time per round trip and the serialized size of both.
+ */
+public class BitSetSerializerPerfTest {
+  private static final Logger logger = LoggerFactory.getLogger(BitSetSerializerPerfTest.class);
+
+  @DataProvider(name = "default")
+  public Object[][] createDefault() {
+    return new Object[][]{
+        // prefix length, allocated fraction, released fraction of the allocated IPs
+        {24, 0.5, 0.0},
+        {24, 1.0, 0.1},
+        {20, 0.5, 0.0},
+        {20, 1.0, 0.1},
+        {16, 0.0, 0.0},
+        {16, 0.5, 0.0},
+        {16, 1.0, 0.0},
+        {16, 1.0, 0.1},
+    };
+  }
+
+  /**
+   * Measures serialization cost and size. Disabled by default.
+   */
+  @Test(dataProvider = "default", enabled = false)
+  public void testPerformance(int prefixLength, double allocated, double released) throws Exception {
+    int numIterations = 10000;
+    int size = 1 << (32 - prefixLength);
+
+    Random random = new Random(0);
+    BitSet bitSet = new BitSet(size);
+    bitSet.set(0, (int) (size * allocated));
+    for (int i = 0; i < size * allocated * released; i++) {
+      bitSet.clear(random.nextInt((int) (size * allocated)));
+    }
+
+    Kryo kryo = mock(Kryo.class);
+    BitSetSerializer serializer = new BitSetSerializer();
+    Output output = new Output(1024, -1);
+
+    // Warm up both code paths before measuring.
+    for (int i = 0; i < numIterations; i++) {
+      output.clear();
+      writeBitByBit(output, bitSet);
+      serializer.read(kryo, new Input(output.toBytes()), BitSet.class);
+      output.clear();
+      serializer.write(kryo, output, bitSet);
+      serializer.read(kryo, new Input(output.toBytes()), BitSet.class);
+    }
+
+    Stopwatch bitByBitWatch = Stopwatch.createStarted();
+    for (int i = 0; i < numIterations; i++) {
+      output.clear();
+      writeBitByBit(output, bitSet);
+      serializer.read(kryo, new Input(output.toBytes()), BitSet.class);
+    }
+    bitByBitWatch.stop();
+    int bitByBitSize = output.position();
+
+    Stopwatch watch = Stopwatch.createStarted();
+    for (int i = 0; i < numIterations; i++) {
+      output.clear();
+      serializer.write(kryo, output, bitSet);
+      serializer.read(kryo, new Input(output.toBytes()), BitSet.class);
+    }
+    watch.stop();
+    int compactSize = output.position();
+
+    logger.info("/{} subnet, {} IPs allocated", prefixLength, bitSet.cardinality());
+    logger.info("bit-by-bit: {} nanoseconds/round trip, {} bytes",
+        bitByBitWatch.elapsed(TimeUnit.NANOSECONDS) / numIterations, bitByBitSize);
+    logger.info("run-length words: {} nanoseconds/round trip, {} bytes",
+        watch.elapsed(TimeUnit.NANOSECONDS) / numIterations, compactSize);
+  }
+
+  /**
+   * Writes the bit set the way the original bit-by-bit format did.
+   */
+  private static void writeBitByBit(Output output, BitSet bitSet) {
+    final int bitLen = bitSet.length();
+    output.writeInt(bitLen, true);
+
+    int wordNum = bitLen / Long.SIZE;
+    if (bitLen % Long.SIZE > 0) {
+      ++wordNum;
+    }
+
+    long[] words = new long[wordNum];
+    for (int i = 0; i < bitLen; ++i) {
+      if (bitSet.get(i)) {
+        words[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+      }
+    }
+
+    output.writeLongs(words);
+  }
+}
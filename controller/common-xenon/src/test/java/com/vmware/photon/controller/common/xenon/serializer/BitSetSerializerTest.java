@@ -18,6 +18,8 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.mock;
 import static org.testng.Assert.fail;
 
@@ -30,12 +32,59 @@ import java.util.Random;
 public class BitSetSerializerTest {
 
   @Test(dataProvider = "bitSetData")
-  public void testWrite(BitSet bitSet) {
-    MockKryoOutput output = new MockKryoOutput();
-    BitSetSerializer serializer = new BitSetSerializer();
-    serializer.write(mock(Kryo.class), output, bitSet);
+  public void testWriteAndRead(BitSet bitSet) {
+    BitSet result = writeAndRead(bitSet);
+
+    assertThat(result, is(bitSet));
+  }
+
+  @Test(dataProvider = "allocationData")
+  public void testWriteAndReadAllocations(int allocated, int size) {
+    BitSet bitSet = new BitSet(size);
+    bitSet.set(0, allocated);
+
+    BitSet result = writeAndRead(bitSet);
 
-    verify(bitSet, output.len, output.values);
+    assertThat(result, is(bitSet));
+    assertThat(result.cardinality(), is(allocated));
+  }
+
+  @DataProvider(name = "allocationData")
+  public Object[][] getAllocationData() {
+    return new Object[][] {
+        {0, 1 << 16},
+        {1, 1 << 16},
+        {Long.SIZE * 3 + 7, 1 << 16},
+        {(1 << 15) + 1, 1 << 16},
+        {1 << 16, 1 << 16},
+    };
+  }
+
+  @Test
+  public void testRunsAreCompact() {
+    BitSet bitSet = new BitSet(1 << 16);
+    bitSet.set(0, 1 << 16);
+
+    // A fully allocated /16 is a single run of ones words.
+    assertThat(write(bitSet).length < 16, is(true));
+
+    // Holes in the allocations only add the words which contain them.
+    bitSet.clear(100);
+    bitSet.clear(40000);
+    assertThat(write(bitSet).length < 2 * Long.BYTES + 32, is(true));
+  }
+
+  @Test
+  public void testCopy() {
+    BitSet bitSet = new BitSet();
+    bitSet.set(3);
+    bitSet.set(300);
+
+    BitSet copy = new BitSetSerializer().copy(mock(Kryo.class), bitSet);
+    bitSet.clear(3);
+
+    assertThat(copy.get(3), is(true));
+    assertThat(copy.get(300), is(true));
   }
 
   @DataProvider(name = "bitSetData")
@@ -69,13 +118,17 @@ public class BitSetSerializerTest {
     return results;
   }
 
+  /**
+   * Tests reading bit sets written by the original bit-by-bit format.
+   */
   @Test(dataProvider = "longValuesData")
-  public void testRead(int len, long[] values) {
+  public void testReadBitByBitFormat(int len, long[] values) {
     MockKryoInput input = new MockKryoInput(len, values);
     BitSetSerializer serializer = new BitSetSerializer();
     BitSet bitSet = serializer.read(mock(Kryo.class), input, BitSet.class);
 
     verify(bitSet, len, values);
+    assertThat(bitSet.length() <= len, is(true));
   }
 
   @DataProvider(name = "longValuesData")
@@ -115,25 +168,6 @@ public class BitSetSerializerTest {
     return results;
   }
 
-  /**
-   * Mocking Kryo output class.
-   */
-  public static class MockKryoOutput extends Output {
-    public int len;
-    public long[] values;
-
-    @Override
-    public int writeInt(int value, boolean optimize) {
-      this.len = value;
-      return 0;
-    }
-
-    @Override
-    public void writeLongs(long[] values) {
-      this.values = values;
-    }
-  }
-
   /**
    * Mocking Kryo input class.
    */
@@ -157,6 +191,19 @@ public class BitSetSerializerTest {
     }
   }
 
+  private static byte[] write(BitSet bitSet) {
+    Output output = new Output(1024, -1);
+    new BitSetSerializer().write(mock(Kryo.class), output, bitSet);
+    return output.toBytes();
+  }
+
+  private static BitSet writeAndRead(BitSet bitSet) {
+    Input input = new Input(write(bitSet));
+    BitSet result = new BitSetSerializer().read(mock(Kryo.class), input, BitSet.class);
+    assertThat(input.position(), is(input.limit()));
+    return result;
+  }
+
   public static void verify(BitSet bitSet, int len, long[] words) {
     for (int i = 0; i < len; ++i) {
       int wordIndex = i / Long.SIZE;
@@ -26,6 +26,7 @@ import com.vmware.photon.controller.common.clients.exceptions.InvalidAgentConfig
 import com.vmware.photon.controller.common.clients.exceptions.InvalidAgentStateException;
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
 import com.vmware.photon.controller.common.clients.exceptions.SystemErrorException;
+import com.vmware.photon.controller.common.metrics.MeteredCallback;
 import com.vmware.photon.controller.common.thrift.ClientPool;
 import com.vmware.photon.controller.common.thrift.ClientPoolFactory;
 import com.vmware.photon.controller.common.thrift.ClientPoolOptions;
@@ -140,6 +141,13 @@ public class AgentControlClient {
     createClientProxyWithIpAndPort();
   }
 
+  /**
+   * Wraps the callback of an asynchronous call so that the time until the call completes is recorded.
+   */
+  private <T> AsyncMethodCallback<T> metered(String method, AsyncMethodCallback<T> handler) {
+    return new MeteredCallback<>(AgentControlClient.class, method, getHostIp(), handler);
+  }
+
   @VisibleForTesting
   protected AgentControl.AsyncSSLClient getClientProxy() {
     return clientProxy;
@@ -172,7 +180,7 @@ public class AgentControlClient {
     clientProxy.setTimeout(PING_TIMEOUT_MS);
 
     try {
-      clientProxy.ping(pingRequest, handler);
+      clientProxy.ping(pingRequest, metered("ping", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -247,7 +255,7 @@ public class AgentControlClient {
     logger.info("provision target: {}, request {}", getHostIp(), provisionRequest);
 
     try {
-      clientProxy.provision(provisionRequest, handler);
+      clientProxy.provision(provisionRequest, metered("provision", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -321,7 +329,7 @@ public class AgentControlClient {
     logger.info("update config target: {}, request {}", getHostIp(), updateConfigRequest);
 
     try {
-      clientProxy.update_config(updateConfigRequest, handler);
+      clientProxy.update_config(updateConfigRequest, metered("update_config", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -362,7 +370,7 @@ public class AgentControlClient {
     logger.info("upgrade target: {}, request {}", getHostIp(), upgradeRequest);
 
     try {
-      clientProxy.upgrade(upgradeRequest, handler);
+      clientProxy.upgrade(upgradeRequest, metered("upgrade", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -401,7 +409,7 @@ public class AgentControlClient {
     logger.info("get_agent_status target {}", getHostIp());
 
     try {
-      clientProxy.get_agent_status(handler);
+      clientProxy.get_agent_status(metered("get_agent_status", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
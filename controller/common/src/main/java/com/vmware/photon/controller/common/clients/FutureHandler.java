@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.clients;
+
+import com.vmware.photon.controller.common.clients.exceptions.RpcException;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Counterpart of {@link SyncHandler} which completes a future instead of blocking the caller. The future completes
+ * with the validated response, or fails with the exception the synchronous call would have thrown.
+ *
+ * @param <T> response type
+ * @param <C> call type
+ */
+public class FutureHandler<T, C> extends com.vmware.photon.controller.common.thrift.SyncHandler<T, C> {
+
+  private final Validator<T> validator;
+  private final CompletableFuture<T> future = new CompletableFuture<>();
+
+  public FutureHandler(Validator<T> validator) {
+    this.validator = validator;
+  }
+
+  @Override
+  public void onComplete(Object call) {
+    super.onComplete(call);
+    complete();
+  }
+
+  @Override
+  public void onError(Exception e) {
+    super.onError(e);
+    complete();
+  }
+
+  public CompletableFuture<T> getFuture() {
+    return future;
+  }
+
+  private void complete() {
+    try {
+      if (error != null) {
+        throw new RpcException(error.getMessage());
+      }
+      future.complete(validator.validate(response));
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+    }
+  }
+
+  /**
+   * Checks the response of a call, see {@link HostClient.ResponseValidator}.
+   *
+   * @param <T> response type
+   */
+  public interface Validator<T> {
+    T validate(T response) throws RpcException;
+  }
+}
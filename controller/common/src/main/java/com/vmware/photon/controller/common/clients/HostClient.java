@@ -34,10 +34,12 @@ import com.vmware.photon.controller.common.clients.exceptions.SweepInProgressExc
 import com.vmware.photon.controller.common.clients.exceptions.SystemErrorException;
 import com.vmware.photon.controller.common.clients.exceptions.VmNotFoundException;
 import com.vmware.photon.controller.common.clients.exceptions.VmNotPoweredOffException;
+import com.vmware.photon.controller.common.metrics.MeteredCallback;
 import com.vmware.photon.controller.common.thrift.ClientPool;
 import com.vmware.photon.controller.common.thrift.ClientPoolFactory;
 import com.vmware.photon.controller.common.thrift.ClientPoolOptions;
 import com.vmware.photon.controller.common.thrift.ClientProxyFactory;
+import com.vmware.photon.controller.common.thrift.HostConnectionCache;
 import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
 import com.vmware.photon.controller.host.gen.AttachISORequest;
 import com.vmware.photon.controller.host.gen.AttachISOResponse;
@@ -117,6 +119,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -161,6 +164,7 @@ public class HostClient {
   private static final long TRANSFER_IMAGE_TIMEOUT_MS = TimeUnit.HOURS.toMillis(2);
   private final ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory;
   private final ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory;
+  private final HostConnectionCache<Host.AsyncSSLClient> connectionCache;
   /**
    * clientProxy acquires a new client from ClientPool for every thrift call.
    * Reference: {@link ClientProxyImpl#createMethodHandler() createMethodHandler}.
@@ -173,8 +177,19 @@ public class HostClient {
   @Inject
   public HostClient(ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory,
                     ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory) {
+    this(clientProxyFactory, clientPoolFactory, null);
+  }
+
+  /**
+   * Creates a host client that reuses the connections in the given cache instead of opening a new connection for
+   * every call. A null cache falls back to a private client pool per host.
+   */
+  public HostClient(ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory,
+                    ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory,
+                    HostConnectionCache<Host.AsyncSSLClient> connectionCache) {
     this.clientProxyFactory = clientProxyFactory;
     this.clientPoolFactory = clientPoolFactory;
+    this.connectionCache = connectionCache;
   }
 
   public String getHostIp() {
@@ -225,7 +240,7 @@ public class HostClient {
         vmId, diskIds, getHostIp(), vmDisksAttachRequest);
 
     try {
-      clientProxy.attach_disks(vmDisksAttachRequest, handler);
+      clientProxy.attach_disks(vmDisksAttachRequest, metered("attach_disks", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -276,7 +291,7 @@ public class HostClient {
         vmId, isoPath, getHostIp(), attachISORequest);
 
     try {
-      clientProxy.attach_iso(attachISORequest, handler);
+      clientProxy.attach_iso(attachISORequest, metered("attach_iso", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -327,7 +342,7 @@ public class HostClient {
     logger.info("copy_image target {}, request {}", getHostIp(), copyImageRequest);
 
     try {
-      clientProxy.copy_image(copyImageRequest, handler);
+      clientProxy.copy_image(copyImageRequest, metered("copy_image", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -382,7 +397,7 @@ public class HostClient {
     logger.info("transfer_image target {}, request {}", getHostIp(), transferImageRequest);
 
     try {
-      clientProxy.transfer_image(transferImageRequest, handler);
+      clientProxy.transfer_image(transferImageRequest, metered("transfer_image", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -430,7 +445,7 @@ public class HostClient {
         reservation, getHostIp(), createDisksRequest);
 
     try {
-      clientProxy.create_disks(createDisksRequest, handler);
+      clientProxy.create_disks(createDisksRequest, metered("create_disks", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -480,7 +495,7 @@ public class HostClient {
     logger.info("create_vm target {}, reservation {}, request {}", getHostIp(), reservation, createVmRequest);
 
     try {
-      clientProxy.create_vm(createVmRequest, handler);
+      clientProxy.create_vm(createVmRequest, metered("create_vm", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -507,6 +522,29 @@ public class HostClient {
     return ResponseValidator.checkCreateVmResponse(syncHandler.getResponse());
   }
 
+  /**
+   * This method performs an asynchronous Thrift call to create a VM without
+   * blocking the calling thread.
+   *
+   * @param reservation           Supplies a VM reservation.
+   * @param environment           Supplies extra environment settings for the VM.
+   * @return A future which completes with the CreateVmResponse object
+   * generated by the Thrift call, or fails with the RpcException the
+   * synchronous call would have thrown.
+   */
+  @RpcMethod
+  public CompletableFuture<CreateVmResponse> createVmAsync(String reservation,
+                                                           Map<String, String> environment) {
+    FutureHandler<CreateVmResponse, Host.AsyncSSLClient.create_vm_call> handler =
+        new FutureHandler<>(ResponseValidator::checkCreateVmResponse);
+    try {
+      createVm(reservation, environment, handler);
+    } catch (RpcException e) {
+      handler.getFuture().completeExceptionally(e);
+    }
+    return handler.getFuture();
+  }
+
   /**
    * This method performs an asynchronous Thrift call to delete one or more
    * disks. On completion, the specified handler is invoked.
@@ -525,7 +563,7 @@ public class HostClient {
     logger.info("delete_disks diskIds {}, target {}, request {}", diskIds, getHostIp(), deleteDisksRequest);
 
     try {
-      clientProxy.delete_disks(deleteDisksRequest, handler);
+      clientProxy.delete_disks(deleteDisksRequest, metered("delete_disks", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -589,7 +627,7 @@ public class HostClient {
     logger.info("create_image target {}, request {}", getHostIp(), createImageRequest);
 
     try {
-      clientProxy.create_image(createImageRequest, handler);
+      clientProxy.create_image(createImageRequest, metered("create_image", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -637,7 +675,7 @@ public class HostClient {
     logger.info("finalize_image target {}, request {}", getHostIp(), finalizeImageRequest);
 
     try {
-      clientProxy.finalize_image(finalizeImageRequest, handler);
+      clientProxy.finalize_image(finalizeImageRequest, metered("finalize_image", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -669,7 +707,7 @@ public class HostClient {
     try {
       logger.info("start_image_scan target {}, request {}", getHostIp(), request);
       clientProxy.setTimeout(START_IMAGE_SCAN_TIMEOUT_MS);
-      clientProxy.start_image_scan(request, handler);
+      clientProxy.start_image_scan(request, metered("start_image_scan", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -693,7 +731,7 @@ public class HostClient {
     try {
       logger.info("get_inactive images target {}, request {}", getHostIp(), request);
       clientProxy.setTimeout(GET_INACTIVE_IMAGES_TIMEOUT_MS);
-      clientProxy.get_inactive_images(request, handler);
+      clientProxy.get_inactive_images(request, metered("get_inactive_images", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -727,7 +765,7 @@ public class HostClient {
     try {
       logger.info("start_image_sweep target {}, request {}", getHostIp(), request);
       clientProxy.setTimeout(START_IMAGE_SWEEP_TIMEOUT_MS);
-      clientProxy.start_image_sweep(request, handler);
+      clientProxy.start_image_sweep(request, metered("start_image_sweep", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -751,7 +789,7 @@ public class HostClient {
     try {
       logger.info("get_deleted_images target {}, request {}", getHostIp(), request);
       clientProxy.setTimeout(GET_DELETED_IMAGES_TIMEOUT_MS);
-      clientProxy.get_deleted_images(request, handler);
+      clientProxy.get_deleted_images(request, metered("get_deleted_images", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -784,7 +822,7 @@ public class HostClient {
     logger.info("create_image_from_vm target {}, request {}", getHostIp(), createImageFromVmRequest);
 
     try {
-      clientProxy.create_image_from_vm(createImageFromVmRequest, handler);
+      clientProxy.create_image_from_vm(createImageFromVmRequest, metered("create_image_from_vm", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -852,7 +890,7 @@ public class HostClient {
     logger.info("delete_directory target {}, request {]", getHostIp(), deleteDirectoryRequest);
 
     try {
-      clientProxy.delete_directory(deleteDirectoryRequest, handler);
+      clientProxy.delete_directory(deleteDirectoryRequest, metered("delete_directory", handler));
     } catch (TException e) {
       throw new RpcException(e);
     }
@@ -880,7 +918,7 @@ public class HostClient {
     logger.info("delete_vm {}, target {}, request {}", vmId, getHostIp(), deleteVmRequest);
 
     try {
-      clientProxy.delete_vm(deleteVmRequest, handler);
+      clientProxy.delete_vm(deleteVmRequest, metered("delete_vm", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -928,7 +966,7 @@ public class HostClient {
         vmId, diskIds, getHostIp(), vmDisksDetachRequest);
 
     try {
-      clientProxy.detach_disks(vmDisksDetachRequest, handler);
+      clientProxy.detach_disks(vmDisksDetachRequest, metered("detach_disks", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -979,7 +1017,7 @@ public class HostClient {
     logger.info("detach_iso vm {}, target {}, request {}", vmId, getHostIp(), detachISORequest);
 
     try {
-      clientProxy.detach_iso(detachISORequest, handler);
+      clientProxy.detach_iso(detachISORequest, metered("detach_iso", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1023,7 +1061,7 @@ public class HostClient {
     logger.info("get_host_config target {}, request {}", getHostIp(), getConfigRequest);
 
     try {
-      clientProxy.get_host_config(getConfigRequest, handler);
+      clientProxy.get_host_config(getConfigRequest, metered("get_host_config", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1065,7 +1103,7 @@ public class HostClient {
     logger.info("get_images target {}, request {}", getHostIp(), getImagesRequest);
 
     try {
-      clientProxy.get_images(getImagesRequest, handler);
+      clientProxy.get_images(getImagesRequest, metered("get_images", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1110,7 +1148,7 @@ public class HostClient {
         dataStore, getHostIp(), serviceTicketRequest);
 
     try {
-      clientProxy.get_service_ticket(serviceTicketRequest, handler);
+      clientProxy.get_service_ticket(serviceTicketRequest, metered("get_service_ticket", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1154,7 +1192,7 @@ public class HostClient {
     logger.info("get_vm_networks vm {}, target {}, request {}", vmId, getHostIp(), getVmNetworkRequest);
 
     try {
-      clientProxy.get_vm_networks(getVmNetworkRequest, handler);
+      clientProxy.get_vm_networks(getVmNetworkRequest, metered("get_vm_networks", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1170,7 +1208,7 @@ public class HostClient {
     logger.info("get_vm_mks_ticket vm {}, target {}, request {}", vmId, getHostIp(), mksTicketRequest);
 
     try {
-      clientProxy.get_mks_ticket(mksTicketRequest, handler);
+      clientProxy.get_mks_ticket(mksTicketRequest, metered("get_mks_ticket", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1224,7 +1262,7 @@ public class HostClient {
     logger.debug("place resource {}, target {}, request {}", resource, getHostIp(), placeRequest);
 
     try {
-      clientProxy.place(placeRequest, handler);
+      clientProxy.place(placeRequest, metered("place", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1250,6 +1288,27 @@ public class HostClient {
     return ResponseValidator.checkPlaceResponse(syncHandler.getResponse());
   }
 
+  /**
+   * This method performs an asynchronous Thrift call to place a resource on a
+   * host without blocking the calling thread.
+   *
+   * @param resource Supplies a resource to place.
+   * @return A future which completes with the PlaceResponse object generated
+   * by the Thrift call, or fails with the RpcException the synchronous call
+   * would have thrown.
+   */
+  @RpcMethod
+  public CompletableFuture<PlaceResponse> placeAsync(Resource resource) {
+    FutureHandler<PlaceResponse, Host.AsyncSSLClient.place_call> handler =
+        new FutureHandler<>(ResponseValidator::checkPlaceResponse);
+    try {
+      place(resource, handler);
+    } catch (RpcException e) {
+      handler.getFuture().completeExceptionally(e);
+    }
+    return handler.getFuture();
+  }
+
   /**
    * This method performs an asynchronous Thrift call to perform a power state
    * operation on a VM. On completion, the specified handler is invoked.
@@ -1269,7 +1328,7 @@ public class HostClient {
     logger.info("power_vm_op vm {}, target {}, request {}", vmId, getHostIp(), powerVmOpRequest);
 
     try {
-      clientProxy.power_vm_op(powerVmOpRequest, handler);
+      clientProxy.power_vm_op(powerVmOpRequest, metered("power_vm_op", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1322,7 +1381,7 @@ public class HostClient {
         resource, generation, getHostIp(), reserveRequest);
 
     try {
-      clientProxy.reserve(reserveRequest, handler);
+      clientProxy.reserve(reserveRequest, metered("reserve", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1350,6 +1409,28 @@ public class HostClient {
     return ResponseValidator.checkReserveResponse(syncHandler.getResponse());
   }
 
+  /**
+   * This method performs an asynchronous Thrift call to reserve space for a
+   * resource on a host without blocking the calling thread.
+   *
+   * @param resource   Supplies a resource for which space should be reserved.
+   * @param generation Supplies a generation value for the operation.
+   * @return A future which completes with the ReserveResponse object
+   * generated by the Thrift call, or fails with the RpcException the
+   * synchronous call would have thrown.
+   */
+  @RpcMethod
+  public CompletableFuture<ReserveResponse> reserveAsync(Resource resource, Integer generation) {
+    FutureHandler<ReserveResponse, Host.AsyncSSLClient.reserve_call> handler =
+        new FutureHandler<>(ResponseValidator::checkReserveResponse);
+    try {
+      reserve(resource, generation, handler);
+    } catch (RpcException e) {
+      handler.getFuture().completeExceptionally(e);
+    }
+    return handler.getFuture();
+  }
+
   /**
    * This method performs an asynchronous Thrift call to set an agent's mode.
    *
@@ -1365,7 +1446,7 @@ public class HostClient {
 
     try {
       SetHostModeRequest setHostModeRequest = new SetHostModeRequest(hostMode);
-      clientProxy.set_host_mode(setHostModeRequest, handler);
+      clientProxy.set_host_mode(setHostModeRequest, metered("set_host_mode", handler));
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1391,6 +1472,13 @@ public class HostClient {
     createClientProxyWithIpAndPort();
   }
 
+  /**
+   * Wraps the callback of an asynchronous call so that the time until the call completes is recorded.
+   */
+  private <T> AsyncMethodCallback<T> metered(String method, AsyncMethodCallback<T> handler) {
+    return new MeteredCallback<>(HostClient.class, method, getHostIp(), handler);
+  }
+
   @VisibleForTesting
   protected Host.AsyncSSLClient getClientProxy() {
     return clientProxy;
@@ -1403,9 +1491,12 @@ public class HostClient {
 
   private void createClientProxyWithIpAndPort() {
     logger.debug("Creating host async client of hostIp {} and port {}", this.getHostIp(), this.getPort());
-    this.clientPool = this.clientPoolFactory.create(
-        ImmutableSet.of(new InetSocketAddress(this.getHostIp(), this.getPort())),
-        CLIENT_POOL_OPTIONS);
+    InetSocketAddress address = new InetSocketAddress(this.getHostIp(), this.getPort());
+    if (connectionCache != null) {
+      this.clientPool = connectionCache.getPool(address);
+    } else {
+      this.clientPool = this.clientPoolFactory.create(ImmutableSet.of(address), CLIENT_POOL_OPTIONS);
+    }
     this.clientProxy = clientProxyFactory.create(clientPool).get();
   }
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.thrift.async.AsyncMethodCallback;
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.CaseFormat.LOWER_HYPHEN;
+import static com.google.common.base.CaseFormat.LOWER_UNDERSCORE;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the time from the start of an asynchronous RPC until its callback is invoked, in a timer per target host
+ * and result. The RPC clients wrap the callbacks they hand to the thrift client with it, so the calls are measured
+ * however the RPC client has been created. For example, the {@code create_vm} calls of
+ * {@link com.vmware.photon.controller.common.clients.HostClient} to 10.0.0.1 which complete are recorded under
+ * {@code HostClient.create-vm.10_0_0_1.complete}, and those which fail under the name of the exception, such as
+ * {@code HostClient.create-vm.10_0_0_1.TimeoutException}.
+ *
+ * @param <T> call type
+ */
+public class MeteredCallback<T> implements AsyncMethodCallback<T> {
+
+  @VisibleForTesting
+  static final String RESULT_COMPLETE = "complete";
+
+  private static final String UNKNOWN_TARGET = "unknown";
+
+  private final MetricRegistry registry;
+  private final String rpcName;
+  private final AsyncMethodCallback<T> callback;
+  private final long startTime = System.nanoTime();
+
+  /**
+   * @param type     the RPC client type
+   * @param method   the thrift method name, e.g. create_vm
+   * @param hostIp   the target host, or null when it is not known
+   * @param callback the callback to invoke when the call completes
+   */
+  public MeteredCallback(Class<?> type, String method, String hostIp, AsyncMethodCallback<T> callback) {
+    this(type, method, hostIp, callback, DefaultMetricRegistry.REGISTRY);
+  }
+
+  @VisibleForTesting
+  MeteredCallback(Class<?> type, String method, String hostIp, AsyncMethodCallback<T> callback,
+                  MetricRegistry registry) {
+    this.registry = registry;
+    this.rpcName = name(type, LOWER_UNDERSCORE.to(LOWER_HYPHEN, method),
+        hostIp != null ? hostIp.replace('.', '_').replace(':', '_') : UNKNOWN_TARGET);
+    this.callback = callback;
+  }
+
+  @Override
+  public void onComplete(T response) {
+    record(RESULT_COMPLETE);
+    callback.onComplete(response);
+  }
+
+  @Override
+  public void onError(Exception exception) {
+    record(exception.getClass().getSimpleName());
+    callback.onError(exception);
+  }
+
+  private void record(String result) {
+    registry.timer(name(rpcName, result)).update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+  }
+}
@@ -14,7 +14,9 @@
 package com.vmware.photon.controller.common.metrics;
 
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -29,6 +31,10 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Intercepts @RpcMethod and provides duration and exception metrics.
+ * <p>
+ * The asynchronous RPC methods return as soon as the call is queued, so the duration of the method call says little
+ * about the RPC itself. The time until the call completes is recorded by the RPC clients with
+ * {@link MeteredCallback}, which also covers the clients which are not created by Guice.
  */
 public class RpcMetricInterceptor implements MethodInterceptor {
   private static final Logger logger = LoggerFactory.getLogger(RpcMetricInterceptor.class);
@@ -37,9 +43,14 @@ public class RpcMetricInterceptor implements MethodInterceptor {
   private final Meter exceptions;
 
   public RpcMetricInterceptor(Class<?> type, Method method) {
+    this(type, method, DefaultMetricRegistry.REGISTRY);
+  }
+
+  @VisibleForTesting
+  RpcMetricInterceptor(Class<?> type, Method method, MetricRegistry registry) {
     String name = LOWER_CAMEL.to(LOWER_HYPHEN, method.getName());
-    duration = DefaultMetricRegistry.REGISTRY.timer(name(type, name));
-    exceptions = DefaultMetricRegistry.REGISTRY.meter(name(type, name + "-exceptions", "exceptions"));
+    duration = registry.timer(name(type, name));
+    exceptions = registry.meter(name(type, name + "-exceptions", "exceptions"));
   }
 
   @Override
@@ -47,7 +58,7 @@ public class RpcMetricInterceptor implements MethodInterceptor {
     Stopwatch stopwatch = Stopwatch.createStarted();
     String methodName = invocation.getMethod().getName();
     try {
-      logger.info("Starting call to {}", methodName);
+      logger.debug("Starting call to {}", methodName);
       return invocation.proceed();
     } catch (Throwable t) {
       exceptions.mark();
@@ -55,7 +66,7 @@ public class RpcMetricInterceptor implements MethodInterceptor {
       throw t;
     } finally {
       duration.update(stopwatch.elapsed(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
-      logger.info("Finished call to {}", methodName);
+      logger.debug("Finished call to {}", methodName);
     }
   }
 }
@@ -13,8 +13,6 @@
 
 package com.vmware.photon.controller.common.thrift;
 
-import static com.vmware.photon.controller.common.Constants.VOID;
-
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
@@ -36,21 +34,38 @@ import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.SecureRandom;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of {@link ClientPool}.
+ * <p/>
+ * The pool does not hold a lock while it acquires or releases a client. Available clients are kept in a lock-free
+ * queue per server address, and a shared queue of ready addresses holds one entry per client released to an
+ * address, so acquiring a client polls a ready address and then a client of that address. Clients are handed out in
+ * the order they were released, which spreads the load over the servers. Entries of addresses whose clients have
+ * been taken in another way, e.g. by moving them to another server, are skipped.
+ * <p/>
+ * The number of clients is bounded by an atomic counter which also counts the clients being connected. Connections
+ * are always created by the thread which needs them, without holding any lock: for an acquire request, for a queued
+ * waiter, for a server that has been added, or to move an available client from an address that has more than one
+ * to a server that has none. Only server changes and the waiter timeout task are guarded by locks.
+ * <p/>
+ * Instead of scheduling a timeout task per waiter, each waiter records its deadline and a single task is scheduled
+ * for the earliest deadline.
  *
  * @param <C> thrift async client type
  */
@@ -66,12 +81,24 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
   private final ScheduledExecutorService scheduledExecutor;
   private final ServerSet serverSet;
   private final ClientPoolOptions options;
-  private final ListMultimap<InetSocketAddress, C> availableClients;
-  private final Map<C, InetSocketAddress> acquiredClients;
-  private final Set<InetSocketAddress> availableServers;
+  private final ConcurrentMap<InetSocketAddress, AddressPool> addressPools;
+  // One entry per client added to an address, so that an available client is found without a search
+  private final Queue<AddressPool> readyAddresses;
+  // Servers without an available client, and addresses with more than one available client
+  private final Queue<AddressPool> idleServers;
+  private final Queue<AddressPool> crowdedAddresses;
+  private final ConcurrentMap<C, AddressPool> acquiredClients;
   private final Map<C, TNonblockingSSLTransport> clientTransportMap;
-  private final Queue<Promise<C>> promises;
-  private boolean closed;
+  private final Queue<Waiter> waiters;
+  private final AtomicInteger waiterCount;
+  // Available, acquired and connecting clients
+  private final AtomicInteger clientCount;
+  private final AtomicBoolean closed;
+  private final Object serverLock;
+  private final Object timeoutLock;
+  private volatile AddressPool[] servers;
+  private ScheduledFuture<?> timeoutTask;
+  private long timeoutTaskDeadlineMs;
 
   @Inject
   public ClientPoolImpl(SecureRandom random,
@@ -90,280 +117,536 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
     this.scheduledExecutor = scheduledExecutor;
     this.serverSet = serverSet;
     this.options = new ClientPoolOptions(options);
-    this.availableClients = ArrayListMultimap.create();
-    this.acquiredClients = new HashMap<>();
-    this.availableServers = new HashSet<>();
-    this.clientTransportMap = new HashMap<>();
-    this.promises = new LinkedList<>();
-    this.closed = false;
+    this.addressPools = new ConcurrentHashMap<>();
+    this.readyAddresses = new ConcurrentLinkedQueue<>();
+    this.idleServers = new ConcurrentLinkedQueue<>();
+    this.crowdedAddresses = new ConcurrentLinkedQueue<>();
+    this.acquiredClients = new ConcurrentHashMap<>();
+    this.clientTransportMap = new ConcurrentHashMap<>();
+    this.waiters = new ConcurrentLinkedQueue<>();
+    this.waiterCount = new AtomicInteger();
+    this.clientCount = new AtomicInteger();
+    this.closed = new AtomicBoolean();
+    this.serverLock = new Object();
+    this.timeoutLock = new Object();
+    this.servers = new ClientPoolImpl.AddressPool[0];
+    this.timeoutTaskDeadlineMs = Long.MAX_VALUE;
 
     // Must be last since it can start firing events immediately
     this.serverSet.addChangeListener(this);
   }
 
   @Override
-  public synchronized void onServerAdded(InetSocketAddress address) {
+  public void onServerAdded(InetSocketAddress address) {
     logger.debug("Server {} added", address);
-    availableServers.add(address);
-    if (!availableClients.containsKey(address) &&
-        canCreateClient()) {
-      try {
-        availableClients.put(address, createNewClient(address));
-      } catch (IOException | TTransportException ex) {
-        logger.error("Error occurred when createNewClient for {}", address);
+    AddressPool pool;
+    synchronized (serverLock) {
+      pool = addressPools.get(address);
+      if (pool == null) {
+        pool = new AddressPool(address);
+        addressPools.put(address, pool);
+        updateServers();
       }
     }
-    processPromises();
+
+    if (pool.size.get() == 0) {
+      markIdle(pool);
+      if (reserveSlot()) {
+        try {
+          addAvailableClient(pool, createNewClient(address));
+        } catch (IOException | TTransportException ex) {
+          clientCount.decrementAndGet();
+          logger.error("Error occurred when createNewClient for {}", address);
+        }
+      }
+    }
+    processWaiters();
   }
 
   @Override
-  public synchronized void onServerRemoved(InetSocketAddress address) {
+  public void onServerRemoved(InetSocketAddress address) {
     logger.debug("Server {} removed", address);
-    availableServers.remove(address);
-    List<C> clients = availableClients.removeAll(address);
-    for (C client : clients) {
-      removeClient(client);
+    AddressPool pool;
+    synchronized (serverLock) {
+      pool = addressPools.remove(address);
+      if (pool == null) {
+        return;
+      }
+      updateServers();
     }
+
+    pool.removed = true;
+    removeAvailableClients(pool);
   }
 
   @Override
-  public synchronized ListenableFuture<C> acquire() {
-    if (promises.size() < options.getMaxWaiters()) {
-      SettableFuture<C> future = SettableFuture.create();
-      Promise<C> promise = new Promise<>(future);
-      promises.add(promise);
-      processPromises();
-      logger.info("options.getTimeoutMs() is {}", options.getTimeoutMs());
-      if (options.getTimeoutMs() > 0 && !future.isDone()) {
-        setTimeout(promise);
-      }
-      logger.info("{} Promise processed {}", options.getServiceName(), promise);
-      return future;
+  public ListenableFuture<C> acquire() {
+    if (waiterCount.get() >= options.getMaxWaiters()) {
+      return Futures.immediateFailedFuture(new ClientPoolException("Too many waiters"));
     }
 
-    return Futures.immediateFailedFuture(new ClientPoolException("Too many waiters"));
-  }
+    // Earlier waiters are served first, so only skip the queue if it is empty
+    if (!hasPendingWaiters()) {
+      C client = reserveAvailableClient();
+      if (client != null) {
+        return Futures.immediateFuture(client);
+      }
 
-  private void setTimeout(final Promise<C> promise) {
-    ScheduledFuture<Void> schedule = scheduledExecutor.schedule(new Callable<Void>() {
-      @Override
-      public Void call() {
-        synchronized (ClientPoolImpl.this) {
-          promise.setException(new ClientPoolException(String.format("Timeout acquiring client: %s", serverSet)));
+      AddressPool pool = reserveNewClient();
+      if (pool != null) {
+        try {
+          return Futures.immediateFuture(createAcquiredClient(pool));
+        } catch (IOException | TTransportException ex) {
+          logger.error("fulfillWithNewClient has IOException", ex);
+          // The reserved slot is free again, so a queued waiter may be able to use it
+          processWaiters();
+          return Futures.immediateFailedFuture(ex);
         }
-        return VOID;
       }
-    }, getPromiseTimeoutMs(), TimeUnit.MILLISECONDS);
-    promise.setTimeout(schedule);
-    logger.info("Timeout set for the promise {}", getPromiseTimeoutMs());
+    }
+
+    SettableFuture<C> future = SettableFuture.create();
+    if (!addWaiter(new Promise<>(future))) {
+      return Futures.immediateFailedFuture(new ClientPoolException("Too many waiters"));
+    }
+
+    // A client or a slot may have become free since the queue was checked
+    processWaiters();
+    return future;
   }
 
   @Override
-  public synchronized void close() {
+  public void close() {
+    Preconditions.checkState(closed.compareAndSet(false, true));
     logger.info("{}, closing client pool {}", options.getServiceName(), System.identityHashCode(this));
-    Preconditions.checkState(!closed);
 
     serverSet.removeChangeListener(this);
+    synchronized (timeoutLock) {
+      cancelTimeoutTask();
+    }
 
-    Iterator<Promise<C>> promiseIterator = promises.iterator();
-    while (promiseIterator.hasNext()) {
-      Promise<C> promise = promiseIterator.next();
-      promise.setException(new ClientPoolException("Client pool closing"));
-      promiseIterator.remove();
+    List<Promise<C>> closingPromises = new ArrayList<>();
+    Waiter waiter;
+    while ((waiter = pollWaiter()) != null) {
+      closingPromises.add(waiter.promise);
     }
 
-    Iterator<C> clientIterator = availableClients.values().iterator();
-    while (clientIterator.hasNext()) {
-      C client = clientIterator.next();
-      removeClient(client);
-      clientIterator.remove();
+    for (AddressPool pool : addressPools.values()) {
+      removeAvailableClients(pool);
     }
+    readyAddresses.clear();
+    idleServers.clear();
+    crowdedAddresses.clear();
 
-    availableClients.clear();
-    closed = true;
+    for (Promise<C> promise : closingPromises) {
+      promise.setException(new ClientPoolException("Client pool closing"));
+    }
   }
 
   @Override
-  public synchronized boolean isClosed() {
-    return this.closed;
+  public boolean isClosed() {
+    return closed.get();
   }
 
   @Override
-  public synchronized void release(C client, boolean healthy) {
-    logger.info("{}, client pool {}, releasing: {} healthy: {}",
+  public void release(C client, boolean healthy) {
+    logger.debug("{}, client pool {}, releasing: {} healthy: {}",
         options.getServiceName(), System.identityHashCode(this), client, healthy);
-    InetSocketAddress address = acquiredClients.remove(client);
-    if (address == null) {
+    AddressPool pool = acquiredClients.remove(client);
+    if (pool == null) {
       throw new IllegalArgumentException("Client is not currently acquired by the pool: " + client);
     }
 
-    if (!closed && healthy && availableServers.contains(address)) {
-      availableClients.put(address, client);
+    if (!closed.get() && healthy && !pool.removed) {
+      addAvailableClient(pool, client);
     } else {
-      logger.info("{}, client pool {}, closing transport for client: {}, healthy: {}",
+      logger.debug("{}, client pool {}, closing transport for client: {}, healthy: {}",
           options.getServiceName(), System.identityHashCode(this), client, healthy);
-      removeClient(client);
+      discardClient(client);
     }
 
-    processPromises();
+    processWaiters();
   }
 
   @Override
-  public synchronized int getWaiters() {
-    return promises.size();
+  public int getWaiters() {
+    return waiterCount.get();
   }
 
   @VisibleForTesting
   protected Queue<Promise<C>> getPromises() {
+    Queue<Promise<C>> promises = new LinkedList<>();
+    for (Waiter waiter : waiters) {
+      promises.add(waiter.promise);
+    }
     return promises;
   }
 
   @VisibleForTesting
   protected ListMultimap<InetSocketAddress, C> getAvailableClients() {
-    return availableClients;
+    ListMultimap<InetSocketAddress, C> clients = ArrayListMultimap.create();
+    for (AddressPool pool : addressPools.values()) {
+      clients.putAll(pool.address, pool.clients);
+    }
+    return clients;
   }
 
-  private void processPromises() {
-    while (!promises.isEmpty()) {
-      // Find a promise that hasn't timeout yet
-      Promise<C> promise = promises.peek();
-      if (promise.isDone()) {
-        promises.remove();
-        continue;
-      }
-
-      logger.debug("process promise");
-      if (availableClients.isEmpty()) {
-        logger.info("{}, no avail clients: acq {}, avail {}, promises {}",
-            options.getServiceName(), acquiredClients.size(),
-            availableClients.size(), promises.size());
+  /**
+   * Hands available clients, or new clients while the pool is below its maximum size, to the queued waiters
+   * in order.
+   */
+  private void processWaiters() {
+    while (hasPendingWaiters()) {
+      C client = reserveAvailableClient();
+      AddressPool newClientPool = null;
+      if (client == null) {
+        newClientPool = reserveNewClient();
+        if (newClientPool == null) {
+          return;
+        }
       }
 
-      if (!canCreateClient()) {
-        logger.info("{}, client pool {}, not creating new client, request is queued until a client is available: " +
-                "client(s) in use {}, request(s) waiting {}, available client(s) {}",
-            options.getServiceName(), System.identityHashCode(this), acquiredClients.size(),
-            promises.size(), availableClients.size());
+      Waiter waiter = pollWaiter();
+      if (waiter == null) {
+        // Another thread served the waiter in the meantime
+        if (client != null) {
+          release(client, true);
+          return;
+        }
+        clientCount.decrementAndGet();
+        continue;
       }
 
-      C client = fulfillWithAvailableClient();
-      if (client == null && canCreateClient()) {
+      if (client == null) {
         try {
-          client = fulfillWithNewClient();
+          client = createAcquiredClient(newClientPool);
         } catch (IOException | TTransportException ex) {
           logger.error("fulfillWithNewClient has IOException", ex);
-          promises.remove().setException(ex);
-          break;
+          waiter.promise.setException(ex);
+          // The reserved slot is free again, so try it for the next waiter
+          continue;
         }
       }
 
-      if (client != null) {
-        logger.info("{}, client pool {}, set promise with client {}",
-            options.getServiceName(), System.identityHashCode(this), client);
-        promises.remove().set(client);
+      if (!waiter.promise.set(client)) {
+        // The waiter timed out after it was taken off the queue
+        release(client, true);
         return;
       }
+    }
+  }
 
-      break;
+  /**
+   * Drops the waiters at the head of the queue that have already completed.
+   */
+  private boolean hasPendingWaiters() {
+    Waiter head;
+    while ((head = waiters.peek()) != null) {
+      if (!head.promise.isDone()) {
+        return true;
+      }
+      if (waiters.remove(head)) {
+        waiterCount.decrementAndGet();
+      }
     }
+    return false;
   }
 
-  private boolean canCreateClient() {
-    return (availableClients.size() + acquiredClients.size()) < options.getMaxClients() &&
-        !availableServers.isEmpty();
+  private Waiter pollWaiter() {
+    Waiter waiter = waiters.poll();
+    if (waiter != null) {
+      waiterCount.decrementAndGet();
+    }
+    return waiter;
   }
 
   /**
-   * Try to find an address that has more than one client.
-   * Then we move the client from that address to the target address.
-   *
-   * @param address
+   * Queues a waiter unless the queue is full.
    */
-  private void moveClient(InetSocketAddress address) {
-    logger.debug("Try to move a client to {}", address);
-    C newClient = null;
-    for (InetSocketAddress availableClientAddress : availableClients.keySet()) {
-      if (availableClients.get(availableClientAddress).size() > 1) {
-        logger.debug("Address {} has {} clients, move one to {}",
-            availableClientAddress,
-            availableClients.get(availableClientAddress).size(),
-            address);
-
-        try {
-          newClient = createNewClient(address);
-          removeClient(availableClients.get(availableClientAddress).remove(0));
-          break;
-        } catch (IOException | TTransportException ex) {
-          logger.error("moveClient: fail to create new client for {}", address);
-          return;
-        }
+  private boolean addWaiter(Promise<C> promise) {
+    int count;
+    do {
+      count = waiterCount.get();
+      if (count >= options.getMaxWaiters()) {
+        return false;
       }
+    } while (!waiterCount.compareAndSet(count, count + 1));
+
+    Waiter waiter = new Waiter(promise);
+    if (options.getTimeoutMs() > 0) {
+      // The allowed wait grows with the queue length, like it did with a timeout task per waiter
+      waiter.deadlineMs = nowMs() + options.getTimeoutMs() * (count + 1);
     }
+    waiters.add(waiter);
 
-    if (newClient == null) {
-      logger.debug("No client to move in {}", availableClients);
-      return;
+    if (options.getTimeoutMs() > 0) {
+      synchronized (timeoutLock) {
+        if (waiter.deadlineMs < timeoutTaskDeadlineMs && !closed.get()) {
+          scheduleTimeoutTask(waiter.deadlineMs);
+        }
+      }
     }
+    return true;
+  }
 
-    availableClients.put(address, newClient);
+  private void scheduleTimeoutTask(long deadlineMs) {
+    cancelTimeoutTask();
+    timeoutTaskDeadlineMs = deadlineMs;
+    timeoutTask = scheduledExecutor.schedule(
+        this::expireWaiters, Math.max(0, deadlineMs - nowMs()), TimeUnit.MILLISECONDS);
   }
 
-  private void removeClient(C client) {
-    logger.debug("remove client {}", client);
-    TNonblockingSSLTransport transport = clientTransportMap.remove(client);
-    transport.close();
+  private void cancelTimeoutTask() {
+    if (timeoutTask != null) {
+      timeoutTask.cancel(false);
+      timeoutTask = null;
+    }
+    timeoutTaskDeadlineMs = Long.MAX_VALUE;
   }
 
-  private C fulfillWithAvailableClient() {
-    logger.debug("start fulfillWithAvailableClient");
-    // In case of an address does not have any available client,
-    // we try to find other address that has more than one client
-    // and move it so that that address will have one client instead
-    // of none.
-    for (InetSocketAddress server : availableServers) {
-      if (!availableClients.containsKey(server)) {
-        moveClient(server);
+  /**
+   * Fails the waiters whose deadline has passed and schedules the timeout task for the next deadline.
+   */
+  private void expireWaiters() {
+    synchronized (timeoutLock) {
+      timeoutTask = null;
+      timeoutTaskDeadlineMs = Long.MAX_VALUE;
+    }
+
+    List<Promise<C>> expired = new ArrayList<>();
+    long now = nowMs();
+    long nextDeadlineMs = Long.MAX_VALUE;
+    for (Waiter waiter : waiters) {
+      if (waiter.promise.isDone()) {
+        if (waiters.remove(waiter)) {
+          waiterCount.decrementAndGet();
+        }
+      } else if (waiter.deadlineMs <= now) {
+        // A waiter which is served concurrently is no longer in the queue, so it is not failed
+        if (waiters.remove(waiter)) {
+          waiterCount.decrementAndGet();
+          expired.add(waiter.promise);
+        }
+      } else {
+        nextDeadlineMs = Math.min(nextDeadlineMs, waiter.deadlineMs);
       }
     }
 
-    C client = null;
-    while (!availableClients.isEmpty() && client == null) {
-      // The random selection occurs on InetSocketAddress, not clients
-      Set<InetSocketAddress> keys = availableClients.keySet();
-      InetSocketAddress[] addresses = keys.toArray(new InetSocketAddress[keys.size()]);
-      int randomIndex = random.nextInt(addresses.length);
-      InetSocketAddress randomAddress = addresses[randomIndex];
-      client = reserveAvailableClient(randomAddress);
+    if (nextDeadlineMs != Long.MAX_VALUE) {
+      synchronized (timeoutLock) {
+        if (nextDeadlineMs < timeoutTaskDeadlineMs && !closed.get()) {
+          scheduleTimeoutTask(nextDeadlineMs);
+        }
+      }
     }
 
-    logger.debug("fulfillWithAvailableClient returns client {}", client);
-    return client;
+    for (Promise<C> promise : expired) {
+      promise.setException(new ClientPoolException(String.format("Timeout acquiring client: %s", serverSet)));
+    }
   }
 
-  private C reserveAvailableClient(InetSocketAddress address) {
-    C client = availableClients.get(address).remove(0);
-    if (client.hasError()) {
-      logger.warn("service {} available client {} has error",
-          options.getServiceName(), client, client.getError());
-      removeClient(client);
+  /**
+   * Reserves a slot for a new client unless the pool is full.
+   */
+  private boolean reserveSlot() {
+    int count;
+    do {
+      count = clientCount.get();
+      if (count >= options.getMaxClients()) {
+        return false;
+      }
+    } while (!clientCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  /**
+   * Reserves a slot for a new client and picks the server it connects to.
+   *
+   * @return the server, or null if the pool is full or there is no server.
+   */
+  private AddressPool reserveNewClient() {
+    AddressPool[] current = servers;
+    if (current.length == 0 || !reserveSlot()) {
       return null;
     }
+    return current[random.nextInt(current.length)];
+  }
+
+  private C createAcquiredClient(AddressPool pool) throws IOException, TTransportException {
+    C client;
+    try {
+      client = createNewClient(pool.address);
+    } catch (IOException | TTransportException ex) {
+      clientCount.decrementAndGet();
+      throw ex;
+    }
 
-    acquiredClients.put(client, address);
+    acquiredClients.put(client, pool);
     return client;
   }
 
-  private C fulfillWithNewClient() throws IOException, TTransportException {
-    logger.debug("start fulfillWithNewClient");
-    InetSocketAddress[] servers = availableServers.toArray(new InetSocketAddress[availableServers.size()]);
-    int randomIndex = random.nextInt(servers.length);
-    InetSocketAddress address = servers[randomIndex];
-    C client = createNewClient(address);
-    acquiredClients.put(client, address);
-    logger.debug("fulfillWithNewClient return client {}", client);
+  /**
+   * Takes an available client from the address which was released to first. Before that, clients are moved from
+   * addresses that have more than one available client to servers that have none, so load is spread over all
+   * servers.
+   */
+  private C reserveAvailableClient() {
+    moveClientsToIdleServers();
+
+    AddressPool pool;
+    while ((pool = readyAddresses.poll()) != null) {
+      C client = pollAvailableClient(pool);
+      if (client == null) {
+        // The client of this entry has been moved or removed
+        continue;
+      }
+
+      if (client.hasError()) {
+        logger.warn("service {} available client {} has error",
+            options.getServiceName(), client, client.getError());
+        discardClient(client);
+        continue;
+      }
+
+      acquiredClients.put(client, pool);
+      return client;
+    }
+
+    return null;
+  }
+
+  /**
+   * Replaces available clients of addresses that have more than one with new clients for servers that have none.
+   * The thread which takes a server off the idle queue is the only one moving a client to it. The new client is
+   * created before the old one is closed, and the old one is put back if the new one could not be created.
+   */
+  private void moveClientsToIdleServers() {
+    while (true) {
+      AddressPool target = peekIdleServer();
+      if (target == null) {
+        return;
+      }
+      AddressPool source = peekCrowdedAddress();
+      if (source == null) {
+        return;
+      }
+
+      if (!idleServers.remove(target)) {
+        continue;
+      }
+      target.idleQueued.set(false);
+
+      C oldClient = pollAvailableClient(source);
+      if (oldClient == null) {
+        markIdle(target);
+        continue;
+      }
+
+      logger.debug("Move a client from {} to {}", source.address, target.address);
+      C newClient;
+      try {
+        newClient = createNewClient(target.address);
+      } catch (IOException | TTransportException ex) {
+        logger.error("moveClient: fail to create new client for {}", target.address);
+        addAvailableClient(source, oldClient);
+        markIdle(target);
+        return;
+      }
+
+      // The new client takes the slot of the old one
+      removeClient(oldClient);
+      addAvailableClient(target, newClient);
+    }
+  }
+
+  private AddressPool peekIdleServer() {
+    AddressPool pool;
+    while ((pool = idleServers.peek()) != null) {
+      if (!pool.removed && pool.size.get() == 0) {
+        return pool;
+      }
+      if (idleServers.remove(pool)) {
+        pool.idleQueued.set(false);
+        if (!pool.removed && pool.size.get() == 0) {
+          markIdle(pool);
+        }
+      }
+    }
+    return null;
+  }
+
+  private AddressPool peekCrowdedAddress() {
+    AddressPool pool;
+    while ((pool = crowdedAddresses.peek()) != null) {
+      if (!pool.removed && pool.size.get() > 1) {
+        return pool;
+      }
+      if (crowdedAddresses.remove(pool)) {
+        pool.crowdedQueued.set(false);
+        if (!pool.removed && pool.size.get() > 1) {
+          markCrowded(pool);
+        }
+      }
+    }
+    return null;
+  }
+
+  private void markIdle(AddressPool pool) {
+    if (!pool.removed && pool.idleQueued.compareAndSet(false, true)) {
+      idleServers.add(pool);
+    }
+  }
+
+  private void markCrowded(AddressPool pool) {
+    if (!pool.removed && pool.crowdedQueued.compareAndSet(false, true)) {
+      crowdedAddresses.add(pool);
+    }
+  }
+
+  private void addAvailableClient(AddressPool pool, C client) {
+    pool.clients.addLast(client);
+    if (pool.size.incrementAndGet() > 1) {
+      markCrowded(pool);
+    }
+    readyAddresses.add(pool);
+
+    // The server may have been removed or the pool closed while the client was added
+    if (pool.removed || closed.get()) {
+      removeAvailableClients(pool);
+    }
+  }
+
+  private C pollAvailableClient(AddressPool pool) {
+    C client = pool.clients.pollFirst();
+    if (client != null && pool.size.decrementAndGet() == 0) {
+      markIdle(pool);
+    }
     return client;
   }
 
+  private void removeAvailableClients(AddressPool pool) {
+    C client;
+    while ((client = pool.clients.pollFirst()) != null) {
+      pool.size.decrementAndGet();
+      discardClient(client);
+    }
+  }
+
+  private void discardClient(C client) {
+    removeClient(client);
+    clientCount.decrementAndGet();
+  }
+
+  private void removeClient(C client) {
+    logger.debug("remove client {}", client);
+    TNonblockingSSLTransport transport = clientTransportMap.remove(client);
+    transport.close();
+  }
+
+  private void updateServers() {
+    servers = addressPools.values().toArray(new ClientPoolImpl.AddressPool[addressPools.size()]);
+  }
+
   private C createNewClient(InetSocketAddress address) throws IOException, TTransportException {
     return ClientPoolUtils.createNewClient(
         address,
@@ -375,7 +658,35 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
         this.sslContext);
   }
 
-  private long getPromiseTimeoutMs() {
-    return options.getTimeoutMs() * Math.max(1, promises.size());
+  private static long nowMs() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  /**
+   * The available clients of a server address.
+   */
+  private class AddressPool {
+    final InetSocketAddress address;
+    final Deque<C> clients = new ConcurrentLinkedDeque<>();
+    final AtomicInteger size = new AtomicInteger();
+    final AtomicBoolean idleQueued = new AtomicBoolean();
+    final AtomicBoolean crowdedQueued = new AtomicBoolean();
+    volatile boolean removed;
+
+    AddressPool(InetSocketAddress address) {
+      this.address = address;
+    }
+  }
+
+  /**
+   * A queued acquire request and the time it times out at.
+   */
+  private class Waiter {
+    final Promise<C> promise;
+    long deadlineMs = Long.MAX_VALUE;
+
+    Waiter(Promise<C> promise) {
+      this.promise = promise;
+    }
   }
 }
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import static com.vmware.photon.controller.common.Constants.VOID;
+
+import com.codahale.metrics.Counter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.thrift.async.TAsyncSSLClient;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonblockingSSLTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A process-wide cache of thrift connections keyed by server address.
+ * <p/>
+ * Unlike {@link BasicClientPool}, which closes the connection after every call, released healthy clients are kept
+ * open and handed to the next caller for the same address, so repeated calls to the same host skip the TCP and SSL
+ * handshakes. Up to {@link ClientPoolOptions#getMaxClients()} connections per address can be in flight at the same
+ * time; further callers wait for a connection to be released. Connections that have been idle for longer than the
+ * idle timeout are closed by a periodic sweep, and connections whose transport is closed or whose client has an error
+ * are discarded instead of reused.
+ * <p/>
+ * The cache hands out light-weight {@link ClientPool} views for a single address through {@link #getPool}; closing a
+ * view does not close the shared connections.
+ *
+ * @param <C> thrift async client type
+ */
+public class HostConnectionCache<C extends TAsyncSSLClient> {
+
+  private static final Logger logger = LoggerFactory.getLogger(HostConnectionCache.class);
+
+  private final TAsyncSSLClientFactory<C> clientFactory;
+  private final SSLContext sslContext;
+  private final TProtocolFactory protocolFactory;
+  private final ThriftFactory thriftFactory;
+  private final ScheduledExecutorService scheduledExecutor;
+  private final ClientPoolOptions options;
+  private final long idleTimeoutMs;
+  private final ConcurrentMap<InetSocketAddress, AddressConnections> connections;
+  private final ConcurrentMap<C, Connection> leasedConnections;
+  private final Counter handshakes;
+  private final Counter hits;
+  private final Counter evictions;
+  private final ScheduledFuture<?> sweeper;
+  private volatile boolean closed;
+
+  public HostConnectionCache(TAsyncSSLClientFactory<C> clientFactory,
+                             SSLContext sslContext,
+                             TProtocolFactory protocolFactory,
+                             ThriftFactory thriftFactory,
+                             ScheduledExecutorService scheduledExecutor,
+                             ClientPoolOptions options,
+                             long idleTimeoutMs) {
+    this.clientFactory = clientFactory;
+    this.sslContext = sslContext;
+    this.protocolFactory = protocolFactory;
+    this.thriftFactory = thriftFactory;
+    this.scheduledExecutor = scheduledExecutor;
+    this.options = new ClientPoolOptions(options);
+    this.idleTimeoutMs = idleTimeoutMs;
+    this.connections = new ConcurrentHashMap<>();
+    this.leasedConnections = new ConcurrentHashMap<>();
+    this.handshakes = DefaultMetricRegistry.REGISTRY.counter(
+        name(HostConnectionCache.class, options.getServiceName(), "handshakes"));
+    this.hits = DefaultMetricRegistry.REGISTRY.counter(
+        name(HostConnectionCache.class, options.getServiceName(), "hits"));
+    this.evictions = DefaultMetricRegistry.REGISTRY.counter(
+        name(HostConnectionCache.class, options.getServiceName(), "evictions"));
+
+    long sweepIntervalMs = Math.max(1, idleTimeoutMs / 2);
+    this.sweeper = scheduledExecutor.scheduleWithFixedDelay(
+        this::evictIdleConnections, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a client pool that acquires its clients from the cached connections to the given address.
+   */
+  public ClientPool<C> getPool(InetSocketAddress address) {
+    return new AddressPool(address);
+  }
+
+  /**
+   * Closes all idle connections and stops the idle sweep. Connections that are in use are closed when released.
+   */
+  public void close() {
+    closed = true;
+    sweeper.cancel(false);
+    for (AddressConnections addressConnections : connections.values()) {
+      synchronized (addressConnections) {
+        addressConnections.retired = true;
+        for (Promise<C> promise : addressConnections.promises) {
+          promise.setException(new ClientPoolException("Connection cache closing"));
+        }
+        addressConnections.promises.clear();
+        for (Connection connection : addressConnections.idle) {
+          connection.transport.close();
+          addressConnections.openConnections--;
+        }
+        addressConnections.idle.clear();
+      }
+    }
+    connections.clear();
+  }
+
+  public long getHandshakeCount() {
+    return handshakes.getCount();
+  }
+
+  public long getHitCount() {
+    return hits.getCount();
+  }
+
+  public long getEvictionCount() {
+    return evictions.getCount();
+  }
+
+  @VisibleForTesting
+  int getIdleConnectionCount(InetSocketAddress address) {
+    AddressConnections addressConnections = connections.get(address);
+    if (addressConnections == null) {
+      return 0;
+    }
+    synchronized (addressConnections) {
+      return addressConnections.idle.size();
+    }
+  }
+
+  @VisibleForTesting
+  int getOpenConnectionCount(InetSocketAddress address) {
+    AddressConnections addressConnections = connections.get(address);
+    if (addressConnections == null) {
+      return 0;
+    }
+    synchronized (addressConnections) {
+      return addressConnections.openConnections;
+    }
+  }
+
+  /**
+   * Checks whether a cached connection can be reused.
+   */
+  @VisibleForTesting
+  protected boolean isHealthy(C client, TNonblockingSSLTransport transport) {
+    return transport.isOpen() && !client.hasError();
+  }
+
+  /**
+   * Closes the connections that have been idle for longer than the idle timeout, and drops the addresses that
+   * have no connections and no waiters left.
+   */
+  @VisibleForTesting
+  void evictIdleConnections() {
+    long now = System.currentTimeMillis();
+    for (AddressConnections addressConnections : connections.values()) {
+      synchronized (addressConnections) {
+        Iterator<Connection> iterator = addressConnections.idle.descendingIterator();
+        while (iterator.hasNext()) {
+          Connection connection = iterator.next();
+          if (now - connection.idleSinceMs < idleTimeoutMs) {
+            // The idle connections are ordered by release time, so the rest are more recent
+            break;
+          }
+          iterator.remove();
+          discard(addressConnections, connection);
+        }
+
+        if (addressConnections.openConnections == 0 && addressConnections.promises.isEmpty()) {
+          addressConnections.retired = true;
+          connections.remove(addressConnections.address, addressConnections);
+        }
+      }
+    }
+  }
+
+  private ListenableFuture<C> acquire(InetSocketAddress address) {
+    if (closed) {
+      return Futures.immediateFailedFuture(new ClientPoolException("Connection cache is closed"));
+    }
+
+    while (true) {
+      AddressConnections addressConnections = connections.computeIfAbsent(address, AddressConnections::new);
+      synchronized (addressConnections) {
+        if (addressConnections.retired) {
+          // Lost a race with the idle sweep, which removed this entry from the map
+          continue;
+        }
+
+        Connection connection = pollHealthyConnection(addressConnections);
+        if (connection != null) {
+          hits.inc();
+          leasedConnections.put(connection.client, connection);
+          return Futures.immediateFuture(connection.client);
+        }
+
+        if (addressConnections.openConnections >= options.getMaxClients()) {
+          if (addressConnections.promises.size() >= options.getMaxWaiters()) {
+            return Futures.immediateFailedFuture(new ClientPoolException("Too many waiters"));
+          }
+
+          SettableFuture<C> future = SettableFuture.create();
+          Promise<C> waiter = new Promise<>(future);
+          addressConnections.promises.add(waiter);
+          if (options.getTimeoutMs() > 0) {
+            setTimeout(addressConnections, waiter);
+          }
+          return future;
+        }
+
+        addressConnections.openConnections++;
+      }
+
+      try {
+        Connection connection = connect(addressConnections);
+        leasedConnections.put(connection.client, connection);
+        return Futures.immediateFuture(connection.client);
+      } catch (IOException | TTransportException ex) {
+        logger.error("{}, failed to connect to {}", options.getServiceName(), address, ex);
+        synchronized (addressConnections) {
+          addressConnections.openConnections--;
+        }
+        return Futures.immediateFailedFuture(ex);
+      }
+    }
+  }
+
+  private void release(C client, boolean healthy) {
+    Connection connection = leasedConnections.remove(client);
+    if (connection == null) {
+      logger.warn("{}, released client {} was not acquired from the connection cache",
+          options.getServiceName(), client);
+      return;
+    }
+
+    AddressConnections addressConnections = connection.addressConnections;
+    boolean replace;
+    synchronized (addressConnections) {
+      if (healthy && !closed && isHealthy(connection.client, connection.transport)) {
+        if (handToWaiter(addressConnections, connection)) {
+          hits.inc();
+          return;
+        }
+        connection.idleSinceMs = System.currentTimeMillis();
+        addressConnections.idle.addFirst(connection);
+        return;
+      }
+
+      discard(addressConnections, connection);
+      // The discarded connection frees a slot, open a new one if somebody is waiting for it
+      replace = !addressConnections.promises.isEmpty() && !closed;
+      if (replace) {
+        addressConnections.openConnections++;
+      }
+    }
+
+    if (replace) {
+      replaceConnection(addressConnections);
+    }
+  }
+
+  private void replaceConnection(AddressConnections addressConnections) {
+    Connection connection;
+    try {
+      connection = connect(addressConnections);
+    } catch (IOException | TTransportException ex) {
+      logger.error("{}, failed to connect to {}", options.getServiceName(), addressConnections.address, ex);
+      synchronized (addressConnections) {
+        addressConnections.openConnections--;
+        Promise<C> promise = addressConnections.promises.poll();
+        if (promise != null) {
+          promise.setException(ex);
+        }
+      }
+      return;
+    }
+
+    synchronized (addressConnections) {
+      if (!handToWaiter(addressConnections, connection)) {
+        connection.idleSinceMs = System.currentTimeMillis();
+        addressConnections.idle.addFirst(connection);
+      }
+    }
+  }
+
+  /**
+   * Gives the connection to the first waiter that has not timed out yet.
+   *
+   * @return false if there are no waiters left.
+   */
+  private boolean handToWaiter(AddressConnections addressConnections, Connection connection) {
+    while (!addressConnections.promises.isEmpty()) {
+      Promise<C> promise = addressConnections.promises.remove();
+      leasedConnections.put(connection.client, connection);
+      if (promise.set(connection.client)) {
+        return true;
+      }
+      leasedConnections.remove(connection.client);
+    }
+    return false;
+  }
+
+  private Connection pollHealthyConnection(AddressConnections addressConnections) {
+    while (!addressConnections.idle.isEmpty()) {
+      Connection connection = addressConnections.idle.pollFirst();
+      if (isHealthy(connection.client, connection.transport)) {
+        return connection;
+      }
+      logger.debug("{}, discarding unhealthy connection to {}", options.getServiceName(), addressConnections.address);
+      discard(addressConnections, connection);
+    }
+    return null;
+  }
+
+  private void discard(AddressConnections addressConnections, Connection connection) {
+    connection.transport.close();
+    addressConnections.openConnections--;
+    evictions.inc();
+  }
+
+  private Connection connect(AddressConnections addressConnections) throws IOException, TTransportException {
+    Map<C, TNonblockingSSLTransport> clientTransportMap = new HashMap<>(1);
+    C client = ClientPoolUtils.createNewClient(
+        addressConnections.address,
+        protocolFactory,
+        options,
+        thriftFactory,
+        clientFactory,
+        clientTransportMap,
+        sslContext);
+    handshakes.inc();
+    return new Connection(addressConnections, client, clientTransportMap.get(client));
+  }
+
+  private void setTimeout(AddressConnections addressConnections, Promise<C> promise) {
+    ScheduledFuture<Void> schedule = scheduledExecutor.schedule(() -> {
+      synchronized (addressConnections) {
+        promise.setException(new ClientPoolException("Timeout acquiring client"));
+        addressConnections.promises.remove(promise);
+      }
+      return VOID;
+    }, options.getTimeoutMs(), TimeUnit.MILLISECONDS);
+    promise.setTimeout(schedule);
+  }
+
+  /**
+   * A cached connection and the time it was last released.
+   */
+  private class Connection {
+    final AddressConnections addressConnections;
+    final C client;
+    final TNonblockingSSLTransport transport;
+    long idleSinceMs;
+
+    Connection(AddressConnections addressConnections, C client, TNonblockingSSLTransport transport) {
+      this.addressConnections = addressConnections;
+      this.client = client;
+      this.transport = transport;
+    }
+  }
+
+  /**
+   * The connections to a single address. Guarded by its own monitor.
+   */
+  private class AddressConnections {
+    final InetSocketAddress address;
+    // Most recently released first, so the sweep finds the oldest connections at the tail
+    final Deque<Connection> idle = new ArrayDeque<>();
+    final Queue<Promise<C>> promises = new LinkedList<>();
+    int openConnections;
+    boolean retired;
+
+    AddressConnections(InetSocketAddress address) {
+      this.address = address;
+    }
+  }
+
+  /**
+   * A {@link ClientPool} view of the cached connections to a single address.
+   */
+  private class AddressPool implements ClientPool<C> {
+    private final InetSocketAddress address;
+    private volatile boolean poolClosed;
+
+    AddressPool(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    @Override
+    public ListenableFuture<C> acquire() {
+      if (poolClosed) {
+        return Futures.immediateFailedFuture(new ClientPoolException("Client pool is closed"));
+      }
+      return HostConnectionCache.this.acquire(address);
+    }
+
+    @Override
+    public void close() {
+      // The connections are shared with other pools for the same address, so they stay in the cache
+      poolClosed = true;
+    }
+
+    @Override
+    public void release(C client, boolean healthy) {
+      HostConnectionCache.this.release(client, healthy);
+    }
+
+    @Override
+    public int getWaiters() {
+      AddressConnections addressConnections = connections.get(address);
+      if (addressConnections == null) {
+        return 0;
+      }
+      synchronized (addressConnections) {
+        return addressConnections.promises.size();
+      }
+    }
+
+    @Override
+    public boolean isClosed() {
+      return poolClosed;
+    }
+  }
+}
@@ -42,16 +42,24 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Guice module for Thrift.
  */
 public class ThriftModule extends AbstractModule {
   private static final Object lock = new Object();
+  private static final ClientPoolOptions HOST_CONNECTION_OPTIONS = new ClientPoolOptions()
+      .setMaxClients(8)
+      .setMaxWaiters(100)
+      .setTimeout(30, TimeUnit.SECONDS)
+      .setServiceName("Host");
+  private static final long HOST_CONNECTION_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
   private volatile SecureRandom secureRandom;
   private volatile TProtocolFactory tProtocolFactory;
   private TAsyncSSLClientManager tAsyncSSLClientManager;
   private volatile ScheduledExecutorService scheduledExecutorService;
+  private volatile HostConnectionCache<Host.AsyncSSLClient> hostConnectionCache;
   private final SSLContext sslContext;
 
   public ThriftModule(SSLContext sslContext) {
@@ -210,6 +218,7 @@ public class ThriftModule extends AbstractModule {
 
   /**
    * Creates a HostClientFactory of the given type.
+   * The host clients share the connections of a single {@link HostConnectionCache}.
    *
    * @return
    * @throws IOException
@@ -220,7 +229,27 @@ public class ThriftModule extends AbstractModule {
     ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory = getClientPoolFactory(tAsyncSSLClientFactory);
     ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory = getClientProxyFactory(type);
 
-    return new HostClientFactoryImpl(clientPoolFactory, clientProxyFactory);
+    return new HostClientFactoryImpl(clientPoolFactory, clientProxyFactory,
+        getHostConnectionCache(tAsyncSSLClientFactory));
+  }
+
+  private HostConnectionCache<Host.AsyncSSLClient> getHostConnectionCache(
+      TAsyncSSLClientFactory<Host.AsyncSSLClient> tAsyncSSLClientFactory) {
+    if (hostConnectionCache == null) {
+      synchronized (lock) {
+        if (hostConnectionCache == null) {
+          hostConnectionCache = new HostConnectionCache<>(
+              tAsyncSSLClientFactory,
+              sslContext,
+              getTProtocolFactory(),
+              getThriftFactory(),
+              getClientPoolTimer(),
+              HOST_CONNECTION_OPTIONS,
+              HOST_CONNECTION_IDLE_TIMEOUT_MS);
+        }
+      }
+    }
+    return hostConnectionCache;
   }
 
   /**
@@ -229,17 +258,20 @@ public class ThriftModule extends AbstractModule {
   private static class HostClientFactoryImpl implements HostClientFactory {
     private ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory;
     private ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory;
+    private HostConnectionCache<Host.AsyncSSLClient> connectionCache;
 
     private HostClientFactoryImpl(
         ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory,
-        ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory) {
+        ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory,
+        HostConnectionCache<Host.AsyncSSLClient> connectionCache) {
       this.clientPoolFactory = clientPoolFactory;
       this.clientProxyFactory = clientProxyFactory;
+      this.connectionCache = connectionCache;
     }
 
     @Override
     public HostClient create() {
-      return new HostClient(clientProxyFactory, clientPoolFactory);
+      return new HostClient(clientProxyFactory, clientPoolFactory, connectionCache);
     }
   }
 
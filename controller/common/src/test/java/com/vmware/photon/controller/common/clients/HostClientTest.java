@@ -149,7 +149,6 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -1948,7 +1947,7 @@ public class HostClientTest {
               .onComplete(null);
           return null;
         }
-      }).when(clientProxy).set_host_mode(any(SetHostModeRequest.class), eq(handler));
+      }).when(clientProxy).set_host_mode(any(SetHostModeRequest.class), any(AsyncMethodCallback.class));
 
       hostClient.setClientProxy(clientProxy);
       hostClient.setHostMode(HostMode.ENTERING_MAINTENANCE, handler);
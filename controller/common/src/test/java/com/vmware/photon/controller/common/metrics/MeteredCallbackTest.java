@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.metrics;
+
+import com.vmware.photon.controller.common.clients.HostClient;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests {@link MeteredCallback}.
+ */
+public class MeteredCallbackTest {
+
+  private static final String RPC_NAME = name(HostClient.class, "create-vm");
+
+  private MetricRegistry registry;
+  private AsyncMethodCallback<Object> callback;
+
+  @BeforeMethod
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    registry = new MetricRegistry();
+    callback = mock(AsyncMethodCallback.class);
+  }
+
+  @Test
+  public void testCompletedCall() {
+    MeteredCallback<Object> meteredCallback =
+        new MeteredCallback<>(HostClient.class, "create_vm", "10.0.0.1", callback, registry);
+    assertThat(registry.getTimers().isEmpty(), is(true));
+
+    Object response = new Object();
+    meteredCallback.onComplete(response);
+
+    verify(callback).onComplete(response);
+    assertThat(registry.timer(name(RPC_NAME, "10_0_0_1", MeteredCallback.RESULT_COMPLETE)).getCount(), is(1L));
+  }
+
+  @Test
+  public void testFailedCall() {
+    MeteredCallback<Object> meteredCallback =
+        new MeteredCallback<>(HostClient.class, "create_vm", "10.0.0.1", callback, registry);
+
+    TimeoutException exception = new TimeoutException();
+    meteredCallback.onError(exception);
+
+    verify(callback).onError(exception);
+    assertThat(registry.timer(name(RPC_NAME, "10_0_0_1", "TimeoutException")).getCount(), is(1L));
+  }
+
+  @Test
+  public void testUnknownTarget() {
+    new MeteredCallback<>(HostClient.class, "create_vm", null, callback, registry).onComplete(null);
+
+    assertThat(registry.timer(name(RPC_NAME, "unknown", MeteredCallback.RESULT_COMPLETE)).getCount(), is(1L));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.metrics;
+
+import com.vmware.photon.controller.common.clients.HostClient;
+
+import com.codahale.metrics.MetricRegistry;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+/**
+ * Tests {@link RpcMetricInterceptor}.
+ */
+public class RpcMetricInterceptorTest {
+
+  private static final String RPC_NAME = name(HostClient.class, "create-vm");
+
+  private MetricRegistry registry;
+  private RpcMetricInterceptor interceptor;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    Method method = HostClient.class.getMethod("createVm", String.class, Map.class, AsyncMethodCallback.class);
+    registry = new MetricRegistry();
+    interceptor = new RpcMetricInterceptor(HostClient.class, method, registry);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCall() throws Throwable {
+    AsyncMethodCallback<Object> callback = mock(AsyncMethodCallback.class);
+    Object[] arguments = new Object[]{"reservation", null, callback};
+    interceptor.invoke(buildInvocation(arguments));
+
+    // The clients record the completion of the call themselves.
+    assertThat(arguments[2], sameInstance((Object) callback));
+    assertThat(registry.timer(RPC_NAME).getCount(), is(1L));
+    assertThat(registry.getTimers().size(), is(1));
+  }
+
+  @Test
+  public void testFailedCall() throws Throwable {
+    MethodInvocation invocation = buildInvocation(new Object[]{"reservation", null});
+    doThrow(new IllegalStateException()).when(invocation).proceed();
+
+    try {
+      interceptor.invoke(invocation);
+      fail("call should have failed");
+    } catch (IllegalStateException e) {
+    }
+
+    assertThat(registry.timer(RPC_NAME).getCount(), is(1L));
+    assertThat(registry.meter(name(HostClient.class, "create-vm-exceptions", "exceptions")).getCount(), is(1L));
+  }
+
+  private MethodInvocation buildInvocation(Object[] arguments) throws Throwable {
+    MethodInvocation invocation = mock(MethodInvocation.class);
+    doReturn(arguments).when(invocation).getArguments();
+    doReturn(HostClient.class.getMethod("getHostIp")).when(invocation).getMethod();
+    return invocation;
+  }
+}
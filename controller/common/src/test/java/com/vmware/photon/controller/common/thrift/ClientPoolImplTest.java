@@ -39,18 +39,22 @@ import static org.testng.Assert.fail;
 
 import javax.net.ssl.SSLContext;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests {@link ClientPoolImpl}.
@@ -75,10 +79,13 @@ public class ClientPoolImplTest extends PowerMockTestCase {
 
   private SSLContext sslContext = KeyStoreUtils.acceptAllCerts(KeyStoreUtils.THRIFT_PROTOCOL);
 
+  private AtomicInteger connectFailures;
+
   @BeforeMethod
   public void setUp() throws Throwable {
     socketAddressField = org.apache.thrift.transport.TNonBlockingSSLSocket.class.getDeclaredField("socketAddress_");
     socketAddressField.setAccessible(true);
+    connectFailures = new AtomicInteger();
   }
 
   @AfterMethod
@@ -192,6 +199,77 @@ public class ClientPoolImplTest extends PowerMockTestCase {
     }
   }
 
+  @Test
+  public void testAcquireTimesOut() throws Throwable {
+    TestServerSet serverSet = new TestServerSet();
+    serverSet.addServer(InetSocketAddress.createUnresolved("/127.0.0.1", 80));
+
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    try {
+      List<Echoer.AsyncSSLClient> clients = new ArrayList<>();
+      List<Echoer.AsyncSSLClient> acquiredClients = new ArrayList<>();
+      setupPool(1, 10, serverSet, clients, acquiredClients, timer, 50);
+
+      ListenableFuture<Echoer.AsyncSSLClient> first = pool.acquire();
+      ListenableFuture<Echoer.AsyncSSLClient> second = pool.acquire();
+      for (ListenableFuture<Echoer.AsyncSSLClient> future : Arrays.asList(first, second)) {
+        try {
+          Futures.get(future, 1, TimeUnit.SECONDS, ClientPoolException.class);
+          fail("acquire client should have timed out");
+        } catch (ClientPoolException ex) {
+          assertThat(ex.getCause() instanceof ClientPoolException, is(true));
+        }
+      }
+      assertThat(pool.getPromises().isEmpty(), is(true));
+
+      // a released client goes back to the pool since nobody is waiting anymore
+      pool.release(acquiredClients.get(0), true);
+      assertThat(pool.getAvailableClients().size(), is(1));
+    } finally {
+      timer.shutdownNow();
+    }
+  }
+
+  /**
+   * A failed connect for the head waiter frees its slot again, so the next waiters must still be served.
+   */
+  @Test
+  public void testConnectFailsWithWaitersQueued() throws Throwable {
+    TestServerSet serverSet = new TestServerSet();
+    serverSet.addServer(InetSocketAddress.createUnresolved("/127.0.0.1", 80));
+
+    List<Echoer.AsyncSSLClient> clients = new ArrayList<>();
+    List<Echoer.AsyncSSLClient> acquiredClients = new ArrayList<>();
+    setupPool(2, 10, serverSet, clients, acquiredClients);
+
+    List<ListenableFuture<Echoer.AsyncSSLClient>> waiters = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      waiters.add(pool.acquire());
+    }
+    assertThat(pool.getWaiters(), is(3));
+
+    // The released client is dropped, so its slot goes to a new connection for the head waiter, which fails
+    connectFailures.set(1);
+    pool.release(acquiredClients.remove(0), false);
+
+    try {
+      Futures.get(waiters.get(0), 100, TimeUnit.MILLISECONDS, ClientPoolException.class);
+      fail("acquire client should have failed to connect");
+    } catch (ClientPoolException ex) {
+      assertThat(ex.getCause() instanceof IOException, is(true));
+    }
+
+    Echoer.AsyncSSLClient second = Futures.get(waiters.get(1), 100, TimeUnit.MILLISECONDS, ClientPoolException.class);
+    assertThat(waiters.get(2).isDone(), is(false));
+
+    pool.release(acquiredClients.remove(0), true);
+    Echoer.AsyncSSLClient third = Futures.get(waiters.get(2), 100, TimeUnit.MILLISECONDS, ClientPoolException.class);
+    assertThat(pool.getWaiters(), is(0));
+
+    pool.release(second, true);
+    pool.release(third, true);
+  }
+
   private Set<InetSocketAddress> setupPool(
       int poolMaxClients,
       int poolMaxWaiter,
@@ -199,6 +277,18 @@ public class ClientPoolImplTest extends PowerMockTestCase {
       final List<Echoer.AsyncSSLClient> clients,
       List<Echoer.AsyncSSLClient> acquiredClients)
       throws ClientPoolException {
+    return setupPool(poolMaxClients, poolMaxWaiter, serverSet, clients, acquiredClients, executor, 0);
+  }
+
+  private Set<InetSocketAddress> setupPool(
+      int poolMaxClients,
+      int poolMaxWaiter,
+      TestServerSet serverSet,
+      final List<Echoer.AsyncSSLClient> clients,
+      List<Echoer.AsyncSSLClient> acquiredClients,
+      ScheduledExecutorService timer,
+      long timeoutMs)
+      throws ClientPoolException {
 
     final Set<InetSocketAddress> usedServers = new HashSet<>();
     doAnswer(new Answer<Object>() {
@@ -207,6 +297,9 @@ public class ClientPoolImplTest extends PowerMockTestCase {
         assertThat(invocation.getArguments().length, is(2));
         Object socket = invocation.getArguments()[1];
         assertThat(socket.getClass().getName(), is("org.apache.thrift.transport.TNonBlockingSSLSocket"));
+        if (connectFailures.getAndUpdate((failures) -> Math.max(0, failures - 1)) > 0) {
+          throw new IOException("connect failed");
+        }
         usedServers.add((InetSocketAddress) socketAddressField.get(socket));
         Echoer.AsyncSSLClient client = createClient("client-" + clients.size());
         clients.add(client);
@@ -214,7 +307,10 @@ public class ClientPoolImplTest extends PowerMockTestCase {
       }
     }).when(factory).create(any(TProtocolFactory.class), any(TNonBlockingSSLSocket.class));
 
-    ClientPoolOptions options = new ClientPoolOptions().setMaxClients(poolMaxClients).setMaxWaiters(poolMaxWaiter);
+    ClientPoolOptions options = new ClientPoolOptions()
+        .setMaxClients(poolMaxClients)
+        .setMaxWaiters(poolMaxWaiter)
+        .setTimeout(timeoutMs, TimeUnit.MILLISECONDS);
 
     pool = new ClientPoolImpl<>(
         new SecureRandom(),
@@ -222,7 +318,7 @@ public class ClientPoolImplTest extends PowerMockTestCase {
         sslContext,
         protocolFactory,
         thriftFactory,
-        executor,
+        timer,
         serverSet,
         options);
 
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.vmware.photon.controller.common.ssl.KeyStoreUtils;
+
+import com.example.echo.Echoer;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.thrift.async.TAsyncSSLClient;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonBlockingSSLSocket;
+import org.apache.thrift.transport.TNonblockingSSLTransport;
+import org.mockito.Mock;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Matchers.any;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Performance tests for {@link ClientPoolImpl}.
+ * <p/>
+ * Runs acquire/release cycles from several threads against the pool without doing any RPC, so the results show
+ * the cost of the pool bookkeeping and of contention on the pool.
+ */
+public class ClientPoolPerfTest extends PowerMockTestCase {
+  private static final Logger logger = LoggerFactory.getLogger(ClientPoolPerfTest.class);
+
+  @Mock
+  private TAsyncSSLClientFactory<Echoer.AsyncSSLClient> factory;
+
+  @Mock
+  private ScheduledExecutorService executor;
+
+  @Mock
+  private TProtocolFactory protocolFactory;
+
+  @Mock
+  private ThriftFactory thriftFactory;
+
+  @DataProvider(name = "default")
+  public Object[][] createDefault() {
+    return new Object[][]{
+        // threads, servers, max clients
+        {1, 1, 1},
+        {4, 4, 4},
+        {8, 4, 8},
+        {8, 16, 16},
+        {16, 4, 4},
+    };
+  }
+
+  @DataProvider(name = "comparison")
+  public Object[][] createComparison() {
+    return new Object[][]{
+        // threads, servers, max clients
+        {8, 4, 8},
+        {16, 4, 4},
+    };
+  }
+
+  /**
+   * Measures acquire/release throughput. Disabled by default.
+   */
+  @Test(dataProvider = "default", enabled = false)
+  public void testPerformance(int numThreads, int numServers, int maxClients) throws Exception {
+    ClientPoolImpl<Echoer.AsyncSSLClient> pool = createPool(numThreads, numServers, maxClients);
+    double throughput = runCycles(pool, numThreads, 1000000);
+    pool.close();
+
+    logger.info("{} threads, {} servers, {} clients", numThreads, numServers, maxClients);
+    logger.info("{} cycles/sec", throughput);
+  }
+
+  /**
+   * Compares the throughput of the pool with the same pool behind a single monitor, which is how every acquire
+   * and release used to be serialized. Runs few enough cycles to be part of the regular test run, and checks that
+   * every client was handed back to the pool.
+   */
+  @Test(dataProvider = "comparison")
+  public void testCompareWithPoolWideLock(int numThreads, int numServers, int maxClients) throws Exception {
+    int numRequests = 20000;
+
+    ClientPoolImpl<Echoer.AsyncSSLClient> lockedPool = createPool(numThreads, numServers, maxClients);
+    double lockedThroughput = runCycles(new LockedClientPool<>(lockedPool), numThreads, numRequests);
+    assertThat(lockedPool.getWaiters(), is(0));
+    lockedPool.close();
+
+    ClientPoolImpl<Echoer.AsyncSSLClient> pool = createPool(numThreads, numServers, maxClients);
+    double throughput = runCycles(pool, numThreads, numRequests);
+    assertThat(pool.getWaiters(), is(0));
+    assertThat(pool.getPromises().isEmpty(), is(true));
+    assertThat(pool.getAvailableClients().size(), greaterThanOrEqualTo(numServers));
+    assertThat(pool.getAvailableClients().size(), lessThanOrEqualTo(maxClients));
+    pool.close();
+
+    logger.info("{} threads, {} servers, {} clients, {} acquire/release cycles/thread",
+        numThreads, numServers, maxClients, numRequests);
+    logger.info("pool-wide lock: {} cycles/sec, lock-free: {} cycles/sec", lockedThroughput, throughput);
+  }
+
+  private ClientPoolImpl<Echoer.AsyncSSLClient> createPool(int numThreads, int numServers, int maxClients) {
+    doAnswer(invocation -> new Echoer.AsyncSSLClient(
+        protocolFactory, null, (TNonblockingSSLTransport) invocation.getArguments()[1]))
+        .when(factory).create(any(TProtocolFactory.class), any(TNonBlockingSSLSocket.class));
+
+    TestServerSet serverSet = new TestServerSet();
+    for (int i = 0; i < numServers; i++) {
+      serverSet.addServer(InetSocketAddress.createUnresolved("/127.0.0.1", 80 + i));
+    }
+
+    return new ClientPoolImpl<>(
+        new SecureRandom(),
+        factory,
+        KeyStoreUtils.acceptAllCerts(KeyStoreUtils.THRIFT_PROTOCOL),
+        protocolFactory,
+        thriftFactory,
+        executor,
+        serverSet,
+        new ClientPoolOptions().setMaxClients(maxClients).setMaxWaiters(numThreads));
+  }
+
+  /**
+   * Runs acquire/release cycles from the given number of threads and returns the number of cycles per second.
+   */
+  private double runCycles(ClientPool<Echoer.AsyncSSLClient> pool, int numThreads, int numRequests)
+      throws Exception {
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Stopwatch watch = Stopwatch.createStarted();
+    List<Thread> workers = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      Thread worker = new Thread(() -> {
+        try {
+          for (int j = 0; j < numRequests; j++) {
+            Echoer.AsyncSSLClient client = pool.acquire().get();
+            pool.release(client, true);
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    watch.stop();
+
+    if (failure.get() != null) {
+      throw new AssertionError("acquire/release failed", failure.get());
+    }
+    return (double) numThreads * numRequests / Math.max(1, watch.elapsed(TimeUnit.MILLISECONDS)) * 1000;
+  }
+
+  /**
+   * Serializes every call to the pool it wraps on a single monitor.
+   */
+  private static class LockedClientPool<C extends TAsyncSSLClient> implements ClientPool<C> {
+    private final ClientPool<C> pool;
+
+    LockedClientPool(ClientPool<C> pool) {
+      this.pool = pool;
+    }
+
+    @Override
+    public synchronized ListenableFuture<C> acquire() {
+      return pool.acquire();
+    }
+
+    @Override
+    public synchronized void close() {
+      pool.close();
+    }
+
+    @Override
+    public synchronized void release(C client, boolean healthy) {
+      pool.release(client, healthy);
+    }
+
+    @Override
+    public synchronized int getWaiters() {
+      return pool.getWaiters();
+    }
+
+    @Override
+    public synchronized boolean isClosed() {
+      return pool.isClosed();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.vmware.photon.controller.common.ssl.KeyStoreUtils;
+
+import com.example.echo.Echoer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonBlockingSSLSocket;
+import org.apache.thrift.transport.TNonblockingSSLTransport;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.doReturn;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.fail;
+
+import javax.net.ssl.SSLContext;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link HostConnectionCache}.
+ */
+public class HostConnectionCacheTest extends PowerMockTestCase {
+
+  private static final InetSocketAddress ADDRESS = InetSocketAddress.createUnresolved("127.0.0.1", 8835);
+
+  @Mock
+  private TAsyncSSLClientFactory<Echoer.AsyncSSLClient> factory;
+
+  @Mock
+  private ScheduledExecutorService executor;
+
+  @Mock
+  private ScheduledFuture<?> sweeper;
+
+  @Mock
+  private TProtocolFactory protocolFactory;
+
+  @Mock
+  private ThriftFactory thriftFactory;
+
+  private SSLContext sslContext = KeyStoreUtils.acceptAllCerts(KeyStoreUtils.THRIFT_PROTOCOL);
+
+  private List<Echoer.AsyncSSLClient> clients;
+
+  private HostConnectionCache<Echoer.AsyncSSLClient> cache;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    clients = new ArrayList<>();
+    doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        Echoer.AsyncSSLClient client = mock(Echoer.AsyncSSLClient.class);
+        when(client.toString()).thenReturn("client-" + clients.size());
+        clients.add(client);
+        return client;
+      }
+    }).when(factory).create(any(TProtocolFactory.class), any(TNonBlockingSSLSocket.class));
+    doReturn(sweeper).when(executor)
+        .scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+
+    ClientPoolOptions options = new ClientPoolOptions().setMaxClients(2).setMaxWaiters(1);
+    cache = new HostConnectionCache<Echoer.AsyncSSLClient>(
+        factory, sslContext, protocolFactory, thriftFactory, executor, options, 0) {
+      @Override
+      protected boolean isHealthy(Echoer.AsyncSSLClient client, TNonblockingSSLTransport transport) {
+        // The test transports never connect, so only the client state is checked.
+        return !client.hasError();
+      }
+    };
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Test
+  public void testReleasedClientIsReused() throws Exception {
+    long handshakes = cache.getHandshakeCount();
+    long hits = cache.getHitCount();
+    ClientPool<Echoer.AsyncSSLClient> pool = cache.getPool(ADDRESS);
+
+    Echoer.AsyncSSLClient client = acquire(pool);
+    pool.release(client, true);
+    assertThat(cache.getIdleConnectionCount(ADDRESS), is(1));
+
+    assertThat(acquire(pool), is(client));
+    assertThat(cache.getHandshakeCount() - handshakes, is(1L));
+    assertThat(cache.getHitCount() - hits, is(1L));
+  }
+
+  @Test
+  public void testClientIsSharedAcrossPools() throws Exception {
+    ClientPool<Echoer.AsyncSSLClient> pool = cache.getPool(ADDRESS);
+    Echoer.AsyncSSLClient client = acquire(pool);
+    pool.release(client, true);
+    pool.close();
+
+    assertThat(pool.isClosed(), is(true));
+    assertThat(acquire(cache.getPool(ADDRESS)), is(client));
+  }
+
+  @Test
+  public void testUnhealthyReleaseClosesConnection() throws Exception {
+    long evictions = cache.getEvictionCount();
+    ClientPool<Echoer.AsyncSSLClient> pool = cache.getPool(ADDRESS);
+
+    Echoer.AsyncSSLClient client = acquire(pool);
+    pool.release(client, false);
+
+    assertThat(cache.getOpenConnectionCount(ADDRESS), is(0));
+    assertThat(cache.getEvictionCount() - evictions, is(1L));
+    assertThat(acquire(pool), not(client));
+  }
+
+  @Test
+  public void testIdleClientWithErrorIsNotReused() throws Exception {
+    ClientPool<Echoer.AsyncSSLClient> pool = cache.getPool(ADDRESS);
+
+    Echoer.AsyncSSLClient client = acquire(pool);
+    pool.release(client, true);
+    when(client.hasError()).thenReturn(true);
+
+    assertThat(acquire(pool), not(client));
+    assertThat(clients.size(), is(2));
+    assertThat(cache.getOpenConnectionCount(ADDRESS), is(1));
+  }
+
+  @Test
+  public void testWaiterGetsReleasedClient() throws Exception {
+    ClientPool<Echoer.AsyncSSLClient> pool = cache.getPool(ADDRESS);
+
+    Echoer.AsyncSSLClient client1 = acquire(pool);
+    Echoer.AsyncSSLClient client2 = acquire(pool);
+    assertThat(client1, not(client2));
+
+    ListenableFuture<Echoer.AsyncSSLClient> waiter = pool.acquire();
+    assertThat(waiter.isDone(), is(false));
+    assertThat(pool.getWaiters(), is(1));
+
+    try {
+      Futures.get(pool.acquire(), 100, TimeUnit.MILLISECONDS, ClientPoolException.class);
+      fail("acquire client should have failed with too many waiters");
+    } catch (ClientPoolException ex) {
+      assertThat(ex.getCause().getMessage(), is("Too many waiters"));
+    }
+
+    pool.release(client2, true);
+    assertThat(waiter.get(), is(client2));
+    assertThat(pool.getWaiters(), is(0));
+  }
+
+  @Test
+  public void testWaiterGetsNewClientWhenReleasedClientIsUnhealthy() throws Exception {
+    ClientPool<Echoer.AsyncSSLClient> pool = cache.getPool(ADDRESS);
+
+    acquire(pool);
+    Echoer.AsyncSSLClient client2 = acquire(pool);
+    ListenableFuture<Echoer.AsyncSSLClient> waiter = pool.acquire();
+
+    pool.release(client2, false);
+    assertThat(waiter.get(), is(clients.get(2)));
+    assertThat(cache.getOpenConnectionCount(ADDRESS), is(2));
+  }
+
+  @Test
+  public void testIdleConnectionsAreEvicted() throws Exception {
+    long evictions = cache.getEvictionCount();
+    ClientPool<Echoer.AsyncSSLClient> pool = cache.getPool(ADDRESS);
+
+    Echoer.AsyncSSLClient client1 = acquire(pool);
+    Echoer.AsyncSSLClient client2 = acquire(pool);
+    pool.release(client1, true);
+
+    cache.evictIdleConnections();
+    assertThat(cache.getIdleConnectionCount(ADDRESS), is(0));
+    assertThat(cache.getOpenConnectionCount(ADDRESS), is(1));
+    assertThat(cache.getEvictionCount() - evictions, is(1L));
+
+    pool.release(client2, true);
+    cache.evictIdleConnections();
+    assertThat(cache.getOpenConnectionCount(ADDRESS), is(0));
+    assertThat(acquire(pool), not(client2));
+  }
+
+  private Echoer.AsyncSSLClient acquire(ClientPool<Echoer.AsyncSSLClient> pool) throws ClientPoolException {
+    return Futures.get(pool.acquire(), 100, TimeUnit.MILLISECONDS, ClientPoolException.class);
+  }
+}
@@ -36,6 +36,18 @@ public class SchedulingConfig {
   @JsonProperty("utilization_transfer_ratio")
   private double utilizationTransferRatio = 9.0;
 
+  @Min(0)
+  @Max(32)
+  @JsonProperty("place_quorum_count")
+  private int placeQuorumCount = 0;
+
+  @Min(0)
+  @JsonProperty("place_quorum_timeout_ms")
+  private long placeQuorumTimeoutMs = 0;
+
+  @JsonProperty("host_capacity_index_enabled")
+  private boolean hostCapacityIndexEnabled = false;
+
   public long getPlaceTimeoutMs() {
     return placeTimeoutMs;
   }
@@ -59,4 +71,28 @@ public class SchedulingConfig {
   public void setUtilizationTransferRatio(double utilizationTransferRatio) {
     this.utilizationTransferRatio = utilizationTransferRatio;
   }
+
+  public int getPlaceQuorumCount() {
+    return placeQuorumCount;
+  }
+
+  public void setPlaceQuorumCount(int placeQuorumCount) {
+    this.placeQuorumCount = placeQuorumCount;
+  }
+
+  public long getPlaceQuorumTimeoutMs() {
+    return placeQuorumTimeoutMs;
+  }
+
+  public void setPlaceQuorumTimeoutMs(long placeQuorumTimeoutMs) {
+    this.placeQuorumTimeoutMs = placeQuorumTimeoutMs;
+  }
+
+  public boolean isHostCapacityIndexEnabled() {
+    return hostCapacityIndexEnabled;
+  }
+
+  public void setHostCapacityIndexEnabled(boolean hostCapacityIndexEnabled) {
+    this.hostCapacityIndexEnabled = hostCapacityIndexEnabled;
+  }
 }
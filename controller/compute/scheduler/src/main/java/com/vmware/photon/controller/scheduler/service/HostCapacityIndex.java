@@ -0,0 +1,374 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+import com.codahale.metrics.Counter;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory index of the HostService and DatastoreService documents in the local cloud-store index.
+ *
+ * The index is kept current with two continuous queries (one per document kind). The subscriptions are
+ * started before the initial load of the documents so that no update is missed; both paths keep whichever
+ * version of a document was updated last. The index only holds the fields the scheduler needs to resolve
+ * resource constraints.
+ *
+ * Until both kinds have been loaded the index reports that it is not ready, and the
+ * {@link InMemoryConstraintChecker} falls back to querying cloud-store. A failure to create a query, to subscribe
+ * or to load is retried with an exponential backoff and counted in the subscription-failures metric.
+ *
+ * The continuous queries expire after a bounded time. Each one is replaced by a new query and subscription half
+ * way through its lifetime, so an update is always delivered by at least one of them.
+ */
+public class HostCapacityIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(HostCapacityIndex.class);
+
+  private static final long CONTINUOUS_QUERY_EXPIRATION_MICROS = TimeUnit.HOURS.toMicros(1);
+
+  private static final long CONTINUOUS_QUERY_RENEWAL_MICROS = CONTINUOUS_QUERY_EXPIRATION_MICROS / 2;
+
+  private static final long INITIAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final Counter subscriptionFailures =
+      DefaultMetricRegistry.REGISTRY.counter(name(HostCapacityIndex.class, "subscription-failures"));
+
+  private static final String DELETE_ACTION = Operation.Action.DELETE.toString();
+
+  /**
+   * The subset of a HostService document used for placement. Instances are immutable.
+   */
+  public static class HostEntry {
+    public final String id;
+    public final ServerAddress address;
+    public final HostState state;
+    public final AgentState agentState;
+    public final String availabilityZoneId;
+    public final Set<String> reportedDatastores;
+    public final Set<String> reportedNetworks;
+    public final Set<String> usageTags;
+    final long documentUpdateTimeMicros;
+
+    HostEntry(HostService.State host) {
+      this.id = ServiceUtils.getIDFromDocumentSelfLink(host.documentSelfLink);
+      this.address = new ServerAddress(host.hostAddress, host.agentPort);
+      this.state = host.state;
+      this.agentState = host.agentState;
+      this.availabilityZoneId = host.availabilityZoneId;
+      this.reportedDatastores = immutableCopy(host.reportedDatastores);
+      this.reportedNetworks = immutableCopy(host.reportedNetworks);
+      this.usageTags = immutableCopy(host.usageTags);
+      this.documentUpdateTimeMicros = host.documentUpdateTimeMicros;
+    }
+  }
+
+  /**
+   * The tags of a DatastoreService document.
+   */
+  private static class DatastoreEntry {
+    final Set<String> tags;
+    final long documentUpdateTimeMicros;
+
+    DatastoreEntry(DatastoreService.State datastore) {
+      this.tags = immutableCopy(datastore.tags);
+      this.documentUpdateTimeMicros = datastore.documentUpdateTimeMicros;
+    }
+  }
+
+  private final ServiceHost xenonHost;
+  private final Map<String, HostEntry> hosts = new ConcurrentHashMap<>();
+  private final Map<String, DatastoreEntry> datastores = new ConcurrentHashMap<>();
+  private final AtomicInteger loadedKinds = new AtomicInteger(0);
+  private volatile boolean ready;
+
+  /**
+   * The continuous query and subscription for one document kind.
+   */
+  private static class KindSubscription {
+    final Class<? extends ServiceDocument> kind;
+    final Consumer<Object> changeHandler;
+    volatile String queryTaskLink;
+    volatile URI notificationTarget;
+    volatile boolean loaded;
+
+    KindSubscription(Class<? extends ServiceDocument> kind, Consumer<Object> changeHandler) {
+      this.kind = kind;
+      this.changeHandler = changeHandler;
+    }
+  }
+
+  public HostCapacityIndex(ServiceHost xenonHost) {
+    this.xenonHost = xenonHost;
+  }
+
+  /**
+   * Subscribes to changes of the host and datastore documents and loads their current state.
+   * This must be called after the Xenon host has started.
+   */
+  public void start() {
+    subscribeAndLoad(new KindSubscription(HostService.State.class, this::applyHostChange), INITIAL_RETRY_DELAY_MILLIS);
+    subscribeAndLoad(new KindSubscription(DatastoreService.State.class, this::applyDatastoreChange),
+        INITIAL_RETRY_DELAY_MILLIS);
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  public int getHostCount() {
+    return hosts.size();
+  }
+
+  /**
+   * Returns a weakly consistent view of all indexed hosts.
+   */
+  public Collection<HostEntry> getHosts() {
+    return Collections.unmodifiableCollection(hosts.values());
+  }
+
+  /**
+   * Returns the IDs of the datastores that have at least one of the given tags.
+   */
+  public Set<String> getDatastoresWithAnyTag(Collection<String> tags) {
+    Set<String> result = new HashSet<>();
+    for (Map.Entry<String, DatastoreEntry> entry : datastores.entrySet()) {
+      if (!Collections.disjoint(entry.getValue().tags, tags)) {
+        result.add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  @VisibleForTesting
+  void updateHost(HostService.State host) {
+    HostEntry entry = new HostEntry(host);
+    hosts.merge(entry.id, entry,
+        (current, update) -> update.documentUpdateTimeMicros >= current.documentUpdateTimeMicros ? update : current);
+  }
+
+  @VisibleForTesting
+  void removeHost(String documentSelfLink) {
+    hosts.remove(ServiceUtils.getIDFromDocumentSelfLink(documentSelfLink));
+  }
+
+  @VisibleForTesting
+  void updateDatastore(DatastoreService.State datastore) {
+    DatastoreEntry entry = new DatastoreEntry(datastore);
+    datastores.merge(ServiceUtils.getIDFromDocumentSelfLink(datastore.documentSelfLink), entry,
+        (current, update) -> update.documentUpdateTimeMicros >= current.documentUpdateTimeMicros ? update : current);
+  }
+
+  @VisibleForTesting
+  void removeDatastore(String documentSelfLink) {
+    datastores.remove(ServiceUtils.getIDFromDocumentSelfLink(documentSelfLink));
+  }
+
+  @VisibleForTesting
+  void setReady(boolean ready) {
+    this.ready = ready;
+  }
+
+  private void applyHostChange(Object document) {
+    HostService.State host = Utils.fromJson(document, HostService.State.class);
+    if (DELETE_ACTION.equals(host.documentUpdateAction)) {
+      removeHost(host.documentSelfLink);
+    } else {
+      updateHost(host);
+    }
+  }
+
+  private void applyDatastoreChange(Object document) {
+    DatastoreService.State datastore = Utils.fromJson(document, DatastoreService.State.class);
+    if (DELETE_ACTION.equals(datastore.documentUpdateAction)) {
+      removeDatastore(datastore.documentSelfLink);
+    } else {
+      updateDatastore(datastore);
+    }
+  }
+
+  /**
+   * Creates a continuous query for the given document kind and subscribes to it. The query and subscription it
+   * replaces, if any, are removed once the new subscription is in place. The current documents of the kind are loaded
+   * after the first subscription.
+   */
+  private void subscribeAndLoad(KindSubscription subscription, long retryDelayMillis) {
+    Class<? extends ServiceDocument> kind = subscription.kind;
+    QueryTask continuousQuery = QueryTask.Builder.create()
+        .setQuery(QueryTask.Query.Builder.create().addKindFieldClause(kind).build())
+        .addOption(QueryTask.QuerySpecification.QueryOption.CONTINUOUS)
+        .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT)
+        .build();
+    continuousQuery.documentExpirationTimeMicros = Utils.getNowMicrosUtc() + CONTINUOUS_QUERY_EXPIRATION_MICROS;
+
+    Operation createQuery = Operation.createPost(UriUtils.buildUri(xenonHost, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+        .setBody(continuousQuery)
+        .setReferer(xenonHost.getUri())
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            retry("Failed to create continuous query for " + kind.getSimpleName(), ex,
+                () -> subscribeAndLoad(subscription, nextRetryDelay(retryDelayMillis)), retryDelayMillis);
+            return;
+          }
+
+          String queryTaskLink = op.getBody(QueryTask.class).documentSelfLink;
+          URI[] notificationTarget = new URI[1];
+          Operation subscribe = Operation.createPost(UriUtils.buildUri(xenonHost, queryTaskLink))
+              .setReferer(xenonHost.getUri())
+              .setCompletion((subscribeOp, subscribeEx) -> {
+                if (subscribeEx != null) {
+                  deleteQuery(queryTaskLink);
+                  retry("Failed to subscribe to " + queryTaskLink, subscribeEx,
+                      () -> subscribeAndLoad(subscription, nextRetryDelay(retryDelayMillis)), retryDelayMillis);
+                  return;
+                }
+
+                replaceSubscription(subscription, queryTaskLink, notificationTarget[0]);
+                if (!subscription.loaded) {
+                  load(subscription, INITIAL_RETRY_DELAY_MILLIS);
+                }
+
+                xenonHost.schedule(() -> subscribeAndLoad(subscription, INITIAL_RETRY_DELAY_MILLIS),
+                    CONTINUOUS_QUERY_RENEWAL_MICROS, TimeUnit.MICROSECONDS);
+              });
+
+          notificationTarget[0] = xenonHost.startSubscriptionService(subscribe, (notification) -> {
+            notification.complete();
+            QueryTask queryTask = notification.getBody(QueryTask.class);
+            if (queryTask.results != null && queryTask.results.documents != null) {
+              queryTask.results.documents.values().forEach(subscription.changeHandler);
+            }
+          });
+        });
+
+    xenonHost.sendRequest(createQuery);
+  }
+
+  private void replaceSubscription(KindSubscription subscription, String queryTaskLink, URI notificationTarget) {
+    String previousQueryTaskLink = subscription.queryTaskLink;
+    URI previousNotificationTarget = subscription.notificationTarget;
+    subscription.queryTaskLink = queryTaskLink;
+    subscription.notificationTarget = notificationTarget;
+
+    if (previousQueryTaskLink != null) {
+      if (previousNotificationTarget != null) {
+        xenonHost.stopSubscriptionService(
+            Operation.createDelete(UriUtils.buildUri(xenonHost, previousQueryTaskLink))
+                .setReferer(xenonHost.getUri()),
+            previousNotificationTarget);
+      }
+      deleteQuery(previousQueryTaskLink);
+    }
+  }
+
+  private void deleteQuery(String queryTaskLink) {
+    xenonHost.sendRequest(Operation.createDelete(UriUtils.buildUri(xenonHost, queryTaskLink))
+        .setReferer(xenonHost.getUri())
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            logger.warn("Failed to delete continuous query {}, it will expire: {}", queryTaskLink, ex.getMessage());
+          }
+        }));
+  }
+
+  private void load(KindSubscription subscription, long retryDelayMillis) {
+    Class<? extends ServiceDocument> kind = subscription.kind;
+    QueryTask loadQuery = QueryTask.Builder.createDirectTask()
+        .setQuery(QueryTask.Query.Builder.create().addKindFieldClause(kind).build())
+        .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT)
+        .build();
+
+    Operation loadOperation = Operation.createPost(UriUtils.buildUri(xenonHost, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+        .setBody(loadQuery)
+        .setReferer(xenonHost.getUri())
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            retry("Failed to load " + kind.getSimpleName() + " documents", ex,
+                () -> load(subscription, nextRetryDelay(retryDelayMillis)), retryDelayMillis);
+            return;
+          }
+
+          QueryTask queryTask = op.getBody(QueryTask.class);
+          if (queryTask.results != null && queryTask.results.documents != null) {
+            queryTask.results.documents.values().forEach(subscription.changeHandler);
+          }
+
+          logger.info("Loaded {} documents into the host capacity index", kind.getSimpleName());
+          if (subscription.loaded) {
+            return;
+          }
+
+          subscription.loaded = true;
+          if (loadedKinds.incrementAndGet() == 2) {
+            ready = true;
+            logger.info("Host capacity index is ready with {} hosts and {} datastores",
+                hosts.size(), datastores.size());
+          }
+        });
+
+    xenonHost.sendRequest(loadOperation);
+  }
+
+  private void retry(String message, Throwable failure, Runnable retry, long retryDelayMillis) {
+    subscriptionFailures.inc();
+    logger.error("{}, retrying in {} ms", message, retryDelayMillis, failure);
+    xenonHost.schedule(retry, retryDelayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static long nextRetryDelay(long retryDelayMillis) {
+    return Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+  }
+
+  @VisibleForTesting
+  static long getSubscriptionFailureCount() {
+    return subscriptionFailures.getCount();
+  }
+
+  private static Set<String> immutableCopy(Set<String> values) {
+    if (values == null || values.isEmpty()) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(new HashSet<>(values));
+  }
+}
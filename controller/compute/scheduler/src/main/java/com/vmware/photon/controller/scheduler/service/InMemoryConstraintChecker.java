@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.common.clients.exceptions.ConstraintMatchingDatastoreNotFoundException;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+import com.vmware.xenon.common.Utils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This scheduler constraint checker answers candidate requests from a {@link HostCapacityIndex} instead of
+ * querying cloud-store for every placement.
+ *
+ * It applies the same rules as {@link CloudStoreConstraintChecker}: only READY hosts with ACTIVE agents are
+ * considered, hosts must carry the CLOUD usage tag unless a MANAGEMENT_ONLY constraint is present, and datastore
+ * tag constraints are resolved to datastore constraints. The candidates are a uniform random sample (reservoir
+ * sampling) of the matching hosts, so unlike the scheduling constant ranges used by the cloud-store checker there
+ * is no bias towards particular hosts.
+ *
+ * While the index is still loading, requests are delegated to the fallback constraint checker.
+ */
+public class InMemoryConstraintChecker implements ConstraintChecker {
+
+  private static final Logger logger = LoggerFactory.getLogger(InMemoryConstraintChecker.class);
+
+  private static final Timer selectionTime =
+      DefaultMetricRegistry.REGISTRY.timer(name(InMemoryConstraintChecker.class, "selection-time"));
+  private static final Meter fallbacks =
+      DefaultMetricRegistry.REGISTRY.meter(name(InMemoryConstraintChecker.class, "fallbacks"));
+
+  private final HostCapacityIndex index;
+  private final ConstraintChecker fallback;
+
+  public InMemoryConstraintChecker(HostCapacityIndex index, ConstraintChecker fallback) {
+    this.index = index;
+    this.fallback = fallback;
+  }
+
+  /**
+   * Synchronous interface to getCandidates().
+   * This should *only* be used by tests, not production code
+   */
+  @Override
+  public Map<String, ServerAddress> getCandidatesSync(List<ResourceConstraint> constraints, int numCandidates) {
+    if (!index.isReady()) {
+      return fallback.getCandidatesSync(constraints, numCandidates);
+    }
+
+    try {
+      return selectCandidates(constraints, numCandidates);
+    } catch (Exception ex) {
+      logger.warn("getCandidates() failed: " + ex);
+      return new HashMap<>();
+    }
+  }
+
+  @Override
+  public void getCandidates(
+      List<ResourceConstraint> constraints,
+      int numCandidates,
+      GetCandidatesCompletion completion) {
+    if (!index.isReady()) {
+      fallbacks.mark();
+      fallback.getCandidates(constraints, numCandidates, completion);
+      return;
+    }
+
+    Map<String, ServerAddress> candidates;
+    try {
+      candidates = selectCandidates(constraints, numCandidates);
+    } catch (Exception ex) {
+      logger.warn("getCandidates() failed: " + ex);
+      completion.handle(new HashMap<>(), ex);
+      return;
+    }
+    completion.handle(candidates, null);
+  }
+
+  private Map<String, ServerAddress> selectCandidates(List<ResourceConstraint> constraints, int numCandidates)
+      throws ConstraintMatchingDatastoreNotFoundException {
+    if (numCandidates <= 0) {
+      throw new IllegalArgumentException("getCandidates called with invalid numCandidates: " + numCandidates);
+    }
+
+    try (Timer.Context timer = selectionTime.time()) {
+      return sampleCandidates(resolveConstraints(constraints), numCandidates);
+    }
+  }
+
+  private Map<String, ServerAddress> sampleCandidates(List<ResourceConstraint> resolvedConstraints,
+                                                      int numCandidates) {
+    boolean managementOnly = resolvedConstraints.stream()
+        .anyMatch(constraint -> constraint.getType() == ResourceConstraintType.MANAGEMENT_ONLY);
+
+    // Reservoir sampling: every matching host has the same chance of being picked
+    List<HostCapacityIndex.HostEntry> sample = new ArrayList<>(numCandidates);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int matches = 0;
+    for (HostCapacityIndex.HostEntry host : index.getHosts()) {
+      if (!matches(host, resolvedConstraints, managementOnly)) {
+        continue;
+      }
+      matches++;
+      if (sample.size() < numCandidates) {
+        sample.add(host);
+      } else {
+        int slot = random.nextInt(matches);
+        if (slot < numCandidates) {
+          sample.set(slot, host);
+        }
+      }
+    }
+
+    Map<String, ServerAddress> candidates = new HashMap<>();
+    for (HostCapacityIndex.HostEntry host : sample) {
+      candidates.put(host.id, host.address);
+    }
+
+    logger.info("Found {} candidate(s) out of {} matching hosts: {}", candidates.size(), matches,
+        Utils.toJson(false, false, candidates.values()));
+    return candidates;
+  }
+
+  /**
+   * Replaces the datastore tag constraints with datastore constraints and drops the null constraints.
+   */
+  private List<ResourceConstraint> resolveConstraints(List<ResourceConstraint> constraints)
+      throws ConstraintMatchingDatastoreNotFoundException {
+    List<ResourceConstraint> resolved = new ArrayList<>();
+    if (constraints == null) {
+      return resolved;
+    }
+
+    for (ResourceConstraint constraint : constraints) {
+      if (constraint == null) {
+        continue;
+      }
+      if (constraint.getType() != ResourceConstraintType.DATASTORE_TAG) {
+        resolved.add(constraint);
+        continue;
+      }
+
+      List<String> tags = constraint.getValues();
+      if (tags == null || tags.isEmpty()) {
+        continue;
+      }
+      Set<String> datastoreIds = index.getDatastoresWithAnyTag(tags);
+      if (datastoreIds.isEmpty()) {
+        throw new ConstraintMatchingDatastoreNotFoundException(
+            "Cannot satisfy constraint for datastore tag(s) '" + tags.toString() + "' found");
+      }
+      ResourceConstraint datastoreConstraint =
+          new ResourceConstraint(ResourceConstraintType.DATASTORE, new ArrayList<>(datastoreIds));
+      if (constraint.isSetNegative() && constraint.isNegative()) {
+        datastoreConstraint.setNegative(true);
+      }
+      resolved.add(datastoreConstraint);
+    }
+    return resolved;
+  }
+
+  private boolean matches(HostCapacityIndex.HostEntry host, List<ResourceConstraint> constraints,
+                          boolean managementOnly) {
+    if (host.state != HostState.READY || host.agentState != AgentState.ACTIVE) {
+      return false;
+    }
+
+    // Resources without a MANAGEMENT_ONLY constraint may only be placed on cloud hosts.
+    if (!managementOnly && !host.usageTags.contains(UsageTag.CLOUD.name())) {
+      return false;
+    }
+
+    for (ResourceConstraint constraint : constraints) {
+      switch (constraint.getType()) {
+        case AVAILABILITY_ZONE:
+          if (!matchesValue(host.availabilityZoneId, constraint)) {
+            return false;
+          }
+          break;
+        case DATASTORE:
+          if (!matchesAny(host.reportedDatastores, constraint)) {
+            return false;
+          }
+          break;
+        case HOST:
+          if (!matchesValue(host.id, constraint)) {
+            return false;
+          }
+          break;
+        case MANAGEMENT_ONLY:
+          if (!host.usageTags.contains(UsageTag.MGMT.name())) {
+            return false;
+          }
+          break;
+        case NETWORK:
+          if (!matchesAny(host.reportedNetworks, constraint)) {
+            return false;
+          }
+          break;
+        case VIRTUAL_NETWORK:
+          // In the virtual network case all hosts are already wired together, so this constraint is ignored.
+          break;
+        default:
+          throw new IllegalStateException("Invalid resource constraint: " + constraint);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks a single-valued host field against a constraint. A constraint without values matches every host.
+   */
+  private static boolean matchesValue(String value, ResourceConstraint constraint) {
+    List<String> values = constraint.getValues();
+    if (values == null || values.isEmpty()) {
+      return true;
+    }
+    boolean found = value != null && values.contains(value);
+    return isNegative(constraint) ? !found : found;
+  }
+
+  /**
+   * Checks a collection host field against a constraint: the host matches when it has any of the values.
+   */
+  private static boolean matchesAny(Collection<String> hostValues, ResourceConstraint constraint) {
+    List<String> values = constraint.getValues();
+    if (values == null || values.isEmpty()) {
+      return true;
+    }
+    boolean found = !Collections.disjoint(hostValues, values);
+    return isNegative(constraint) ? !found : found;
+  }
+
+  private static boolean isNegative(ResourceConstraint constraint) {
+    return constraint.isSetNegative() && constraint.isNegative();
+  }
+}
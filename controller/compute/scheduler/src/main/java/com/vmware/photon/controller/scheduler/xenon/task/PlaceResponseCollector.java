@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.xenon.task;
+
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.scheduler.gen.PlaceResponse;
+import com.vmware.photon.controller.scheduler.gen.PlaceResultCode;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the place responses of a single placement and decides when enough of them have arrived.
+ * <p>
+ * By default the completion runs once every candidate has answered (or failed). With a quorum count the
+ * completion runs as soon as that many OK responses have arrived, and with a quorum timeout it runs with
+ * whatever has arrived when the deadline expires. Responses that arrive after the completion has run are
+ * discarded.
+ */
+class PlaceResponseCollector {
+
+  private static final Logger logger = LoggerFactory.getLogger(PlaceResponseCollector.class);
+
+  private static final Timer responseTime =
+      DefaultMetricRegistry.REGISTRY.timer(name(PlacementTaskService.class, "place-response-time"));
+  private static final Histogram responsesUsed =
+      DefaultMetricRegistry.REGISTRY.histogram(name(PlacementTaskService.class, "place-responses-used"));
+  private static final Meter quorumReached =
+      DefaultMetricRegistry.REGISTRY.meter(name(PlacementTaskService.class, "place-quorum-reached"));
+  private static final Meter deadlineReached =
+      DefaultMetricRegistry.REGISTRY.meter(name(PlacementTaskService.class, "place-deadline-reached"));
+  private static final Meter lateResponses =
+      DefaultMetricRegistry.REGISTRY.meter(name(PlacementTaskService.class, "place-late-responses"));
+
+  private final int numCandidates;
+  private final int quorumCount;
+  private final PlacementTaskService.ScoreResultsCompletion completion;
+  private final Stopwatch stopwatch = Stopwatch.createStarted();
+  private final Set<PlaceResponse> okResponses = new HashSet<>();
+  private final Set<PlaceResponse> allResponses = new HashSet<>();
+  private final List<Long> responseTimesMs = new ArrayList<>();
+  private boolean completed;
+
+  /**
+   * Creates a collector for a single placement.
+   *
+   * @param numCandidates the number of hosts the place request was sent to
+   * @param quorumCount the number of OK responses that completes the placement early, zero to wait for all hosts
+   * @param completion the completion to call once with the collected responses
+   */
+  PlaceResponseCollector(int numCandidates, int quorumCount,
+                         PlacementTaskService.ScoreResultsCompletion completion) {
+    this.numCandidates = numCandidates;
+    this.quorumCount = quorumCount > 0 ? Math.min(quorumCount, numCandidates) : numCandidates;
+    this.completion = completion;
+  }
+
+  /**
+   * Records a response (including error responses) from one of the candidates.
+   *
+   * @return false if the response arrived after the placement was already completed and was discarded.
+   */
+  boolean addResponse(PlaceResponse response) {
+    long elapsedMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    responseTime.update(elapsedMs, TimeUnit.MILLISECONDS);
+
+    boolean reachedQuorum;
+    synchronized (this) {
+      if (completed) {
+        lateResponses.mark();
+        logger.info("Discarding place response from {} received after {} ms", response.getAddress(), elapsedMs);
+        return false;
+      }
+
+      allResponses.add(response);
+      responseTimesMs.add(elapsedMs);
+      if (response.getResult() == PlaceResultCode.OK) {
+        okResponses.add(response);
+      }
+
+      reachedQuorum = okResponses.size() >= quorumCount && quorumCount < numCandidates;
+      if (!reachedQuorum && allResponses.size() < numCandidates) {
+        return true;
+      }
+      completed = true;
+    }
+
+    if (reachedQuorum) {
+      quorumReached.mark();
+    }
+    complete();
+    return true;
+  }
+
+  /**
+   * Called when the placement deadline expires. Completes the placement with the responses received so far
+   * unless it has already completed.
+   */
+  void onDeadline() {
+    synchronized (this) {
+      if (completed) {
+        return;
+      }
+      completed = true;
+    }
+
+    deadlineReached.mark();
+    logger.info("Place deadline reached after {} ms with {} of {} responses",
+        stopwatch.elapsed(TimeUnit.MILLISECONDS), allResponses.size(), numCandidates);
+    complete();
+  }
+
+  private void complete() {
+    responsesUsed.update(allResponses.size());
+    logger.info("Place response times in ms for {} of {} hosts: {}",
+        allResponses.size(), numCandidates, summarize(responseTimesMs));
+    completion.handle(okResponses, allResponses);
+  }
+
+  private static String summarize(List<Long> times) {
+    if (times.isEmpty()) {
+      return "none";
+    }
+    List<Long> sorted = new ArrayList<>(times);
+    Collections.sort(sorted);
+    return String.format("min %d, median %d, max %d",
+        sorted.get(0), sorted.get(sorted.size() / 2), sorted.get(sorted.size() - 1));
+  }
+}
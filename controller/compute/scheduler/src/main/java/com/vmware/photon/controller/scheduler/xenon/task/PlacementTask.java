@@ -63,6 +63,20 @@ public class PlacementTask extends ServiceDocument {
   @Min(1000)
   public Long timeoutMs;
 
+  /**
+   * The number of OK place responses after which the best host is picked without waiting for the
+   * remaining hosts. When unset, the scheduler configuration is used; zero means wait for every host.
+   */
+  @Min(0)
+  public Integer quorumResponseCount;
+
+  /**
+   * The length of time after which the best host is picked from the place responses received so far.
+   * When unset, the scheduler configuration is used; zero means wait for every host.
+   */
+  @Min(0)
+  public Long quorumTimeoutMs;
+
   /**
    * The result of the placement from the queried hosts. It can be success or a type of error.
    */
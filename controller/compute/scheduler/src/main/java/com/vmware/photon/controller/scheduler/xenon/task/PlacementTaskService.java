@@ -55,7 +55,6 @@ import com.vmware.xenon.services.common.QueryTask;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 import org.apache.thrift.TException;
 import org.apache.thrift.async.AsyncMethodCallback;
 
@@ -66,7 +65,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -75,8 +73,8 @@ import java.util.stream.Collectors;
  * <p>
  * 1. Randomly choose n hosts (n = 4 by default) that satisfy all the resource constraints.
  * 2. Send place requests to the chosen hosts and wait for responses with a timeout.
- * 3. After receiving all the responses or reaching the timeout, return the host with
- * the highest placement score. See {@link ScoreCalculator} for the placement score
+ * 3. After receiving all the responses (or, when configured, a quorum of OK responses or the
+ * quorum deadline), return the host with the highest placement score. See {@link ScoreCalculator} for the placement score
  * calculation logic.
  * <p>
  * (1) http://www.eecs.berkeley.edu/~keo/publications/sosp13-final17.pdf
@@ -265,7 +263,7 @@ public class PlacementTaskService extends StatefulService {
     ServiceUtils.logInfo(this, "Sending place requests to %s with timeout %d ms", candidates, currentState.timeoutMs);
     Stopwatch scoreCandidatesStopwatch = Stopwatch.createStarted();
 
-    queryHostsForScores(currentState.resource, candidates,
+    queryHostsForScores(currentState, candidates,
         (okResponses, allResponses) -> {
           ServiceUtils.logInfo(this, "elapsed-time flat-place-score-candidates %d milliseconds",
               scoreCandidatesStopwatch.elapsed(TimeUnit.MILLISECONDS));
@@ -338,19 +336,28 @@ public class PlacementTaskService extends StatefulService {
    * - The set of "okResponses", from hosts that could accept the resource. This will include the score.
    * - All responses. These are used when there's an error, to summarize what went wrong
    *
-   * @param resource
+   * By default the completion is called once every host has responded. When a quorum count is configured
+   * the completion is called as soon as that many hosts have responded OK, and when a quorum timeout is
+   * configured it is called with whatever responses have arrived by the deadline. Later responses are
+   * discarded. See {@link PlaceResponseCollector}.
+   *
+   * @param currentState
    * @param candidates
    * @param completion
    */
   private void queryHostsForScores(
-      Resource resource,
+      PlacementTask currentState,
       Map<String, ServerAddress> candidates,
       ScoreResultsCompletion completion) {
 
-    final int numCandidates = candidates.size();
-    final Set<PlaceResponse> okResponses = Sets.newConcurrentHashSet();
-    final Set<PlaceResponse> allResponses = Sets.newConcurrentHashSet();
-    final AtomicInteger resultCount = new AtomicInteger(0);
+    final Resource resource = currentState.resource;
+    final PlaceResponseCollector collector =
+        new PlaceResponseCollector(candidates.size(), getQuorumResponseCount(currentState), completion);
+
+    long quorumTimeoutMs = getQuorumTimeoutMs(currentState);
+    if (quorumTimeoutMs > 0) {
+      getHost().schedule(collector::onDeadline, quorumTimeoutMs, TimeUnit.MILLISECONDS);
+    }
 
     final String requestId = LoggingUtils.getRequestId();
     for (Map.Entry<String, ServerAddress> entry : candidates.entrySet()) {
@@ -384,13 +391,7 @@ public class PlacementTaskService extends StatefulService {
             if (response.getAddress() == null) {
               response.setAddress(address);
             }
-            allResponses.add(response);
-            if (response.getResult() == PlaceResultCode.OK) {
-              okResponses.add(response);
-            }
-            if (resultCount.addAndGet(1) == numCandidates) {
-              completion.handle(okResponses, allResponses);
-            }
+            collector.addResponse(response);
           }
 
           @Override
@@ -409,10 +410,7 @@ public class PlacementTaskService extends StatefulService {
             if (errorResponse.getAddress() == null) {
               errorResponse.setAddress(address);
             }
-            allResponses.add(errorResponse);
-            if (resultCount.addAndGet(1) == numCandidates) {
-              completion.handle(okResponses, allResponses);
-            }
+            collector.addResponse(errorResponse);
           }
         });
       } catch (RpcException ex) {
@@ -423,14 +421,37 @@ public class PlacementTaskService extends StatefulService {
         errorResponse.setResult(PlaceResultCode.SYSTEM_ERROR);
         errorResponse.setError(String.format("Failed to send placement request to %s: %s",
             entry, ex.getMessage()));
-        allResponses.add(errorResponse);
-        if (resultCount.addAndGet(1) == numCandidates) {
-          completion.handle(okResponses, allResponses);
-        }
+        collector.addResponse(errorResponse);
       }
     }
   }
 
+  /**
+   * Returns the number of OK responses after which placement stops waiting for the remaining hosts.
+   * The value on the task takes precedence over the scheduler configuration.
+   */
+  private int getQuorumResponseCount(PlacementTask currentState) {
+    if (currentState.quorumResponseCount != null) {
+      return currentState.quorumResponseCount;
+    }
+    return getSchedulerServiceGroup().getSchedulingConfig().getPlaceQuorumCount();
+  }
+
+  /**
+   * Returns the deadline after which placement picks the best of the responses received so far.
+   * The value on the task takes precedence over the scheduler configuration.
+   */
+  private long getQuorumTimeoutMs(PlacementTask currentState) {
+    if (currentState.quorumTimeoutMs != null) {
+      return currentState.quorumTimeoutMs;
+    }
+    return getSchedulerServiceGroup().getSchedulingConfig().getPlaceQuorumTimeoutMs();
+  }
+
+  private SchedulerServiceGroup getSchedulerServiceGroup() {
+    return (SchedulerServiceGroup) ((PhotonControllerXenonHost) getHost()).getScheduler();
+  }
+
   /**
    * Returns the best host selected host among successful responses. If there are not any hosts to place the request,
    * this returns a result from the host responses.
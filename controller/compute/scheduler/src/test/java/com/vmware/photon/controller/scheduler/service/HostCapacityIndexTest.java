@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link HostCapacityIndex}.
+ */
+public class HostCapacityIndexTest {
+
+  private ServiceHost xenonHost;
+  private HostCapacityIndex index;
+
+  @BeforeMethod
+  public void setUp() {
+    xenonHost = mock(ServiceHost.class);
+    when(xenonHost.getUri()).thenReturn(UriUtils.buildUri("http://localhost:0/mock"));
+    index = new HostCapacityIndex(xenonHost);
+  }
+
+  @Test
+  public void testRetriesFailedQueryCreationWithBackoff() {
+    doAnswer((invocation) -> {
+      ((Operation) invocation.getArguments()[0]).fail(new IllegalStateException("index unavailable"));
+      return null;
+    }).when(xenonHost).sendRequest(any(Operation.class));
+    long failures = HostCapacityIndex.getSubscriptionFailureCount();
+
+    index.start();
+
+    ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+    verify(xenonHost, times(2)).schedule(retry.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    assertThat(HostCapacityIndex.getSubscriptionFailureCount(), is(failures + 2));
+    assertThat(index.isReady(), is(false));
+
+    retry.getValue().run();
+
+    verify(xenonHost).schedule(any(Runnable.class), eq(2000L), eq(TimeUnit.MILLISECONDS));
+    assertThat(HostCapacityIndex.getSubscriptionFailureCount(), is(failures + 3));
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
+import com.vmware.photon.controller.common.clients.exceptions.ConstraintMatchingDatastoreNotFoundException;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests {@link InMemoryConstraintChecker}.
+ */
+public class InMemoryConstraintCheckerTest {
+
+  private HostCapacityIndex index;
+  private FakeConstraintChecker fallback;
+  private InMemoryConstraintChecker checker;
+
+  @BeforeMethod
+  public void setUp() {
+    index = new HostCapacityIndex(null);
+    fallback = new FakeConstraintChecker();
+    checker = new InMemoryConstraintChecker(index, fallback);
+
+    index.updateHost(buildHost("h1", "zone1", UsageTag.CLOUD, "ds1", "net1"));
+    index.updateHost(buildHost("h2", "zone1", UsageTag.CLOUD, "ds2", "net1"));
+    index.updateHost(buildHost("h3", "zone2", UsageTag.CLOUD, "ds2", "net2"));
+    index.updateHost(buildHost("m1", "zone2", UsageTag.MGMT, "ds1", "net2"));
+    index.updateDatastore(buildDatastore("ds1", "tag1"));
+    index.updateDatastore(buildDatastore("ds2", "tag2"));
+    index.setReady(true);
+  }
+
+  @Test
+  public void testFallbackWhileLoading() {
+    Map<String, ServerAddress> fallbackCandidates = ImmutableMap.of("f1", new ServerAddress("f1", 1234));
+    fallback.setCandidates(fallbackCandidates);
+    index.setReady(false);
+
+    assertThat(checker.getCandidatesSync(null, 4), is(fallbackCandidates));
+  }
+
+  @Test
+  public void testNoConstraintsSelectsCloudHosts() {
+    assertThat(checker.getCandidatesSync(null, 10).keySet(), containsInAnyOrder("h1", "h2", "h3"));
+  }
+
+  @Test
+  public void testSampleSize() {
+    assertThat(checker.getCandidatesSync(null, 2).size(), is(2));
+  }
+
+  @Test
+  public void testInactiveHostsAreIgnored() {
+    HostService.State host = buildHost("h1", "zone1", UsageTag.CLOUD, "ds1", "net1");
+    host.agentState = AgentState.MISSING;
+    host.documentUpdateTimeMicros = 2;
+    index.updateHost(host);
+
+    assertThat(checker.getCandidatesSync(null, 10).keySet(), containsInAnyOrder("h2", "h3"));
+  }
+
+  @Test
+  public void testStaleUpdateIsIgnored() {
+    HostService.State host = buildHost("h1", "zone1", UsageTag.CLOUD, "ds1", "net1");
+    host.agentState = AgentState.MISSING;
+    host.documentUpdateTimeMicros = 0;
+    index.updateHost(host);
+
+    assertThat(checker.getCandidatesSync(null, 10).keySet(), containsInAnyOrder("h1", "h2", "h3"));
+  }
+
+  @Test
+  public void testRemovedHostIsIgnored() {
+    index.removeHost(HostServiceFactory.SELF_LINK + "/h2");
+
+    assertThat(checker.getCandidatesSync(null, 10).keySet(), containsInAnyOrder("h1", "h3"));
+  }
+
+  @Test
+  public void testManagementOnly() {
+    List<ResourceConstraint> constraints = Arrays.asList(
+        new ResourceConstraint(ResourceConstraintType.MANAGEMENT_ONLY, Collections.emptyList()));
+
+    assertThat(checker.getCandidatesSync(constraints, 10).keySet(), containsInAnyOrder("m1"));
+  }
+
+  @Test
+  public void testDatastoreAndNetworkConstraints() {
+    List<ResourceConstraint> constraints = Arrays.asList(
+        new ResourceConstraint(ResourceConstraintType.DATASTORE, Arrays.asList("ds2")),
+        new ResourceConstraint(ResourceConstraintType.NETWORK, Arrays.asList("net1")));
+
+    assertThat(checker.getCandidatesSync(constraints, 10).keySet(), containsInAnyOrder("h2"));
+  }
+
+  @Test
+  public void testNegativeAvailabilityZoneConstraint() {
+    ResourceConstraint constraint = new ResourceConstraint(
+        ResourceConstraintType.AVAILABILITY_ZONE, Arrays.asList("zone1"));
+    constraint.setNegative(true);
+
+    assertThat(checker.getCandidatesSync(Arrays.asList(constraint), 10).keySet(), containsInAnyOrder("h3"));
+  }
+
+  @Test
+  public void testHostConstraint() {
+    List<ResourceConstraint> constraints = Arrays.asList(
+        new ResourceConstraint(ResourceConstraintType.HOST, Arrays.asList("h1", "h3")));
+
+    assertThat(checker.getCandidatesSync(constraints, 10).keySet(), containsInAnyOrder("h1", "h3"));
+  }
+
+  @Test
+  public void testDatastoreTagConstraint() {
+    List<ResourceConstraint> constraints = Arrays.asList(
+        new ResourceConstraint(ResourceConstraintType.DATASTORE_TAG, Arrays.asList("tag1")));
+
+    assertThat(checker.getCandidatesSync(constraints, 10).keySet(), containsInAnyOrder("h1"));
+  }
+
+  @Test
+  public void testUnknownDatastoreTag() {
+    List<ResourceConstraint> constraints = Arrays.asList(
+        new ResourceConstraint(ResourceConstraintType.DATASTORE_TAG, Arrays.asList("unknown")));
+
+    AtomicReference<Map<String, ServerAddress>> candidates = new AtomicReference<>();
+    AtomicReference<Throwable> exception = new AtomicReference<>();
+    checker.getCandidates(constraints, 4, (c, ex) -> {
+      candidates.set(c);
+      exception.set(ex);
+    });
+
+    assertThat(candidates.get().isEmpty(), is(true));
+    assertThat(exception.get(), instanceOf(ConstraintMatchingDatastoreNotFoundException.class));
+  }
+
+  @Test
+  public void testInvalidNumCandidates() {
+    AtomicReference<Throwable> exception = new AtomicReference<>();
+    checker.getCandidates(null, 0, (c, ex) -> exception.set(ex));
+
+    assertThat(exception.get(), instanceOf(IllegalArgumentException.class));
+  }
+
+  @Test
+  public void testSuccessHasNoException() {
+    AtomicReference<Throwable> exception = new AtomicReference<>(new Exception());
+    checker.getCandidates(null, 4, (c, ex) -> exception.set(ex));
+
+    assertThat(exception.get(), nullValue());
+  }
+
+  private static HostService.State buildHost(String id, String zone, UsageTag usageTag, String datastore,
+                                             String network) {
+    HostService.State host = new HostService.State();
+    host.documentSelfLink = HostServiceFactory.SELF_LINK + "/" + id;
+    host.documentUpdateTimeMicros = 1;
+    host.hostAddress = id;
+    host.agentPort = ConstraintChecker.DEFAULT_AGENT_PORT;
+    host.state = HostState.READY;
+    host.agentState = AgentState.ACTIVE;
+    host.availabilityZoneId = zone;
+    host.usageTags = new HashSet<>(Arrays.asList(usageTag.name()));
+    host.reportedDatastores = new HashSet<>(Arrays.asList(datastore));
+    host.reportedNetworks = new HashSet<>(Arrays.asList(network));
+    return host;
+  }
+
+  private static DatastoreService.State buildDatastore(String id, String tag) {
+    DatastoreService.State datastore = new DatastoreService.State();
+    datastore.documentSelfLink = DatastoreServiceFactory.SELF_LINK + "/" + id;
+    datastore.id = id;
+    datastore.tags = ImmutableSet.of(tag);
+    return datastore;
+  }
+}
@@ -448,6 +448,112 @@ public class PlacementTaskServiceTest {
       verify(client, times(4)).place(any(), any());
     }
 
+    /**
+     * Test that placement completes once the quorum of OK responses has arrived, even though the
+     * remaining hosts never respond.
+     */
+    @Test
+    public void testPlaceQuorumReached() throws Throwable {
+      Resource resource = new Resource();
+
+      ImmutableMap<String, ServerAddress> matches = ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234),
+          "h3", new ServerAddress("h3", 1234),
+          "h4", new ServerAddress("h4", 1234));
+
+      this.checker.setCandidates(matches);
+
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.quorumResponseCount = 2;
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      int numResponses = 2;
+      Set<PlaceResponse> responses = new HashSet<>();
+      doAnswer((InvocationOnMock invocation) -> {
+        Object[] arguments = invocation.getArguments();
+        @SuppressWarnings("unchecked")
+        AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+            (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+        if (responses.size() < numResponses) {
+          PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+          response.setScore(new Score(random.nextInt(), random.nextInt()));
+          responses.add(response);
+          Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+          doReturn(response).when(placeResponse).getResult();
+          call.onComplete(placeResponse);
+        }
+        return null;
+      }).when(client).place(any(), any());
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+
+      PlacementTask finalState = operation.getBody(PlacementTask.class);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      assertThat(finalState.error, isEmptyOrNullString());
+    }
+
+    /**
+     * Test that placement picks the best of the responses received when the quorum deadline expires.
+     */
+    @Test
+    public void testPlaceQuorumDeadline() throws Throwable {
+      Resource resource = new Resource();
+
+      ImmutableMap<String, ServerAddress> matches = ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234),
+          "h3", new ServerAddress("h3", 1234),
+          "h4", new ServerAddress("h4", 1234));
+
+      this.checker.setCandidates(matches);
+
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.quorumTimeoutMs = 500L;
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = false;
+
+      Set<PlaceResponse> responses = new HashSet<>();
+      doAnswer((InvocationOnMock invocation) -> {
+        Object[] arguments = invocation.getArguments();
+        @SuppressWarnings("unchecked")
+        AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+            (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+        if (responses.isEmpty()) {
+          PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+          response.setScore(new Score(random.nextInt(), random.nextInt()));
+          responses.add(response);
+          Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+          doReturn(response).when(placeResponse).getResult();
+          call.onComplete(placeResponse);
+        }
+        return null;
+      }).when(client).place(any(), any());
+
+      PlacementTask finalState = schedulerTestEnvironment.callServiceAndWaitForState(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask,
+          PlacementTask.class,
+          (state) -> TaskUtils.finalTaskStages.contains(state.taskState.stage));
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      verify(client, times(4)).place(any(), any());
+    }
+
     /**
      * Test that when we have failures querying datastore (looking for image) the error is properly propagated.
      */
@@ -18,10 +18,16 @@ import com.vmware.photon.controller.nsxclient.NsxClient;
 /**
  * This class defines a factory which creates
  * {@link NsxClient} instances.
+ * <p>
+ * Clients come from one shared {@link com.vmware.photon.controller.nsxclient.NsxClientFactory}, so they are cached
+ * and pooled the same way as the clients of the Xenon hosts.
  */
 public class NsxClientFactory {
 
+  private static final com.vmware.photon.controller.nsxclient.NsxClientFactory SHARED_FACTORY =
+      new com.vmware.photon.controller.nsxclient.NsxClientFactory();
+
   public NsxClient create(String endpoint, String username, String password) {
-    return new NsxClient(endpoint, username, password);
+    return SHARED_FACTORY.create(endpoint, username, password);
   }
 }
@@ -42,6 +42,7 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.TaskState;
@@ -60,22 +61,29 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * This class moves Xenon state between two Xenon clusters.
+ * <p>
+ * Pages of documents are retrieved from the source hosts sorted by update time, and the next page is retrieved while
+ * the current one is written to the destination with bounded parallelism. Each document is parsed once on the way
+ * through. After every page the task records a checkpoint, so that a run which fails can be resumed from it instead of
+ * copying everything again.
  */
 public class CopyStateTaskService extends StatefulService {
 
   private static final String DOCUMENT_UPDATE_TIME_MICROS = "documentUpdateTimeMicros";
 
+  private Class<? extends ServiceDocument> destinationStateType;
+
   /**
    * This class defines the document state associated with a single
    * {@link CopyStateTaskService} instance.
@@ -136,6 +144,24 @@ public class CopyStateTaskService extends StatefulService {
     @Immutable
     @DefaultBoolean(value = false)
     public Boolean performHostTransformation;
+
+    /**
+     * Maximum number of documents which are written to the destination at the same time.
+     */
+    @Immutable
+    @DefaultInteger(value = 16)
+    public Integer maxConcurrentWrites;
+
+    /**
+     * All documents changed up to this time have been copied. A run which fails can be resumed from here.
+     */
+    public Long checkpointDocumentUpdateTimeEpoc;
+
+    @DefaultLong(value = 0)
+    public Long documentsCopied;
+
+    @DefaultLong(value = 0)
+    public Long copyTimeMillis;
   }
 
   public CopyStateTaskService() {
@@ -213,8 +239,16 @@ public class CopyStateTaskService extends StatefulService {
     if (currentState.taskState.stage != TaskState.TaskStage.STARTED) {
       return;
     }
+    if (patchState.checkpointDocumentUpdateTimeEpoc != null) {
+      // Progress patch sent by this task while it is copying
+      return;
+    }
     try {
-      retrieveDocuments(currentState, currentState.queryDocumentsChangedSinceEpoc);
+      long changedSince = currentState.queryDocumentsChangedSinceEpoc;
+      if (currentState.checkpointDocumentUpdateTimeEpoc != null) {
+        changedSince = Math.max(changedSince, currentState.checkpointDocumentUpdateTimeEpoc);
+      }
+      retrieveDocuments(currentState, new CopyProgress(changedSince));
     } catch (Throwable t) {
       ServiceUtils.logSevere(this, t);
       if (!OperationUtils.isCompleted(patchOperation)) {
@@ -223,12 +257,12 @@ public class CopyStateTaskService extends StatefulService {
     }
   }
 
-  private void retrieveDocuments(State currentState, long lastUpdateQueryTime) {
+  private void retrieveDocuments(State currentState, CopyProgress progress) {
 
     Stream<Operation> queryOps = currentState.sourceURIs.stream().map((sourceURI) -> {
       Operation queryOp = Operation
           .createPost(UriUtils.buildUri(sourceURI, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
-          .setBody(retrieveDocumentsQuery(currentState));
+          .setBody(retrieveDocumentsQuery(currentState, progress.changedSince));
       AuthenticationUtils.addSystemUserAuthcontext(queryOp, getSystemAuthorizationContext());
       return queryOp;
     });
@@ -240,7 +274,7 @@ public class CopyStateTaskService extends StatefulService {
             if (exs != null && !exs.isEmpty()) {
               failTask(exs);
             } else {
-              processQueryOps(currentState, ops.values(), lastUpdateQueryTime);
+              processQueryOps(currentState, ops.values(), progress);
             }
           } catch (Throwable t) {
             failTask(t);
@@ -249,7 +283,7 @@ public class CopyStateTaskService extends StatefulService {
         .sendWith(this);
   }
 
-  private void processQueryOps(State currentState, Collection<Operation> queryOps, long lastUpdateQueryTime) {
+  private void processQueryOps(State currentState, Collection<Operation> queryOps, CopyProgress progress) {
 
     Map<URI, String> nextPageLinks = queryOps.stream()
         .filter((queryOp) -> queryOp.getBody(QueryTask.class).results.nextPageLink != null)
@@ -260,7 +294,12 @@ public class CopyStateTaskService extends StatefulService {
         })
         .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
-    continueWithNextPage(nextPageLinks, currentState, lastUpdateQueryTime);
+    if (nextPageLinks.isEmpty()) {
+      finishTask(currentState, progress);
+      return;
+    }
+
+    retrieveNextPage(nextPageLinks).whenRetrieved((results) -> storeDocuments(currentState, results, progress));
   }
 
   private URI extractBaseURI(Operation op) {
@@ -271,163 +310,180 @@ public class CopyStateTaskService extends StatefulService {
     return UriUtils.buildUri(uri.getScheme(), uri.getHost(), uri.getPort(), null, null);
   }
 
-  private void continueWithNextPage(
-      Map<URI, String> nextPageLinks,
-      State currentState,
-      long lastUpdateQueryTime) {
-
-    if (!nextPageLinks.isEmpty()) {
-      retrieveNextPage(currentState, nextPageLinks, lastUpdateQueryTime);
-    } else {
-      // if there are no more results in the querye continue with the next host
-      State patch = new State();
-      patch.taskState = new TaskState();
-      patch.taskState.stage = TaskState.TaskStage.FINISHED;
-      patch.lastDocumentUpdateTimeEpoc = lastUpdateQueryTime;
-      TaskUtils.sendSelfPatch(CopyStateTaskService.this, patch);
-    }
+  private void finishTask(State currentState, CopyProgress progress) {
+    long copyTimeMillis = System.currentTimeMillis() - progress.startTimeMillis;
+    ServiceUtils.logInfo(this, "Copied %d documents from %s in %d ms (%.1f documents/sec)",
+        progress.documentsCopied, currentState.sourceFactoryLink, copyTimeMillis,
+        progress.documentsCopied * 1000.0 / Math.max(1, copyTimeMillis));
+
+    State patch = new State();
+    patch.taskState = new TaskState();
+    patch.taskState.stage = TaskState.TaskStage.FINISHED;
+    patch.lastDocumentUpdateTimeEpoc = progress.lastUpdateTime;
+    patch.documentsCopied = progress.documentsCopied;
+    patch.copyTimeMillis = copyTimeMillis;
+    TaskUtils.sendSelfPatch(CopyStateTaskService.this, patch);
   }
 
-  private void retrieveNextPage(
-      final State currentState,
-      Map<URI, String> nextPageLinks,
-      long lastUpdateQueryTime) {
-
-    getHost().schedule(() ->
-      OperationJoin.create(
-          nextPageLinks.entrySet().stream()
-              .map(entry -> {
-                Operation o = Operation.createGet(UriUtils.buildUri(entry.getKey(), entry.getValue()));
-                AuthenticationUtils.addSystemUserAuthcontext(o, getSystemAuthorizationContext());
-                return o;
-              })).setCompletion((os, ts) -> {
-            if (ts != null && ts.isEmpty()) {
-              failTask(ts);
-              return;
-            }
-            Map<URI, ServiceDocumentQueryResult> results = os.values().stream()
-                .map(o -> {
-                  QueryTask qt = o.getBody(QueryTask.class);
-                  return new AbstractMap.SimpleEntry<>(extractBaseURI(o), qt.results);
-                })
-                .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
-            storeDocuments(currentState, results, lastUpdateQueryTime);
-          })
-        .sendWith(this), 300, TimeUnit.MILLISECONDS);
+  /**
+   * Starts retrieving the next page from each of the source hosts.
+   */
+  private PendingPage retrieveNextPage(Map<URI, String> nextPageLinks) {
+    PendingPage pendingPage = new PendingPage();
+    OperationJoin.create(
+        nextPageLinks.entrySet().stream()
+            .map(entry -> {
+              Operation o = Operation.createGet(UriUtils.buildUri(entry.getKey(), entry.getValue()));
+              AuthenticationUtils.addSystemUserAuthcontext(o, getSystemAuthorizationContext());
+              return o;
+            })).setCompletion((os, ts) -> {
+          if (ts != null && !ts.isEmpty()) {
+            failTask(ts);
+            return;
+          }
+          Map<URI, ServiceDocumentQueryResult> results = os.values().stream()
+              .map(o -> {
+                QueryTask qt = o.getBody(QueryTask.class);
+                return new AbstractMap.SimpleEntry<>(extractBaseURI(o), qt.results);
+              })
+              .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
+          pendingPage.setResults(results);
+        })
+        .sendWith(this);
+    return pendingPage;
   }
 
   private void storeDocuments(
       final State currentState,
       Map<URI, ServiceDocumentQueryResult> results,
-      long lastUpdateQueryTime) {
+      CopyProgress progress) {
+    try {
+      storePage(currentState, results, progress);
+    } catch (Throwable t) {
+      failTask(t);
+    }
+  }
+
+  private void storePage(
+      final State currentState,
+      Map<URI, ServiceDocumentQueryResult> results,
+      CopyProgress progress) throws Throwable {
 
     if (results.isEmpty()) {
-      continueWithNextPage(
-          Collections.emptyMap(),
-          currentState,
-          lastUpdateQueryTime);
+      finishTask(currentState, progress);
       return;
     }
 
     URI destinationFactoryURI = UriUtils.buildUri(currentState.destinationURI,
         currentState.destinationFactoryLink);
 
-    List<Object> ownerSelectedResults = new ArrayList<>();
-    for (ServiceDocumentQueryResult result : results.values()) {
-      ownerSelectedResults.addAll(
-          result.documents.values().stream()
-              .filter(doc -> {
-                ServiceDocument serviceDoc = Utils.fromJson(doc, ServiceDocument.class);
-                return serviceDoc.documentOwner == null
-                    || Objects.equal(serviceDoc.documentOwner, result.documentOwner);
-              })
-              .collect(Collectors.toList())
-      );
+    // Parse each document once, keeping those owned by the host which returned them.
+    Class<? extends ServiceDocument> parsedType = getParsedStateType(currentState);
+    List<CopyDocument> ownerSelectedDocuments = new ArrayList<>();
+    Map<URI, Long> lastUpdateTimeBySource = new HashMap<>();
+    for (Map.Entry<URI, ServiceDocumentQueryResult> entry : results.entrySet()) {
+      ServiceDocumentQueryResult result = entry.getValue();
+      long lastUpdateTimeOnSource = 0;
+      for (Object document : result.documents.values()) {
+        ServiceDocument serviceDoc = Utils.fromJson(document, parsedType);
+        lastUpdateTimeOnSource = Math.max(lastUpdateTimeOnSource, serviceDoc.documentUpdateTimeMicros);
+        if (serviceDoc.documentOwner == null || Objects.equal(serviceDoc.documentOwner, result.documentOwner)) {
+          ownerSelectedDocuments.add(new CopyDocument(document, serviceDoc, currentState));
+        }
+      }
+      lastUpdateTimeBySource.put(entry.getKey(), lastUpdateTimeOnSource);
     }
-    QueryTaskUtils.logQueryResults(this, ownerSelectedResults.stream()
-        .map(doc -> {
-          ServiceDocument serviceDoc = Utils.fromJson(doc, ServiceDocument.class);
-          return serviceDoc.documentSelfLink;
-        })
+    QueryTaskUtils.logQueryResults(this, ownerSelectedDocuments.stream()
+        .map(document -> document.documentSelfLink)
         .collect(Collectors.toList()));
 
-    long lastUpdateTimeOnPage = ownerSelectedResults.stream()
-        .map(doc -> Utils.getJsonMapValue(doc, DOCUMENT_UPDATE_TIME_MICROS, Long.class))
-        .mapToLong(l -> l.longValue())
-        .max()
-        .orElse(0);
-    final long newLastUpdateTime = Math.max(lastUpdateQueryTime, lastUpdateTimeOnPage);
-
-    if (ownerSelectedResults.isEmpty()) {
-      Map<URI, String> pageLinks = results.entrySet().stream()
-          .filter(entry -> entry.getValue().nextPageLink != null)
-          .map(entry -> {
-            return new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().nextPageLink);
-          })
-          .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
-      continueWithNextPage(
-          pageLinks,
-          currentState,
-          newLastUpdateTime);
+    Map<URI, String> pageLinks = results.entrySet().stream()
+        .filter(entry -> entry.getValue().nextPageLink != null)
+        .map(entry -> {
+          return new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().nextPageLink);
+        })
+        .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
+
+    // Retrieve the next page while this one is being written.
+    PendingPage nextPage = pageLinks.isEmpty() ? null : retrieveNextPage(pageLinks);
+
+    writeDocuments(currentState, destinationFactoryURI, ownerSelectedDocuments, () -> {
+      long lastUpdateTimeOnPage = lastUpdateTimeBySource.values().stream()
+          .mapToLong(l -> l.longValue())
+          .max()
+          .orElse(0);
+      progress.lastUpdateTime = Math.max(progress.lastUpdateTime, lastUpdateTimeOnPage);
+      progress.documentsCopied += ownerSelectedDocuments.size();
+
+      if (nextPage == null) {
+        finishTask(currentState, progress);
+        return;
+      }
+
+      // Pages are sorted by update time, so every document of a source which has more pages has been copied up to
+      // the last update time on its current page. Documents with that same update time may still be on the next
+      // page, so the checkpoint stays just below it.
+      long checkpoint = pageLinks.keySet().stream()
+          .mapToLong(uri -> lastUpdateTimeBySource.getOrDefault(uri, 0L) - 1)
+          .min()
+          .orElse(progress.lastUpdateTime);
+      sendCheckpointPatch(Math.max(checkpoint, progress.changedSince), progress);
+
+      nextPage.whenRetrieved((nextResults) -> storeDocuments(currentState, nextResults, progress));
+    });
+  }
+
+  private void writeDocuments(State currentState, URI destinationFactoryURI, List<CopyDocument> documents,
+                              Runnable onCompletion) {
+    if (documents.isEmpty()) {
+      onCompletion.run();
       return;
     }
 
     OperationJoin
-        .create(ownerSelectedResults.stream()
-            .map(document -> {
-              String documentId = extractId(document, currentState.sourceFactoryLink);
-              return buildDeleteOperation(destinationFactoryURI + "/" + documentId);
-            }))
+        .create(documents.stream()
+            .map(document -> buildDeleteOperation(destinationFactoryURI + "/" + document.documentId)))
         .setCompletion((opers, execptions) -> {
           if (null != execptions && !execptions.isEmpty()) {
             // Ignore delete not found error
           }
           OperationJoin
-              .create(ownerSelectedResults.stream()
-                  .map(document -> {
-                    Object json = removeFactoryPathFromSelfLink(document, currentState.sourceFactoryLink);
-                    return buildPostOperation(json, destinationFactoryURI, currentState);
-                  }))
+              .create(documents.stream()
+                  .map(document -> buildPostOperation(document.body, destinationFactoryURI)))
               .setCompletion((ops, exs) -> {
                 if (null != exs && !exs.isEmpty()) {
                   failTask(exs);
                   return;
                 }
-                Map<URI, String> pageLinks = results.entrySet().stream()
-                    .filter(entry -> entry.getValue().nextPageLink != null)
-                    .map(entry -> {
-                      return new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().nextPageLink);
-                    })
-                    .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
-                continueWithNextPage(
-                    pageLinks,
-                    currentState,
-                    newLastUpdateTime);
+                onCompletion.run();
               })
-              .sendWith(this);
+              .sendWith(this, currentState.maxConcurrentWrites);
         })
-        .sendWith(this);
+        .sendWith(this, currentState.maxConcurrentWrites);
   }
 
-  private Operation buildPostOperation(Object document, URI uri, State currentState) {
-    try {
-      Object documentWithRenamedFields = handleRenamedFields(document, currentState);
-      Operation postOp = Operation
-          .createPost(uri)
-          .setUri(uri)
-          .setBody(documentWithRenamedFields)
-          .forceRemote()
-          // PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE is a workaround needed
-          // because Xenon 0.7.0 does not allow POST to a previously deleted service
-          // we will need to implement an alternative solution using idempotent posts so that this workaround can
-          // be removed https://www.pivotaltracker.com/story/show/114425679
-          .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
-          .setReferer(uri);
-      return postOp;
-    } catch (Throwable ex) {
-      failTask(ex);
-      throw new RuntimeException(ex);
-    }
+  private void sendCheckpointPatch(long checkpoint, CopyProgress progress) {
+    State patch = new State();
+    patch.taskState = new TaskState();
+    patch.taskState.stage = TaskState.TaskStage.STARTED;
+    patch.checkpointDocumentUpdateTimeEpoc = checkpoint;
+    patch.documentsCopied = progress.documentsCopied;
+    patch.copyTimeMillis = System.currentTimeMillis() - progress.startTimeMillis;
+    TaskUtils.sendSelfPatch(this, patch);
+  }
+
+  private Operation buildPostOperation(Object document, URI uri) {
+    return Operation
+        .createPost(uri)
+        .setUri(uri)
+        .setBody(document)
+        .forceRemote()
+        // PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE is a workaround needed
+        // because Xenon 0.7.0 does not allow POST to a previously deleted service
+        // we will need to implement an alternative solution using idempotent posts so that this workaround can
+        // be removed https://www.pivotaltracker.com/story/show/114425679
+        .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
+        .setReferer(uri);
   }
 
   private String findDestinationServiceClassName(State currentState) {
@@ -454,32 +510,55 @@ public class CopyStateTaskService extends StatefulService {
     return destinationDocument;
   }
 
-  private Object handleRenamedFields(Object document, State currentState) throws Throwable {
-    if (!currentState.performHostTransformation) {
-      return document;
+  /**
+   * Builds the body posted to the destination for a document, with the factory path removed from its self link.
+   * The parsed document has the type returned by {@link #getParsedStateType(State)}, so a transformed document is
+   * converted without parsing it again.
+   */
+  private Object buildDocumentBody(Object document, ServiceDocument parsedDocument, String documentId,
+                                   State currentState) throws Throwable {
+    if (!isTransformed(currentState)) {
+      return Utils.toJson(false, false,
+          Utils.setJsonProperty(document, ServiceDocument.FIELD_NAME_SELF_LINK, documentId));
     }
-    Object result = document;
-    if (currentState.destinationServiceClassName != null) {
-      // Serialize original document into destination
+
+    ServiceDocument convertedServiceDocument = parsedDocument;
+    MigrationUtils.handleRenamedField(document, convertedServiceDocument);
+    convertedServiceDocument.documentSelfLink = documentId;
+
+    if (convertedServiceDocument instanceof HostService.State) {
+      HostService.State fromJson = (HostService.State) convertedServiceDocument;
+      fromJson.usageTags = new HashSet<>(Arrays.asList(UsageTag.CLOUD.name()));
+    }
+
+    // Convert it back to json
+    return Utils.toJson(false, false, convertedServiceDocument);
+  }
+
+  private static boolean isTransformed(State currentState) {
+    return currentState.performHostTransformation && currentState.destinationServiceClassName != null;
+  }
+
+  /**
+   * Returns the type the source documents are parsed into, which is the destination state type when they are
+   * transformed.
+   */
+  private Class<? extends ServiceDocument> getParsedStateType(State currentState) throws Throwable {
+    return isTransformed(currentState) ? getDestinationStateType(currentState) : ServiceDocument.class;
+  }
+
+  private Class<? extends ServiceDocument> getDestinationStateType(State currentState) throws Throwable {
+    if (destinationStateType == null) {
       Class<?> destinationDoc = Class.forName(currentState.destinationServiceClassName);
       @SuppressWarnings("unchecked")
       Service sd = ((Class<Service>) destinationDoc).newInstance();
-      ServiceDocument convertedServiceDocument = Utils.fromJson(document, sd.getStateType());
-      MigrationUtils.handleRenamedField(document, convertedServiceDocument);
-      // Convert it back to json
-
-      if (sd.getStateType() == HostService.State.class) {
-        HostService.State fromJson = (HostService.State) convertedServiceDocument;
-        fromJson.usageTags = new HashSet<>(Arrays.asList(UsageTag.CLOUD.name()));
-      }
-
-      result = Utils.toJson(false, false, convertedServiceDocument);
+      destinationStateType = sd.getStateType();
     }
 
-    return result;
+    return destinationStateType;
   }
 
-  private QueryTask retrieveDocumentsQuery(State currentState) {
+  private QueryTask retrieveDocumentsQuery(State currentState, long changedSince) {
     QueryTask.Query excludeCreatedTasks
         = buildExcludeQuery(currentState.taskStateFieldName, TaskState.TaskStage.CREATED.name());
     QueryTask.Query excludeStartedTasks
@@ -487,7 +566,7 @@ public class CopyStateTaskService extends StatefulService {
     QueryTask.Query typeClause
         = buildWildCardQuery(ServiceDocument.FIELD_NAME_SELF_LINK, currentState.sourceFactoryLink + "*");
     QueryTask.Query timeClause
-        = buildTimeClause(currentState.queryDocumentsChangedSinceEpoc);
+        = buildTimeClause(changedSince);
 
     QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
     querySpec.resultLimit = currentState.queryResultLimit;
@@ -496,7 +575,13 @@ public class CopyStateTaskService extends StatefulService {
         .addBooleanClause(excludeStartedTasks)
         .addBooleanClause(typeClause)
         .addBooleanClause(timeClause);
-    querySpec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    querySpec.options = EnumSet.of(
+        QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT,
+        QueryTask.QuerySpecification.QueryOption.SORT);
+    querySpec.sortTerm = new QueryTask.QueryTerm();
+    querySpec.sortTerm.propertyName = DOCUMENT_UPDATE_TIME_MICROS;
+    querySpec.sortTerm.propertyType = ServiceDocumentDescription.TypeName.LONG;
+    querySpec.sortOrder = QueryTask.QuerySpecification.SortOrder.ASC;
 
     return QueryTask.create(querySpec).setDirect(true);
   }
@@ -509,14 +594,7 @@ public class CopyStateTaskService extends StatefulService {
         .setReferer(uri);
   }
 
-  private Object removeFactoryPathFromSelfLink(Object jsonObject, String factoryPath) {
-    String selfLink = extractId(jsonObject, factoryPath);
-    return Utils.toJson(false, false,
-        Utils.setJsonProperty(jsonObject, ServiceDocument.FIELD_NAME_SELF_LINK, selfLink));
-  }
-
-  private String extractId(Object jsonObject, String factoryPath) {
-    String selfLink = Utils.getJsonMapValue(jsonObject, ServiceDocument.FIELD_NAME_SELF_LINK, String.class);
+  private static String extractId(String selfLink, String factoryPath) {
     if (selfLink.startsWith(factoryPath)) {
       selfLink = selfLink.replaceFirst(factoryPath, "");
     }
@@ -583,4 +661,69 @@ public class CopyStateTaskService extends StatefulService {
 
     return patchState;
   }
+
+  /**
+   * Tracks the progress of a copy run.
+   */
+  private static class CopyProgress {
+    private final long changedSince;
+    private final long startTimeMillis = System.currentTimeMillis();
+    private long lastUpdateTime;
+    private long documentsCopied;
+
+    private CopyProgress(long changedSince) {
+      this.changedSince = changedSince;
+      this.lastUpdateTime = changedSince;
+    }
+  }
+
+  /**
+   * A document to copy, parsed once when its page is retrieved.
+   */
+  private class CopyDocument {
+    private final String documentSelfLink;
+    private final String documentId;
+    private final Object body;
+
+    private CopyDocument(Object document, ServiceDocument serviceDoc, State currentState) {
+      this.documentSelfLink = serviceDoc.documentSelfLink;
+      this.documentId = extractId(serviceDoc.documentSelfLink, currentState.sourceFactoryLink);
+      try {
+        this.body = buildDocumentBody(document, serviceDoc, documentId, currentState);
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+    }
+  }
+
+  /**
+   * A page of results which is being retrieved. The continuation runs once both the results have arrived and the
+   * continuation has been set, whichever happens last.
+   */
+  private static class PendingPage {
+    private Map<URI, ServiceDocumentQueryResult> results;
+    private Consumer<Map<URI, ServiceDocumentQueryResult>> continuation;
+
+    private void setResults(Map<URI, ServiceDocumentQueryResult> results) {
+      Consumer<Map<URI, ServiceDocumentQueryResult>> ready;
+      synchronized (this) {
+        this.results = results;
+        ready = this.continuation;
+      }
+      if (ready != null) {
+        ready.accept(results);
+      }
+    }
+
+    private void whenRetrieved(Consumer<Map<URI, ServiceDocumentQueryResult>> continuation) {
+      Map<URI, ServiceDocumentQueryResult> ready;
+      synchronized (this) {
+        this.continuation = continuation;
+        ready = this.results;
+      }
+      if (ready != null) {
+        continuation.accept(ready);
+      }
+    }
+  }
 }
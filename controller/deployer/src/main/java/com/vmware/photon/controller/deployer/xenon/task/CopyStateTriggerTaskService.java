@@ -254,6 +254,16 @@ public class CopyStateTriggerTaskService extends StatefulService {
     }).sendWith(this);
   }
 
+  private static long getCopiedUpdateTime(CopyStateTaskService.State state) {
+    if (state.taskState.stage == TaskStage.FINISHED) {
+      return state.lastDocumentUpdateTimeEpoc;
+    }
+    if (state.checkpointDocumentUpdateTimeEpoc != null) {
+      return state.checkpointDocumentUpdateTimeEpoc;
+    }
+    return 0;
+  }
+
   private void startNewTask(Operation patch, State currentState) {
     Operation copyStateTaskQuery = generateQueryCopyStateTaskQuery(currentState);
     OperationSequence.create(copyStateTaskQuery)
@@ -272,9 +282,9 @@ public class CopyStateTriggerTaskService extends StatefulService {
               .collect(Collectors.toList());
 
           if (runningStates.isEmpty()) {
+            // A run which did not finish is resumed from its last checkpoint.
             long latestUpdateTime = copyStates.stream()
-                .filter(state -> state.taskState.stage == TaskStage.FINISHED)
-                .mapToLong(state -> state.lastDocumentUpdateTimeEpoc.longValue())
+                .mapToLong(state -> getCopiedUpdateTime(state))
                 .max()
                 .orElse(0);
             CopyStateTaskService.State startState = buildCopyStateStartState(currentState, latestUpdateTime);
@@ -52,6 +52,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.testng.Assert.fail;
 
@@ -401,6 +402,27 @@ public class CopyStateTaskServiceTest {
           (state) -> TaskUtils.finalTaskStages.contains(state.taskState.stage));
 
       assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.documentsCopied, is((long) DOCUMENT_COUNT));
+      assertThat(getDocumentLinks(destinationCluster).size(), is(DOCUMENT_COUNT));
+    }
+
+    @Test(dataProvider = "hostCounts")
+    public void successCopyingMultiplePages(Integer sourceHostCount, Integer destinationHostCount) throws Throwable {
+      startClusters(sourceHostCount, destinationHostCount);
+
+      createDocuments(sourceCluster, DOCUMENT_COUNT);
+      copyStateTaskServiceState.queryResultLimit = 3;
+      copyStateTaskServiceState.maxConcurrentWrites = 2;
+
+      CopyStateTaskService.State finalState = sourceCluster.callServiceAndWaitForState(
+          CopyStateTaskFactoryService.SELF_LINK,
+          copyStateTaskServiceState,
+          CopyStateTaskService.State.class,
+          (state) -> TaskUtils.finalTaskStages.contains(state.taskState.stage));
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.documentsCopied, is((long) DOCUMENT_COUNT));
+      assertThat(finalState.lastDocumentUpdateTimeEpoc, greaterThan(0L));
       assertThat(getDocumentLinks(destinationCluster).size(), is(DOCUMENT_COUNT));
     }
 
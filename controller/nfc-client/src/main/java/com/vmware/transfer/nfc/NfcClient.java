@@ -18,6 +18,7 @@ import com.vmware.transfer.streamVmdk.VmdkFormatException;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -31,6 +32,8 @@ import java.nio.ByteOrder;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * NFC Client. Used for transferring files and disks to/from datastores using NFC.
@@ -73,6 +76,12 @@ public class NfcClient implements AutoCloseable {
   static final int NFC_FILE_FORCE = 1 << 0;
   static final int NFC_FILE_CREATEDIRHIER = 1 << 1;
   private static final Logger logger = LoggerFactory.getLogger(NfcClient.class);
+  // Number of grains of a stream-optimized disk decompressed ahead of the upload
+  private static final int STREAM_VMDK_READ_AHEAD = 2 * Runtime.getRuntime().availableProcessors();
+  // Decompresses the grains of stream-optimized disks; shared by all uploads
+  private static final ExecutorService streamVmdkExecutor = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(),
+      new ThreadFactoryBuilder().setNameFormat("stream-vmdk-%d").setDaemon(true).build());
   // Newer nfc message types
   private static final int NFC_ERROR = 20;
   private static final int NFC_FSSRVR_OPEN = 21;
@@ -110,6 +119,7 @@ public class NfcClient implements AutoCloseable {
   private Socket socket;
   private ReadableByteChannel input;
   private WritableByteChannel output;
+  private int fileWriteSize = NfcFileOutputStream.DEFAULT_WRITE_SIZE;
 
   @VisibleForTesting
   protected NfcClient() {
@@ -152,7 +162,16 @@ public class NfcClient implements AutoCloseable {
     msg.putLong(fileSize); // space required
     sendNfcMsg(msg);
     writeFully(dsPathBytes);
-    return new NfcFileOutputStream(this, autoClose);
+    return new NfcFileOutputStream(this, autoClose, fileWriteSize);
+  }
+
+  /**
+   * Set the number of bytes sent in each FILE_DATA message by the streams returned from putFile.
+   */
+  public void setFileWriteSize(int fileWriteSize) {
+    checkArgument(fileWriteSize > 0 && fileWriteSize <= MAX_XFER_SIZE,
+        "fileWriteSize must be between 1 and %s", MAX_XFER_SIZE);
+    this.fileWriteSize = fileWriteSize;
   }
 
   /**
@@ -464,7 +483,7 @@ public class NfcClient implements AutoCloseable {
   protected StreamVmdkReader getStreamVmdkReader(InputStream inputStream)
       throws IOException, VmdkFormatException {
     try {
-      return new StreamVmdkReader(inputStream);
+      return new StreamVmdkReader(inputStream, streamVmdkExecutor, STREAM_VMDK_READ_AHEAD);
     } catch (VmdkFormatException e) {
       logger.error("Unable to parse disk image: {}", e);
       throw e;
@@ -13,20 +13,37 @@
 
 package com.vmware.transfer.nfc;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * NfcFileOutputStream implements a stream used to write a file to a NFC server.
+ * <p>
+ * Written data is collected in a buffer which is reused for the whole file and sent as a FILE_DATA message once it
+ * holds the write size, so callers do not need to buffer. {@link #transferFrom(InputStream, long)} reads straight
+ * into that buffer.
  */
 public class NfcFileOutputStream extends OutputStream {
-  private static final byte[] EOF_MARKER = new byte[0];
+  /**
+   * Default number of bytes sent in each FILE_DATA message.
+   */
+  public static final int DEFAULT_WRITE_SIZE = NfcClient.MAX_XFER_SIZE;
+
+  private static final ByteBuffer EOF_MARKER = ByteBuffer.allocate(0);
 
   private final NfcClient nfcClient;
   private final ByteBuffer nfcMessage;
   private final ByteBuffer fileDataHdr;
+  private final ByteBuffer buffer;
 
   // when autoClose set to true, after finish streaming the file, close NfcClient.
   private final boolean autoClose;
@@ -36,16 +53,25 @@ public class NfcFileOutputStream extends OutputStream {
   }
 
   public NfcFileOutputStream(NfcClient nfcClient, boolean autoClose) {
+    this(nfcClient, autoClose, DEFAULT_WRITE_SIZE);
+  }
+
+  public NfcFileOutputStream(NfcClient nfcClient, boolean autoClose, int writeSize) {
+    checkArgument(writeSize > 0 && writeSize <= NfcClient.MAX_XFER_SIZE,
+        "writeSize must be between 1 and %s", NfcClient.MAX_XFER_SIZE);
     this.nfcClient = nfcClient;
     nfcMessage = nfcClient.newNfcMsg(NfcClient.NFC_FILE_DATA);
     fileDataHdr = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    buffer = ByteBuffer.allocate(writeSize);
     this.autoClose = autoClose;
   }
 
   @Override
   public void write(int b) throws IOException {
-    byte[] data = {(byte) b};
-    write(data);
+    buffer.put((byte) b);
+    if (!buffer.hasRemaining()) {
+      flushBuffer();
+    }
   }
 
   @Override
@@ -54,34 +80,94 @@ public class NfcFileOutputStream extends OutputStream {
   }
 
   /**
-   * Write data. FILE_DATA message is sent immediately, so caller should buffer as necessary.
+   * Write data. Data is sent once a full write size has been collected, or when the stream is flushed or closed.
    */
+  @Override
   public void write(byte[] data, int offset, int length) throws IOException {
-    assert data.length >= offset + length;
+    checkPositionIndexes(offset, offset + length, data.length);
     while (length > 0) {
-      int toWrite = Math.min(length, NfcClient.MAX_XFER_SIZE);
-      writeInt(data, offset, toWrite);
-      offset += toWrite;
-      length -= toWrite;
+      if (buffer.position() == 0 && length >= buffer.capacity()) {
+        // Nothing is buffered, so send a full write size straight from the caller's array.
+        sendFileData(ByteBuffer.wrap(data, offset, buffer.capacity()));
+        offset += buffer.capacity();
+        length -= buffer.capacity();
+        continue;
+      }
+
+      int toCopy = Math.min(length, buffer.remaining());
+      buffer.put(data, offset, toCopy);
+      offset += toCopy;
+      length -= toCopy;
+      if (!buffer.hasRemaining()) {
+        flushBuffer();
+      }
     }
   }
 
-  private void writeInt(byte[] data, int offset, int length) throws IOException {
-    assert data.length >= offset + length;
-    assert length <= NfcClient.MAX_XFER_SIZE;
-    fileDataHdr.clear();
-    fileDataHdr.putInt(NfcClient.FILE_DATA_HDR_MAGIC);
-    fileDataHdr.putInt(length);
-    fileDataHdr.flip();
-    ByteBuffer dataBuffer = ByteBuffer.wrap(data, offset, length);
-    nfcClient.sendNfcMsg(nfcMessage);
-    nfcClient.writeFully(fileDataHdr);
-    nfcClient.writeFully(dataBuffer);
+  /**
+   * Write size bytes read from the input stream. The bytes are read straight into the buffer of this stream, and
+   * from the file channel if the input stream is a file.
+   *
+   * @return number of bytes written
+   * @throws EOFException if the input stream ends before size bytes have been read
+   */
+  public long transferFrom(InputStream inputStream, long size) throws IOException {
+    if (inputStream instanceof FileInputStream) {
+      return transferFrom(((FileInputStream) inputStream).getChannel(), size);
+    }
+
+    long remaining = size;
+    while (remaining > 0) {
+      int toRead = (int) Math.min(buffer.remaining(), remaining);
+      int read = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), toRead);
+      if (read < 0) {
+        throw new EOFException(String.format("Input ended after %d of %d bytes", size - remaining, size));
+      }
+
+      buffer.position(buffer.position() + read);
+      remaining -= read;
+      if (!buffer.hasRemaining()) {
+        flushBuffer();
+      }
+    }
+
+    return size;
+  }
+
+  /**
+   * Write size bytes read from the channel.
+   *
+   * @return number of bytes written
+   * @throws EOFException if the channel ends before size bytes have been read
+   */
+  public long transferFrom(ReadableByteChannel channel, long size) throws IOException {
+    long remaining = size;
+    while (remaining > 0) {
+      buffer.limit(buffer.position() + (int) Math.min(buffer.remaining(), remaining));
+      int read = channel.read(buffer);
+      buffer.limit(buffer.capacity());
+      if (read < 0) {
+        throw new EOFException(String.format("Input ended after %d of %d bytes", size - remaining, size));
+      }
+
+      remaining -= read;
+      if (!buffer.hasRemaining()) {
+        flushBuffer();
+      }
+    }
+
+    return size;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    flushBuffer();
   }
 
   @Override
   public void close() throws IOException {
-    writeInt(EOF_MARKER, 0, 0);
+    flushBuffer();
+    sendFileData(EOF_MARKER.duplicate());
     // Receive completion message from server
     ByteBuffer reply = this.nfcClient.readNfcResponse();
     this.nfcClient.validateReplyCode(reply, NfcClient.NFC_PUTFILE_DONE);
@@ -89,4 +175,25 @@ public class NfcFileOutputStream extends OutputStream {
       this.nfcClient.close();
     }
   }
+
+  private void flushBuffer() throws IOException {
+    if (buffer.position() == 0) {
+      return;
+    }
+
+    buffer.flip();
+    sendFileData(buffer);
+    buffer.clear();
+  }
+
+  private void sendFileData(ByteBuffer data) throws IOException {
+    assert data.remaining() <= NfcClient.MAX_XFER_SIZE;
+    fileDataHdr.clear();
+    fileDataHdr.putInt(NfcClient.FILE_DATA_HDR_MAGIC);
+    fileDataHdr.putInt(data.remaining());
+    fileDataHdr.flip();
+    nfcClient.sendNfcMsg(nfcMessage);
+    nfcClient.writeFully(fileDataHdr);
+    nfcClient.writeFully(data);
+  }
 }
@@ -21,16 +21,25 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 /**
  * StreamVmdkReader reads stream-optimized VMDKs. Used for converting disks
  * during upload to ESX via NFC.
+ * <p>
+ * When created with an executor, the reader reads up to readAhead grains ahead of the caller and decompresses them
+ * on the executor. Grains are still returned in the order they are stored in the stream.
  */
 public class StreamVmdkReader {
   // TODO(jandersen): NIO
@@ -40,9 +49,24 @@ public class StreamVmdkReader {
   private long currentLba;
   private String adapterType;
   private Map<String, String> ddb;
+  private final ExecutorService executor;
+  private final int readAhead;
+  private final Deque<PendingGrain> pendingGrains = new ArrayDeque<>();
+  private final Deque<GrainInflater> inflaters = new ArrayDeque<>();
+  private boolean endOfStream;
 
   public StreamVmdkReader(InputStream input) throws VmdkFormatException, IOException {
+    this(input, null, 1);
+  }
+
+  public StreamVmdkReader(InputStream input, ExecutorService executor, int readAhead)
+      throws VmdkFormatException, IOException {
+    if (readAhead < 1) {
+      throw new IllegalArgumentException("readAhead must be at least 1");
+    }
     this.input = new DataInputStream(input);
+    this.executor = executor;
+    this.readAhead = readAhead;
     adapterType = "buslogic";
     ddb = new LinkedHashMap<>(); // Preserve the order of the DDB entries
     currentLba = -1;
@@ -156,7 +180,36 @@ public class StreamVmdkReader {
     return (int) grainSize;
   }
 
+  /**
+   * Read the next grain into the buffer.
+   *
+   * @return size of the data grain, 0 for a progress grain or -1 at the end of the stream
+   */
   public int getNextGrain(byte[] grain) throws VmdkFormatException, IOException {
+    if (executor == null) {
+      return complete(readNextGrain(), grain);
+    }
+
+    while (!endOfStream && pendingGrains.size() < readAhead) {
+      PendingGrain pendingGrain = readNextGrain();
+      if (pendingGrain.inflater != null) {
+        GrainInflater inflater = pendingGrain.inflater;
+        pendingGrain.future = executor.submit(() -> inflater.inflate(inflater.grain));
+      }
+      pendingGrains.addLast(pendingGrain);
+    }
+
+    if (pendingGrains.isEmpty()) {
+      return -1; // End of stream was returned already
+    }
+    return complete(pendingGrains.removeFirst(), grain);
+  }
+
+  /**
+   * Read the next data grain, progress grain or end-of-stream marker from the stream. The data of a data grain is
+   * read but not decompressed.
+   */
+  private PendingGrain readNextGrain() throws VmdkFormatException, IOException {
     byte[] headerBytes = new byte[12];
     readFully(headerBytes);
     ByteBuffer header = ByteBuffer.wrap(headerBytes);
@@ -165,7 +218,7 @@ public class StreamVmdkReader {
     int cmpSize = header.getInt();
 
     // Sanity check
-    if (cmpSize > grain.length * 3) {
+    if (cmpSize > getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE * 3) {
       throw new VmdkFormatException("Disk format error: Invalid grain size");
     }
 
@@ -178,13 +231,12 @@ public class StreamVmdkReader {
       int type = metadata.getInt();
       long value = metadata.getLong();
       if (type == SparseUtil.GRAIN_MARKER_EOS) {
-        input.close();
-        return -1; // End of stream
+        endOfStream = true;
+        return PendingGrain.END_OF_STREAM;
       }
       if (type == SparseUtil.GRAIN_MARKER_PROGRESS) {
         // Update current LBA, and let the caller know something's happening.
-        currentLba = value;
-        return 0;
+        return new PendingGrain(value, null);
       }
       // Some other metadata grain (GT/GD). Skip to next grain and retry from there.
       long toSkip = sector * 512;
@@ -198,25 +250,58 @@ public class StreamVmdkReader {
       cmpSize = header.getInt();
     }
     assert cmpSize > 0;
-    byte[] cmpBytes = new byte[cmpSize];
-    readFully(cmpBytes);
-    Inflater inf = new Inflater();
-    inf.setInput(cmpBytes);
-    int grainSize = -1;
-    try {
-      grainSize = inf.inflate(grain);
-    } catch (DataFormatException e) {
-      throw new VmdkFormatException("Zlib error: " + e.getMessage(), e);
-    }
-    inf.end();
+    GrainInflater inflater = inflaters.isEmpty() ? new GrainInflater() : inflaters.removeFirst();
+    inflater.readCompressed(cmpSize);
 
     long totalGrainSize = 12 + cmpSize;
     long paddingSize = ((totalGrainSize + 512 - 1) / 512) * 512 - totalGrainSize;
     while (paddingSize > 0) {
       paddingSize -= input.skip(paddingSize);
     }
-    currentLba = sector;
-    return grainSize;
+    return new PendingGrain(sector, inflater);
+  }
+
+  /**
+   * Return the grain read by readNextGrain to the caller, decompressing it into the caller's buffer unless it was
+   * decompressed on the executor already.
+   */
+  private int complete(PendingGrain pendingGrain, byte[] grain) throws VmdkFormatException, IOException {
+    if (pendingGrain == PendingGrain.END_OF_STREAM) {
+      endInflaters();
+      input.close();
+      return -1; // End of stream
+    }
+
+    if (pendingGrain.inflater == null) {
+      currentLba = pendingGrain.sector;
+      return 0;
+    }
+
+    GrainInflater inflater = pendingGrain.inflater;
+    int size;
+    if (pendingGrain.future == null) {
+      size = inflater.inflate(grain);
+    } else {
+      size = getInflatedSize(pendingGrain.future);
+      System.arraycopy(inflater.grain, 0, grain, 0, size);
+    }
+    inflaters.addLast(inflater);
+    currentLba = pendingGrain.sector;
+    return size;
+  }
+
+  private static int getInflatedSize(Future<Integer> future) throws VmdkFormatException, IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while decompressing grain");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof VmdkFormatException) {
+        throw (VmdkFormatException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
   }
 
   private void readFully(byte[] buffer) throws IOException, VmdkFormatException {
@@ -232,6 +317,74 @@ public class StreamVmdkReader {
   }
 
   public void close() throws IOException {
+    // Ending an Inflater waits for an inflate in progress on it, and a cancelled task which still runs afterwards
+    // fails without effect, so the Inflaters of the pending grains are ended as well.
+    for (PendingGrain pendingGrain : pendingGrains) {
+      if (pendingGrain.future != null) {
+        pendingGrain.future.cancel(false);
+      }
+      if (pendingGrain.inflater != null) {
+        pendingGrain.inflater.inflater.end();
+      }
+    }
+    pendingGrains.clear();
+    endInflaters();
     input.close();
   }
+
+  private void endInflaters() {
+    for (GrainInflater inflater : inflaters) {
+      inflater.inflater.end();
+    }
+    inflaters.clear();
+  }
+
+  /**
+   * A grain read from the stream, in the order it was stored.
+   */
+  private static class PendingGrain {
+    private static final PendingGrain END_OF_STREAM = new PendingGrain(-1, null);
+
+    private final long sector;
+    private final GrainInflater inflater;
+    private Future<Integer> future;
+
+    private PendingGrain(long sector, GrainInflater inflater) {
+      this.sector = sector;
+      this.inflater = inflater;
+    }
+  }
+
+  /**
+   * Holds the compressed data of a grain and the buffers and Inflater used to decompress it. Instances are reused
+   * for later grains.
+   */
+  private class GrainInflater {
+    private final Inflater inflater = new Inflater();
+    private final byte[] grain = new byte[getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE];
+    private byte[] compressed = new byte[0];
+    private int compressedSize;
+
+    private void readCompressed(int size) throws IOException, VmdkFormatException {
+      if (compressed.length < size) {
+        compressed = new byte[size];
+      }
+      compressedSize = size;
+      try {
+        input.readFully(compressed, 0, size);
+      } catch (EOFException e) {
+        throw new VmdkFormatException("Unexpected end of file", e);
+      }
+    }
+
+    private int inflate(byte[] output) throws VmdkFormatException {
+      inflater.reset();
+      inflater.setInput(compressed, 0, compressedSize);
+      try {
+        return inflater.inflate(output);
+      } catch (DataFormatException e) {
+        throw new VmdkFormatException("Zlib error: " + e.getMessage(), e);
+      }
+    }
+  }
 }
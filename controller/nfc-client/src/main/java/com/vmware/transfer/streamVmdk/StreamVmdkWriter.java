@@ -22,16 +22,26 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
 
 /**
  * StreamVmdkWriter writes stream-optimized VMDKs.
+ * <p>
+ * Grains which are all zeros are not written, as unallocated grains read as zeros. When created with an executor,
+ * the writer compresses up to maxPendingGrains data grains on the executor while the caller produces the next ones.
+ * Grains are still written in the order they were passed to the writer.
  */
 public class StreamVmdkWriter {
   private static final Logger logger = LoggerFactory.getLogger(StreamVmdkWriter.class);
@@ -53,9 +63,23 @@ public class StreamVmdkWriter {
   private ByteBuffer currentGrainTable;
   private ByteBuffer grainDirectory;
   private ByteBuffer grainHeader;
+  private final ExecutorService executor;
+  private final int maxPendingGrains;
+  private final Deque<GrainDeflater> pendingGrains = new ArrayDeque<>();
+  private final Deque<GrainDeflater> deflaters = new ArrayDeque<>();
 
   public StreamVmdkWriter(final OutputStream output, long capacitySectors) {
+    this(output, capacitySectors, null, 1);
+  }
+
+  public StreamVmdkWriter(final OutputStream output, long capacitySectors, ExecutorService executor,
+                          int maxPendingGrains) {
+    if (maxPendingGrains < 1) {
+      throw new IllegalArgumentException("maxPendingGrains must be at least 1");
+    }
     this.output = new DataOutputStream(output);
+    this.executor = executor;
+    this.maxPendingGrains = maxPendingGrains;
     this.capacitySectors = capacitySectors;
     currentOffset = 0;
     nextSector = 0;
@@ -84,41 +108,47 @@ public class StreamVmdkWriter {
   }
 
   /**
-   * Write data grain to output stream.
+   * Write data grain to output stream. With an executor, the grain is compressed and written later and the caller
+   * may reuse the grain buffer as soon as this returns.
    *
    * @param sector LBA of the grain
-   * @param grain  Grain data
+   * @param grain  Grain data, at most one grain long
    * @return Size of stream written so far
    * @throws IOException
    */
   public long writeDataGrain(long sector, byte[] grain) throws IOException {
+    if (grain.length > SparseUtil.DEFAULT_GRAIN_SIZE_BYTES) {
+      throw new IllegalArgumentException("Grain of " + grain.length + " bytes is larger than "
+          + SparseUtil.DEFAULT_GRAIN_SIZE_BYTES + " bytes");
+    }
     assert grain.length == SparseUtil.DEFAULT_GRAIN_SIZE_BYTES;
     assert sector % SparseUtil.DEFAULT_GRAIN_SIZE == 0;
     assert sector >= nextSector;
 
-    addToGrainTable(sector);
+    if (isZeroGrain(grain)) {
+      // Unallocated grains read as zeros, so treat the grain as an empty one. While grains are still being
+      // compressed there is no need for a progress grain, and draining them here would stall the pipeline.
+      long offset = pendingGrains.isEmpty() ? writeProgressGrain(sector) : currentOffset;
+      nextSector += SparseUtil.DEFAULT_GRAIN_SIZE;
+      return offset;
+    }
 
-        /*
-         * Maximum .1% + 12 bytes expansion according to zlib manual. It seems
-         * silly to do expensive multiplication and division for this, so we
-         * approximate it conservatively as 2**-9 == .195% + 13.
-         */
-    int maxSize = grain.length + (grain.length >> 9) + 13;
-    byte[] compressed = new byte[maxSize];
+    GrainDeflater deflater = deflaters.isEmpty() ? new GrainDeflater() : deflaters.removeFirst();
+    deflater.sector = sector;
+    if (executor == null) {
+      deflater.deflate(grain, grain.length);
+      writeCompressedGrain(deflater);
+    } else {
+      System.arraycopy(grain, 0, deflater.grain, 0, grain.length);
+      int length = grain.length;
+      deflater.future = executor.submit(() -> deflater.deflate(deflater.grain, length));
+      pendingGrains.addLast(deflater);
+      while (pendingGrains.size() > maxPendingGrains) {
+        writeCompressedGrain(pendingGrains.removeFirst());
+      }
+    }
 
-    Deflater deflater = new Deflater();
-    deflater.setInput(grain);
-    deflater.finish();
-    int cmpSize = deflater.deflate(compressed, 0, maxSize, Deflater.SYNC_FLUSH);
-    grainHeader.clear();
-    grainHeader.putLong(sector);
-    grainHeader.putInt(cmpSize);
-    write(grainHeader.array(), 0, SparseUtil.STREAMED_GRAIN_HEADER_SIZE);
-    write(compressed, 0, cmpSize);
-    padTo(SparseUtil.DISKLIB_SECTOR_SIZE);
     nextSector += SparseUtil.DEFAULT_GRAIN_SIZE;
-
-    updateLastWriteTime(sector);
     unflushedDataGrains = true;
     return currentOffset;
   }
@@ -134,6 +164,7 @@ public class StreamVmdkWriter {
     assert sector % SparseUtil.DEFAULT_GRAIN_SIZE == 0;
     assert sector >= nextSector;
 
+    flushPendingGrains();
     if (unflushedDataGrains) {
             /*
              * First empty grain after a series of data grains. Flush the
@@ -152,6 +183,8 @@ public class StreamVmdkWriter {
   }
 
   public void writeTrailer() throws IOException {
+    flushPendingGrains();
+
     // write remaining grain table, if any
     if (currentGrainTable != null) {
       flushCurrentGrainTable();
@@ -173,9 +206,67 @@ public class StreamVmdkWriter {
   }
 
   public void close() throws IOException {
+    // Ending a Deflater waits for a deflate in progress on it, and a cancelled task which still runs afterwards fails
+    // without effect, so the Deflaters of the pending grains are ended as well.
+    for (GrainDeflater deflater : pendingGrains) {
+      deflater.future.cancel(false);
+      deflater.deflater.end();
+    }
+    pendingGrains.clear();
+    for (GrainDeflater deflater : deflaters) {
+      deflater.deflater.end();
+    }
+    deflaters.clear();
     output.close();
   }
 
+  /**
+   * Write the data grains which are still being compressed.
+   */
+  private void flushPendingGrains() throws IOException {
+    while (!pendingGrains.isEmpty()) {
+      writeCompressedGrain(pendingGrains.removeFirst());
+    }
+  }
+
+  private void writeCompressedGrain(GrainDeflater deflater) throws IOException {
+    if (deflater.future != null) {
+      waitForDeflate(deflater.future);
+      deflater.future = null;
+    }
+
+    addToGrainTable(deflater.sector);
+    grainHeader.clear();
+    grainHeader.putLong(deflater.sector);
+    grainHeader.putInt(deflater.compressedSize);
+    write(grainHeader.array(), 0, SparseUtil.STREAMED_GRAIN_HEADER_SIZE);
+    write(deflater.compressed, 0, deflater.compressedSize);
+    padTo(SparseUtil.DISKLIB_SECTOR_SIZE);
+
+    updateLastWriteTime(deflater.sector);
+    deflaters.addLast(deflater);
+  }
+
+  private static void waitForDeflate(Future<?> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing grain");
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static boolean isZeroGrain(byte[] grain) {
+    for (byte b : grain) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void write(byte[] data) throws IOException {
     write(data, 0, data.length);
   }
@@ -316,4 +407,31 @@ public class StreamVmdkWriter {
 
     updateLastWriteTime(sector);
   }
+
+  /**
+   * Holds a grain and the buffers and Deflater used to compress it. Instances are reused for later grains.
+   */
+  private static class GrainDeflater {
+    /*
+     * Maximum .1% + 12 bytes expansion according to zlib manual. It seems
+     * silly to do expensive multiplication and division for this, so we
+     * approximate it conservatively as 2**-9 == .195% + 13.
+     */
+    private static final int MAX_COMPRESSED_SIZE =
+        SparseUtil.DEFAULT_GRAIN_SIZE_BYTES + (SparseUtil.DEFAULT_GRAIN_SIZE_BYTES >> 9) + 13;
+
+    private final Deflater deflater = new Deflater();
+    private final byte[] grain = new byte[SparseUtil.DEFAULT_GRAIN_SIZE_BYTES];
+    private final byte[] compressed = new byte[MAX_COMPRESSED_SIZE];
+    private long sector;
+    private int compressedSize;
+    private Future<?> future;
+
+    private void deflate(byte[] input, int length) {
+      deflater.reset();
+      deflater.setInput(input, 0, length);
+      deflater.finish();
+      compressedSize = deflater.deflate(compressed, 0, compressed.length, Deflater.SYNC_FLUSH);
+    }
+  }
 }
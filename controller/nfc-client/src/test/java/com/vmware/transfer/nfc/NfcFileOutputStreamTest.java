@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.nfc;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link NfcFileOutputStream}.
+ */
+public class NfcFileOutputStreamTest {
+  private static final Logger logger = LoggerFactory.getLogger(NfcFileOutputStreamTest.class);
+
+  private static final int WRITE_SIZE = 256;
+
+  private static final int DATA_SIZE = 1000;
+
+  @Test
+  public void testSingleByteWrites() throws Throwable {
+    byte[] data = createData(DATA_SIZE);
+    LocalNfcClient nfcClient = new LocalNfcClient(true);
+
+    try (NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, WRITE_SIZE)) {
+      for (byte b : data) {
+        outputStream.write(b);
+      }
+    }
+
+    assertThat(nfcClient.chunkSizes, contains(256, 256, 256, 232, 0));
+    assertThat(nfcClient.received.toByteArray(), is(data));
+  }
+
+  @Test
+  public void testArrayWrites() throws Throwable {
+    byte[] data = createData(DATA_SIZE);
+    LocalNfcClient nfcClient = new LocalNfcClient(true);
+
+    try (NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, WRITE_SIZE)) {
+      outputStream.write(data, 0, 100);
+      outputStream.write(data, 100, DATA_SIZE - 100);
+    }
+
+    assertThat(nfcClient.chunkSizes, contains(256, 256, 256, 232, 0));
+    assertThat(nfcClient.received.toByteArray(), is(data));
+  }
+
+  @Test
+  public void testFlush() throws Throwable {
+    byte[] data = createData(DATA_SIZE);
+    LocalNfcClient nfcClient = new LocalNfcClient(true);
+
+    try (NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, WRITE_SIZE)) {
+      outputStream.write(data, 0, 100);
+      outputStream.flush();
+      outputStream.write(data, 100, DATA_SIZE - 100);
+    }
+
+    assertThat(nfcClient.chunkSizes, contains(100, 256, 256, 256, 132, 0));
+    assertThat(nfcClient.received.toByteArray(), is(data));
+  }
+
+  @Test
+  public void testTransferFromInputStream() throws Throwable {
+    byte[] data = createData(DATA_SIZE);
+    LocalNfcClient nfcClient = new LocalNfcClient(true);
+
+    try (NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, WRITE_SIZE)) {
+      assertThat(outputStream.transferFrom(new ByteArrayInputStream(data), DATA_SIZE), is((long) DATA_SIZE));
+    }
+
+    assertThat(nfcClient.chunkSizes, contains(256, 256, 256, 232, 0));
+    assertThat(nfcClient.received.toByteArray(), is(data));
+  }
+
+  @Test
+  public void testTransferFromFile() throws Throwable {
+    byte[] data = createData(DATA_SIZE);
+    File file = File.createTempFile("nfc", ".tmp");
+    file.deleteOnExit();
+    Files.write(file.toPath(), data);
+    LocalNfcClient nfcClient = new LocalNfcClient(true);
+
+    try (NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, WRITE_SIZE);
+         InputStream inputStream = new FileInputStream(file)) {
+      assertThat(outputStream.transferFrom(inputStream, DATA_SIZE), is((long) DATA_SIZE));
+    } finally {
+      file.delete();
+    }
+
+    assertThat(nfcClient.chunkSizes, contains(256, 256, 256, 232, 0));
+    assertThat(nfcClient.received.toByteArray(), is(data));
+  }
+
+  @Test(expectedExceptions = EOFException.class)
+  public void testTransferFromShortInputStream() throws Throwable {
+    LocalNfcClient nfcClient = new LocalNfcClient(true);
+    NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, WRITE_SIZE);
+
+    outputStream.transferFrom(new ByteArrayInputStream(createData(DATA_SIZE)), DATA_SIZE + 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidWriteSize() throws Throwable {
+    new NfcFileOutputStream(new LocalNfcClient(true), false, NfcClient.MAX_XFER_SIZE + 1);
+  }
+
+  @DataProvider(name = "writeSizes")
+  public Object[][] getWriteSizes() {
+    return new Object[][]{
+        {64 * 1024},
+        {NfcFileOutputStream.DEFAULT_WRITE_SIZE},
+    };
+  }
+
+  /**
+   * Measures upload throughput against a local stand-in for the NFC server. Disabled by default.
+   */
+  @Test(dataProvider = "writeSizes", enabled = false)
+  public void testPerformance(int writeSize) throws Throwable {
+    int fileSize = 256 * 1024 * 1024;
+    byte[] data = createData(fileSize);
+
+    LocalNfcClient nfcClient = new LocalNfcClient(false);
+    Stopwatch watch = Stopwatch.createStarted();
+    try (NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, writeSize)) {
+      InputStream inputStream = new ByteArrayInputStream(data);
+      for (int i = 0; i < fileSize; i++) {
+        outputStream.write(inputStream.read());
+      }
+    }
+    watch.stop();
+    logger.info("byte by byte: {} MB/sec, {} writes", throughput(fileSize, watch), nfcClient.chunkSizes.size());
+
+    nfcClient = new LocalNfcClient(false);
+    watch = Stopwatch.createStarted();
+    try (NfcFileOutputStream outputStream = new NfcFileOutputStream(nfcClient, false, writeSize)) {
+      outputStream.transferFrom(new ByteArrayInputStream(data), fileSize);
+    }
+    watch.stop();
+    logger.info("transferFrom with {} byte writes: {} MB/sec, {} writes",
+        writeSize, throughput(fileSize, watch), nfcClient.chunkSizes.size());
+  }
+
+  private static long throughput(long bytes, Stopwatch watch) {
+    return bytes * 1000 / Math.max(1, watch.elapsed(TimeUnit.MILLISECONDS)) / (1024 * 1024);
+  }
+
+  private static byte[] createData(int size) {
+    byte[] data = new byte[size];
+    new Random(0).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * Stands in for the connection to a NFC server. It decodes the FILE_DATA messages written by a file output stream
+   * and replies to the end of the file with NFC_PUTFILE_DONE.
+   */
+  private static class LocalNfcClient extends NfcClient {
+    private final boolean keepData;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private final List<Integer> chunkSizes = new ArrayList<>();
+    private int writes = 0;
+
+    private LocalNfcClient(boolean keepData) {
+      this.keepData = keepData;
+    }
+
+    @Override
+    void writeFully(ByteBuffer data) {
+      // Each FILE_DATA message is written as the message, the data header and the data.
+      switch (writes++ % 3) {
+        case 0:
+          assertThat(data.remaining(), is(NFC_MESSAGE_SIZE));
+          assertThat(data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(), is(NFC_FILE_DATA));
+          break;
+        case 1:
+          ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+          assertThat(header.getInt(), is(FILE_DATA_HDR_MAGIC));
+          chunkSizes.add(header.getInt());
+          break;
+        default:
+          assertThat(data.remaining(), is(chunkSizes.get(chunkSizes.size() - 1)));
+          if (keepData) {
+            byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            received.write(bytes, 0, bytes.length);
+          }
+          break;
+      }
+
+      data.position(data.limit());
+    }
+
+    @Override
+    ByteBuffer readNfcResponse() {
+      ByteBuffer reply = ByteBuffer.allocate(NFC_MESSAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      reply.putInt(NFC_PUTFILE_DONE);
+      reply.flip();
+      return reply;
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.streamVmdk;
+
+import com.vmware.transfer.nfc.SparseUtil;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link StreamVmdkWriter} and {@link StreamVmdkReader} by writing and reading back stream-optimized disks.
+ */
+public class StreamVmdkTest {
+  private static final Logger logger = LoggerFactory.getLogger(StreamVmdkTest.class);
+
+  private static final int GRAIN_COUNT = 64;
+
+  private ExecutorService executor;
+
+  @BeforeClass
+  public void setUpClass() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterClass
+  public void tearDownClass() {
+    executor.shutdownNow();
+  }
+
+  @DataProvider(name = "executors")
+  public Object[][] getExecutors() {
+    return new Object[][]{
+        {false, false},
+        {false, true},
+        {true, false},
+        {true, true},
+    };
+  }
+
+  @Test(dataProvider = "executors")
+  public void testRoundTrip(boolean writeOnExecutor, boolean readOnExecutor) throws Throwable {
+    byte[][] grains = createGrains(GRAIN_COUNT, 0.5);
+    byte[] disk = writeDisk(grains, writeOnExecutor ? executor : null);
+
+    byte[][] read = readDisk(disk, GRAIN_COUNT, readOnExecutor ? executor : null);
+
+    for (int i = 0; i < GRAIN_COUNT; i++) {
+      assertThat("grain " + i, read[i], is(grains[i]));
+    }
+  }
+
+  @Test
+  public void testZeroGrainsAreSkipped() throws Throwable {
+    byte[][] dense = createGrains(GRAIN_COUNT, 1.0);
+    byte[][] sparse = createGrains(GRAIN_COUNT, 0.25);
+
+    byte[] denseDisk = writeDisk(dense, null);
+    byte[] sparseDisk = writeDisk(sparse, null);
+
+    assertThat(sparseDisk.length, lessThan(denseDisk.length / 2));
+  }
+
+  @Test
+  public void testPipelinedWriterOutputMatches() throws Throwable {
+    byte[][] grains = createGrains(GRAIN_COUNT, 0.5);
+
+    assertThat(writeDisk(grains, executor), is(writeDisk(grains, null)));
+  }
+
+  @Test
+  public void testOversizedGrainIsRejected() throws Throwable {
+    for (ExecutorService e : Arrays.asList(null, executor)) {
+      StreamVmdkWriter writer = new StreamVmdkWriter(new ByteArrayOutputStream(), SparseUtil.DEFAULT_GRAIN_SIZE, e, 4);
+      writer.writeHeader(1, Collections.emptyMap());
+      try {
+        writer.writeDataGrain(0, new byte[SparseUtil.DEFAULT_GRAIN_SIZE_BYTES + 1]);
+        fail("oversized grain should have been rejected, executor " + e);
+      } catch (IllegalArgumentException ex) {
+        // expected
+      } finally {
+        writer.close();
+      }
+    }
+  }
+
+  @Test
+  public void testReadAfterEndOfStream() throws Throwable {
+    byte[] disk = writeDisk(createGrains(GRAIN_COUNT, 0.5), null);
+    StreamVmdkReader reader = new StreamVmdkReader(new ByteArrayInputStream(disk), executor, 4);
+    byte[] grain = new byte[reader.getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE];
+
+    while (reader.getNextGrain(grain) >= 0) {
+      // Drain the disk
+    }
+
+    assertThat(reader.getNextGrain(grain), is(-1));
+  }
+
+  @DataProvider(name = "performance")
+  public Object[][] getPerformance() {
+    return new Object[][]{
+        // fraction of grains with data
+        {0.1},
+        {0.5},
+        {1.0},
+    };
+  }
+
+  /**
+   * Measures how long it takes to write and read back a 1GB disk, with and without an executor. Disabled by default.
+   */
+  @Test(dataProvider = "performance", enabled = false)
+  public void testPerformance(double dataFraction) throws Throwable {
+    int grainCount = 8 * 1024;
+    byte[][] grains = createGrains(grainCount, dataFraction);
+    ExecutorService perfExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    try {
+      for (ExecutorService e : Arrays.asList(null, perfExecutor)) {
+        Stopwatch watch = Stopwatch.createStarted();
+        byte[] disk = writeDisk(grains, e);
+        watch.stop();
+        logger.info("{} data grains, executor {}: write {} ms, {} bytes",
+            dataFraction, e != null, watch.elapsed(TimeUnit.MILLISECONDS), disk.length);
+
+        watch = Stopwatch.createStarted();
+        readDisk(disk, grainCount, e);
+        watch.stop();
+        logger.info("{} data grains, executor {}: read {} ms",
+            dataFraction, e != null, watch.elapsed(TimeUnit.MILLISECONDS));
+      }
+    } finally {
+      perfExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Creates grains of which the given fraction hold compressible data and the rest are all zeros.
+   */
+  private static byte[][] createGrains(int count, double dataFraction) {
+    Random random = new Random(0);
+    byte[][] grains = new byte[count][SparseUtil.DEFAULT_GRAIN_SIZE_BYTES];
+    for (int i = 0; i < count; i++) {
+      if (random.nextDouble() < dataFraction) {
+        // Text-like data, which compresses about as well as a typical disk
+        for (int j = 0; j < grains[i].length; j++) {
+          grains[i][j] = (byte) ('a' + random.nextInt(16));
+        }
+      }
+    }
+    return grains;
+  }
+
+  private static byte[] writeDisk(byte[][] grains, ExecutorService executor) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    StreamVmdkWriter writer = new StreamVmdkWriter(output, (long) grains.length * SparseUtil.DEFAULT_GRAIN_SIZE,
+        executor, 4);
+    writer.writeHeader(1, Collections.emptyMap());
+    for (int i = 0; i < grains.length; i++) {
+      writer.writeDataGrain((long) i * SparseUtil.DEFAULT_GRAIN_SIZE, grains[i]);
+    }
+    writer.writeTrailer();
+    writer.close();
+    return output.toByteArray();
+  }
+
+  private static byte[][] readDisk(byte[] disk, int grainCount, ExecutorService executor)
+      throws IOException, VmdkFormatException {
+    StreamVmdkReader reader = new StreamVmdkReader(new ByteArrayInputStream(disk), executor, 4);
+    assertThat(reader.getCapacityInSectors(), is((long) grainCount * SparseUtil.DEFAULT_GRAIN_SIZE));
+
+    byte[][] grains = new byte[grainCount][SparseUtil.DEFAULT_GRAIN_SIZE_BYTES];
+    byte[] grain = new byte[reader.getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE];
+    int size = reader.getNextGrain(grain);
+    while (size >= 0) {
+      if (size > 0) {
+        assertThat(size, is(SparseUtil.DEFAULT_GRAIN_SIZE_BYTES));
+        int index = (int) (reader.getCurrentLba() / SparseUtil.DEFAULT_GRAIN_SIZE);
+        System.arraycopy(grain, 0, grains[index], 0, size);
+      }
+      size = reader.getNextGrain(grain);
+    }
+    return grains;
+  }
+}
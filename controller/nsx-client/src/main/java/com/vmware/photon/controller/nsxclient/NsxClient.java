@@ -18,6 +18,9 @@ import com.vmware.photon.controller.nsxclient.apis.FabricApi;
 import com.vmware.photon.controller.nsxclient.apis.LogicalRouterApi;
 import com.vmware.photon.controller.nsxclient.apis.LogicalSwitchApi;
 
+import com.codahale.metrics.MetricRegistry;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -53,11 +56,23 @@ public class NsxClient {
   public NsxClient(String target,
                    String username,
                    String password) {
+    this(target, username, password, null, null);
+  }
+
+  /**
+   * Constructs a NSX client which sends its requests through a shared HTTP client, and records
+   * per-endpoint request metrics in the given registry if it is not null.
+   */
+  public NsxClient(String target,
+                   String username,
+                   String password,
+                   CloseableHttpAsyncClient asyncClient,
+                   MetricRegistry metricRegistry) {
     if (!target.startsWith("https")) {
       target = "https://" + target;
     }
 
-    this.restClient = new RestClient(target, username, password);
+    this.restClient = new RestClient(target, username, password, asyncClient, metricRegistry);
 
     this.fabricApi = new FabricApi(restClient);
     this.logicalSwitchApi = new LogicalSwitchApi(restClient);
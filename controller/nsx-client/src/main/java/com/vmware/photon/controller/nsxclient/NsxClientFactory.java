@@ -13,12 +13,180 @@
 
 package com.vmware.photon.controller.nsxclient;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.ssl.SSLContexts;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Factory for instances of {@link NsxClient}.
+ * <p>
+ * Clients are cached by endpoint, username and a hash of the credentials, so the cache never holds a password,
+ * and the least recently used clients are dropped once the cache is full. All clients send their requests through
+ * one HTTP client with a bounded connection pool. Connections are kept alive between requests, so that a task
+ * which talks to NSX repeatedly does not pay for a new TLS handshake each time, and idle connections are closed
+ * periodically.
  */
-public class NsxClientFactory {
+public class NsxClientFactory implements AutoCloseable {
+
+  private static final int MAX_CACHED_CLIENTS = 64;
+  private static final int MAX_CONNECTIONS = 100;
+  private static final int MAX_CONNECTIONS_PER_ENDPOINT = 20;
+  private static final long MAX_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final long IDLE_CONNECTION_EVICTION_SECONDS = 30;
+
+  private final MetricRegistry metricRegistry;
+  private final Cache<ClientKey, NsxClient> clients = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_CLIENTS)
+      .build();
+  private PoolingNHttpClientConnectionManager connectionManager;
+  private CloseableHttpAsyncClient asyncClient;
+  private ScheduledExecutorService evictionExecutor;
+
+  public NsxClientFactory() {
+    this(new MetricRegistry());
+  }
+
+  /**
+   * Constructs a factory which records the request metrics of its clients in the given registry.
+   */
+  public NsxClientFactory(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
 
   public NsxClient create(String endpoint, String username, String password) {
-    return new NsxClient(endpoint, username, password);
+    CloseableHttpAsyncClient sharedClient = getAsyncClient();
+    return clients.asMap().computeIfAbsent(new ClientKey(endpoint, username, password),
+        key -> new NsxClient(endpoint, username, password, sharedClient, metricRegistry));
+  }
+
+  /**
+   * Closes the shared HTTP client and its connections. Clients created earlier must not be used afterwards.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    clients.invalidateAll();
+    if (evictionExecutor != null) {
+      evictionExecutor.shutdownNow();
+      evictionExecutor = null;
+    }
+    if (asyncClient != null) {
+      asyncClient.close();
+      asyncClient = null;
+      connectionManager = null;
+    }
+  }
+
+  /**
+   * Returns the shared HTTP client, creating it on first use.
+   */
+  private synchronized CloseableHttpAsyncClient getAsyncClient() {
+    if (asyncClient != null) {
+      return asyncClient;
+    }
+
+    try {
+      SSLContext sslcontext = SSLContexts.custom()
+          .loadTrustMaterial((chain, authtype) -> true)
+          .build();
+
+      Registry<SchemeIOSessionStrategy> sessionStrategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+          .register("http", NoopIOSessionStrategy.INSTANCE)
+          .register("https", new SSLIOSessionStrategy(sslcontext, SSLIOSessionStrategy.ALLOW_ALL_HOSTNAME_VERIFIER))
+          .build();
+
+      connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(),
+          sessionStrategies);
+      connectionManager.setMaxTotal(MAX_CONNECTIONS);
+      connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ENDPOINT);
+
+      ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+        long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return keepAlive > 0 ? Math.min(keepAlive, MAX_KEEP_ALIVE_MILLIS) : MAX_KEEP_ALIVE_MILLIS;
+      };
+
+      asyncClient = HttpAsyncClientBuilder.create()
+          .setConnectionManager(connectionManager)
+          .setKeepAliveStrategy(keepAliveStrategy)
+          .build();
+      asyncClient.start();
+    } catch (Throwable e) {
+      throw new RuntimeException(e);
+    }
+
+    final PoolingNHttpClientConnectionManager evictedManager = connectionManager;
+    evictionExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("nsx-client-eviction-%d").setDaemon(true).build());
+    evictionExecutor.scheduleWithFixedDelay(() -> {
+          evictedManager.closeExpiredConnections();
+          evictedManager.closeIdleConnections(IDLE_CONNECTION_EVICTION_SECONDS, TimeUnit.SECONDS);
+        },
+        IDLE_CONNECTION_EVICTION_SECONDS, IDLE_CONNECTION_EVICTION_SECONDS, TimeUnit.SECONDS);
+
+    return asyncClient;
+  }
+
+  /**
+   * Identifies a cached client by the endpoint and user it connects as, and by a SHA-256 hash of the credentials in
+   * place of the password itself.
+   */
+  private static class ClientKey {
+    private final String endpoint;
+    private final String username;
+    private final HashCode credentialsHash;
+
+    private ClientKey(String endpoint, String username, String password) {
+      this.endpoint = endpoint;
+      this.username = username;
+      this.credentialsHash = Hashing.sha256().newHasher()
+          .putString(Strings.nullToEmpty(username), StandardCharsets.UTF_8)
+          .putChar('\0')
+          .putString(Strings.nullToEmpty(password), StandardCharsets.UTF_8)
+          .hash();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      ClientKey other = (ClientKey) o;
+      return Objects.equals(endpoint, other.endpoint)
+          && Objects.equals(username, other.username)
+          && Objects.equals(credentialsHash, other.credentialsHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(endpoint, username, credentialsHash);
+    }
   }
 }
@@ -13,6 +13,9 @@
 
 package com.vmware.photon.controller.nsxclient;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
@@ -61,6 +64,8 @@ public class RestClient {
   private final String target;
   private final HttpClientContext clientContext;
   private final CloseableHttpAsyncClient asyncClient;
+  private final Timer requestTimer;
+  private final Meter failedRequests;
 
   /**
    * Constructs a RestClient.
@@ -73,6 +78,15 @@ public class RestClient {
    * Constructs a RestClient.
    */
   public RestClient(String target, String username, String password, CloseableHttpAsyncClient asyncClient) {
+    this(target, username, password, asyncClient, null);
+  }
+
+  /**
+   * Constructs a RestClient which records the latency and failures of its requests in the given registry,
+   * under names which include the target host.
+   */
+  public RestClient(String target, String username, String password, CloseableHttpAsyncClient asyncClient,
+                    MetricRegistry metricRegistry) {
     checkNotNull(target, "target cannot be null");
     checkNotNull(username, "username cannot be null");
     checkNotNull(password, "password cannot be null");
@@ -80,6 +94,15 @@ public class RestClient {
     this.target = target;
     this.clientContext = getHttpClientContext(target, username, password);
     this.asyncClient = asyncClient == null ? getHttpClient() : asyncClient;
+
+    if (metricRegistry != null) {
+      String endpoint = HttpHost.create(target).toHostString().replace('.', '_');
+      this.requestTimer = metricRegistry.timer(MetricRegistry.name(RestClient.class, endpoint, "requests"));
+      this.failedRequests = metricRegistry.meter(MetricRegistry.name(RestClient.class, endpoint, "failures"));
+    } else {
+      this.requestTimer = null;
+      this.failedRequests = null;
+    }
   }
 
   /**
@@ -99,7 +122,11 @@ public class RestClient {
   public Future<HttpResponse> sendAsync(final Method method, final String path, final HttpEntity payload,
                                            final FutureCallback<HttpResponse> responseHandler) throws IOException {
     HttpUriRequest request = getHttpRequest(method, path, payload);
-    return this.asyncClient.execute(request, this.clientContext, responseHandler);
+    if (requestTimer == null) {
+      return this.asyncClient.execute(request, this.clientContext, responseHandler);
+    }
+
+    return this.asyncClient.execute(request, this.clientContext, new MeteredCallback(responseHandler));
   }
 
   /**
@@ -195,4 +222,41 @@ public class RestClient {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Records the latency and outcome of a request before passing the result to the caller's callback.
+   */
+  private class MeteredCallback implements FutureCallback<HttpResponse> {
+    private final Timer.Context timerContext = requestTimer.time();
+    private final FutureCallback<HttpResponse> responseHandler;
+
+    private MeteredCallback(FutureCallback<HttpResponse> responseHandler) {
+      this.responseHandler = responseHandler;
+    }
+
+    @Override
+    public void completed(HttpResponse result) {
+      timerContext.stop();
+      if (responseHandler != null) {
+        responseHandler.completed(result);
+      }
+    }
+
+    @Override
+    public void failed(Exception ex) {
+      timerContext.stop();
+      failedRequests.mark();
+      if (responseHandler != null) {
+        responseHandler.failed(ex);
+      }
+    }
+
+    @Override
+    public void cancelled() {
+      timerContext.stop();
+      if (responseHandler != null) {
+        responseHandler.cancelled();
+      }
+    }
+  }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.nsxclient;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for {@link NsxClientFactory}.
+ */
+public class NsxClientFactoryTest {
+
+  private NsxClientFactory nsxClientFactory;
+
+  @BeforeMethod
+  public void setUp() {
+    nsxClientFactory = new NsxClientFactory();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    nsxClientFactory.close();
+  }
+
+  @Test
+  public void testClientIsReused() {
+    NsxClient first = nsxClientFactory.create("1.2.3.4", "username", "password");
+    NsxClient second = nsxClientFactory.create("1.2.3.4", "username", "password");
+
+    assertSame(second, first);
+  }
+
+  @Test
+  public void testClientsAreKeyedByEndpointAndCredentials() {
+    NsxClient nsxClient = nsxClientFactory.create("1.2.3.4", "username", "password");
+
+    assertNotSame(nsxClientFactory.create("1.2.3.5", "username", "password"), nsxClient);
+    assertNotSame(nsxClientFactory.create("1.2.3.4", "username2", "password"), nsxClient);
+    assertNotSame(nsxClientFactory.create("1.2.3.4", "username", "password2"), nsxClient);
+  }
+
+  @Test
+  public void testCacheIsBounded() {
+    NsxClient nsxClient = nsxClientFactory.create("1.2.3.4", "username", "password");
+    for (int i = 0; i < 1000; i++) {
+      nsxClientFactory.create("1.2.3.4", "username" + i, "password");
+    }
+
+    assertNotSame(nsxClientFactory.create("1.2.3.4", "username", "password"), nsxClient);
+  }
+
+  @Test
+  public void testClientIsRecreatedAfterClose() throws Exception {
+    NsxClient nsxClient = nsxClientFactory.create("1.2.3.4", "username", "password");
+    nsxClientFactory.close();
+
+    assertNotSame(nsxClientFactory.create("1.2.3.4", "username", "password"), nsxClient);
+  }
+}
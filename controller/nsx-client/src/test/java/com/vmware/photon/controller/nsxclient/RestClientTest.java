@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.nsxclient;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
@@ -174,4 +175,29 @@ public class RestClientTest {
 
     restClient.check(httpResponse, 200);
   }
+
+  @Test
+  public void testRequestMetrics() throws Exception {
+    CloseableHttpAsyncClient mockAsyncClient = mock(CloseableHttpAsyncClient.class);
+    FutureCallback<HttpResponse> mockCallback = mock(FutureCallback.class);
+    MetricRegistry metricRegistry = new MetricRegistry();
+    RestClient restClient = new RestClient(target, username, password, mockAsyncClient, metricRegistry);
+
+    restClient.sendAsync(RestClient.Method.GET, path, null, mockCallback);
+    restClient.sendAsync(RestClient.Method.GET, path, null, mockCallback);
+
+    ArgumentCaptor<FutureCallback> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+    verify(mockAsyncClient, times(2)).execute(any(HttpUriRequest.class), any(BasicHttpContext.class),
+        callbackCaptor.capture());
+
+    HttpResponse httpResponse = mock(HttpResponse.class);
+    Exception exception = new IOException("failed");
+    callbackCaptor.getAllValues().get(0).completed(httpResponse);
+    callbackCaptor.getAllValues().get(1).failed(exception);
+
+    verify(mockCallback).completed(httpResponse);
+    verify(mockCallback).failed(exception);
+    assertEquals(metricRegistry.timer(MetricRegistry.name(RestClient.class, "1_2_3_4", "requests")).getCount(), 2L);
+    assertEquals(metricRegistry.meter(MetricRegistry.name(RestClient.class, "1_2_3_4", "failures")).getCount(), 1L);
+  }
 }
@@ -25,6 +25,7 @@ import com.vmware.photon.controller.common.clients.HostClientFactory;
 import com.vmware.photon.controller.common.config.BadConfigException;
 import com.vmware.photon.controller.common.config.ConfigBuilder;
 import com.vmware.photon.controller.common.logging.LoggingFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.ssl.KeyStoreUtils;
 import com.vmware.photon.controller.common.thrift.ServerSet;
 import com.vmware.photon.controller.common.thrift.StaticServerSet;
@@ -54,6 +55,8 @@ import com.vmware.photon.controller.nsxclient.NsxClientFactory;
 import com.vmware.photon.controller.scheduler.SchedulingConfig;
 import com.vmware.photon.controller.scheduler.service.CloudStoreConstraintChecker;
 import com.vmware.photon.controller.scheduler.service.ConstraintChecker;
+import com.vmware.photon.controller.scheduler.service.HostCapacityIndex;
+import com.vmware.photon.controller.scheduler.service.InMemoryConstraintChecker;
 import com.vmware.photon.controller.scheduler.xenon.SchedulerServiceGroup;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceClient;
@@ -221,7 +224,7 @@ public class Main {
     // Values for CloudStore
     final HostClientFactory hostClientFactory = thriftModule.getHostClientFactory();
     final AgentControlClientFactory agentControlClientFactory = thriftModule.getAgentControlClientFactory();
-    final NsxClientFactory nsxClientFactory = new NsxClientFactory();
+    final NsxClientFactory nsxClientFactory = new NsxClientFactory(DefaultMetricRegistry.REGISTRY);
 
     // Values for Scheduler
     final ServerSet cloudStoreServerSet =
@@ -265,7 +268,12 @@ public class Main {
     // update their /etc/hosts file.
     cloudStoreHelper.setRefererUri(photonControllerXenonHost.getUri());
 
-    final ConstraintChecker checker = new CloudStoreConstraintChecker(cloudStoreHelper, photonControllerXenonHost);
+    ConstraintChecker checker = new CloudStoreConstraintChecker(cloudStoreHelper, photonControllerXenonHost);
+    HostCapacityIndex hostCapacityIndex = null;
+    if (photonControllerConfig.getRoot().isHostCapacityIndexEnabled()) {
+      hostCapacityIndex = new HostCapacityIndex(photonControllerXenonHost);
+      checker = new InMemoryConstraintChecker(hostCapacityIndex, checker);
+    }
 
     logger.info("Creating Cloud Store Xenon Service Group");
     CloudStoreServiceGroup cloudStoreServiceGroup = createCloudStoreServiceGroup(deployerConfig.isInstaller());
@@ -337,6 +345,11 @@ public class Main {
     photonControllerXenonHost.start();
     logger.info("Started PhotonController Xenon Host");
 
+    if (hostCapacityIndex != null) {
+      logger.info("Starting host capacity index");
+      hostCapacityIndex.start();
+    }
+
     logger.info("Creating SystemConfig instance");
     SystemConfig.createInstance(photonControllerXenonHost);
     logger.info("Created SystemConfig instance");